@@ -0,0 +1,57 @@
+import java.util.BitSet;
+
+/**
+ * A weight between 0 and 1 kept exactly as a sum of distinct powers of two:
+ * bit k set means 2^-k is part of it. Halving the smallest term never runs
+ * out of precision, as a fixed-point weight would after 62 splits, and
+ * adding a term is a binary addition with carries.
+ */
+class Credit {
+
+	private final BitSet terms = new BitSet();
+
+	boolean isEmpty() {
+		return terms.isEmpty();
+	}
+
+	boolean isOne() {
+		return terms.get(0);
+	}
+
+	/**
+	 * Splits the smallest term in two and gives one half away; returns the
+	 * exponent of the half given.
+	 */
+	int split() {
+		int k = terms.length() - 1;
+		if (k < 0)
+			throw new IllegalStateException("No credit to split");
+		terms.clear(k);
+		terms.set(k + 1);
+		return k + 1;
+	}
+
+	void add(int k) {
+		while (terms.get(k)) {
+			if (k == 0)
+				throw new IllegalStateException("Credit above one");
+			terms.clear(k);
+			k--;
+		}
+		terms.set(k);
+	}
+
+	void add(BitSet other) {
+		for (int k = other.nextSetBit(0); k >= 0; k = other.nextSetBit(k + 1))
+			add(k);
+	}
+
+	/**
+	 * Removes and returns all the terms.
+	 */
+	BitSet take() {
+		BitSet all = (BitSet) terms.clone();
+		terms.clear();
+		return all;
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Mattern's credit recovery: weight throwing where a passive node keeps its
+ * credit for a while before it hands it back. Credit received meanwhile is
+ * added to it and goes back in the same message, and a node that becomes
+ * active again sends from what it kept. Fewer control messages, for up to
+ * delay more detection latency.
+ */
+class CreditRecoveryDetector extends WeightThrowingDetector {
+
+	static Factory factory(final long delay) {
+		return new Factory() {
+			public String name() {
+				return "credit-recovery";
+			}
+
+			public TerminationDetector create(SimNode node) {
+				return new CreditRecoveryDetector(node, delay);
+			}
+		};
+	}
+
+	// microseconds
+	private final long delay;
+	private boolean timerSet;
+
+	CreditRecoveryDetector(SimNode node, long delay) {
+		super(node);
+		this.delay = delay;
+	}
+
+	@Override
+	public void control(SimNode node, SimMessage msg) {
+		if (msg.type == SimMessage.TIMER) {
+			timerSet = false;
+			if (!credit.isEmpty())
+				giveBack(node);
+		} else {
+			super.control(node, msg);
+		}
+	}
+
+	@Override
+	public void passive(SimNode node) {
+		if (node.isRoot()) {
+			super.passive(node);
+		} else if (!credit.isEmpty() && !timerSet) {
+			timerSet = true;
+			node.timer(new SimMessage(SimMessage.TIMER, node.id, node.id),
+					delay);
+		}
+	}
+}
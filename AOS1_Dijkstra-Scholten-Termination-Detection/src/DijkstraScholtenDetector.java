@@ -0,0 +1,73 @@
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * Dijkstra-Scholten, as Node runs it: the first computation message makes
+ * its sender the node's parent, every other one is acknowledged, and a
+ * passive node with no unacknowledged messages acknowledges its parent and
+ * leaves the tree. The root detects termination when that happens to it.
+ *
+ * Acknowledgements owed to one node are sent as one counted ACK when the
+ * node goes passive, as the Transport does.
+ */
+class DijkstraScholtenDetector implements TerminationDetector {
+
+	static final Factory FACTORY = new Factory() {
+		public String name() {
+			return "dijkstra-scholten";
+		}
+
+		public TerminationDetector create(SimNode node) {
+			return new DijkstraScholtenDetector();
+		}
+	};
+
+	private boolean engaged;
+	private int parent = -1;
+	// computation messages not acknowledged yet
+	private long deficit;
+	private final HashMap<Integer, Integer> owed = new HashMap<Integer, Integer>();
+
+	public void received(SimNode node, SimMessage msg) {
+		if (!engaged) {
+			engaged = true;
+			parent = msg.from;
+		} else {
+			owe(msg.from, 1);
+		}
+	}
+
+	public void sending(SimNode node, SimMessage msg) {
+		deficit++;
+	}
+
+	public void control(SimNode node, SimMessage msg) {
+		deficit -= msg.value;
+	}
+
+	public void passive(SimNode node) {
+		if (engaged && deficit == 0) {
+			if (node.isRoot()) {
+				node.detected();
+			} else {
+				owe(parent, 1);
+				engaged = false;
+				parent = -1;
+			}
+		}
+		if (owed.isEmpty())
+			return;
+		for (Entry<Integer, Integer> e : owed.entrySet()) {
+			SimMessage ack = new SimMessage(SimMessage.CONTROL, node.id,
+					e.getKey());
+			ack.value = e.getValue();
+			node.control(ack);
+		}
+		owed.clear();
+	}
+
+	private void owe(int to, int count) {
+		Integer n = owed.get(to);
+		owed.put(to, n == null ? count : n + count);
+	}
+}
@@ -1,3 +1,4 @@
+import java.io.BufferedOutputStream;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -6,10 +7,16 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
 
 class Listener implements Runnable {
 
+	// longest a wait for outgoing messages lasts before termination is checked
+	static final long WAIT = 100;
+	static final int BUFFER = 8192;
+
 	Node node;
 
 	public Listener(Node node) {
@@ -57,7 +64,9 @@ class Listener implements Runnable {
 				System.out.println(in.readObject());
 
 				OutputStream outStream = connectionSocket.getOutputStream();
-				ObjectOutputStream out = new ObjectOutputStream(outStream);
+				// batches are flushed explicitly by the Transport
+				ObjectOutputStream out = new ObjectOutputStream(
+						new BufferedOutputStream(outStream, BUFFER));
 				InetSocketAddress sockaddress = (InetSocketAddress) (connectionSocket
 						.getRemoteSocketAddress());
 				key = sockaddress.getHostName();
@@ -67,6 +76,7 @@ class Listener implements Runnable {
 				objOutputStrm.put(key, out);
 
 				out.writeObject(node.processID + ": hi " + key);
+				out.flush();
 				node.peers.put(key, connectionSocket);
 
 			}
@@ -76,63 +86,19 @@ class Listener implements Runnable {
 				node.systemUp = true;
 			}
 
-			Message msg = null;
+			Transport transport = new Transport(node);
+			ArrayList<Message> batch = new ArrayList<Message>();
 
 			while (!node.terminated || !node.outQ.isEmpty()) {
-				// Thread.sleep(5);
-
-				if (node.outQ.size() != 0) {
-					msg = node.outQ.peek();
-
-					if (msg != null) {
-						msg.setSender(node.processID);
-
-						// CHECK FOR TERMINATION MESSAGE
-						if (msg.msg == Message.TERMINATE) {
-							for (int i = 0; i < node.otherPeers; i++) {
-								msg.setReceiver(node.neighboursNames[i]);
-								ObjectOutputStream wrtObj = node.outputObjects
-										.get(node.neighboursNames[i]);
-								System.out.println("sent:" + msg.toString());
-								synchronized (wrtObj) {
-									wrtObj.writeObject(msg);
-									// Thread.sleep(10);
-									wrtObj.flush();
-								}
-							}
-							// ****** CAREFULL ABOUT THE BREAK
-							// Thread.sleep(1000);
-							// break;
-						}
-
-						if (msg.receiver == null) {
-							for (int i = 0; i < node.otherPeers; i++) {
-								msg.setReceiver(node.neighboursNames[i]);
-								System.out.println("sent:" + msg.toString());
-								ObjectOutputStream wrtObj = node.outputObjects
-										.get(node.neighboursNames[i]);
-								synchronized (wrtObj) {
-									wrtObj.writeObject(msg);
-								}
-							}
-						} else {
-							ObjectOutputStream wrtObj = node.outputObjects
-									.get(msg.receiver);
-							System.out.println("sent:" + msg.toString());
-							synchronized (wrtObj) {
-								wrtObj.writeObject(msg);
-							}
-						}
-					} else {
-						System.out.println("OUT QUEUE IS EMPTY "
-								+ node.outQ.size());
-						msg = node.outQ.peek();
-					}
-					synchronized (node.outQ) {
-						node.outQ.poll();
-					}
-				}
+				Message msg = node.outQ.poll(WAIT, TimeUnit.MILLISECONDS);
+				if (msg == null)
+					continue;
+				batch.add(msg);
+				node.outQ.drainTo(batch);
+				transport.send(batch);
+				batch.clear();
 			}
+			System.out.println(transport.stats());
 			Thread.sleep(1000);
 			for (String key : node.neighboursNames) {
 				System.out.println("Closing streams and socket:" + key);
@@ -149,4 +115,4 @@ class Listener implements Runnable {
 			// clientNo++;// client id starts with 0
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer.
+ * Producers swap themselves in at the tail with one atomic operation; the
+ * consumer is the only thread that moves the head, so it needs none. A
+ * consumer waiting for an element parks and the next add unparks it, instead
+ * of spinning on the queue's size.
+ */
+class MpscQueue<E> {
+
+	private static final class Link<E> {
+		E value;
+		volatile Link<E> next;
+
+		Link(E value) {
+			this.value = value;
+		}
+	}
+
+	// the last link, where producers add
+	private final AtomicReference<Link<E>> tail;
+	// the link before the first element, moved by the consumer only
+	private Link<E> head;
+	private volatile Thread waiter;
+
+	MpscQueue() {
+		Link<E> stub = new Link<E>(null);
+		head = stub;
+		tail = new AtomicReference<Link<E>>(stub);
+	}
+
+	/**
+	 * Adds an element; any thread.
+	 */
+	void add(E e) {
+		Link<E> link = new Link<E>(e);
+		tail.getAndSet(link).next = link;
+		Thread w = waiter;
+		if (w != null)
+			LockSupport.unpark(w);
+	}
+
+	/**
+	 * Removes the first element, or returns null if there is none; consumer
+	 * only.
+	 */
+	E poll() {
+		Link<E> next = head.next;
+		if (next == null)
+			return null;
+		E value = next.value;
+		next.value = null;
+		head = next;
+		return value;
+	}
+
+	/**
+	 * Removes the first element, parking for up to timeout until there is
+	 * one; consumer only.
+	 */
+	E poll(long timeout, TimeUnit unit) {
+		E value = poll();
+		if (value != null)
+			return value;
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waiter = Thread.currentThread();
+		try {
+			while ((value = poll()) == null) {
+				long left = deadline - System.nanoTime();
+				if (left <= 0)
+					break;
+				LockSupport.parkNanos(this, left);
+			}
+		} finally {
+			waiter = null;
+		}
+		return value;
+	}
+
+	/**
+	 * Moves every element there is into c; consumer only.
+	 */
+	int drainTo(Collection<? super E> c) {
+		int n = 0;
+		E value;
+		while ((value = poll()) != null) {
+			c.add(value);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Whether the queue is empty; exact for the consumer only.
+	 */
+	boolean isEmpty() {
+		return head.next == null;
+	}
+}
@@ -4,13 +4,14 @@ import java.io.FileWriter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.Hashtable;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 public class Node {
 	final String processID;
@@ -33,8 +34,10 @@ public class Node {
 	volatile Hashtable<String, ObjectInputStream> inputObjects_Send = new Hashtable<String, ObjectInputStream>();
 	volatile Hashtable<String, ObjectOutputStream> outputObjects = new Hashtable<String, ObjectOutputStream>();
 	volatile Hashtable<String, Socket> peers = new Hashtable<String, Socket>();
-	volatile Queue<Message> inQ = new LinkedList<Message>();
-	volatile Queue<Message> outQ = new LinkedList<Message>();
+	// filled by the Sender threads, drained by main
+	final MpscQueue<Message> inQ = new MpscQueue<Message>();
+	// filled by main and the Predictor, drained by the Listener
+	final MpscQueue<Message> outQ = new MpscQueue<Message>();
 	volatile Hashtable<String, Long> pendingACK = new Hashtable<String, Long>();
 	// Socket peers[];
 	ServerSocket serverSocket;
@@ -156,6 +159,8 @@ public class Node {
 			switch (iMsg.msg) {
 			case Message.ACK:
 				str.append("| ACK ");
+				if (iMsg.count > 1)
+					str.append("x" + iMsg.count + " ");
 				break;
 			case Message.MSG:
 				str.append("| COMP ");
@@ -192,7 +197,7 @@ public class Node {
 	void takeAction(Message iMsg) {
 		switch (iMsg.msg) {
 		case Message.ACK: {
-			this.pendingAcknowledgement--;
+			this.pendingAcknowledgement -= iMsg.count;
 			// this.localClock++;
 
 			System.out.println("Clock:" + localClock + "| Pending ACK"
@@ -351,16 +356,18 @@ public class Node {
 
 			Message inmsg;
 			while (!node.terminated) {
-				while (node.inQ.size() != 0) {
-					synchronized (node.inQ) {
-						inmsg = node.inQ.poll();
-					}
+				inmsg = node.inQ.poll(Listener.WAIT, TimeUnit.MILLISECONDS);
+				if (inmsg != null)
 					node.takeAction(inmsg);
-				}
-				// Thread.sleep(5);
 			}
 
 			System.out.println("Exiting main thread.." + node.processID);
+			OperatingSystemMXBean os = ManagementFactory
+					.getOperatingSystemMXBean();
+			if (os instanceof com.sun.management.OperatingSystemMXBean)
+				System.out.println("CPU time "
+						+ ((com.sun.management.OperatingSystemMXBean) os)
+								.getProcessCpuTime() / 1000000 + " ms");
 			Thread.sleep(2000);
 
 			// for (String str : node.neighboursNames) {
@@ -389,6 +396,8 @@ class Message implements Serializable {
 	int msg;
 	String sender;
 	String receiver;
+	// how many ACKs an ACK stands for
+	int count = 1;
 
 	void setReceiver(String receiver) {
 		this.receiver = receiver;
@@ -437,6 +446,7 @@ class Message implements Serializable {
 		default:
 			msgtext = "unknown";
 		}
-		return msgtext + " message from " + sender + " to " + receiver;
+		return msgtext + (count > 1 ? " x" + count : "") + " message from "
+				+ sender + " to " + receiver;
 	}
 }
\ No newline at end of file
@@ -8,7 +8,7 @@ public class Predictor implements Runnable {
 	@Override
 	public void run() {
 		try {
-			while (!node.terminated) {
+			while (!node.terminated && node.active) {
 				if (node.active) {
 
 					float rand = RandomNumber.randomFloat(0, 100, 0.01f);
@@ -25,9 +25,11 @@ public class Predictor implements Runnable {
 								else
 									acks = node.pendingACK.get(key);
 
-								while (acks-- > 0) {
+								// one ACK for all the messages from key
+								if (acks > 0) {
 									msg = new Message(Message.ACK,
 											node.processID, key);
+									msg.count = (int) acks;
 									node.recordMsg(msg, "");
 									node.outQ.add(msg);
 								}
@@ -69,6 +71,9 @@ public class Predictor implements Runnable {
 								}
 							}
 						}
+						// the node is idle until a computation message
+						// arrives, which starts a new Predictor
+						return;
 						// ACTIVE
 					} else {
 						node.firstTime = false;
@@ -67,9 +67,7 @@ public class Sender implements Runnable {
 				// Thread.sleep(10);
 				msg = (Message) in.readObject();
 				System.out.println(msg);
-				synchronized (node.inQ) {
-					node.inQ.add(msg);
-				}
+				node.inQ.add(msg);
 				if (msg.msg == Message.TERMINATE) {
 					System.out.println("Termination message received");
 					msg = new Message(Message.CNT, node.processID, msg.sender);
@@ -0,0 +1,39 @@
+import java.util.BitSet;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A message of the simulation, queued on the SimNetwork until it is due.
+ */
+class SimMessage implements Delayed {
+	static final int COMPUTE = 0;
+	static final int CONTROL = 1;
+	static final int TIMER = 2;
+
+	final int type;
+	final int from;
+	final int to;
+	// what the detector attaches: a count, or the exponent of a credit
+	int value;
+	// credit handed back
+	BitSet terms;
+	// System.nanoTime() of delivery
+	long due;
+
+	SimMessage(int type, int from, int to) {
+		this.type = type;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public int compareTo(Delayed o) {
+		long d = due - ((SimMessage) o).due;
+		return d < 0 ? -1 : (d > 0 ? 1 : 0);
+	}
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory network of the simulation. Every message is held for a latency
+ * drawn uniformly between min and max, so messages between two nodes may
+ * overtake each other, and then handed to its node by the network's thread.
+ */
+class SimNetwork implements Runnable {
+
+	private final DelayQueue<SimMessage> wire = new DelayQueue<SimMessage>();
+	private final long minLatency;
+	private final long maxLatency;
+	SimNode[] nodes;
+
+	final AtomicLong computation = new AtomicLong();
+	final AtomicLong control = new AtomicLong();
+
+	/**
+	 * Latencies in microseconds.
+	 */
+	SimNetwork(long minLatency, long maxLatency) {
+		this.minLatency = minLatency * 1000;
+		this.maxLatency = maxLatency * 1000;
+	}
+
+	void send(SimMessage msg) {
+		if (msg.type == SimMessage.COMPUTE)
+			computation.incrementAndGet();
+		else
+			control.incrementAndGet();
+		long latency = minLatency;
+		if (maxLatency > minLatency)
+			latency += ThreadLocalRandom.current().nextLong(
+					maxLatency - minLatency + 1);
+		msg.due = System.nanoTime() + latency;
+		wire.add(msg);
+	}
+
+	/**
+	 * Hands msg back to its own node after delay microseconds; not counted.
+	 */
+	void timer(SimMessage msg, long delay) {
+		msg.due = System.nanoTime() + delay * 1000;
+		wire.add(msg);
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				SimMessage msg = wire.take();
+				nodes[msg.to].deliver(msg);
+			}
+		} catch (InterruptedException e) {
+			// the simulation is over
+		}
+	}
+}
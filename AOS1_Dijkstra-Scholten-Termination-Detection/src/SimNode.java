@@ -0,0 +1,89 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A logical node of the simulation. Messages are delivered into the node's
+ * mailbox; a node with mail is run as a task of the simulation's pool, one
+ * task per node at a time, and handles all the mail there is before it goes
+ * passive.
+ *
+ * The computation is a diffusing one, like Predictor's: each computation
+ * message a node receives makes it send up to fanout messages to random
+ * nodes, until it has sent budget messages in all.
+ */
+class SimNode implements Runnable {
+
+	static final int ROOT = 0;
+
+	final int id;
+	final TerminationSimulation sim;
+	final TerminationDetector detector;
+	private final MpscQueue<SimMessage> mailbox = new MpscQueue<SimMessage>();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final Random random;
+	private int budget;
+
+	SimNode(int id, TerminationSimulation sim,
+			TerminationDetector.Factory detector, long seed) {
+		this.id = id;
+		this.sim = sim;
+		this.random = new Random(seed);
+		this.budget = sim.budget;
+		this.detector = detector.create(this);
+	}
+
+	boolean isRoot() {
+		return id == ROOT;
+	}
+
+	void deliver(SimMessage msg) {
+		mailbox.add(msg);
+		if (scheduled.compareAndSet(false, true))
+			sim.pool.execute(this);
+	}
+
+	@Override
+	public void run() {
+		SimMessage msg;
+		while ((msg = mailbox.poll()) != null) {
+			if (msg.type == SimMessage.COMPUTE) {
+				detector.received(this, msg);
+				compute();
+				sim.computed();
+			} else {
+				detector.control(this, msg);
+			}
+		}
+		detector.passive(this);
+		scheduled.set(false);
+		// mail that came after the last poll
+		if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+			sim.pool.execute(this);
+	}
+
+	private void compute() {
+		int n = Math.min(budget, random.nextInt(sim.fanout + 1));
+		budget -= n;
+		int nodes = sim.nodes.length;
+		for (int i = 0; i < n; i++) {
+			int to = random.nextInt(nodes - 1);
+			if (to >= id)
+				to++;
+			SimMessage msg = new SimMessage(SimMessage.COMPUTE, id, to);
+			detector.sending(this, msg);
+			sim.send(msg);
+		}
+	}
+
+	void control(SimMessage msg) {
+		sim.network.send(msg);
+	}
+
+	void timer(SimMessage msg, long delay) {
+		sim.network.timer(msg, delay);
+	}
+
+	void detected() {
+		sim.detected();
+	}
+}
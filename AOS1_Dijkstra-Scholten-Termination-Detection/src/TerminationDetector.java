@@ -0,0 +1,38 @@
+/**
+ * A termination detection algorithm as run by one node of the simulation
+ * (SimNode). Each node has its own detector, and the node calls it from one
+ * thread at a time, so a detector keeps plain fields.
+ *
+ * Control messages are sent with SimNode.control, timers set with
+ * SimNode.timer, and the node that detects termination calls
+ * SimNode.detected.
+ */
+interface TerminationDetector {
+
+	interface Factory {
+		String name();
+
+		TerminationDetector create(SimNode node);
+	}
+
+	/**
+	 * A computation message arrived; the node is active until passive().
+	 * The computation starts with one from no sender (-1) at the root.
+	 */
+	void received(SimNode node, SimMessage msg);
+
+	/**
+	 * The node is about to send a computation message.
+	 */
+	void sending(SimNode node, SimMessage msg);
+
+	/**
+	 * A control message or a timer of this detector arrived.
+	 */
+	void control(SimNode node, SimMessage msg);
+
+	/**
+	 * The node handled everything that had arrived and is passive.
+	 */
+	void passive(SimNode node);
+}
@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs termination detection with thousands of logical nodes in one
+ * process: SimNodes on a fork-join pool, talking over a SimNetwork with
+ * configurable latency, so the detectors can be compared at sizes the one
+ * process per host Node cannot reach.
+ *
+ * The simulation knows when the computation really terminated: when no
+ * computation message is in flight or being handled. Detection latency is
+ * the time from then to the detector's announcement; an announcement before
+ * then is counted as a false detection.
+ *
+ * java TerminationSimulation [-nodes 100,1000,4000] [-runs 3]
+ *   [-latency 1000-5000] [-budget 10] [-fanout 3] [-delay 10000]
+ *   [-threads n] [-detectors ds,wt,cr]
+ * Latencies and the credit recovery delay are in microseconds.
+ */
+public class TerminationSimulation {
+
+	static final long TIMEOUT = 120;
+
+	final int budget;
+	final int fanout;
+	final SimNode[] nodes;
+	final SimNetwork network;
+	final ForkJoinPool pool;
+
+	// computation messages in flight or being handled
+	private final AtomicLong work = new AtomicLong();
+	private volatile long terminatedAt;
+	private volatile long detectedAt;
+	private volatile boolean early;
+	private final CountDownLatch detection = new CountDownLatch(1);
+
+	TerminationSimulation(int count, int budget, int fanout,
+			SimNetwork network, int threads,
+			TerminationDetector.Factory detector, long seed) {
+		this.budget = budget;
+		this.fanout = fanout;
+		this.network = network;
+		// async mode: tasks are started in the order they are submitted
+		this.pool = new ForkJoinPool(threads,
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		this.nodes = new SimNode[count];
+		for (int i = 0; i < count; i++)
+			nodes[i] = new SimNode(i, this, detector, seed * 31 + i);
+		network.nodes = nodes;
+	}
+
+	void send(SimMessage msg) {
+		work.incrementAndGet();
+		network.send(msg);
+	}
+
+	void computed() {
+		if (work.decrementAndGet() == 0)
+			terminatedAt = System.nanoTime();
+	}
+
+	synchronized void detected() {
+		if (detection.getCount() == 0)
+			return;
+		detectedAt = System.nanoTime();
+		early = work.get() != 0;
+		detection.countDown();
+	}
+
+	/**
+	 * Runs the computation until termination is detected; returns the
+	 * result, or null on timeout.
+	 */
+	Result run() throws InterruptedException {
+		Thread wire = new Thread(network, "network");
+		wire.setDaemon(true);
+		wire.start();
+		long start = System.nanoTime();
+		work.incrementAndGet();
+		nodes[SimNode.ROOT].deliver(new SimMessage(SimMessage.COMPUTE, -1,
+				SimNode.ROOT));
+		boolean done = detection.await(TIMEOUT, TimeUnit.SECONDS);
+		wire.interrupt();
+		pool.shutdownNow();
+		if (!done)
+			return null;
+
+		Result r = new Result();
+		r.computation = network.computation.get();
+		r.control = network.control.get();
+		r.early = early ? 1 : 0;
+		r.latency = early ? 0 : (detectedAt - terminatedAt) / 1000;
+		r.wall = (detectedAt - start) / 1000;
+		return r;
+	}
+
+	static class Result {
+		long computation;
+		long control;
+		// microseconds
+		long latency;
+		long wall;
+		int early;
+
+		void add(Result r) {
+			computation += r.computation;
+			control += r.control;
+			latency += r.latency;
+			wall += r.wall;
+			early += r.early;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String sizes = "100,1000,4000";
+		String detectors = "ds,wt,cr";
+		int runs = 3;
+		long minLatency = 1000;
+		long maxLatency = 5000;
+		int budget = 10;
+		int fanout = 3;
+		long delay = 10000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			if (args[i].equals("-nodes")) {
+				sizes = value;
+			} else if (args[i].equals("-runs")) {
+				runs = Integer.parseInt(value);
+			} else if (args[i].equals("-latency")) {
+				String[] range = value.split("-");
+				minLatency = Long.parseLong(range[0]);
+				maxLatency = Long.parseLong(range[range.length - 1]);
+			} else if (args[i].equals("-budget")) {
+				budget = Integer.parseInt(value);
+			} else if (args[i].equals("-fanout")) {
+				fanout = Integer.parseInt(value);
+			} else if (args[i].equals("-delay")) {
+				delay = Long.parseLong(value);
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(value);
+			} else if (args[i].equals("-detectors")) {
+				detectors = value;
+			} else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		ArrayList<TerminationDetector.Factory> factories = new ArrayList<TerminationDetector.Factory>();
+		for (String d : detectors.split(",")) {
+			if (d.equals("ds"))
+				factories.add(DijkstraScholtenDetector.FACTORY);
+			else if (d.equals("wt"))
+				factories.add(WeightThrowingDetector.FACTORY);
+			else if (d.equals("cr"))
+				factories.add(CreditRecoveryDetector.factory(delay));
+			else
+				System.out.println("Unknown detector " + d);
+		}
+
+		System.out.println("latency " + minLatency + "-" + maxLatency
+				+ " us, budget " + budget + ", fanout " + fanout + ", "
+				+ threads + " threads, " + runs + " runs each");
+		System.out.println(String.format("%-18s %6s %9s %9s %9s %12s %10s %5s",
+				"detector", "nodes", "compute", "control", "ctrl/msg",
+				"latency ms", "wall ms", "early"));
+		for (String size : sizes.split(",")) {
+			int count = Integer.parseInt(size);
+			for (TerminationDetector.Factory f : factories) {
+				Result total = new Result();
+				int done = 0;
+				for (int run = 0; run < runs; run++) {
+					TerminationSimulation sim = new TerminationSimulation(count,
+							budget, fanout, new SimNetwork(minLatency,
+									maxLatency), threads, f, run + 1);
+					Result r = sim.run();
+					if (r == null) {
+						System.out.println(f.name() + " " + count
+								+ " nodes: no detection in " + TIMEOUT + " s");
+						continue;
+					}
+					total.add(r);
+					done++;
+				}
+				if (done == 0)
+					continue;
+				System.out.println(String.format(
+						"%-18s %6d %9d %9d %9.3f %12.2f %10.1f %5d", f.name(),
+						count, total.computation / done, total.control / done,
+						(double) total.control / Math.max(1, total.computation),
+						total.latency / 1000.0 / Math.max(1, done - total.early),
+						total.wall / 1000.0 / done, total.early));
+			}
+		}
+	}
+}
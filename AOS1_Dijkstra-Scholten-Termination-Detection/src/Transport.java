@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Outbound side of a node: writes what the node queued in outQ to its peers
+ * in batches.
+ *
+ * The Listener hands over everything queued since the last batch. Messages
+ * are grouped per peer, keeping their order, written back to back and flushed
+ * once per peer. ACKs that follow each other to the same peer go out as one
+ * ACK carrying their count; an ACK is never merged across another message to
+ * that peer, since moving it ahead of a computation message could let the
+ * peer detect termination early.
+ */
+class Transport {
+
+	final Node node;
+	private final LinkedHashMap<String, ArrayList<Message>> perPeer = new LinkedHashMap<String, ArrayList<Message>>();
+
+	// messages queued, counted ACKs by their count
+	long messages;
+	long acks;
+	// messages actually written, and how many of them ACKs
+	long frames;
+	long ackFrames;
+	long flushes;
+	long batches;
+
+	Transport(Node node) {
+		this.node = node;
+	}
+
+	void send(List<Message> batch) throws IOException {
+		batches++;
+		for (Message msg : batch) {
+			msg.setSender(node.processID);
+			if (msg.msg == Message.TERMINATE || msg.receiver == null) {
+				for (String peer : node.neighboursNames)
+					add(peer, new Message(msg.msg, node.processID, peer));
+			} else {
+				add(msg.receiver, msg);
+			}
+		}
+
+		for (Entry<String, ArrayList<Message>> e : perPeer.entrySet()) {
+			ArrayList<Message> msgs = e.getValue();
+			if (msgs.isEmpty())
+				continue;
+			ObjectOutputStream out = node.outputObjects.get(e.getKey());
+			synchronized (out) {
+				for (Message msg : msgs) {
+					System.out.println("sent:" + msg.toString());
+					out.writeObject(msg);
+				}
+				// forget the messages written, or the stream keeps them all
+				out.reset();
+				out.flush();
+			}
+			frames += msgs.size();
+			flushes++;
+			msgs.clear();
+		}
+	}
+
+	private void add(String peer, Message msg) {
+		ArrayList<Message> msgs = perPeer.get(peer);
+		if (msgs == null) {
+			msgs = new ArrayList<Message>();
+			perPeer.put(peer, msgs);
+		}
+		messages += msg.msg == Message.ACK ? msg.count : 1;
+		if (msg.msg == Message.ACK) {
+			acks += msg.count;
+			Message last = msgs.isEmpty() ? null : msgs.get(msgs.size() - 1);
+			if (last != null && last.msg == Message.ACK) {
+				last.count += msg.count;
+				return;
+			}
+			ackFrames++;
+		}
+		msgs.add(msg);
+	}
+
+	String stats() {
+		return "Sent " + messages + " messages (" + acks + " ACKs) as " + frames
+				+ " frames (" + ackFrames + " ACK) in " + flushes
+				+ " flushes, " + batches + " batches";
+	}
+}
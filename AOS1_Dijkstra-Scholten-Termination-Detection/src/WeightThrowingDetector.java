@@ -0,0 +1,58 @@
+/**
+ * Huang's weight throwing: the root starts with weight 1, every computation
+ * message carries half of its sender's weight, and a node that goes passive
+ * sends all its weight back to the root at once. The root detects
+ * termination when it is passive and holds weight 1 again.
+ *
+ * Weights are Credits, so they do not underflow however long the
+ * computation runs.
+ */
+class WeightThrowingDetector implements TerminationDetector {
+
+	static final Factory FACTORY = new Factory() {
+		public String name() {
+			return "weight-throwing";
+		}
+
+		public TerminationDetector create(SimNode node) {
+			return new WeightThrowingDetector(node);
+		}
+	};
+
+	final Credit credit = new Credit();
+
+	WeightThrowingDetector(SimNode node) {
+		if (node.isRoot())
+			credit.add(0);
+	}
+
+	public void received(SimNode node, SimMessage msg) {
+		if (msg.from >= 0)
+			credit.add(msg.value);
+	}
+
+	public void sending(SimNode node, SimMessage msg) {
+		msg.value = credit.split();
+	}
+
+	public void control(SimNode node, SimMessage msg) {
+		if (msg.type == SimMessage.CONTROL)
+			credit.add(msg.terms);
+	}
+
+	public void passive(SimNode node) {
+		if (node.isRoot()) {
+			if (credit.isOne())
+				node.detected();
+		} else if (!credit.isEmpty()) {
+			giveBack(node);
+		}
+	}
+
+	void giveBack(SimNode node) {
+		SimMessage msg = new SimMessage(SimMessage.CONTROL, node.id,
+				SimNode.ROOT);
+		msg.terms = credit.take();
+		node.control(msg);
+	}
+}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * CRC32C checksums of a chunk, one per BLOCK bytes, kept in a sidecar file
+ * next to the chunk (<chunk>.crc): a magic number, the chunk's length and
+ * one int per block.
+ *
+ * Writes update the checksums of the blocks they touch; an append carries on
+ * the checksum of the last block over the new bytes, so the block is not
+ * read back. Reads verify only the blocks they cover, and only once after
+ * the block was last written. The sidecar is not synced, like the chunk
+ * itself; a sidecar whose length does not match the chunk's, as after a
+ * crash between the two writes, is rebuilt from the chunk.
+ */
+public class ChunkChecksums {
+
+	static final int BLOCK = 64 * 1024;
+	static final String SUFFIX = ".crc";
+	static final int MAGIC = 0x47464353;
+	static final int HEADER = 8;
+
+	private static final int ZERO_BLOCK = Crc32c.update(0, new byte[BLOCK], 0,
+			BLOCK);
+
+	private final FileChannel sidecar;
+	private final RandomAccessFile file;
+	int length;
+	private int[] crcs;
+	// blocks verified since they were last written
+	private final BitSet verified = new BitSet();
+
+	private ChunkChecksums(RandomAccessFile file) {
+		this.file = file;
+		this.sidecar = file.getChannel();
+	}
+
+	/**
+	 * The checksums of a chunk, rebuilt from the chunk if the sidecar is
+	 * missing or out of date.
+	 */
+	static ChunkChecksums open(String chunkFile, FileChannel data)
+			throws IOException {
+		ChunkChecksums sums = new ChunkChecksums(new RandomAccessFile(
+				chunkFile + SUFFIX, "rw"));
+		long size = data.size();
+		if (!sums.load(size)) {
+			if (sums.sidecar.size() > 0)
+				System.out.println("Rebuilding checksums of " + chunkFile);
+			sums.rebuild(data, (int) size);
+		}
+		return sums;
+	}
+
+	/**
+	 * The chunk length recorded in a sidecar, or -1 if it has none.
+	 */
+	static int length(String chunkFile) {
+		java.io.File f = new java.io.File(chunkFile + SUFFIX);
+		if (f.length() < HEADER)
+			return -1;
+		try {
+			RandomAccessFile in = new RandomAccessFile(f, "r");
+			try {
+				return in.readInt() == MAGIC ? in.readInt() : -1;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return -1;
+		}
+	}
+
+	private boolean load(long size) throws IOException {
+		if (sidecar.size() < HEADER)
+			return false;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		sidecar.read(header, 0);
+		header.flip();
+		if (header.getInt() != MAGIC || header.getInt() != size)
+			return false;
+		int blocks = blocks((int) size);
+		ByteBuffer buf = ByteBuffer.allocate(blocks * 4);
+		while (buf.hasRemaining()
+				&& sidecar.read(buf, HEADER + buf.position()) > 0)
+			;
+		if (buf.hasRemaining())
+			return false;
+		buf.flip();
+		length = (int) size;
+		crcs = new int[Math.max(16, blocks)];
+		buf.asIntBuffer().get(crcs, 0, blocks);
+		return true;
+	}
+
+	private void rebuild(FileChannel data, int size) throws IOException {
+		length = size;
+		crcs = new int[Math.max(16, blocks(size))];
+		ByteBuffer buf = ByteBuffer.allocate(BLOCK);
+		for (int b = 0; b < blocks(size); b++)
+			crcs[b] = crc(data, b, buf);
+		sidecar.truncate(0);
+		save(0, blocks(size));
+	}
+
+	/**
+	 * Updates the checksums after data was written at offSet.
+	 */
+	void written(FileChannel channel, long offSet, byte[] data)
+			throws IOException {
+		int start = (int) offSet;
+		int end = start + data.length;
+		int oldLength = length;
+		int newLength = Math.max(length, end);
+		grow(blocks(newLength));
+
+		int first = start / BLOCK;
+		int last = blocks(newLength) - 1;
+		if (oldLength < start) {
+			// a hole before the data: the blocks between read as zeros
+			first = Math.min(first, oldLength / BLOCK);
+		} else if (start == oldLength && start % BLOCK != 0) {
+			// an append: carry the last block's checksum on over the new bytes
+			int b = start / BLOCK;
+			int n = Math.min(data.length, (b + 1) * BLOCK - start);
+			crcs[b] = Crc32c.update(crcs[b], data, 0, n);
+			verified.clear(b);
+			first = b + 1;
+		}
+		if (end < newLength)
+			last = (end - 1) / BLOCK;
+
+		length = newLength;
+		ByteBuffer buf = null;
+		for (int b = first; b <= last; b++) {
+			verified.clear(b);
+			int from = b * BLOCK;
+			int to = Math.min(length, from + BLOCK);
+			if (from >= oldLength && to <= start && to - from == BLOCK) {
+				crcs[b] = ZERO_BLOCK;
+			} else if (from >= start && to <= end) {
+				crcs[b] = Crc32c.update(0, data, from - start, to - from);
+			} else {
+				if (buf == null)
+					buf = ByteBuffer.allocate(BLOCK);
+				crcs[b] = crc(channel, b, buf);
+			}
+		}
+		save(Math.min(first, start / BLOCK), last + 1);
+	}
+
+	/**
+	 * Checks the blocks covering len bytes at offSet of the chunk mapped in
+	 * map. False if one does not match its checksum.
+	 */
+	boolean verify(ByteBuffer map, int offSet, int len) {
+		int end = Math.min(length, offSet + len);
+		for (int b = offSet / BLOCK; b * BLOCK < end; b++) {
+			if (verified.get(b))
+				continue;
+			if (!verifyBlock(map, b))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks one block against its checksum; blocks past the end are fine.
+	 */
+	boolean verifyBlock(ByteBuffer map, int b) {
+		int from = b * BLOCK;
+		if (from >= length)
+			return true;
+		int n = Math.min(BLOCK, length - from);
+		if (map.capacity() < from + n
+				|| Crc32c.update(0, map, from, n) != crcs[b]) {
+			verified.clear(b);
+			return false;
+		}
+		verified.set(b);
+		return true;
+	}
+
+	int blocks() {
+		return blocks(length);
+	}
+
+	void close() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static int blocks(int size) {
+		return (size + BLOCK - 1) / BLOCK;
+	}
+
+	private void grow(int blocks) {
+		if (blocks > crcs.length)
+			crcs = Arrays.copyOf(crcs, Math.max(blocks, crcs.length * 2));
+	}
+
+	private int crc(FileChannel channel, int b, ByteBuffer buf)
+			throws IOException {
+		long from = (long) b * BLOCK;
+		int n = (int) Math.min(BLOCK, length - from);
+		buf.clear();
+		buf.limit(n);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, from + buf.position()) < 0)
+				break;
+		}
+		// past the end of the file reads as zeros
+		Arrays.fill(buf.array(), buf.position(), n, (byte) 0);
+		return Crc32c.update(0, buf.array(), 0, n);
+	}
+
+	private void save(int first, int end) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER + (end - first) * 4);
+		buf.putInt(MAGIC);
+		buf.putInt(length);
+		buf.flip();
+		sidecar.write(buf, 0);
+		buf.clear();
+		for (int b = first; b < end; b++)
+			buf.putInt(crcs[b]);
+		buf.flip();
+		long pos = HEADER + first * 4L;
+		while (buf.hasRemaining())
+			pos += sidecar.write(buf, pos);
+	}
+}
@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MetaServer's primary index: file name -> chunk number -> replica set,
+ * with each chunk's size and the highest chunk number of each file kept
+ * alongside. It is maintained incrementally from heartbeats, from successful
+ * CREATE/APPEND and from server failures, so metadata lookups are a couple
+ * of hash probes instead of a scan over every server's FileSystem.
+ *
+ * Lookups take no locks: the maps are concurrent and a chunk's replica set is
+ * an immutable array that is swapped on change.
+ */
+public class ChunkIndex {
+
+	final ConcurrentHashMap<String, FileEntry> files = new ConcurrentHashMap<String, FileEntry>();
+
+	// set once recovery is done; changes are logged from then on
+	volatile MetaLog log;
+
+	/**
+	 * Highest chunk number of the file, or -1 if it does not exist.
+	 */
+	int maxChunk(String fileName) {
+		FileEntry f = files.get(fileName);
+		return f == null ? -1 : f.maxChunk;
+	}
+
+	ChunkEntry get(String fileName, int chunkNo) {
+		FileEntry f = files.get(fileName);
+		return f == null ? null : f.chunks.get(chunkNo);
+	}
+
+	ChunkEntry last(String fileName) {
+		FileEntry f = files.get(fileName);
+		return f == null ? null : f.chunks.get(f.maxChunk);
+	}
+
+	/**
+	 * Records that server holds chunkNo of fileName with the given size.
+	 * Sizes only grow, the same as the per-server metadata. Returns the LSN of
+	 * the log record, or 0 if nothing changed or nothing is logged.
+	 */
+	long update(String server, String fileName, int chunkNo, int size,
+			boolean master) {
+		FileEntry f = files.get(fileName);
+		if (f == null) {
+			files.putIfAbsent(fileName, new FileEntry(fileName));
+			f = files.get(fileName);
+		}
+		ChunkEntry c = f.chunks.get(chunkNo);
+		if (c == null) {
+			f.chunks.putIfAbsent(chunkNo, new ChunkEntry(chunkNo));
+			c = f.chunks.get(chunkNo);
+			f.raiseMax(chunkNo);
+		}
+		// logged under the entry's lock, so a chunk's records are in the
+		// order its changes were applied
+		synchronized (c) {
+			if (!c.update(server, size, master) || log == null)
+				return 0;
+			return log.append(MetaLog.UPDATE, server, fileName, chunkNo,
+					size, master);
+		}
+	}
+
+	long remove(String server, String fileName, int chunkNo) {
+		ChunkEntry c = get(fileName, chunkNo);
+		if (c == null)
+			return 0;
+		synchronized (c) {
+			if (!c.removeReplica(server) || log == null)
+				return 0;
+			return log.append(MetaLog.REMOVE, server, fileName, chunkNo, 0,
+					false);
+		}
+	}
+
+	/**
+	 * Drops a failed server from every chunk it held.
+	 */
+	void removeServer(String server, FileSystem fs) {
+		if (fs == null)
+			return;
+		for (Entry<String, File> e : fs.fileInfo.entrySet()) {
+			for (Integer chunkNo : e.getValue().fileChunks.keySet())
+				remove(server, e.getKey(), chunkNo);
+		}
+	}
+
+	/**
+	 * Drops server from every chunk it is indexed under but that its full
+	 * snapshot fs no longer reports, as after it lost its disk or threw away
+	 * corrupt replicas while its heartbeats were not getting through. Returns
+	 * the chunks that were dropped.
+	 */
+	List<FileSystem.ChunkKey> retain(String server, FileSystem fs) {
+		List<FileSystem.ChunkKey> dropped = new ArrayList<FileSystem.ChunkKey>();
+		for (FileEntry f : files.values()) {
+			File held = fs.fileInfo.get(f.name);
+			for (ChunkEntry c : f.chunks.values()) {
+				if (held != null && held.fileChunks.containsKey(c.chunkNo))
+					continue;
+				if (Arrays.asList(c.replicas).contains(server)) {
+					remove(server, f.name, c.chunkNo);
+					dropped.add(new FileSystem.ChunkKey(f.name, c.chunkNo));
+				}
+			}
+		}
+		return dropped;
+	}
+
+	static class FileEntry {
+		final String name;
+		final ConcurrentHashMap<Integer, ChunkEntry> chunks = new ConcurrentHashMap<Integer, ChunkEntry>();
+		volatile int maxChunk = -1;
+
+		FileEntry(String name) {
+			this.name = name;
+		}
+
+		synchronized void raiseMax(int chunkNo) {
+			if (chunkNo > maxChunk)
+				maxChunk = chunkNo;
+		}
+	}
+
+	static class ChunkEntry {
+		final int chunkNo;
+		volatile int size = 0;
+		volatile String master;
+		volatile String[] replicas = new String[0];
+		// when an append to it was last granted, for ReplicationScheduler;
+		// not logged
+		volatile long appended;
+
+		ChunkEntry(int chunkNo) {
+			this.chunkNo = chunkNo;
+		}
+
+		/**
+		 * Returns whether anything changed.
+		 */
+		synchronized boolean update(String server, int newSize, boolean isMaster) {
+			boolean changed = false;
+			if (newSize > size) {
+				size = newSize;
+				changed = true;
+			}
+			if (isMaster && !server.equals(master)) {
+				master = server;
+				changed = true;
+			}
+			for (String r : replicas) {
+				if (r.equals(server))
+					return changed;
+			}
+			String[] more = Arrays.copyOf(replicas, replicas.length + 1);
+			more[replicas.length] = server;
+			replicas = more;
+			return true;
+		}
+
+		synchronized boolean removeReplica(String server) {
+			boolean changed = false;
+			String[] cur = replicas;
+			for (int i = 0; i < cur.length; i++) {
+				if (cur[i].equals(server)) {
+					String[] less = new String[cur.length - 1];
+					System.arraycopy(cur, 0, less, 0, i);
+					System.arraycopy(cur, i + 1, less, i, cur.length - i - 1);
+					replicas = less;
+					changed = true;
+					break;
+				}
+			}
+			if (server.equals(master)) {
+				master = null;
+				changed = true;
+			}
+			return changed;
+		}
+
+		/**
+		 * The replicas with the master, if it is still alive, first.
+		 */
+		String[] ordered() {
+			String[] cur = replicas;
+			String m = master;
+			if (m == null || cur.length == 0 || cur[0].equals(m))
+				return cur;
+			String[] out = new String[cur.length];
+			out[0] = m;
+			int j = 1;
+			for (String r : cur) {
+				if (!r.equals(m) && j < out.length)
+					out[j++] = r;
+			}
+			return j == out.length ? out : cur;
+		}
+
+		@Override
+		public String toString() {
+			return chunkNo + "(" + size + ")" + Arrays.toString(ordered());
+		}
+	}
+}
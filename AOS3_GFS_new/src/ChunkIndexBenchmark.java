@@ -0,0 +1,50 @@
+import java.util.Random;
+
+/**
+ * Single-threaded load test of MetaServer READ lookups against the
+ * ChunkIndex, with the metadata of a cluster of many servers and files.
+ *
+ * Usage: java ChunkIndexBenchmark [servers] [files] [chunksPerFile] [lookups]
+ */
+public class ChunkIndexBenchmark {
+
+	public static void main(String[] args) {
+		int serverCount = args.length > 0 ? Integer.valueOf(args[0]) : 20;
+		int files = args.length > 1 ? Integer.valueOf(args[1]) : 10000;
+		int chunks = args.length > 2 ? Integer.valueOf(args[2]) : 10;
+		int lookups = args.length > 3 ? Integer.valueOf(args[3]) : 2000000;
+
+		String[] names = new String[serverCount];
+		for (int i = 0; i < serverCount; i++) {
+			names[i] = "server" + i;
+			MetaServer.servers.put(names[i], new ServerInfo(names[i], true,
+					new FileSystem(names[i])));
+		}
+		for (int f = 0; f < files; f++) {
+			for (int c = 1; c <= chunks; c++) {
+				for (int r = 0; r < 3; r++)
+					MetaServer.recordChunk(names[(f + c + r) % serverCount],
+							"file" + f, c, 8192, r == 0);
+			}
+		}
+
+		MetaMessage msg = new MetaMessage(MetaMessage.READ,
+				MetaMessage.STATUS_REQ, null, 0, 100, null, null, null, null,
+				null);
+		for (int round = 0; round < 2; round++) {
+			Random rand = new Random(3);
+			int found = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < lookups; i++) {
+				msg.fileName = "file" + rand.nextInt(files);
+				msg.offSet = rand.nextInt(chunks * 8192);
+				if (MetaServer.requestHandler(msg).status == MetaMessage.STATUS_SUCCESS)
+					found++;
+			}
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.println((round == 0 ? "warmup: " : "")
+					+ (long) (lookups / secs) + " READ lookups/s (" + found
+					+ " found)");
+		}
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test of the per-chunk locks, in two parts.
+ *
+ * In process, threads take the locks of a few chunks at random, mostly to
+ * append to or overwrite a copy of the chunk held per replica, the same
+ * change to every copy, and sometimes to read it. A writer must find no
+ * other holder of its chunk's lock and a reader no writer, the replica
+ * copies must end up identical, and every lock must be gone from the
+ * tables afterwards.
+ *
+ * Then a GfsBenchmark cluster runs clients that append to and overwrite
+ * the same chunk of a single shared file, with check=true, which compares
+ * every replica of it byte by byte at the end.
+ *
+ * Exits with status 1 on the first failure.
+ *
+ * Usage: java ChunkLockStressTest [threads] [opsPerThread] [key=value ...]
+ * with the key=value arguments passed to GfsBenchmark.
+ */
+public class ChunkLockStressTest {
+
+	static final int CHUNKS = 4;
+	static final int REPLICAS = 3;
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 && !args[0].contains("=") ? Integer
+				.valueOf(args[0]) : 16;
+		int ops = args.length > 1 && !args[1].contains("=") ? Integer
+				.valueOf(args[1]) : 200000;
+		checkLocks(threads, ops);
+
+		ArrayList<String> opts = new ArrayList<String>(Arrays.asList(
+				"dir=chunklockstress", "servers=4", "clients=16",
+				"duration=15", "warmup=2", "files=1",
+				"mix=append:60,overwrite:30,read:10", "check=true"));
+		for (String a : args) {
+			if (a.contains("="))
+				opts.add(a);
+		}
+		GfsBenchmark.main(opts.toArray(new String[opts.size()]));
+	}
+
+	static void checkLocks(int threads, final int ops)
+			throws InterruptedException {
+		// replica copies of each chunk, and the holders of its lock: the
+		// number of readers, or -1 while a writer has it
+		final StringBuilder[][] copies = new StringBuilder[CHUNKS][REPLICAS];
+		final AtomicInteger[] holders = new AtomicInteger[CHUNKS];
+		for (int c = 0; c < CHUNKS; c++) {
+			holders[c] = new AtomicInteger();
+			for (int r = 0; r < REPLICAS; r++)
+				copies[c][r] = new StringBuilder();
+		}
+		final AtomicLong violations = new AtomicLong();
+
+		Thread[] workers = new Thread[threads];
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < ops; i++) {
+						int c = random.nextInt(CHUNKS);
+						int op = random.nextInt(10);
+						ChunkLocks.Handle h = ChunkLocks.acquire("stress", c);
+						try {
+							if (op < 8)
+								write(h, c, op < 6, random);
+							else
+								read(h, c);
+						} finally {
+							ChunkLocks.release(h);
+						}
+					}
+				}
+
+				void write(ChunkLocks.Handle h, int c, boolean append,
+						ThreadLocalRandom random) {
+					h.lock.writeLock().lock();
+					try {
+						if (!holders[c].compareAndSet(0, -1))
+							violations.incrementAndGet();
+						char ch = (char) ('a' + random.nextInt(26));
+						// a change applied to every replica in turn, as a
+						// primary forwards it
+						for (StringBuilder copy : copies[c]) {
+							if (append) {
+								copy.append(ch);
+								if (copy.length() > 4096)
+									copy.delete(0, 2048);
+							} else if (copy.length() > 0) {
+								copy.setCharAt(0, ch);
+							}
+							Thread.yield();
+						}
+						if (!holders[c].compareAndSet(-1, 0))
+							violations.incrementAndGet();
+					} finally {
+						h.lock.writeLock().unlock();
+					}
+				}
+
+				void read(ChunkLocks.Handle h, int c) {
+					h.lock.readLock().lock();
+					try {
+						if (holders[c].incrementAndGet() <= 0)
+							violations.incrementAndGet();
+						String first = copies[c][0].toString();
+						for (StringBuilder copy : copies[c]) {
+							if (!first.contentEquals(copy))
+								violations.incrementAndGet();
+						}
+						holders[c].decrementAndGet();
+					} finally {
+						h.lock.readLock().unlock();
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread w : workers)
+			w.join();
+		long ms = (System.nanoTime() - start) / 1000000;
+
+		for (int c = 0; c < CHUNKS; c++) {
+			for (StringBuilder copy : copies[c]) {
+				if (!copies[c][0].toString().contentEquals(copy))
+					violations.incrementAndGet();
+			}
+		}
+		int left = ChunkLocks.size();
+		System.out.println(threads + " threads x " + ops + " ops on " + CHUNKS
+				+ " chunks in " + ms + " ms: " + violations.get()
+				+ " violations, " + left + " locks left");
+		if (violations.get() > 0 || left > 0) {
+			System.out.println("Check failed");
+			System.exit(1);
+		}
+	}
+}
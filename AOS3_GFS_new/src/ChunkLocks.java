@@ -0,0 +1,87 @@
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A read/write lock for each chunk, keyed by (file, chunkNo). Reads of a
+ * chunk share it, while writes and appends to the same chunk are
+ * serialized, so every replica applies them in the same order.
+ *
+ * A primary holds a chunk's write lock while it forwards the change to the
+ * replicas, which take their own lock on the same chunk. Locks shared by
+ * unrelated chunks, as stripes would be, could then deadlock two servers
+ * that are each primary for one chunk and replica for the other; a lock of
+ * its own per chunk cannot. The locks live only while someone holds or
+ * waits for them, in tables split into stripes so that taking one is
+ * cheap under load.
+ */
+public class ChunkLocks {
+
+	static final int STRIPES = 1024;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final HashMap<FileSystem.ChunkKey, Handle>[] tables = new HashMap[STRIPES];
+
+	static {
+		for (int i = 0; i < STRIPES; i++)
+			tables[i] = new HashMap<FileSystem.ChunkKey, Handle>();
+	}
+
+	/**
+	 * The lock of one chunk, held by acquire() until release().
+	 */
+	static class Handle {
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		final FileSystem.ChunkKey key;
+		final HashMap<FileSystem.ChunkKey, Handle> table;
+		int users;
+
+		Handle(FileSystem.ChunkKey key, HashMap<FileSystem.ChunkKey, Handle> table) {
+			this.key = key;
+			this.table = table;
+		}
+	}
+
+	static Handle acquire(String fileName, int chunkNo) {
+		FileSystem.ChunkKey key = new FileSystem.ChunkKey(
+				fileName == null ? "" : fileName, chunkNo);
+		HashMap<FileSystem.ChunkKey, Handle> table = tables[stripe(key)];
+		synchronized (table) {
+			Handle h = table.get(key);
+			if (h == null) {
+				h = new Handle(key, table);
+				table.put(key, h);
+			}
+			h.users++;
+			return h;
+		}
+	}
+
+	static void release(Handle h) {
+		synchronized (h.table) {
+			if (--h.users == 0)
+				h.table.remove(h.key);
+		}
+	}
+
+	/**
+	 * The number of chunks whose lock is held or waited for.
+	 */
+	static int size() {
+		int size = 0;
+		for (HashMap<FileSystem.ChunkKey, Handle> table : tables) {
+			synchronized (table) {
+				size += table.size();
+			}
+		}
+		return size;
+	}
+
+	// spread the bits so that consecutive chunks land on different stripes
+	private static int stripe(FileSystem.ChunkKey key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h & (STRIPES - 1);
+	}
+}
@@ -0,0 +1,116 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+
+/**
+ * Measures READ throughput from chunk files to a loopback socket, once the
+ * way Server used to do it (open a RandomAccessFile per request, read into a
+ * byte[], turn it into a String and back) and once through ChunkStore, which
+ * hands a mapped view straight to the socket.
+ *
+ * A drain thread reads the other end of the socket, so both the disk and the
+ * network side of the chunk server are exercised.
+ *
+ * Usage: java ChunkReadBenchmark [chunks] [reads] [chunkSize]
+ */
+public class ChunkReadBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int chunks = args.length > 0 ? Integer.valueOf(args[0]) : 512;
+		int reads = args.length > 1 ? Integer.valueOf(args[1]) : 200000;
+		int chunkSize = args.length > 2 ? Integer.valueOf(args[2]) : 8192;
+
+		String dir = "chunkbench";
+		FileOperations.deleteDirectory(dir);
+		FileOperations.createDirectory(dir);
+		byte[] data = new byte[chunkSize];
+		new Random(1).nextBytes(data);
+		for (int i = 0; i < chunks; i++) {
+			String name = dir + "/file" + i;
+			FileOperations.createFile(name);
+			RandomAccessFile file = new RandomAccessFile(name, "rw");
+			file.write(data);
+			file.close();
+		}
+
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+		startDrain(server);
+		SocketChannel socket = SocketChannel.open(server.socket()
+				.getLocalSocketAddress());
+
+		for (int round = 0; round < 2; round++) {
+			Random rand = new Random(7);
+			long bytes = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < reads; i++) {
+				String name = dir + "/file" + rand.nextInt(chunks);
+				String text = new String(readOld(name, 0, chunkSize));
+				ByteBuffer buf = ByteBuffer.wrap(text.getBytes());
+				bytes += buf.remaining();
+				while (buf.hasRemaining())
+					socket.write(buf);
+			}
+			report(round == 0 ? "old (warmup)" : "old", bytes, reads,
+					System.nanoTime() - start);
+
+			rand = new Random(7);
+			bytes = 0;
+			start = System.nanoTime();
+			for (int i = 0; i < reads; i++) {
+				String name = dir + "/file" + rand.nextInt(chunks);
+				ByteBuffer view = ChunkStore.read(name, 0, chunkSize);
+				bytes += view.remaining();
+				while (view.hasRemaining())
+					socket.write(view);
+			}
+			report(round == 0 ? "chunkstore (warmup)" : "chunkstore", bytes,
+					reads, System.nanoTime() - start);
+		}
+
+		socket.close();
+		FileOperations.deleteDirectory(dir);
+		System.exit(0);
+	}
+
+	static byte[] readOld(String fileName, int offSet, int size)
+			throws IOException {
+		if (!new File("./" + fileName).exists())
+			return null;
+		byte[] strData = new byte[size];
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		file.seek(offSet);
+		file.read(strData);
+		file.close();
+		return strData;
+	}
+
+	static void startDrain(final ServerSocketChannel server) {
+		Thread drain = new Thread() {
+			@Override
+			public void run() {
+				try {
+					SocketChannel peer = server.accept();
+					ByteBuffer buf = ByteBuffer.allocateDirect(256 * 1024);
+					while (peer.read(buf) >= 0)
+						buf.clear();
+				} catch (IOException e) {
+					// benchmark finished
+				}
+			}
+		};
+		drain.setDaemon(true);
+		drain.start();
+	}
+
+	static void report(String name, long bytes, int reads, long nanos) {
+		double secs = nanos / 1e9;
+		System.out.println(name + ": " + (long) (reads / secs) + " reads/s, "
+				+ (long) (bytes / secs / (1024 * 1024)) + " MB/s");
+	}
+}
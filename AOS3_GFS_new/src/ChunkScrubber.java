@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.Map.Entry;
+
+/**
+ * Background check of every chunk the server holds against its checksums,
+ * so corruption in chunks nobody reads is found too.
+ *
+ * Blocks are checked one at a time under the chunk's read lock, at no more
+ * than scrub_bandwidth MB/s, and a full pass starts every scrub_interval
+ * seconds. A corrupt chunk is moved aside and dropped from the server's
+ * FileSystem; the next heartbeat reports it gone and the MetaServer copies it
+ * again from a good replica. The copy moved aside is deleted at the start of
+ * a later pass, once the chunk is back on this server or the MetaServer
+ * locates it on REPLICAS servers again.
+ */
+public class ChunkScrubber implements Runnable {
+
+	static final int DEFAULT_BANDWIDTH = 16;
+	static final int DEFAULT_INTERVAL = 3600;
+
+	private final FileSystem fs;
+	private final String dir;
+	private final long bytesPerSec;
+	private final long interval;
+
+	ChunkScrubber(String dir, FileSystem fs) {
+		this.dir = dir;
+		this.fs = fs;
+		String value = Config.getValue("scrub_bandwidth");
+		bytesPerSec = (value == null ? DEFAULT_BANDWIDTH : Integer
+				.valueOf(value)) * 1024L * 1024;
+		value = Config.getValue("scrub_interval");
+		interval = (value == null ? DEFAULT_INTERVAL : Integer.valueOf(value)) * 1000L;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				Thread.sleep(interval);
+				long start = System.currentTimeMillis();
+				releaseQuarantined();
+				int corrupt = scrub();
+				log("Scrubbed " + dir + " in "
+						+ (System.currentTimeMillis() - start) + " ms, "
+						+ corrupt + " corrupt");
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * One pass over every chunk. Returns the number of corrupt chunks found.
+	 */
+	int scrub() throws InterruptedException {
+		ArrayList<FileSystem.ChunkKey> chunks = new ArrayList<FileSystem.ChunkKey>();
+		for (Entry<String, File> e : fs.fileInfo.entrySet()) {
+			for (Integer chunkNo : e.getValue().fileChunks.keySet())
+				chunks.add(new FileSystem.ChunkKey(e.getKey(), chunkNo));
+		}
+
+		int corrupt = 0;
+		long start = System.nanoTime();
+		long bytes = 0;
+		for (FileSystem.ChunkKey c : chunks) {
+			String fname = dir + "/" + c.file + c.chunkNo;
+			for (int b = 0;; b++) {
+				int checked;
+				ChunkLocks.Handle lock = ChunkLocks.acquire(c.file, c.chunkNo);
+				lock.lock.readLock().lock();
+				try {
+					checked = ChunkStore.verify(fname, b);
+				} finally {
+					lock.lock.readLock().unlock();
+					ChunkLocks.release(lock);
+				}
+				if (checked == 0)
+					break;
+				if (checked < 0) {
+					System.out.println("Corrupt replica " + c.file + c.chunkNo
+							+ " block " + b);
+					fs.removeChunk(c.file, c.chunkNo);
+					corrupt++;
+					break;
+				}
+				bytes += checked;
+				// stay under the bandwidth
+				long ahead = bytes * 1000 / bytesPerSec
+						- (System.nanoTime() - start) / 1000000;
+				if (ahead > 0)
+					Thread.sleep(ahead);
+			}
+		}
+		return corrupt;
+	}
+
+	/**
+	 * Deletes the chunks moved aside as corrupt whose replacement is in
+	 * place: copied back to this server, or held by REPLICAS servers.
+	 * Returns the number deleted.
+	 */
+	int releaseQuarantined() {
+		String[] names = FileOperations.listOfFiles(dir);
+		if (names == null)
+			return 0;
+		int released = 0;
+		for (String name : names) {
+			if (!name.endsWith(ChunkStore.QUARANTINE))
+				continue;
+			String chunk = name.substring(0,
+					name.length() - ChunkStore.QUARANTINE.length());
+			int end = chunk.length();
+			while (end > 0 && Character.isDigit(chunk.charAt(end - 1)))
+				end--;
+			if (end == 0 || end == chunk.length())
+				continue;
+			String file = chunk.substring(0, end);
+			int chunkNo = Integer.valueOf(chunk.substring(end));
+			File f = fs.fileInfo.get(file);
+			boolean back = f != null && f.fileChunks.containsKey(chunkNo)
+					&& new java.io.File(dir + "/" + chunk).exists();
+			if (back || replicas(file, chunkNo) >= ReplicationScheduler.REPLICAS) {
+				if (new java.io.File(dir + "/" + name).delete()) {
+					System.out.println("Deleted quarantined " + name);
+					released++;
+				}
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * How many servers the MetaServer locates chunkNo of file on, or 0 if it
+	 * does not answer.
+	 */
+	private static int replicas(String file, int chunkNo) {
+		MetaMessage msg = new MetaMessage(MetaMessage.LOCATE,
+				MetaMessage.STATUS_REQ, file, 0, 1, null, null, null, null,
+				null);
+		msg.chunkNo = chunkNo;
+		MetaMessage reply = Sender.messageToMetaServer(
+				Config.getValue("metaserver"), Config.getValue("metaport"), msg);
+		if (reply == null || reply.status != MetaMessage.STATUS_SUCCESS
+				|| reply.chunks.length == 0 || reply.chunks[0] != chunkNo)
+			return 0;
+		return reply.replicas[0].length;
+	}
+
+	private static void log(String message) {
+		// System.out.println(message);
+	}
+}
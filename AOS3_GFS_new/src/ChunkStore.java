@@ -0,0 +1,232 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Chunk file access for the chunk server. Keeps a bounded LRU cache of open
+ * chunk files; each cached file also holds a read-only memory mapping, so a
+ * READ hands out a slice of the mapping and the bytes go from the page cache
+ * to the socket without being copied onto the heap. Writes go through the
+ * cached FileChannel; the mapping is redone when the file has grown past it.
+ *
+ * The number of open files is set by chunk_cache in config.properties.
+ *
+ * Every chunk has ChunkChecksums, kept with the open file. A read whose
+ * blocks do not match their checksums fails and the chunk is moved aside
+ * (<chunk>.corrupt), so the server no longer serves it.
+ */
+public class ChunkStore {
+
+	static final int DEFAULT_CACHE = 256;
+	// suffix of a chunk moved aside as corrupt
+	static final String QUARANTINE = ".corrupt";
+
+	private static final LinkedHashMap<String, OpenChunk> open = new LinkedHashMap<String, OpenChunk>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, OpenChunk> eldest) {
+			if (size() > capacity()) {
+				eldest.getValue().close();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private static int capacity = -1;
+
+	/**
+	 * Returns a read-only view of len bytes at offSet, cut short at the end of
+	 * the chunk, or null if the chunk does not exist or is corrupt.
+	 */
+	static ByteBuffer read(String fileName, int offSet, int len) {
+		if (!new File("./" + fileName).exists())
+			return null;
+		try {
+			while (true) {
+				OpenChunk e = get(fileName);
+				synchronized (e) {
+					if (e.closed)
+						continue;
+					long size = e.channel.size();
+					if (e.map == null || e.map.capacity() < size)
+						e.map = e.channel.map(FileChannel.MapMode.READ_ONLY,
+								0, size);
+					int start = (int) Math.min(offSet, size);
+					int end = (int) Math.min((long) offSet + len, size);
+					if (e.sums.verify(e.map, start, end - start)) {
+						ByteBuffer view = e.map.duplicate();
+						view.position(start);
+						view.limit(end);
+						return view.slice();
+					}
+				}
+				quarantine(fileName, e);
+				return null;
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes data at offSet into an existing chunk file.
+	 */
+	static boolean write(String fileName, int offSet, byte[] data) {
+		if (!new File("./" + fileName).exists())
+			return false;
+		try {
+			while (true) {
+				OpenChunk e = get(fileName);
+				synchronized (e) {
+					if (e.closed)
+						continue;
+					ByteBuffer src = ByteBuffer.wrap(data);
+					long pos = offSet;
+					while (src.hasRemaining())
+						pos += e.channel.write(src, pos);
+					e.sums.written(e.channel, offSet, data);
+					return true;
+				}
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Checks one block of a chunk against its checksum, for the scrubber.
+	 * Returns the length of the block, which is short at the end of the
+	 * chunk, 0 if the chunk or the block does not exist, or -1 if the chunk
+	 * is corrupt and was moved aside.
+	 */
+	static int verify(String fileName, int block) {
+		if (!new File("./" + fileName).exists())
+			return 0;
+		try {
+			while (true) {
+				OpenChunk e = get(fileName);
+				synchronized (e) {
+					if (e.closed)
+						continue;
+					if (block >= e.sums.blocks())
+						return 0;
+					long size = e.channel.size();
+					if (e.map == null || e.map.capacity() < size)
+						e.map = e.channel.map(FileChannel.MapMode.READ_ONLY,
+								0, size);
+					if (e.sums.verifyBlock(e.map, block))
+						return Math.min(ChunkChecksums.BLOCK, e.sums.length
+								- block * ChunkChecksums.BLOCK);
+				}
+				quarantine(fileName, e);
+				return -1;
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * The length of a chunk, without opening it: the size of its file. The
+	 * length its checksums record differs after a crash between the writes
+	 * of the two; the checksums are then rebuilt when the chunk is opened.
+	 */
+	static int length(String fileName) {
+		int length = (int) new File(fileName).length();
+		int recorded = ChunkChecksums.length(fileName);
+		if (recorded >= 0 && recorded != length)
+			System.out.println("Checksums of " + fileName + " are for "
+					+ recorded + " bytes, the chunk has " + length);
+		return length;
+	}
+
+	/**
+	 * Deletes a chunk and its checksums.
+	 */
+	static void delete(String fileName) {
+		OpenChunk e;
+		synchronized (open) {
+			e = open.remove(fileName);
+		}
+		if (e != null)
+			e.close();
+		new File(fileName + ChunkChecksums.SUFFIX).delete();
+		new File(fileName).delete();
+	}
+
+	/**
+	 * Moves a corrupt chunk aside.
+	 */
+	private static void quarantine(String fileName, OpenChunk e) {
+		System.out.println("Checksum mismatch in " + fileName);
+		synchronized (open) {
+			if (open.get(fileName) == e)
+				open.remove(fileName);
+		}
+		e.close();
+		new File(fileName + ChunkChecksums.SUFFIX).delete();
+		new File(fileName).renameTo(new File(fileName + QUARANTINE));
+	}
+
+	private static OpenChunk get(String fileName) throws IOException {
+		synchronized (open) {
+			OpenChunk e = open.get(fileName);
+			if (e == null) {
+				e = new OpenChunk(fileName, new RandomAccessFile(fileName,
+						"rw"));
+				open.put(fileName, e);
+			}
+			return e;
+		}
+	}
+
+	private static int capacity() {
+		if (capacity < 0) {
+			String value = Config.getValue("chunk_cache");
+			capacity = value == null ? DEFAULT_CACHE : Integer.valueOf(value);
+		}
+		return capacity;
+	}
+
+	static class OpenChunk {
+		final RandomAccessFile file;
+		final FileChannel channel;
+		final ChunkChecksums sums;
+		MappedByteBuffer map;
+		boolean closed = false;
+
+		OpenChunk(String fileName, RandomAccessFile file) throws IOException {
+			this.file = file;
+			this.channel = file.getChannel();
+			ChunkChecksums sums;
+			try {
+				sums = ChunkChecksums.open(fileName, channel);
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+			this.sums = sums;
+		}
+
+		synchronized void close() {
+			closed = true;
+			sums.close();
+			try {
+				file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
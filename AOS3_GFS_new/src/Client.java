@@ -2,9 +2,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Client {
 
+	// pushed data travels down the chain in packets of this size
+	static final int PACKET = 64 * 1024;
+
 	static void log(String msg) {
 		// System.out.println(msg);
 	}
@@ -60,6 +66,88 @@ public class Client {
 		return true;
 	}
 
+	/**
+	 * Reads len bytes at offSet from a replica of the chunk, locating it
+	 * through the LocationCache. The replicas are tried in turn; a replica
+	 * answering STATUS_STALE drops the cached location, and if no replica
+	 * can serve the read the chunk is located again once.
+	 */
+	static Message read(String fileName, int offSet, int len) {
+		int chunkSize = Config.chunkSize();
+		int chunkNo = offSet / chunkSize + 1;
+		Message req = new Message(Message.READ, Message.STATUS_REQ, fileName,
+				null, null, chunkNo, offSet % chunkSize, len, null);
+		Message reply = null;
+
+		for (int attempt = 0; attempt < 2; attempt++) {
+			LocationCache.Location loc = LocationCache.lookup(fileName, chunkNo);
+			if (loc == null)
+				break;
+			// the chunk may have grown since it was cached
+			if (req.offSet > loc.size && attempt == 0) {
+				LocationCache.invalidate(fileName, chunkNo);
+				continue;
+			}
+			boolean stale = false;
+			for (String r : loc.replicas) {
+				reply = Sender.messageToFileServer(r, Config.getValue(r), req);
+				if (reply != null && reply.status == Message.STATUS_SUCCESS) {
+					if (stale)
+						LocationCache.invalidate(fileName, chunkNo);
+					return reply;
+				}
+				stale |= reply != null && reply.status == Message.STATUS_STALE;
+			}
+			LocationCache.invalidate(fileName, chunkNo);
+		}
+		if (reply == null) {
+			reply = new Message(Message.READ, Message.STATUS_FAIL, fileName,
+					null, null, chunkNo, offSet, len, "Error:Chunk not found");
+		}
+		return reply;
+	}
+
+	/**
+	 * Sends a request to the MetaServer, null if it can not be reached.
+	 */
+	static MetaMessage meta(MetaMessage msg) {
+		return Sender.messageToMetaServer(Config.getValue("metaserver"),
+				Config.getValue("meta_req_port"), msg);
+	}
+
+	/**
+	 * Appends data with chain replication: the data is pushed in packets to
+	 * the master, which passes each packet on to server1 and server1 to
+	 * server2 while the next packets are still arriving. A small COMMIT to the
+	 * master then writes it on all three at the offset the master picks.
+	 */
+	static Message append(MetaMessage loc, byte[] data) {
+		long dataId = ThreadLocalRandom.current().nextLong();
+		String port = Config.getValue(loc.masterServer);
+
+		ArrayList<ConnectionPool.Pending> sent = new ArrayList<ConnectionPool.Pending>();
+		for (int off = 0; off < data.length || off == 0; off += PACKET) {
+			Message packet = new Message(Message.PUSH, Message.STATUS_REQ,
+					loc.fileName, loc.server1, loc.server2, loc.chunkNo, off,
+					data.length, null);
+			packet.dataId = dataId;
+			packet.payload = Arrays.copyOfRange(data, off,
+					Math.min(data.length, off + PACKET));
+			sent.add(ConnectionPool.send(loc.masterServer, port, packet));
+		}
+		for (ConnectionPool.Pending p : sent) {
+			Message reply = (Message) ConnectionPool.await(p);
+			if (reply == null || reply.status != Message.STATUS_SUCCESS)
+				return reply;
+		}
+
+		Message commit = new Message(Message.COMMIT, Message.STATUS_REQ,
+				loc.fileName, loc.server1, loc.server2, loc.chunkNo, 0,
+				data.length, null);
+		commit.dataId = dataId;
+		return Sender.messageToFileServer(loc.masterServer, port, commit);
+	}
+
 	public static void main(String[] args) {
 		String fileName = null;
 		if (args.length != 1) {
@@ -94,6 +182,22 @@ public class Client {
 				int count = 0;
 
 				while (count < 3) {
+					if (metamsg.type == MetaMessage.READ) {
+						// reads go to the chunk servers the cache knows of
+						Message reply_msg = read(metamsg.fileName,
+								metamsg.offSet, metamsg.len);
+						if (reply_msg != null)
+							System.out.println(reply_msg.toString());
+						if (reply_msg != null
+								&& reply_msg.status == Message.STATUS_SUCCESS)
+							break;
+						count++;
+						System.out.println(metamsg.toString()
+								+ "\nFailed: Retry " + count);
+						Thread.sleep(2000);
+						continue;
+					}
+
 					MetaMessage statusMsg = Sender.messageToMetaServer(
 							serverName, portNo, metamsg);
 
@@ -102,18 +206,20 @@ public class Client {
 
 					if (statusMsg.status == MetaMessage.STATUS_SUCCESS) {
 						log("Success");
-						String data = null;
-						if (statusMsg.type != MetaMessage.READ)
-							data = param[2];
-
 						Message req_msg = new Message(statusMsg.type,
 								Message.STATUS_REQ, statusMsg.fileName,
 								statusMsg.server1, statusMsg.server2, statusMsg.chunkNo, statusMsg.offSet,
-								statusMsg.len, data);
+								statusMsg.len, null);
+						if (statusMsg.type != MetaMessage.READ)
+							req_msg.payload = param[2].getBytes();
 
-						Message reply_msg = Sender.messageToFileServer(
-								statusMsg.masterServer,
-								Config.getValue(statusMsg.masterServer), req_msg);
+						Message reply_msg;
+						if (statusMsg.type == MetaMessage.APPEND)
+							reply_msg = append(statusMsg, req_msg.payload);
+						else
+							reply_msg = Sender.messageToFileServer(
+									statusMsg.masterServer,
+									Config.getValue(statusMsg.masterServer), req_msg);
 
 						if (reply_msg != null
 								&& reply_msg.status == Message.STATUS_SUCCESS) {
@@ -146,6 +252,7 @@ public class Client {
 				}
 				Thread.sleep(2000);
 			}
+			System.out.println(LocationCache.stats());
 		} catch (Exception e) {
 			e.printStackTrace();
 		} finally {
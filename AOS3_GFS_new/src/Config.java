@@ -7,6 +7,12 @@ import java.util.Properties;
 
 public class Config {
 
+	static final int DEFAULT_CHUNK_SIZE = 8192;
+	static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private static volatile int chunkSize = -1;
+	private static volatile Properties properties;
+
 	public static void main(String args[]) {
 		System.out.println(Config.getValue("machines"));
 	}
@@ -25,6 +31,7 @@ public class Config {
 					"dc01.utdallas.edu;dc02.utdallas.edu;dc03.utdallas.edu;dc04.utdallas.edu");
 			// save properties to project root folder
 			prop.store(output, null);
+			properties = null;
 
 		} catch (IOException io) {
 			io.printStackTrace();
@@ -40,24 +47,38 @@ public class Config {
 		}
 	}
 
+	/**
+	 * The value of key in config.properties. The file is read once, on first
+	 * use, since request paths look up ports for every packet; a node picks
+	 * up changes to it when restarted.
+	 */
 	public static String getValue(String key) {
+		Properties prop = properties;
+		if (prop == null) {
+			prop = load();
+			if (prop == null)
+				return null;
+			properties = prop;
+		}
+		return prop.getProperty(key);
+	}
+
+	// null if the file can not be read, so that the next lookup tries again
+	private static Properties load() {
 
 		Properties prop = new Properties();
 		InputStream input = null;
-		String value = null;
 		try {
 
 			input = new FileInputStream("config.properties");
 
 			// load a properties file
 			prop.load(input);
-
-			// get the property value and print it out
-			value = prop.getProperty(key);
-			// System.out.println(prop.getProperty(value));
+			return prop;
 
 		} catch (IOException ex) {
 			ex.printStackTrace();
+			return null;
 		} finally {
 			if (input != null) {
 				try {
@@ -67,8 +88,21 @@ public class Config {
 				}
 			}
 		}
-		return value;
 
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Size of a chunk in bytes: chunk_size in config.properties, 8192 if it
+	 * is not set, at most 64MB. Every node must use the same value.
+	 */
+	static int chunkSize() {
+		if (chunkSize < 0) {
+			String value = getValue("chunk_size");
+			int size = value == null ? DEFAULT_CHUNK_SIZE : Integer
+					.valueOf(value.trim());
+			chunkSize = Math.max(1, Math.min(size, MAX_CHUNK_SIZE));
+		}
+		return chunkSize;
+	}
+
+}
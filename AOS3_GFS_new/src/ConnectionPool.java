@@ -0,0 +1,337 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one long-lived connection per peer (host:port) and multiplexes many
+ * in-flight requests over it. Every request is written as a MessageCodec
+ * frame tagged with a request id, and the peer answers with the same id, so
+ * replies may come back in any order.
+ *
+ * Connecting to a peer holds up only the requests to that peer, for at most
+ * connect_timeout ms, so an unreachable server does not stall the others.
+ */
+public class ConnectionPool {
+
+	static final int DEFAULT_TIMEOUT = 30000;
+	static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+	private static final ConcurrentHashMap<String, PeerConnection> peers = new ConcurrentHashMap<String, PeerConnection>();
+	// held while connecting to a peer, one per host:port
+	private static final ConcurrentHashMap<String, Object> connecting = new ConcurrentHashMap<String, Object>();
+
+	private static volatile int timeout = -1;
+	private static volatile int connectTimeout = -1;
+
+	// times out requests whose reply is taken by a continuation, see
+	// Pending.then()
+	private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+			1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "request-timeouts");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	static {
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Sends msg to the peer and waits for its reply. Returns null if the peer
+	 * can not be reached, the connection drops or the request times out.
+	 */
+	static Object request(String host, String port, Object msg) {
+		return await(send(host, port, msg));
+	}
+
+	/**
+	 * Sends msg without waiting for the reply, so several requests can be in
+	 * flight from one thread; await() collects the reply.
+	 */
+	static Pending send(String host, String port, Object msg) {
+		PeerConnection peer;
+		try {
+			peer = getPeer(host, Integer.valueOf(port));
+		} catch (NumberFormatException | IOException e) {
+			log("Could not connect to " + host + ":" + port + " " + e);
+			return new Pending(null, 0);
+		}
+		return peer.send(msg);
+	}
+
+	/**
+	 * The reply to a request from send(), or null on failure or timeout.
+	 */
+	static Object await(Pending p) {
+		if (p.peer == null)
+			return null;
+		return p.peer.await(p, getTimeout());
+	}
+
+	static PeerConnection getPeer(String host, int port) throws IOException {
+		String key = host + ":" + port;
+		PeerConnection peer = peers.get(key);
+		if (peer != null && !peer.closed)
+			return peer;
+
+		Object lock = connecting.get(key);
+		if (lock == null) {
+			connecting.putIfAbsent(key, new Object());
+			lock = connecting.get(key);
+		}
+		synchronized (lock) {
+			peer = peers.get(key);
+			if (peer == null || peer.closed) {
+				peer = new PeerConnection(key, host, port);
+				peers.put(key, peer);
+			}
+		}
+		return peer;
+	}
+
+	static void remove(PeerConnection peer) {
+		peers.remove(peer.key, peer);
+	}
+
+	/**
+	 * Average reply latency of the peer in nanoseconds, 0 if nothing has been
+	 * sent to it yet.
+	 */
+	static long latency(String host, String port) {
+		PeerConnection peer = peers.get(host + ":" + port);
+		if (peer == null)
+			return 0;
+		long n = peer.requests.get();
+		return n == 0 ? 0 : peer.totalLatency.get() / n;
+	}
+
+	/**
+	 * Per peer latency and in-flight counters, one line per peer.
+	 */
+	static String stats() {
+		StringBuilder str = new StringBuilder();
+		for (Entry<String, PeerConnection> e : peers.entrySet()) {
+			str.append(e.getValue().toString() + "\n");
+		}
+		return str.toString();
+	}
+
+	static int getTimeout() {
+		if (timeout < 0) {
+			String value = Config.getValue("request_timeout");
+			timeout = value == null ? DEFAULT_TIMEOUT : Integer.valueOf(value);
+		}
+		return timeout;
+	}
+
+	private static int getConnectTimeout() {
+		if (connectTimeout < 0) {
+			String value = Config.getValue("connect_timeout");
+			connectTimeout = value == null ? DEFAULT_CONNECT_TIMEOUT : Integer
+					.valueOf(value);
+		}
+		return connectTimeout;
+	}
+
+	private static void log(String message) {
+		// System.out.println(message);
+	}
+
+	static class PeerConnection implements Runnable {
+		final String key;
+		volatile boolean closed = false;
+
+		private final Socket socket;
+		private final DataOutputStream out;
+		private final DataInputStream in;
+		private final ConcurrentHashMap<Integer, Pending> pending = new ConcurrentHashMap<Integer, Pending>();
+		private final AtomicInteger nextId = new AtomicInteger();
+
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicLong requests = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong totalLatency = new AtomicLong();
+		volatile long maxLatency = 0;
+
+		PeerConnection(String key, String host, int port) throws IOException {
+			this.key = key;
+			socket = new Socket();
+			try {
+				socket.connect(new InetSocketAddress(host, port),
+						getConnectTimeout());
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(
+					socket.getOutputStream()));
+			in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+
+			Thread reader = new Thread(this, "peer-" + key);
+			reader.setDaemon(true);
+			reader.start();
+			log("connected to " + key);
+		}
+
+		Pending send(Object msg) {
+			Integer id = nextId.incrementAndGet();
+			Pending p = new Pending(this, id);
+			pending.put(id, p);
+			inFlight.incrementAndGet();
+			// close() sets closed before it fails the pending requests, so a
+			// request it missed sees closed here
+			if (closed) {
+				p.complete();
+				return p;
+			}
+			try {
+				synchronized (out) {
+					MessageCodec.write(out, id, msg);
+					out.flush();
+				}
+			} catch (IOException e) {
+				close();
+				p.complete();
+			}
+			return p;
+		}
+
+		Object await(Pending p, int timeout) {
+			try {
+				if (!p.done.await(timeout, TimeUnit.MILLISECONDS))
+					log("Request " + p.id + " to " + key + " timed out");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				pending.remove(p.id);
+				inFlight.decrementAndGet();
+			}
+
+			if (p.reply == null) {
+				failures.incrementAndGet();
+				return null;
+			}
+			long latency = System.nanoTime() - p.start;
+			requests.incrementAndGet();
+			totalLatency.addAndGet(latency);
+			if (latency > maxLatency)
+				maxLatency = latency;
+			return p.reply;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					MessageCodec.Frame reply = MessageCodec.read(in);
+					Pending p = pending.remove(reply.reqId);
+					if (p != null) {
+						p.reply = reply.msg;
+						p.complete();
+					}
+				}
+			} catch (IOException e) {
+				log("Connection to " + key + " closed: " + e);
+			} finally {
+				close();
+			}
+		}
+
+		void close() {
+			if (closed)
+				return;
+			closed = true;
+			ConnectionPool.remove(this);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			for (Pending p : pending.values()) {
+				p.complete();
+			}
+		}
+
+		@Override
+		public String toString() {
+			long n = requests.get();
+			long avg = n == 0 ? 0 : totalLatency.get() / n / 1000;
+			return key + " inFlight=" + inFlight.get() + " requests=" + n
+					+ " failures=" + failures.get() + " avgLatency=" + avg
+					+ "us maxLatency=" + (maxLatency / 1000) + "us";
+		}
+	}
+
+	static class Pending {
+		final PeerConnection peer;
+		final Integer id;
+		final long start = System.nanoTime();
+		final CountDownLatch done;
+		volatile Object reply;
+		private boolean completed = false;
+		private Runnable then;
+		private ScheduledFuture<?> expiry;
+
+		Pending(PeerConnection peer, Integer id) {
+			this.peer = peer;
+			this.id = id;
+			done = new CountDownLatch(peer == null ? 0 : 1);
+		}
+
+		/**
+		 * Runs r once the reply is in, the connection drops or the request
+		 * times out, on the thread that sees it, so no thread waits for the
+		 * reply; await() then returns at once. r must not block.
+		 */
+		void then(Runnable r) {
+			synchronized (this) {
+				if (!completed && peer != null) {
+					then = r;
+					expiry = timer.schedule(new Runnable() {
+						@Override
+						public void run() {
+							complete();
+						}
+					}, getTimeout(), TimeUnit.MILLISECONDS);
+					return;
+				}
+			}
+			r.run();
+		}
+
+		// The request is answered, failed or timed out: wakes await() and
+		// runs the continuation, once
+		void complete() {
+			Runnable r;
+			synchronized (this) {
+				if (completed)
+					return;
+				completed = true;
+				r = then;
+				then = null;
+				if (expiry != null)
+					expiry.cancel(false);
+			}
+			done.countDown();
+			if (r != null)
+				r.run();
+		}
+	}
+}
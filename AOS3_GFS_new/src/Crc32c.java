@@ -0,0 +1,93 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), the checksum of chunk blocks. Java 7 only ships
+ * CRC32, so this is table driven, eight bytes at a time (slicing-by-8).
+ *
+ * The static update methods take and return a finished CRC, so a checksum
+ * can be carried on over data appended later: update(update(0, a), b) is
+ * the CRC of a followed by b.
+ */
+public class Crc32c implements Checksum {
+
+	private static final int POLY = 0x82F63B78;
+	private static final int[][] T = new int[8][256];
+
+	static {
+		for (int n = 0; n < 256; n++) {
+			int c = n;
+			for (int k = 0; k < 8; k++)
+				c = (c & 1) != 0 ? (c >>> 1) ^ POLY : c >>> 1;
+			T[0][n] = c;
+		}
+		for (int n = 0; n < 256; n++) {
+			for (int k = 1; k < 8; k++)
+				T[k][n] = (T[k - 1][n] >>> 8) ^ T[0][T[k - 1][n] & 0xff];
+		}
+	}
+
+	private int crc = 0;
+
+	@Override
+	public void update(int b) {
+		crc = update(crc, new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		crc = update(crc, b, off, len);
+	}
+
+	@Override
+	public long getValue() {
+		return crc & 0xffffffffL;
+	}
+
+	@Override
+	public void reset() {
+		crc = 0;
+	}
+
+	static int update(int crc, byte[] b, int off, int len) {
+		int c = ~crc;
+		int end = off + len;
+		for (; off + 8 <= end; off += 8) {
+			int lo = c ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8
+					| (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+			int hi = (b[off + 4] & 0xff) | (b[off + 5] & 0xff) << 8
+					| (b[off + 6] & 0xff) << 16 | (b[off + 7] & 0xff) << 24;
+			c = slice(lo, hi);
+		}
+		for (; off < end; off++)
+			c = (c >>> 8) ^ T[0][(c ^ b[off]) & 0xff];
+		return ~c;
+	}
+
+	/**
+	 * The CRC carried on over len bytes of buf at off; the buffer's position
+	 * and limit are not used or changed.
+	 */
+	static int update(int crc, ByteBuffer buf, int off, int len) {
+		if (buf.hasArray())
+			return update(crc, buf.array(), buf.arrayOffset() + off, len);
+		ByteBuffer le = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int c = ~crc;
+		int end = off + len;
+		for (; off + 8 <= end; off += 8) {
+			long v = le.getLong(off);
+			c = slice(c ^ (int) v, (int) (v >>> 32));
+		}
+		for (; off < end; off++)
+			c = (c >>> 8) ^ T[0][(c ^ le.get(off)) & 0xff];
+		return ~c;
+	}
+
+	private static int slice(int lo, int hi) {
+		return T[7][lo & 0xff] ^ T[6][(lo >>> 8) & 0xff]
+				^ T[5][(lo >>> 16) & 0xff] ^ T[4][lo >>> 24]
+				^ T[3][hi & 0xff] ^ T[2][(hi >>> 8) & 0xff]
+				^ T[1][(hi >>> 16) & 0xff] ^ T[0][hi >>> 24];
+	}
+}
@@ -0,0 +1,336 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking server mode for the REQ, SER_REQ, META_REQ and heartbeat
+ * listeners. One
+ * selector thread accepts connections and cuts MessageCodec frames off the
+ * sockets for all listener ports of the process; the frames are handled on a
+ * bounded worker pool. When the worker queue is full the connection whose
+ * frame was rejected stops being read until a worker frees up, so a busy
+ * server pushes back on its peers instead of piling up threads.
+ *
+ * Every listener type has a pool of its own. Handlers wait on other servers:
+ * the MetaServer on a chunk server's REQ for a CREATE, a primary's REQ on its
+ * replicas' SER_REQ. With one pool those waits could fill every worker on
+ * two servers waiting on each other. With a pool per type, a handler only
+ * waits on a type that waits on nothing: SER_REQ requests are answered from
+ * the disk, and a PUSH passed down a chain answers when the chain does,
+ * without holding a worker (Listener.dispatch()).
+ *
+ * Enabled with listener_mode=nio in config.properties; listener_workers and
+ * listener_queue size each worker pool.
+ */
+public class EventLoop implements Runnable {
+
+	static final int DEFAULT_WORKERS = 16;
+	static final int DEFAULT_QUEUE = 1024;
+
+	private static EventLoop instance;
+
+	private final Selector selector;
+	private final int workerCount;
+	private final int queueSize;
+	// by listener type
+	private final ConcurrentHashMap<Integer, ThreadPoolExecutor> pools = new ConcurrentHashMap<Integer, ThreadPoolExecutor>();
+	private final ConcurrentHashMap<ServerSocketChannel, Integer> serverTypes = new ConcurrentHashMap<ServerSocketChannel, Integer>();
+	private final ConcurrentLinkedQueue<ServerSocketChannel> newServers = new ConcurrentLinkedQueue<ServerSocketChannel>();
+	private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<Connection>();
+	private final ConcurrentLinkedQueue<Connection> stalled = new ConcurrentLinkedQueue<Connection>();
+
+	static boolean enabled() {
+		return "nio".equals(Config.getValue("listener_mode"));
+	}
+
+	static synchronized EventLoop get() throws IOException {
+		if (instance == null) {
+			String workers = Config.getValue("listener_workers");
+			String queue = Config.getValue("listener_queue");
+			instance = new EventLoop(workers == null ? DEFAULT_WORKERS
+					: Integer.valueOf(workers), queue == null ? DEFAULT_QUEUE
+					: Integer.valueOf(queue));
+			Thread loop = new Thread(instance, "event-loop");
+			loop.start();
+		}
+		return instance;
+	}
+
+	EventLoop(int workerCount, int queueSize) throws IOException {
+		selector = Selector.open();
+		this.workerCount = workerCount;
+		this.queueSize = queueSize;
+	}
+
+	private ThreadPoolExecutor newPool() {
+		return new ThreadPoolExecutor(workerCount, workerCount, 60,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize)) {
+			@Override
+			protected void afterExecute(Runnable r, Throwable t) {
+				// a worker is free again, let stalled connections resume
+				if (!stalled.isEmpty())
+					selector.wakeup();
+			}
+		};
+	}
+
+	/**
+	 * Starts accepting connections of the given listener type on port.
+	 */
+	void listen(int port, int type) throws IOException {
+		if (!pools.containsKey(type))
+			pools.putIfAbsent(type, newPool());
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().setReuseAddress(true);
+		server.socket().bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		serverTypes.put(server, type);
+		newServers.add(server);
+		selector.wakeup();
+		log("Listening on " + port + " type " + type);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				selector.select();
+
+				ServerSocketChannel server;
+				while ((server = newServers.poll()) != null) {
+					server.register(selector, SelectionKey.OP_ACCEPT,
+							serverTypes.get(server));
+				}
+				Connection conn;
+				while ((conn = pendingWrites.poll()) != null) {
+					conn.enableWrite();
+				}
+				int count = stalled.size();
+				for (int i = 0; i < count; i++) {
+					conn = stalled.poll();
+					if (conn != null)
+						conn.resume();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys()
+						.iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						accept(key);
+						continue;
+					}
+					conn = (Connection) key.attachment();
+					try {
+						if (key.isReadable())
+							conn.read();
+						if (key.isValid() && key.isWritable())
+							conn.write();
+					} catch (IOException e) {
+						conn.close();
+					}
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void accept(SelectionKey key) throws IOException {
+		SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+		if (channel == null)
+			return;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		Connection conn = new Connection(channel, (Integer) key.attachment());
+		conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+		log("Received msg from:" + channel.socket().getInetAddress());
+	}
+
+	private static void log(String message) {
+		// System.out.println(message);
+	}
+
+	/**
+	 * State of one accepted connection. Only the selector thread reads and
+	 * writes the channel; workers hand replies over through the write queue.
+	 */
+	class Connection {
+		final SocketChannel channel;
+		final int type;
+		final ThreadPoolExecutor workers;
+		SelectionKey key;
+
+		private ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+		private final Queue<ByteBuffer[]> out = new ArrayDeque<ByteBuffer[]>();
+		private boolean paused = false;
+
+		Connection(SocketChannel channel, int type) {
+			this.channel = channel;
+			this.type = type;
+			workers = pools.get(type);
+		}
+
+		void read() throws IOException {
+			if (in.remaining() == 0) {
+				ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+				in.flip();
+				bigger.put(in);
+				in = bigger;
+			}
+			int n = channel.read(in);
+			if (n < 0) {
+				close();
+				return;
+			}
+			drain();
+		}
+
+		/**
+		 * Hands every complete frame in the read buffer to the workers. Stops
+		 * reading from the socket if the worker queue is full.
+		 */
+		private void drain() {
+			in.flip();
+			while (in.remaining() >= 4) {
+				int length = in.getInt(in.position());
+				if (length < 6 || length > MessageCodec.MAX_FRAME) {
+					close();
+					return;
+				}
+				if (in.remaining() < 4 + length) {
+					if (in.capacity() < 4 + length) {
+						ByteBuffer bigger = ByteBuffer.allocate(4 + length);
+						bigger.put(in);
+						in = bigger;
+						return;
+					}
+					break;
+				}
+				byte[] frame = new byte[length];
+				in.position(in.position() + 4);
+				in.get(frame);
+				try {
+					workers.execute(new Task(this, frame));
+				} catch (RejectedExecutionException e) {
+					// put the frame back and wait for a free worker
+					in.position(in.position() - 4 - length);
+					pause();
+					break;
+				}
+			}
+			in.compact();
+		}
+
+		private void pause() {
+			if (!paused) {
+				paused = true;
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				stalled.add(this);
+			}
+		}
+
+		void resume() {
+			if (!key.isValid())
+				return;
+			paused = false;
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			drain();
+		}
+
+		void reply(int reqId, Object msg) {
+			ByteBuffer header = MessageCodec.encodeHeader(reqId, msg);
+			ByteBuffer payload = MessageCodec.payload(msg);
+			ByteBuffer[] frame = payload == null ? new ByteBuffer[] { header }
+					: new ByteBuffer[] { header, payload };
+			synchronized (out) {
+				out.add(frame);
+			}
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+
+		void enableWrite() {
+			if (key.isValid())
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+
+		void write() throws IOException {
+			synchronized (out) {
+				while (!out.isEmpty()) {
+					ByteBuffer[] frame = out.peek();
+					channel.write(frame);
+					if (frame[frame.length - 1].hasRemaining())
+						return;
+					out.poll();
+				}
+			}
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		}
+
+		void close() {
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	static class Task implements Runnable {
+		final Connection conn;
+		final byte[] frame;
+
+		Task(Connection conn, byte[] frame) {
+			this.conn = conn;
+			this.frame = frame;
+		}
+
+		/**
+		 * Decodes the frame, handles it and queues the reply. A frame that
+		 * does not decode leaves the stream in doubt, so the connection is
+		 * closed, which fails the sender's pending requests at once; a
+		 * handler that throws is answered with a failed reply.
+		 */
+		@Override
+		public void run() {
+			MessageCodec.Frame request;
+			try {
+				request = MessageCodec.decode(ByteBuffer.wrap(frame));
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+				conn.close();
+				return;
+			}
+			final int reqId = request.reqId;
+			Listener.dispatch(conn.type, request.msg, new Listener.Reply() {
+				@Override
+				public void send(Object msg) {
+					try {
+						conn.reply(reqId, msg);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+						conn.close();
+					}
+				}
+			});
+		}
+	}
+}
@@ -1,5 +1,7 @@
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class File implements Serializable {
@@ -11,7 +13,10 @@ public class File implements Serializable {
 	public boolean isMaster=false;
 	
 	ConcurrentHashMap<Integer, Integer> fileChunks = new ConcurrentHashMap<Integer, Integer>();
-	public int size=0;
+	// the chunks this server last applied a change to as their primary
+	final Set<Integer> masterChunks = Collections
+			.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	public long size=0;
 
 	public File(File file) {
 		this.fileName = new String(file.fileName);
@@ -20,6 +25,7 @@ public class File implements Serializable {
 					new Integer(e.getValue()));
 			this.size+=e.getValue();
 		}
+		this.masterChunks.addAll(file.masterChunks);
 
 	}
 
@@ -28,17 +34,42 @@ public class File implements Serializable {
 		this.isMaster=isMaster;
 	}
 
-	synchronized boolean addChunk(Integer chunkName, Integer size,boolean isMaster) {
+	/**
+	 * Sets the size of a chunk and returns its previous size (0 if new).
+	 */
+	synchronized int addChunk(Integer chunkName, Integer size,boolean isMaster) {
 		// if (fileChunks.get(chunkName) == null) {
-		fileChunks.put(chunkName, size);
+		Integer old = fileChunks.put(chunkName, size);
 		this.isMaster=isMaster;
-		this.size+=size;
-		return true;
+		if (isMaster)
+			masterChunks.add(chunkName);
+		else
+			masterChunks.remove(chunkName);
+		this.size+=size - (old == null ? 0 : old);
+		return old == null ? 0 : old;
 		// } else {
 		// return false;
 		// }
 	}
 
+	/**
+	 * Drops a chunk and returns its size (0 if it was not there).
+	 */
+	synchronized int removeChunk(Integer chunkName) {
+		Integer old = fileChunks.remove(chunkName);
+		masterChunks.remove(chunkName);
+		this.size -= old == null ? 0 : old;
+		return old == null ? 0 : old;
+	}
+
+	/**
+	 * Whether this server is the primary of the chunk. The primary is per
+	 * chunk: the chunks of a file are placed independently.
+	 */
+	boolean isMaster(Integer chunkName) {
+		return masterChunks.contains(chunkName);
+	}
+
 	private static void log(String message) {
 		System.out.println(message);
 	}
@@ -4,7 +4,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 public class FileOperations {
 
@@ -84,48 +84,21 @@ return false;
 		return false;
 	}
 
-	static boolean writeFile(String fileName, int offSet, String data) {
-		File myFile = new File("./" + fileName);
-		if (myFile.exists()) {
-			try {
-				RandomAccessFile file = new RandomAccessFile(fileName, "rw");
-				file.seek(offSet);
-				file.write(data.getBytes());
-				System.out.println(new String(data) + "written into "
-						+ fileName);
-				file.close();
-
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} finally {
-			}
-			return true;
-		} else
-			return false;
-
+	static boolean writeFile(String fileName, int offSet, byte[] data) {
+		return ChunkStore.write(fileName, offSet, data);
 	}
 
-	static String readFile(String fileName, int offSet, int size) {
-		File myFile = new File("./" + fileName);
-		// check if file exist, otherwise create the file before writing
-
-		if (myFile.exists()) {
-			byte[] strData = new byte[size];
-			try {
-				RandomAccessFile file = new RandomAccessFile(fileName, "r");
-				file.seek(offSet);
-				file.read(strData);
-				file.close();
-				log("Read:" + new String(strData));
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} finally {
-			}
-			return new String(strData);
-		} else
+	/**
+	 * Copies the bytes out of the ChunkStore. The chunk server hands out
+	 * ChunkStore views directly; this is for callers that need an array.
+	 */
+	static byte[] readFile(String fileName, int offSet, int size) {
+		ByteBuffer view = ChunkStore.read(fileName, offSet, size);
+		if (view == null)
 			return null;
+		byte[] data = new byte[view.remaining()];
+		view.get(data);
+		return data;
 	}
 
 	static void log(String data) {
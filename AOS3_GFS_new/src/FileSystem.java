@@ -1,6 +1,7 @@
 import java.io.Serializable;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FileSystem implements Serializable {
 	/**
@@ -8,9 +9,13 @@ public class FileSystem implements Serializable {
 	 */
 	private static final long serialVersionUID = -1568600380072550284L;
 	String serverName;
-	int size=0;
+	AtomicLong size = new AtomicLong();
 	ConcurrentHashMap<String, File> fileInfo = new ConcurrentHashMap<String, File>();
 
+	// change log for delta heartbeats: chunk -> version of its last change
+	transient AtomicLong version = new AtomicLong();
+	transient ConcurrentHashMap<ChunkKey, Long> changes = new ConcurrentHashMap<ChunkKey, Long>();
+
 	FileSystem(String serverName) {
 		this.serverName = serverName;
 	}
@@ -20,71 +25,145 @@ public class FileSystem implements Serializable {
 		this.serverName = new String(Fs.serverName);
 		for (Entry<String, File> e : Fs.fileInfo.entrySet()) {
 			this.fileInfo.put(new String(e.getKey()), new File(e.getValue()));
-			this.size+=e.getValue().size;
+			this.size.addAndGet(e.getValue().size);
 		}
 		System.out.println("" + this);
 	}
 /**
+ * Records the size of a chunk. Only the File entry is locked, so updates to
+ * different files run in parallel; the total size is kept atomically.
  * 
  * @param file
  * @param chunkName
  * @param size
  * @return
  */
-	synchronized boolean addFile(String file, Integer chunkName, Integer newsize,boolean master) {
+	boolean addFile(String file, Integer chunkName, Integer newsize,boolean master) {
 		log(file + ":" + chunkName + ":" + newsize);
-		// if (fileInfo.get(file) == null
-		// || fileInfo.get(file).fileChunks.get(chunkName) == null) {
-		if (fileInfo.get(file) == null){
-			fileInfo.put(file, new File(file,master));
-			}
-		else{
-			if(fileInfo.get(file).fileChunks!=null&&fileInfo.get(file).fileChunks.get(chunkName)!=null)
-				this.size-=fileInfo.get(file).fileChunks.get(chunkName);
-			System.out.println("size updated to:"+size);
+		File f = fileInfo.get(file);
+		if (f == null) {
+			fileInfo.putIfAbsent(file, new File(file, master));
+			f = fileInfo.get(file);
 		}
-		
-		fileInfo.get(file).addChunk(chunkName, newsize,master);
-		this.size+=newsize;
+
+		int old = f.addChunk(chunkName, newsize, master);
+		log("size updated to:" + size.addAndGet(newsize - old));
+		changed(file, chunkName);
 
 		return true;
 	}
 
-	synchronized File getFile(String file) {
+	File getFile(String file) {
 		if (fileInfo!=null)
 			return fileInfo.get(file);
 		
 		return null;
 	}
 
-	synchronized boolean isMaster(String file) {
+	boolean isMaster(String file) {
 		if (fileInfo!=null && fileInfo.get(file)!=null)
 			return fileInfo.get(file).isMaster;
 		
 		return false;
 	}
 
-	synchronized boolean updateFile(String file, Integer chunkName, Integer newsize,boolean isMaster) {
+	boolean updateFile(String file, Integer chunkName, Integer newsize,boolean isMaster) {
 		log(file + ":" + chunkName + ":" + newsize);
-		if (fileInfo.get(file) == null)
+		File f = fileInfo.get(file);
+		if (f == null)
 			return false;
-		else{
-			if(fileInfo.get(file).fileChunks!=null&&fileInfo.get(file).fileChunks.get(chunkName)!=null)
-				this.size-=fileInfo.get(file).fileChunks.get(chunkName);
-			System.out.println("size updated to:"+size);
-		}
 
-		fileInfo.get(file).addChunk(chunkName, newsize,isMaster);
-		this.size+=newsize;
+		int old = f.addChunk(chunkName, newsize, isMaster);
+		log("size updated to:" + size.addAndGet(newsize - old));
+		changed(file, chunkName);
 		return true;
 	}
 
-	synchronized boolean addFile(String fileName, File file) {
-		fileInfo.put(fileName, file);
-		this.size+=file.size;
+	boolean addFile(String fileName, File file) {
+		File old = fileInfo.put(fileName, file);
+		this.size.addAndGet(file.size - (old == null ? 0 : old.size));
+		for (Integer chunkNo : file.fileChunks.keySet())
+			changed(fileName, chunkNo);
 		return true;
 	}
 
+	boolean removeChunk(String file, Integer chunkName) {
+		File f = fileInfo.get(file);
+		if (f == null)
+			return false;
+		int old = f.removeChunk(chunkName);
+		size.addAndGet(-old);
+		changed(file, chunkName);
+		return true;
+	}
+
+	/**
+	 * Numbers the change and records it in one step, under the lock on
+	 * changes, so that once version reads v every change up to v is in the
+	 * map for delta() to find.
+	 */
+	private void changed(String file, Integer chunkName) {
+		if (changes != null) {
+			ChunkKey key = new ChunkKey(file, chunkName);
+			synchronized (changes) {
+				changes.put(key, version.incrementAndGet());
+			}
+		}
+	}
+
+	// The last version whose changes, and all before it, are in changes
+	private long published() {
+		synchronized (changes) {
+			return version.get();
+		}
+	}
+
+	/**
+	 * Every chunk, for registration or after the MetaServer asked to resync.
+	 */
+	HeartBeat snapshot() {
+		long v = published();
+		HeartBeat hb = new HeartBeat(HeartBeat.FULL, serverName, -1, v,
+				filesInFS());
+		for (Entry<String, File> e : fileInfo.entrySet()) {
+			File f = e.getValue();
+			for (Entry<Integer, Integer> c : f.fileChunks.entrySet())
+				hb.add(e.getKey(), c.getKey(), c.getValue(),
+						f.isMaster(c.getKey()));
+		}
+		return hb;
+	}
+
+	/**
+	 * The chunks changed after version acked, with their current size (-1 if
+	 * deleted). Changes made while this runs may be sent twice, which is
+	 * harmless since the sizes are absolute.
+	 */
+	HeartBeat delta(long acked) {
+		long v = published();
+		HeartBeat hb = new HeartBeat(HeartBeat.DELTA, serverName, acked, v, 16);
+		for (Entry<ChunkKey, Long> e : changes.entrySet()) {
+			if (e.getValue() <= acked)
+				continue;
+			ChunkKey key = e.getKey();
+			File f = fileInfo.get(key.file);
+			Integer chunkSize = f == null ? null : f.fileChunks.get(key.chunkNo);
+			hb.add(key.file, key.chunkNo, chunkSize == null ? -1 : chunkSize,
+					f != null && f.isMaster(key.chunkNo));
+		}
+		return hb;
+	}
+
+	/**
+	 * Forgets the changes the MetaServer has acknowledged.
+	 */
+	void acknowledge(long acked) {
+		for (Entry<ChunkKey, Long> e : changes.entrySet()) {
+			if (e.getValue() <= acked)
+				changes.remove(e.getKey(), e.getValue());
+		}
+	}
+
 	int filesInFS(){
 		int size=0;
 		for (Entry<String, File> e : this.fileInfo.entrySet()) {
@@ -114,7 +193,30 @@ public class FileSystem implements Serializable {
 	}
 
 	private void log(String message) {
-		System.out.println(message);
+		// System.out.println(message);
+	}
+
+	static class ChunkKey {
+		final String file;
+		final int chunkNo;
+
+		ChunkKey(String file, int chunkNo) {
+			this.file = file;
+			this.chunkNo = chunkNo;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + chunkNo;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ChunkKey))
+				return false;
+			ChunkKey k = (ChunkKey) o;
+			return chunkNo == k.chunkNo && file.equals(k.file);
+		}
 	}
 
 }
@@ -0,0 +1,505 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load and latency benchmark of a whole GFS cluster on one machine.
+ *
+ * Starts a MetaServer and servers chunk servers as separate processes in
+ * dir, with a generated config.properties. dir is emptied first, so it must
+ * be new, empty or left by an earlier run. Each chunk server runs under its
+ * own loopback address (127.0.0.2, 127.0.0.3, ...) as its name, given with
+ * -Dgfs.host, so their names resolve without touching /etc/hosts. Then a
+ * load process in the same directory runs clients threads for duration
+ * seconds, after warmup seconds that are not counted. Each operation is
+ * drawn from mix:
+ *
+ * write - creates a new file of writeSize bytes
+ * append - appends appendSize bytes to one of files shared files
+ * read - reads readSize bytes at a random offset of the data a shared
+ * file was created with
+ * overwrite - writes writeSize bytes at the start of the first chunk of
+ * one of the shared files, through its primary like an append
+ *
+ * It prints throughput and latency percentiles per operation and writes
+ * each operation's percentile distribution to dir/<op>.hgrm in
+ * HdrHistogram's format. Finally it compares every replica of every chunk
+ * of the shared files, which parallel appends must leave identical.
+ *
+ * Usage: java GfsBenchmark [key=value ...], for example
+ * java GfsBenchmark servers=6 clients=32 mix=read:60,append:35,write:5
+ * With check=true the run fails (exit status 1) if an operation never
+ * succeeds, more than MAX_ERROR_PCT percent of one fail, or replicas differ.
+ * kill=n stops the last chunk server n seconds into the run, so its chunks
+ * are copied elsewhere under load; restart=m starts it again m seconds
+ * later, with the chunks it had.
+ * Keys other than the ones below (listener_mode, chunk_cache, ...) are
+ * copied into the generated config.
+ */
+public class GfsBenchmark {
+
+	static final String[] OPS = { "write", "append", "read", "overwrite" };
+	static final int BASE_PORT = 5600;
+	static final int MAX_ERROR_PCT = 5;
+	static final String OWNER = ".gfsbench";
+
+	static final LinkedHashMap<String, String> DEFAULTS = new LinkedHashMap<String, String>();
+	static {
+		DEFAULTS.put("dir", "gfsbench");
+		DEFAULTS.put("servers", "4");
+		DEFAULTS.put("clients", "16");
+		DEFAULTS.put("duration", "30");
+		DEFAULTS.put("warmup", "5");
+		DEFAULTS.put("mix", "read:60,append:35,write:5");
+		DEFAULTS.put("files", "16");
+		DEFAULTS.put("writeSize", "65536");
+		DEFAULTS.put("appendSize", "4096");
+		DEFAULTS.put("readSize", "4096");
+		DEFAULTS.put("chunk_size", "1048576");
+		DEFAULTS.put("heartbeat", "1");
+		DEFAULTS.put("maxretry", "5");
+		DEFAULTS.put("check", "false");
+		DEFAULTS.put("kill", "0");
+		DEFAULTS.put("restart", "0");
+	}
+
+	public static void main(String[] args) throws Exception {
+		HashMap<String, String> opts = new LinkedHashMap<String, String>(
+				DEFAULTS);
+		for (String a : args) {
+			int eq = a.indexOf('=');
+			if (a.equals("load") || eq < 0)
+				continue;
+			opts.put(a.substring(0, eq), a.substring(eq + 1));
+		}
+		if (args.length > 0 && args[0].equals("load"))
+			new Load(opts).run();
+		else
+			drive(opts);
+	}
+
+	/**
+	 * Sets up the cluster, runs the load process and stops the cluster.
+	 */
+	static void drive(HashMap<String, String> opts) throws Exception {
+		java.io.File dir = new java.io.File(opts.get("dir"));
+		int servers = Integer.valueOf(opts.get("servers"));
+		prepare(dir);
+
+		PrintStream config = new PrintStream(new FileOutputStream(
+				new java.io.File(dir, "config.properties")));
+		config.println("metaserver=127.0.0.1");
+		config.println("metaport=" + BASE_PORT);
+		config.println("meta_req_port=" + (BASE_PORT + 1));
+		// a chunk server also listens 100 below its port
+		for (int i = 0; i < servers; i++)
+			config.println(host(i) + "=" + (BASE_PORT + 300 + 200 * i));
+		config.println("meta_log_dir=metalog");
+		for (Map.Entry<String, String> e : opts.entrySet()) {
+			if (!DEFAULTS.containsKey(e.getKey()) || e.getKey().equals("chunk_size")
+					|| e.getKey().equals("heartbeat")
+					|| e.getKey().equals("maxretry"))
+				config.println(e.getKey() + "=" + e.getValue());
+		}
+		config.close();
+
+		final ArrayList<Process> nodes = new ArrayList<Process>();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				for (Process p : nodes)
+					p.destroy();
+			}
+		});
+		nodes.add(start(dir, "metaserver", null, "MetaServer"));
+		Thread.sleep(1000);
+		for (int i = 0; i < servers; i++)
+			nodes.add(start(dir, host(i), host(i), "Server"));
+
+		ArrayList<String> load = new ArrayList<String>(Arrays.asList(java(
+				null, "GfsBenchmark")));
+		load.add("load");
+		for (Map.Entry<String, String> e : opts.entrySet())
+			load.add(e.getKey() + "=" + e.getValue());
+		Process p = new ProcessBuilder(load).directory(dir).inheritIO()
+				.start();
+		int kill = Integer.valueOf(opts.get("kill"));
+		if (kill > 0)
+			fail(dir, nodes, servers - 1, kill,
+					Integer.valueOf(opts.get("restart")));
+		int exit = p.waitFor();
+		for (Process n : nodes)
+			n.destroy();
+		System.exit(exit);
+	}
+
+	/**
+	 * Stops chunk server i after kill seconds and, if restart is not 0,
+	 * starts it again restart seconds later.
+	 */
+	static void fail(final java.io.File dir, final ArrayList<Process> nodes,
+			final int i, final int kill, final int restart) {
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(kill * 1000L);
+					System.out.println("Stopping " + host(i));
+					nodes.get(i + 1).destroy();
+					if (restart <= 0)
+						return;
+					Thread.sleep(restart * 1000L);
+					System.out.println("Restarting " + host(i));
+					nodes.set(i + 1, GfsBenchmark.start(dir, host(i)
+							+ ".restart", host(i), "Server"));
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	static String host(int i) {
+		return "127.0.0." + (i + 2);
+	}
+
+	static Process start(java.io.File dir, String name, String host,
+			String main) throws IOException {
+		return new ProcessBuilder(java(host, main)).directory(dir)
+				.redirectErrorStream(true)
+				.redirectOutput(new java.io.File(dir, name + ".log")).start();
+	}
+
+	static String[] java(String host, String main) {
+		String bin = System.getProperty("java.home") + "/bin/java";
+		// the nodes run in dir, so relative class path entries would not do
+		StringBuilder cp = new StringBuilder();
+		for (String entry : System.getProperty("java.class.path").split(
+				java.io.File.pathSeparator)) {
+			if (cp.length() > 0)
+				cp.append(java.io.File.pathSeparator);
+			cp.append(new java.io.File(entry).getAbsolutePath());
+		}
+		if (host == null)
+			return new String[] { bin, "-cp", cp.toString(), main };
+		return new String[] { bin, "-cp", cp.toString(),
+				"-Dgfs.host=" + host, main };
+	}
+
+	/**
+	 * Empties dir for a new run, creating it if needed. A directory that is
+	 * not empty is only cleared if it holds the OWNER marker left by an
+	 * earlier run, so a mistyped dir= cannot delete anything else.
+	 */
+	static void prepare(java.io.File dir) throws IOException {
+		java.io.File owner = new java.io.File(dir, OWNER);
+		java.io.File[] files = dir.listFiles();
+		if (files != null && files.length > 0 && !owner.isFile())
+			throw new IOException(dir
+					+ " is not empty and was not created by GfsBenchmark");
+		if (files != null) {
+			for (java.io.File c : files)
+				clear(c);
+		}
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+		owner.createNewFile();
+	}
+
+	static void clear(java.io.File f) {
+		// a link is removed, not followed out of the directory
+		java.io.File[] files = Files.isSymbolicLink(f.toPath()) ? null : f
+				.listFiles();
+		if (files != null) {
+			for (java.io.File c : files)
+				clear(c);
+		}
+		f.delete();
+	}
+
+	/**
+	 * The clients, run in the cluster's directory so that they read its
+	 * config.properties.
+	 */
+	static class Load {
+		final int clients;
+		final long duration;
+		final long warmup;
+		final int files;
+		final int writeSize;
+		final int appendSize;
+		final int readSize;
+		final int chunkSize;
+		final boolean check;
+		final String[] mix = new String[100];
+
+		final String run = Long.toString(System.currentTimeMillis() % 100000, 36);
+		final AtomicInteger created = new AtomicInteger();
+
+		Load(HashMap<String, String> opts) {
+			clients = Integer.valueOf(opts.get("clients"));
+			duration = Long.valueOf(opts.get("duration")) * 1000;
+			warmup = Long.valueOf(opts.get("warmup")) * 1000;
+			files = Integer.valueOf(opts.get("files"));
+			writeSize = Integer.valueOf(opts.get("writeSize"));
+			appendSize = Integer.valueOf(opts.get("appendSize"));
+			readSize = Integer.valueOf(opts.get("readSize"));
+			chunkSize = Config.chunkSize();
+			check = Boolean.valueOf(opts.get("check"));
+
+			int filled = 0;
+			for (String part : opts.get("mix").split(",")) {
+				String[] kv = part.split(":");
+				int n = Integer.valueOf(kv[1]);
+				for (int i = 0; i < n && filled < mix.length; i++)
+					mix[filled++] = kv[0];
+			}
+			while (filled < mix.length)
+				mix[filled++] = mix[0];
+		}
+
+		void run() throws Exception {
+			waitForCluster();
+			for (int f = 0; f < files; f++)
+				create(shared(f), data(writeSize));
+
+			final long start = System.currentTimeMillis();
+			final long measureFrom = start + warmup;
+			final long end = measureFrom + duration;
+			final Worker[] workers = new Worker[clients];
+			for (int i = 0; i < clients; i++) {
+				workers[i] = new Worker(measureFrom, end);
+				workers[i].start();
+			}
+			for (Worker w : workers)
+				w.join();
+
+			int failed = report(workers) + verify();
+			if (check && failed > 0) {
+				System.out.println("Check failed");
+				System.exit(1);
+			}
+		}
+
+		private void waitForCluster() throws Exception {
+			long deadline = System.currentTimeMillis() + 60000;
+			while (true) {
+				try {
+					create("probe." + run, data(1));
+					return;
+				} catch (IOException e) {
+					if (System.currentTimeMillis() > deadline)
+						throw e;
+					Thread.sleep(500);
+				}
+			}
+		}
+
+		private String shared(int f) {
+			return "bench" + run + "." + f + ".";
+		}
+
+		class Worker extends Thread {
+			final long measureFrom;
+			final long end;
+			final HashMap<String, LatencyHistogram> histograms = new HashMap<String, LatencyHistogram>();
+			final HashMap<String, long[]> errors = new HashMap<String, long[]>();
+
+			Worker(long measureFrom, long end) {
+				this.measureFrom = measureFrom;
+				this.end = end;
+				for (String op : OPS) {
+					histograms.put(op, new LatencyHistogram());
+					errors.put(op, new long[1]);
+				}
+			}
+
+			@Override
+			public void run() {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (true) {
+					long now = System.currentTimeMillis();
+					if (now >= end)
+						break;
+					String op = mix[random.nextInt(mix.length)];
+					long t0 = System.nanoTime();
+					boolean ok;
+					try {
+						ok = execute(op, random);
+					} catch (Exception e) {
+						ok = false;
+					}
+					long micros = (System.nanoTime() - t0) / 1000;
+					if (now < measureFrom)
+						continue;
+					if (ok)
+						histograms.get(op).record(micros);
+					else
+						errors.get(op)[0]++;
+				}
+			}
+		}
+
+		boolean execute(String op, ThreadLocalRandom random) throws IOException {
+			if (op.equals("write")) {
+				create("new" + run + "." + created.incrementAndGet() + ".",
+						data(writeSize));
+				return true;
+			}
+			int f = random.nextInt(files);
+			if (op.equals("overwrite"))
+				return overwrite(shared(f), data(Math.min(writeSize, chunkSize)));
+			if (op.equals("append")) {
+				MetaMessage loc = Client.meta(new MetaMessage(
+						MetaMessage.APPEND, MetaMessage.STATUS_REQ, shared(f),
+						0, appendSize, null, null, null, null, null));
+				if (loc == null || loc.status != MetaMessage.STATUS_SUCCESS)
+					return false;
+				Message reply = Client.append(loc, data(appendSize));
+				return reply != null && reply.status == Message.STATUS_SUCCESS;
+			}
+			// within the first chunk, which the file was created with
+			int len = Math.min(readSize, Math.min(writeSize, chunkSize));
+			int off = random.nextInt(Math.min(writeSize, chunkSize) - len + 1);
+			Message reply = Client.read(shared(f), off, len);
+			return reply != null && reply.status == Message.STATUS_SUCCESS;
+		}
+
+		private void create(String name, byte[] data) throws IOException {
+			MetaMessage loc = Client.meta(new MetaMessage(MetaMessage.WRITE,
+					MetaMessage.STATUS_REQ, name, 0, data.length, null, null,
+					null, null, null));
+			if (loc == null || loc.status != MetaMessage.STATUS_SUCCESS)
+				throw new IOException("Create of " + name + " failed"
+						+ (loc == null ? "" : ":" + loc.data));
+			Message msg = new Message(Message.WRITE, Message.STATUS_REQ, name,
+					loc.server1, loc.server2, loc.chunkNo, 0, data.length, null);
+			msg.payload = data;
+			Message reply = Sender.messageToFileServer(loc.masterServer,
+					Config.getValue(loc.masterServer), msg);
+			if (reply == null || reply.status != Message.STATUS_SUCCESS)
+				throw new IOException("Write of " + name + " failed");
+		}
+
+		private boolean overwrite(String name, byte[] data) {
+			MetaMessage msg = new MetaMessage(MetaMessage.LOCATE,
+					MetaMessage.STATUS_REQ, name, 0, 1, null, null, null, null,
+					null);
+			msg.chunkNo = 1;
+			MetaMessage loc = Client.meta(msg);
+			if (loc == null || loc.status != MetaMessage.STATUS_SUCCESS
+					|| loc.replicas.length == 0 || loc.replicas[0].length != 3)
+				return false;
+			String[] r = loc.replicas[0];
+			Message write = new Message(Message.WRITE, Message.STATUS_REQ,
+					name, r[1], r[2], 1, 0, data.length, null);
+			write.payload = data;
+			Message reply = Sender.messageToFileServer(r[0],
+					Config.getValue(r[0]), write);
+			return reply != null && reply.status == Message.STATUS_SUCCESS;
+		}
+
+		private byte[] data(int size) {
+			byte[] data = new byte[size];
+			ThreadLocalRandom.current().nextBytes(data);
+			return data;
+		}
+
+		/**
+		 * Prints the results; returns the number of operations that never
+		 * succeeded or failed more than MAX_ERROR_PCT percent of the time.
+		 */
+		private int report(Worker[] workers) throws IOException {
+			int failed = 0;
+			double secs = duration / 1000.0;
+			System.out.printf("%d clients, %.0fs%n", clients, secs);
+			System.out.printf("%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+					"op", "ops/s", "errors", "MB/s", "p50 ms", "p99 ms",
+					"p999 ms", "max ms");
+			for (String op : OPS) {
+				LatencyHistogram h = new LatencyHistogram();
+				long errors = 0;
+				for (Worker w : workers) {
+					h.add(w.histograms.get(op));
+					errors += w.errors.get(op)[0];
+				}
+				// an operation of the mix that never finished is a failure
+				if (h.count() == 0 && errors == 0
+						&& !Arrays.asList(mix).contains(op))
+					continue;
+				if (h.count() == 0
+						|| errors * 100 > (h.count() + errors) * MAX_ERROR_PCT)
+					failed++;
+				int size = op.equals("write") || op.equals("overwrite") ? writeSize
+						: op.equals("append") ? appendSize : readSize;
+				System.out.printf(
+						"%-8s %10.1f %8d %10.2f %10.3f %10.3f %10.3f %10.3f%n",
+						op, h.count() / secs, errors, h.count() * size / secs
+								/ (1024 * 1024), h.valueAt(50) / 1000.0,
+						h.valueAt(99) / 1000.0, h.valueAt(99.9) / 1000.0,
+						h.max() / 1000.0);
+				PrintStream out = new PrintStream(new FileOutputStream(op
+						+ ".hgrm"));
+				h.percentiles(out, 1000.0);
+				out.close();
+			}
+			return failed;
+		}
+
+		/**
+		 * Reads every replica of every chunk of the shared files and compares
+		 * them. Returns the number of chunks whose replicas differ.
+		 */
+		private int verify() {
+			int chunks = 0;
+			int differ = 0;
+			for (int f = 0; f < files; f++) {
+				MetaMessage msg = new MetaMessage(MetaMessage.LOCATE,
+						MetaMessage.STATUS_REQ, shared(f), 0,
+						MetaServer.MAX_LOCATE, null, null, null, null, null);
+				msg.chunkNo = 1;
+				MetaMessage loc = Client.meta(msg);
+				if (loc == null || loc.status != MetaMessage.STATUS_SUCCESS) {
+					System.out.println("Can not locate " + shared(f));
+					differ++;
+					continue;
+				}
+				for (int i = 0; i < loc.chunks.length; i++) {
+					chunks++;
+					byte[] first = null;
+					for (String r : loc.replicas[i]) {
+						Message reply = Sender.messageToFileServer(r, Config
+								.getValue(r), new Message(Message.READ,
+								Message.STATUS_REQ, shared(f), null, null,
+								loc.chunks[i], 0, chunkSize, null));
+						byte[] data = reply == null
+								|| reply.status != Message.STATUS_SUCCESS ? null
+								: reply.payload == null ? new byte[0]
+										: reply.payload;
+						if (first == null)
+							first = data;
+						if (data == null || !Arrays.equals(first, data)) {
+							System.out.println("Replicas of " + shared(f)
+									+ loc.chunks[i] + " differ on " + r);
+							differ++;
+							break;
+						}
+					}
+				}
+			}
+			System.out.println("Verified " + chunks + " chunks, " + differ
+					+ " with replicas that differ");
+			return differ;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Reads a GFS file from the start as a stream.
+ *
+ * Chunk locations come from the MetaServer LOCATE_BATCH chunks per LOCATE
+ * round trip. Data is read in blocks of up to BLOCK bytes, and up to
+ * READ_AHEAD block reads are kept in flight ahead of the reader over the
+ * pooled connections, so a sequential read is limited by the chunk servers
+ * rather than by round trips. Each block is read from the nearest replica:
+ * this host if it holds one, otherwise the one answering fastest so far; the
+ * other replicas are tried if it fails.
+ *
+ * Chunks are read up to the size the MetaServer knows; a chunk server
+ * returning less (an append that is reserved but not committed yet) cuts the
+ * block short.
+ */
+public class GfsInputStream extends InputStream {
+
+	static final int BLOCK = 1024 * 1024;
+	static final int READ_AHEAD = 8;
+	static final int LOCATE_BATCH = 64;
+
+	private static String localHost;
+
+	private final String fileName;
+	private final HashMap<Integer, Location> locations = new HashMap<Integer, Location>();
+	private final HashMap<String, String> ports = new HashMap<String, String>();
+	private int lastChunk;
+
+	// next block to request
+	private int nextChunk = 1;
+	private int nextOff = 0;
+	private final ArrayDeque<Block> inFlight = new ArrayDeque<Block>();
+
+	private byte[] current = new byte[0];
+	private int pos = 0;
+
+	public GfsInputStream(String fileName) throws IOException {
+		this.fileName = fileName;
+		if (!locate(1))
+			throw new FileNotFoundException(fileName);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		return current[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(len, current.length - pos);
+		System.arraycopy(current, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return current.length - pos;
+	}
+
+	private boolean fill() throws IOException {
+		while (pos >= current.length) {
+			request();
+			Block b = inFlight.poll();
+			if (b == null)
+				return false;
+			current = b.await();
+			pos = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Tops up the blocks in flight.
+	 */
+	private void request() throws IOException {
+		while (inFlight.size() < READ_AHEAD) {
+			if (nextChunk > lastChunk)
+				return;
+			Location loc = locations.get(nextChunk);
+			if (loc == null) {
+				if (!locate(nextChunk) || !locations.containsKey(nextChunk))
+					return;
+				continue;
+			}
+			if (nextOff >= loc.size) {
+				locations.remove(nextChunk);
+				nextChunk++;
+				nextOff = 0;
+				continue;
+			}
+			int len = Math.min(BLOCK, loc.size - nextOff);
+			Block b = new Block(loc, nextOff, len);
+			b.send(nearest(loc.replicas));
+			inFlight.add(b);
+			nextOff += len;
+		}
+	}
+
+	private boolean locate(int first) throws IOException {
+		MetaMessage msg = new MetaMessage(MetaMessage.LOCATE,
+				MetaMessage.STATUS_REQ, fileName, 0, LOCATE_BATCH, null, null,
+				null, null, null);
+		msg.chunkNo = first;
+		MetaMessage reply = Client.meta(msg);
+		if (reply == null)
+			throw new IOException("MetaServer not reachable");
+		if (reply.status != MetaMessage.STATUS_SUCCESS)
+			return false;
+		lastChunk = reply.chunkNo;
+		for (int i = 0; i < reply.chunks.length; i++)
+			locations.put(reply.chunks[i], new Location(reply.chunks[i],
+					reply.sizes[i], reply.replicas[i]));
+		return true;
+	}
+
+	private String nearest(String[] replicas) {
+		String best = null;
+		long bestLatency = Long.MAX_VALUE;
+		for (String r : replicas) {
+			if (r.equals(localHost()))
+				return r;
+			long latency = ConnectionPool.latency(r, port(r));
+			if (latency < bestLatency) {
+				best = r;
+				bestLatency = latency;
+			}
+		}
+		return best;
+	}
+
+	private String port(String server) {
+		String port = ports.get(server);
+		if (port == null) {
+			port = Config.getValue(server);
+			ports.put(server, port);
+		}
+		return port;
+	}
+
+	private static String localHost() {
+		if (localHost == null) {
+			try {
+				localHost = InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+				localHost = "";
+			}
+		}
+		return localHost;
+	}
+
+	static class Location {
+		final int chunkNo;
+		final int size;
+		final String[] replicas;
+
+		Location(int chunkNo, int size, String[] replicas) {
+			this.chunkNo = chunkNo;
+			this.size = size;
+			this.replicas = replicas;
+		}
+	}
+
+	class Block {
+		final Location loc;
+		final int offSet;
+		final int len;
+		String server;
+		ConnectionPool.Pending pending;
+
+		Block(Location loc, int offSet, int len) {
+			this.loc = loc;
+			this.offSet = offSet;
+			this.len = len;
+		}
+
+		void send(String replica) throws IOException {
+			if (replica == null)
+				throw new IOException("No replica of " + fileName + loc.chunkNo);
+			server = replica;
+			pending = ConnectionPool.send(replica, port(replica), new Message(
+					Message.READ, Message.STATUS_REQ, fileName, null, null,
+					loc.chunkNo, offSet, len, null));
+		}
+
+		byte[] await() throws IOException {
+			Message reply = (Message) ConnectionPool.await(pending);
+			String first = server;
+			for (String r : loc.replicas) {
+				if (reply != null && reply.status == Message.STATUS_SUCCESS)
+					break;
+				if (r.equals(first))
+					continue;
+				send(r);
+				reply = (Message) ConnectionPool.await(pending);
+			}
+			if (reply == null || reply.status != Message.STATUS_SUCCESS)
+				throw new IOException("Failed to read " + fileName
+						+ loc.chunkNo + "@" + offSet);
+			return reply.payload == null ? new byte[0] : reply.payload;
+		}
+	}
+}
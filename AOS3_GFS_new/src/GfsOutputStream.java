@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes a GFS file as a stream, creating it or adding to its end.
+ *
+ * Bytes are buffered and sent a block at a time: the first block of a new
+ * file with WRITE, the rest as chain replicated appends. Blocks are cut at
+ * chunk boundaries so that every append exactly fills what is left of the
+ * last chunk, which keeps the file free of the null padding an overflowing
+ * append leaves behind. That only holds while this stream is the file's
+ * only writer.
+ */
+public class GfsOutputStream extends OutputStream {
+
+	private final String fileName;
+	private final int chunkSize;
+	private final byte[] buf;
+	private int count = 0;
+
+	private boolean exists;
+	// bytes left in the file's last chunk
+	private int room;
+
+	public GfsOutputStream(String fileName) throws IOException {
+		this.fileName = fileName;
+		chunkSize = Config.chunkSize();
+		buf = new byte[Math.min(chunkSize, GfsInputStream.BLOCK)];
+
+		MetaMessage msg = new MetaMessage(MetaMessage.LOCATE,
+				MetaMessage.STATUS_REQ, fileName, 0, 1, null, null, null, null,
+				null);
+		msg.chunkNo = 0;
+		MetaMessage reply = Client.meta(msg);
+		if (reply == null)
+			throw new IOException("MetaServer not reachable");
+		exists = reply.status == MetaMessage.STATUS_SUCCESS;
+		room = exists && reply.sizes.length > 0 ? chunkSize - reply.sizes[0]
+				: chunkSize;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == buf.length)
+			flushBuffer();
+		buf[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (count == buf.length)
+				flushBuffer();
+			int n = Math.min(len, buf.length - count);
+			System.arraycopy(b, off, buf, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+	}
+
+	private void flushBuffer() throws IOException {
+		int off = 0;
+		while (off < count) {
+			// a full chunk: the next append opens a new one
+			if (room <= 0)
+				room = chunkSize;
+			int n = Math.min(count - off, room);
+			byte[] piece = Arrays.copyOfRange(buf, off, off + n);
+			if (exists)
+				append(piece);
+			else
+				create(piece);
+			exists = true;
+			room -= n;
+			off += n;
+		}
+		count = 0;
+	}
+
+	private void create(byte[] data) throws IOException {
+		MetaMessage loc = Client.meta(new MetaMessage(MetaMessage.WRITE,
+				MetaMessage.STATUS_REQ, fileName, 0, data.length, null, null,
+				null, null, null));
+		check(loc);
+		Message msg = new Message(Message.WRITE, Message.STATUS_REQ, fileName,
+				loc.server1, loc.server2, loc.chunkNo, 0, data.length, null);
+		msg.payload = data;
+		Message reply = Sender.messageToFileServer(loc.masterServer,
+				Config.getValue(loc.masterServer), msg);
+		if (reply == null || reply.status != Message.STATUS_SUCCESS)
+			throw new IOException("Failed to write " + fileName
+					+ (reply == null ? "" : ":" + reply.data));
+	}
+
+	private void append(byte[] data) throws IOException {
+		MetaMessage loc = Client.meta(new MetaMessage(MetaMessage.APPEND,
+				MetaMessage.STATUS_REQ, fileName, 0, data.length, null, null,
+				null, null, null));
+		check(loc);
+		Message reply = Client.append(loc, data);
+		if (reply == null || reply.status != Message.STATUS_SUCCESS)
+			throw new IOException("Failed to append to " + fileName
+					+ (reply == null ? "" : ":" + reply.data));
+	}
+
+	private void check(MetaMessage reply) throws IOException {
+		if (reply == null)
+			throw new IOException("MetaServer not reachable");
+		if (reply.status != MetaMessage.STATUS_SUCCESS)
+			throw new IOException(reply.data);
+	}
+}
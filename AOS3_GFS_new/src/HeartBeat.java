@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * Heartbeat from a chunk server to the MetaServer, and the MetaServer's
+ * answer.
+ *
+ * A chunk server numbers every change to its FileSystem. A FULL heartbeat
+ * carries every chunk and is sent after a RESYNC; a REGISTER heartbeat is
+ * the same, sent when the server has just started. A DELTA carries only the
+ * chunks created, grown or deleted (size -1) since baseVersion, the last
+ * version the MetaServer acknowledged. The MetaServer answers ACK with the
+ * version it applied, or RESYNC when baseVersion does not match what it
+ * holds for the server. The ACK to a REGISTER lists the chunks the server
+ * kept from before that are stale by now; the server deletes them.
+ *
+ * Every heartbeat also carries the server's load for replica placement: the
+ * client requests per second since its last heartbeat and the bytes of
+ * pushed data it holds for commits.
+ */
+public class HeartBeat {
+
+	static final int FULL = 1;
+	static final int DELTA = 2;
+	static final int ACK = 3;
+	static final int RESYNC = 4;
+	static final int REGISTER = 5;
+
+	int type;
+	String serverName;
+	long baseVersion;
+	long version;
+
+	double requestRate;
+	long replicationBytes;
+
+	int count;
+	String[] files;
+	int[] chunks;
+	int[] sizes;
+	boolean[] master;
+
+	HeartBeat(int type, String serverName, long baseVersion, long version,
+			int capacity) {
+		this.type = type;
+		this.serverName = serverName;
+		this.baseVersion = baseVersion;
+		this.version = version;
+		files = new String[capacity];
+		chunks = new int[capacity];
+		sizes = new int[capacity];
+		master = new boolean[capacity];
+	}
+
+	void add(String file, int chunkNo, int size, boolean isMaster) {
+		if (count == files.length) {
+			int capacity = Math.max(16, count * 2);
+			files = Arrays.copyOf(files, capacity);
+			chunks = Arrays.copyOf(chunks, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			master = Arrays.copyOf(master, capacity);
+		}
+		files[count] = file;
+		chunks[count] = chunkNo;
+		sizes[count] = size;
+		master[count] = isMaster;
+		count++;
+	}
+
+	public String toString() {
+		String name;
+		switch (type) {
+		case FULL:
+			name = "Full";
+			break;
+		case DELTA:
+			name = "Delta";
+			break;
+		case ACK:
+			name = "Ack";
+			break;
+		case RESYNC:
+			name = "Resync";
+			break;
+		default:
+			name = "unknown";
+		}
+		return "HB|" + name + "|" + serverName + "|" + baseVersion + "->"
+				+ version + "|" + count + " chunks";
+	}
+}
@@ -0,0 +1,176 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Heartbeat bytes and MetaServer CPU per heartbeat for a chunk server with
+ * many chunks: the old full FileSystem heartbeat (Java serialization, deep
+ * copy and merge on the MetaServer) against a delta heartbeat in which a few
+ * chunks changed since the last acknowledged version.
+ *
+ * Then checks that deltas lose nothing while the FileSystem changes under
+ * them: writer threads update and remove chunks while this thread sends
+ * deltas to a replica and acknowledges them, and at the end the replica
+ * must hold exactly the FileSystem's chunks.
+ *
+ * Usage: java HeartBeatBenchmark [chunks] [changedPerBeat] [beats]
+ *        [writers] [updatesPerWriter]
+ */
+public class HeartBeatBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int chunks = args.length > 0 ? Integer.valueOf(args[0]) : 100000;
+		int changed = args.length > 1 ? Integer.valueOf(args[1]) : 100;
+		int beats = args.length > 2 ? Integer.valueOf(args[2]) : 20;
+		int writers = args.length > 3 ? Integer.valueOf(args[3]) : 4;
+		int updates = args.length > 4 ? Integer.valueOf(args[4]) : 200000;
+
+		PrintStream stdout = System.out;
+		// the FileSystem copy constructor prints the whole file system
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+
+		String name = "bench.server";
+		FileSystem fs = new FileSystem(name);
+		int files = Math.max(1, chunks / 100);
+		for (int i = 0; i < chunks; i++)
+			fs.addFile("file" + (i % files), i / files + 1, 8192, i % 3 == 0);
+
+		// old: the whole FileSystem every heartbeat
+		long bytes = 0;
+		long cpu = 0;
+		ServerInfo info = new ServerInfo(name, true, new FileSystem(name));
+		for (int b = 0; b < beats; b++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(new FileSystem(fs));
+			oos.flush();
+			byte[] wire = out.toByteArray();
+			bytes += wire.length;
+
+			long start = System.nanoTime();
+			FileSystem input = (FileSystem) new ObjectInputStream(
+					new ByteArrayInputStream(wire)).readObject();
+			info.updateMetaData(name, new FileSystem(input));
+			cpu += System.nanoTime() - start;
+		}
+		report(stdout, "full", bytes, cpu, beats);
+
+		// new: register once, then deltas
+		MetaServer.heartBeat(fs.snapshot());
+		fs.acknowledge(fs.version.get());
+		long acked = fs.version.get();
+		bytes = 0;
+		cpu = 0;
+		for (int b = 0; b < beats; b++) {
+			for (int i = 0; i < changed; i++) {
+				int c = (b * changed + i) % chunks;
+				fs.addFile("file" + (c % files), c / files + 1, 8192 + b + 1,
+						c % 3 == 0);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			MessageCodec.write(out, 1, fs.delta(acked));
+			byte[] wire = out.toByteArray();
+			bytes += wire.length;
+
+			long start = System.nanoTime();
+			HeartBeat hb = (HeartBeat) MessageCodec.read(new DataInputStream(
+					new ByteArrayInputStream(wire))).msg;
+			HeartBeat reply = MetaServer.heartBeat(hb);
+			cpu += System.nanoTime() - start;
+
+			if (reply.type != HeartBeat.ACK)
+				throw new IllegalStateException("Unexpected " + reply);
+			acked = reply.version;
+			fs.acknowledge(acked);
+		}
+		report(stdout, "delta(" + changed + ")", bytes, cpu, beats);
+		System.setOut(stdout);
+
+		int rounds = checkConcurrentDeltas(writers, updates);
+		System.out.println("concurrent deltas: replica matches after "
+				+ rounds + " heartbeats");
+	}
+
+	/**
+	 * Runs writers threads doing updates chunk updates and removals each
+	 * against a heartbeat loop that applies every delta to a replica map
+	 * and acknowledges it; throws if the replica ends up different.
+	 * Returns the number of heartbeats.
+	 */
+	static int checkConcurrentDeltas(int writers, final int updates)
+			throws Exception {
+		final FileSystem fs = new FileSystem("race.server");
+		final int files = 8, chunksPerFile = 64;
+		for (int f = 0; f < files; f++)
+			fs.addFile("file" + f, 1, 0, false);
+		final AtomicInteger running = new AtomicInteger(writers);
+		Thread[] threads = new Thread[writers];
+		for (int w = 0; w < writers; w++) {
+			final long seed = w;
+			threads[w] = new Thread() {
+				public void run() {
+					Random rand = new Random(seed);
+					for (int i = 0; i < updates; i++) {
+						String file = "file" + rand.nextInt(files);
+						int chunk = 1 + rand.nextInt(chunksPerFile);
+						if (rand.nextInt(8) == 0)
+							fs.removeChunk(file, chunk);
+						else
+							fs.updateFile(file, chunk, i, false);
+					}
+					running.decrementAndGet();
+				}
+			};
+			threads[w].start();
+		}
+
+		HashMap<String, Integer> replica = new HashMap<String, Integer>();
+		long acked = 0;
+		int rounds = 0;
+		boolean last = false;
+		while (!last) {
+			// one more round once the writers are done picks up the rest
+			last = running.get() == 0;
+			HeartBeat hb = fs.delta(acked);
+			for (int i = 0; i < hb.count; i++) {
+				String key = hb.files[i] + ":" + hb.chunks[i];
+				if (hb.sizes[i] == -1)
+					replica.remove(key);
+				else
+					replica.put(key, hb.sizes[i]);
+			}
+			acked = hb.version;
+			fs.acknowledge(acked);
+			rounds++;
+		}
+		for (Thread t : threads)
+			t.join();
+
+		HashMap<String, Integer> actual = new HashMap<String, Integer>();
+		for (Entry<String, File> f : fs.fileInfo.entrySet())
+			for (Entry<Integer, Integer> c : f.getValue().fileChunks.entrySet())
+				actual.put(f.getKey() + ":" + c.getKey(), c.getValue());
+		if (!actual.equals(replica))
+			throw new IllegalStateException("replica diverged: "
+					+ replica.size() + " chunks, " + actual.size() + " held");
+		return rounds;
+	}
+
+	static void report(PrintStream out, String name, long bytes, long cpu,
+			int beats) {
+		out.println(name + ": " + (bytes / beats) + " bytes/heartbeat, "
+				+ (cpu / beats / 1000) + " us MetaServer CPU/heartbeat");
+	}
+}
@@ -0,0 +1,143 @@
+import java.io.PrintStream;
+
+/**
+ * Latency histogram in the style of HdrHistogram: values (microseconds) are
+ * counted in buckets that are exact below 2048 and keep three significant
+ * digits above, so recording is constant time and percentiles are accurate
+ * to 0.1% whatever the range. Not thread safe; record per thread and add
+ * the histograms up.
+ *
+ * percentiles() writes the percentile distribution in HdrHistogram's text
+ * format, which its plotting tools read.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKETS = 2048;
+	static final int HALF = SUB_BUCKETS / 2;
+	static final int MAGNITUDE = 11;
+	// percentile steps per halving of the distance to 100%
+	static final int TICKS_PER_HALF = 5;
+
+	private final long[] counts = new long[SUB_BUCKETS + 54 * HALF];
+	private long total = 0;
+	private long max = 0;
+	private long min = Long.MAX_VALUE;
+	private double sum = 0;
+	private double sumSquares = 0;
+
+	void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts[index(value)]++;
+		total++;
+		max = Math.max(max, value);
+		min = Math.min(min, value);
+		sum += value;
+		sumSquares += (double) value * value;
+	}
+
+	void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++)
+			counts[i] += other.counts[i];
+		total += other.total;
+		max = Math.max(max, other.max);
+		min = Math.min(min, other.min);
+		sum += other.sum;
+		sumSquares += other.sumSquares;
+	}
+
+	long count() {
+		return total;
+	}
+
+	long max() {
+		return max;
+	}
+
+	double mean() {
+		return total == 0 ? 0 : sum / total;
+	}
+
+	double stdDeviation() {
+		if (total == 0)
+			return 0;
+		double mean = mean();
+		return Math.sqrt(Math.max(0, sumSquares / total - mean * mean));
+	}
+
+	/**
+	 * The highest value at or below which percentile percent of the values
+	 * fall, to the histogram's precision.
+	 */
+	long valueAt(double percentile) {
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1,
+				(long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(max, highest(i));
+		}
+		return max;
+	}
+
+	/**
+	 * Writes the percentile distribution with values divided by scale, as
+	 * HdrHistogram's outputPercentileDistribution does.
+	 */
+	void percentiles(PrintStream out, double scale) {
+		out.println(String.format("%12s %14s %10s %14s", "Value",
+				"Percentile", "TotalCount", "1/(1-Percentile)"));
+		out.println();
+		if (total > 0) {
+			double level = 0;
+			while (true) {
+				long value = valueAt(level);
+				long below = countAtOrBelow(value);
+				double p = level / 100;
+				if (below >= total) {
+					out.println(String.format("%12.3f %2.12f %10d", value
+							/ scale, 1.0, total));
+					break;
+				}
+				out.println(String.format("%12.3f %2.12f %10d %14.2f", value
+						/ scale, p, below, 1 / (1 - p)));
+				double halves = Math.pow(2,
+						Math.floor(Math.log(100 / (100 - level)) / Math.log(2)) + 1);
+				level += 100 / (halves * TICKS_PER_HALF);
+			}
+		}
+		out.println(String.format("#[Mean    = %12.3f, StdDeviation   = %12.3f]",
+				mean() / scale, stdDeviation() / scale));
+		out.println(String.format("#[Max     = %12.3f, Total count    = %12d]",
+				max / scale, total));
+		out.println(String.format("#[Buckets = %12d, SubBuckets     = %12d]",
+				(counts.length - SUB_BUCKETS) / HALF + 1, SUB_BUCKETS));
+	}
+
+	private long countAtOrBelow(long value) {
+		long seen = 0;
+		int last = index(value);
+		for (int i = 0; i <= last; i++)
+			seen += counts[i];
+		return seen;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (MAGNITUDE - 1);
+		return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+	}
+
+	// the highest value counted in bucket i
+	private static long highest(int i) {
+		if (i < SUB_BUCKETS)
+			return i;
+		int shift = (i - SUB_BUCKETS) / HALF + 1;
+		long low = (long) ((i - SUB_BUCKETS) % HALF + HALF) << shift;
+		return low + (1L << shift) - 1;
+	}
+}
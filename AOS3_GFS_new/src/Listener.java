@@ -1,13 +1,18 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Listener {
 
+	static final ExecutorService workers = Executors.newCachedThreadPool();
+
 	/**
 	 * A private thread to handle capitalization requests on a particular
 	 * socket. The client terminates the dialogue by sending a single line
@@ -16,29 +21,27 @@ public class Listener {
 	Listener(int port, int type) {
 		System.out.println("The Listener is running.");
 
+		if (EventLoop.enabled()) {
+			try {
+				EventLoop.get().listen(port, type);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
 		int clientNumber = 0;
 		ServerSocket listener = null;
 		try {
 			listener = new ServerSocket(port);
 
 			while (type == ListenerWrapper.DEMON) {//HeartBeats
-				ConcurrentHashMap<String, HeartBeatListener> clients = new ConcurrentHashMap<String, HeartBeatListener>();
-
 				Socket socket = listener.accept();
 				String clientName = socket.getInetAddress().getHostAddress();
-				log("Listening to " + clientName);
-				if (clients.get(clientName) != null) {
-					log((socket.toString()));
-//					MetaServer.setServer(clientName, false, null);
-//					MetaServer.replicateFailedNode(clientName);
-					clients.get(clientName).interrupt();
-				}
-				HeartBeatListener client = new HeartBeatListener(socket,
-						clientNumber++);
-				clients.put(clientName, client);
-//				MetaServer.setServer(clientName, true, null);
-
-				client.start();
+				log("Listening to " + clientName + " #" + clientNumber++);
+				Thread hbRequestHandler = new Thread(new RequestHandler(
+						socket, ListenerWrapper.DEMON));
+				hbRequestHandler.start();
 			}
 			log("Listing requests...");
 			while (type == ListenerWrapper.REQ) {
@@ -80,20 +83,105 @@ public class Listener {
 
 	}
 
+	/**
+	 * Hands a decoded request to the handler for the listener type and
+	 * returns the reply. Shared by the blocking listener and the EventLoop.
+	 */
+	static Object dispatch(int type, Object msg) {
+		if (type == ListenerWrapper.DEMON) {
+			return MetaServer.heartBeat((HeartBeat) msg);
+		} else if (type == ListenerWrapper.META_REQ) {
+			return MetaServer.requestHandler((MetaMessage) msg);
+		} else if (type == ListenerWrapper.REQ) {
+			return Server.requestHandler((Message) msg);
+		} else if (type == ListenerWrapper.SER_REQ) {
+			return Server.serverRequestHandler((Message) msg);
+		}
+		return null;
+	}
+
+	/**
+	 * Takes the reply to one request, from the worker that handled it or
+	 * later from whichever thread completes a handler that answers once its
+	 * own requests to other servers are answered.
+	 */
+	interface Reply {
+		void send(Object msg);
+	}
+
+	/**
+	 * dispatch() that hands the reply to reply instead of returning it. A
+	 * PUSH does not hold the worker while the rest of its chain answers; a
+	 * handler that throws is answered with failure().
+	 */
+	static void dispatch(int type, Object msg, Reply reply) {
+		Object ret;
+		try {
+			if ((type == ListenerWrapper.REQ || type == ListenerWrapper.SER_REQ)
+					&& msg instanceof Message
+					&& ((Message) msg).type == Message.PUSH) {
+				Server.push((Message) msg, reply);
+				return;
+			}
+			ret = dispatch(type, msg);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			ret = failure(msg, e);
+		}
+		reply.send(ret);
+	}
+
+	/**
+	 * A failed reply to msg, whose handler threw e, so the sender hears back
+	 * at once instead of waiting out its timeout. A heartbeat is answered
+	 * with RESYNC. Null if msg is of no known type.
+	 */
+	static Object failure(Object msg, Exception e) {
+		if (msg instanceof Message) {
+			Message m = (Message) msg;
+			Message reply = new Message(m.type, Message.STATUS_FAIL,
+					m.fileName, m.server1, m.server2, m.chunkNo, m.offSet,
+					m.len, "Failed:" + e);
+			reply.dataId = m.dataId;
+			return reply;
+		} else if (msg instanceof MetaMessage) {
+			MetaMessage m = (MetaMessage) msg;
+			return new MetaMessage(m.type, MetaMessage.STATUS_FAIL,
+					m.fileName, m.offSet, m.len, null, null, null, null,
+					"Error:" + e);
+		} else if (msg instanceof HeartBeat) {
+			HeartBeat hb = (HeartBeat) msg;
+			return new HeartBeat(HeartBeat.RESYNC, hb.serverName,
+					hb.baseVersion, hb.version, 0);
+		}
+		return null;
+	}
+
 	private void log(String message) {
 		System.out.println(message);
 	}
 
+	/**
+	 * Serves one pooled connection. Requests arrive as MessageCodec frames and
+	 * are handled on the worker pool, so a slow request
+	 * does not hold up the ones pipelined behind it. Replies carry the id of
+	 * their request and may go out in any order.
+	 */
 	class RequestHandler implements Runnable {
 
-		ObjectOutputStream out;
-		ObjectInputStream in;
+		Socket socket;
+		DataOutputStream out;
+		DataInputStream in;
 		int type;
 
 		RequestHandler(Socket socket, int type) {
+			this.socket = socket;
 			try {
-				in = new ObjectInputStream(socket.getInputStream());
-				out = new ObjectOutputStream(socket.getOutputStream());
+				socket.setTcpNoDelay(true);
+				in = new DataInputStream(new BufferedInputStream(
+						socket.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(
+						socket.getOutputStream()));
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -104,112 +192,49 @@ public class Listener {
 		@Override
 		public void run() {
 			try {
-				if (type == ListenerWrapper.META_REQ) {
-					MetaMessage msg;
-					msg = (MetaMessage) in.readObject();
-					log(msg.toString());
-					MetaMessage ret_msg = MetaServer.requestHandler(msg);
-					out.writeObject(ret_msg);
-				} else if (type == ListenerWrapper.REQ) {
-					Message msg = (Message) in.readObject();
-					log(msg.toString());
-					Message ret_msg = Server.requestHandler(msg);
-					out.writeObject(ret_msg);
-				}
-				
-				else if (type == ListenerWrapper.SER_REQ) {
-					Message msg = (Message) in.readObject();
-					log(msg.toString());
-					Message ret_msg = Server.serverRequestHandler(msg);
-					out.writeObject(ret_msg);
+				while (true) {
+					final MessageCodec.Frame frame = MessageCodec.read(in);
+					workers.execute(new Runnable() {
+						@Override
+						public void run() {
+							dispatch(type, frame.msg, new Reply() {
+								@Override
+								public void send(Object msg) {
+									reply(frame.reqId, msg);
+								}
+							});
+						}
+					});
 				}
-			} catch (ClassNotFoundException | IOException e) {
+			} catch (EOFException e) {
+				log("Connection closed by " + socket.getInetAddress());
+			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
-
-		}
-	}
-
-	class HeartBeatListener extends Thread {
-		private Socket socket;
-		private int clientNumber;
-
-		public HeartBeatListener(Socket socket, int clientNumber) {
-			this.socket = socket;
-			this.clientNumber = clientNumber;
-			log("New connection with client# " + clientNumber + " at " + socket);
 		}
 
-		/**
-		 * Services this thread's client by first sending the client a welcome
-		 * message then repeatedly reading strings and sending back the
-		 * capitalized version of the string.
-		 */
-		@Override
-		public void run() {
+		void reply(int id, Object ret_msg) {
 			try {
-
-				ObjectInputStream in = new ObjectInputStream(
-						socket.getInputStream());
-
-				PrintWriter out = new PrintWriter(socket.getOutputStream(),
-						true);
-				String serverName = socket.getInetAddress().getHostName();
-				// Send a welcome message to the client.
-				out.println("Hello, you are client #" + clientNumber + ".");
-
-				// Get messages from the client, line by line; return them
-				// capitalized
-				int count = 0;
-
-				MetaServer.updateMetaData(serverName,
-						new FileSystem(serverName));
-
-				while (count < 3) {
-					try {
-						Thread.sleep(4000);
-						if (socket.getInputStream().available() > 0) {
-							count = 0;
-							FileSystem input = (FileSystem) in.readObject();
-
-							log("HB received:" + input.toString());
-
-							if (MetaServer.updateMetaData(serverName, input))
-								log("Metadata updated");
-							else
-								log("Already up to date");
-
-						} else
-							count++;
-
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
+				synchronized (out) {
+					MessageCodec.write(out, id, ret_msg);
+					out.flush();
 				}
-
-				MetaServer.setServer(serverName, false, null);
-				MetaServer.replicateFailedNode(serverName);
-
-			} catch (IOException e) {
-				log("Error handling client# " + clientNumber + ": " + e);
-			} finally {
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
 				try {
 					socket.close();
-				} catch (IOException e) {
-					log("Couldn't close a socket, what's going on?");
+				} catch (IOException e1) {
+					e1.printStackTrace();
 				}
-				log("Connection with client# " + clientNumber + " closed");
 			}
 		}
-
-		/**
-		 * Logs a simple message. In this case we just write the message to the
-		 * server applications standard output.
-		 */
-		private void log(String message) {
-			// System.out.println(message);
-		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Load test of listener_mode=nio: a GfsBenchmark cluster whose servers have
+ * far fewer listener_workers than there are clients, so handlers that wait
+ * on other servers would take every worker if they held one while waiting.
+ * Runs with check=true, so it exits with status 1 if an operation stops
+ * succeeding or replicas differ. Further key=value arguments are passed to
+ * GfsBenchmark and override the ones here.
+ *
+ * Usage: java ListenerLoadTest [key=value ...]
+ */
+public class ListenerLoadTest {
+
+	public static void main(String[] args) throws Exception {
+		ArrayList<String> opts = new ArrayList<String>(Arrays.asList(
+				"dir=listenerload", "servers=4", "clients=32", "duration=15",
+				"warmup=2", "listener_mode=nio", "listener_workers=2",
+				"listener_queue=64", "check=true"));
+		opts.addAll(Arrays.asList(args));
+		GfsBenchmark.main(opts.toArray(new String[opts.size()]));
+	}
+}
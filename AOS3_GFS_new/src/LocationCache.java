@@ -0,0 +1,114 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side cache of chunk locations: (file, chunk) -> replicas, master
+ * first, and the chunk's size.
+ *
+ * Entries come from LOCATE, which returns a run of consecutive chunks, so a
+ * miss prefetches the following chunks too. Each entry is valid for the
+ * lease the MetaServer grants with the reply; after that it is fetched again.
+ * A chunk server that does not hold a chunk answers STATUS_STALE and the
+ * entry is dropped before the lease runs out. The cache holds at most
+ * location_cache entries and drops the least recently used.
+ */
+public class LocationCache {
+
+	static final int DEFAULT_CAPACITY = 4096;
+	static final int PREFETCH = 16;
+
+	private static int capacity = -1;
+
+	private static final LinkedHashMap<FileSystem.ChunkKey, Location> entries = new LinkedHashMap<FileSystem.ChunkKey, Location>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<FileSystem.ChunkKey, Location> eldest) {
+			return size() > capacity();
+		}
+	};
+
+	static final AtomicLong hits = new AtomicLong();
+	static final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The location of a chunk, asking the MetaServer for it and the next
+	 * chunks if it is not cached. Null if the chunk does not exist or the
+	 * MetaServer can not be reached.
+	 */
+	static Location lookup(String fileName, int chunkNo) {
+		FileSystem.ChunkKey key = new FileSystem.ChunkKey(fileName, chunkNo);
+		long now = System.currentTimeMillis();
+		synchronized (entries) {
+			Location e = entries.get(key);
+			if (e != null && e.expires > now) {
+				hits.incrementAndGet();
+				return e;
+			}
+		}
+		misses.incrementAndGet();
+
+		MetaMessage msg = new MetaMessage(MetaMessage.LOCATE,
+				MetaMessage.STATUS_REQ, fileName, 0, PREFETCH, null, null, null,
+				null, null);
+		msg.chunkNo = chunkNo;
+		MetaMessage reply = Client.meta(msg);
+		if (reply == null || reply.status != MetaMessage.STATUS_SUCCESS)
+			return null;
+
+		// the lease counts from when the request was sent
+		long expires = now + reply.lease;
+		Location found = null;
+		synchronized (entries) {
+			for (int i = 0; i < reply.chunks.length; i++) {
+				if (reply.replicas[i].length == 0)
+					continue;
+				Location e = new Location(reply.chunks[i], reply.sizes[i],
+						reply.replicas[i], expires);
+				entries.put(new FileSystem.ChunkKey(fileName, e.chunkNo), e);
+				if (e.chunkNo == chunkNo)
+					found = e;
+			}
+		}
+		return found;
+	}
+
+	static void invalidate(String fileName, int chunkNo) {
+		synchronized (entries) {
+			entries.remove(new FileSystem.ChunkKey(fileName, chunkNo));
+		}
+	}
+
+	static String stats() {
+		synchronized (entries) {
+			return "Location cache: " + entries.size() + " entries, "
+					+ hits.get() + " hits, " + misses.get() + " misses";
+		}
+	}
+
+	private static int capacity() {
+		if (capacity < 0) {
+			String value = Config.getValue("location_cache");
+			capacity = value == null ? DEFAULT_CAPACITY : Integer
+					.valueOf(value);
+		}
+		return capacity;
+	}
+
+	static class Location {
+		final int chunkNo;
+		final int size;
+		final String[] replicas;
+		final long expires;
+
+		Location(int chunkNo, int size, String[] replicas, long expires) {
+			this.chunkNo = chunkNo;
+			this.size = size;
+			this.replicas = replicas;
+			this.expires = expires;
+		}
+	}
+}
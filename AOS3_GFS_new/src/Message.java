@@ -1,4 +1,5 @@
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 public class Message implements Serializable {
 
@@ -15,7 +16,14 @@ public class Message implements Serializable {
 	static final int STATUS_REQ = 8;
 	static final int STATUS_FAIL = 9;
 	static final int STATUS_SUCCESS = 10;
+	// the server does not hold the chunk: the client's location is out of date
+	static final int STATUS_STALE = 14;
 	static final int HELLO  = 11;// edited by Bharath for Checking server is active or not
+	// chain replication: data is pushed along the replicas, then committed
+	static final int PUSH = 12;
+	static final int COMMIT = 13;
+	// re-replication: the receiving server copies a chunk from server1
+	static final int REPLICATE = 15;
 
 	int type;
 	int status;
@@ -27,6 +35,13 @@ public class Message implements Serializable {
 	int len;
 
 	String data;
+	// identifies pushed data until it is committed
+	long dataId;
+	// raw chunk bytes for READ replies and WRITE/APPEND requests
+	byte[] payload;
+	// READ replies from the ChunkStore: a view of the mapped chunk that is
+	// written to the wire in place of payload
+	transient ByteBuffer payloadView;
 
 	public Message(int type, int status, String fileName, String server1, String server2,int chunkNo,
 			int offSet, int len, String data) {
@@ -55,6 +70,9 @@ public class Message implements Serializable {
 		case STATUS_SUCCESS:
 			msgtext.append("PASS|");
 			break;
+		case STATUS_STALE:
+			msgtext.append("STALE|");
+			break;
 		default:
 			msgtext.append("UNK|");
 		}
@@ -63,26 +81,41 @@ public class Message implements Serializable {
 		case READ:
 			msgtext.append("Read");
 			msgtext.append("|" + fileName + "|" + offSet + "|" + len + "|-->"
-					+ data);
+					+ text());
 			break;
 		case BEATS:
 			msgtext.append("Beats");
 			break;
 		case WRITE:
 			msgtext.append("Write");
-			msgtext.append("|"+server1+ "|"+server2+ "|" + fileName + "|-->" + data);
+			msgtext.append("|"+server1+ "|"+server2+ "|" + fileName + "|-->" + text());
 			break;
 		case CREATE:
 			msgtext.append("Create");
-			msgtext.append("|"+server1+ "|"+server2+ "|"+ fileName + "|-->" + data);
+			msgtext.append("|"+server1+ "|"+server2+ "|"+ fileName + "|-->" + text());
 			break;
 		case APPEND:
 			msgtext.append("Append");
-			msgtext.append("|"+server1+ "|"+server2+ "|"+ fileName + "|-->" + data);
+			msgtext.append("|"+server1+ "|"+server2+ "|"+ fileName + "|-->" + text());
+			break;
+		case PUSH:
+			msgtext.append("Push");
+			msgtext.append("|" + dataId + "|" + offSet + "/" + len + "|-->"
+					+ (payload == null ? data : payload.length + " bytes"));
+			break;
+		case COMMIT:
+			msgtext.append("Commit");
+			msgtext.append("|" + dataId + "|" + server1 + "|" + server2 + "|"
+					+ fileName + chunkNo + "@" + offSet + "|-->" + data);
+			break;
+		case REPLICATE:
+			msgtext.append("Replicate");
+			msgtext.append("|" + server1 + "|" + fileName + chunkNo + "|" + len
+					+ "|-->" + data);
 			break;
 		case HELLO:
 			msgtext.append("Hello");
-			msgtext.append("|" + fileName + "|-->" + data);
+			msgtext.append("|" + fileName + "|-->" + text());
 			break;
 		default:
 			msgtext.append("unknown");
@@ -90,4 +123,12 @@ public class Message implements Serializable {
 
 		return msgtext.toString();
 	}
+
+	private String text() {
+		if (payload != null)
+			return new String(payload);
+		if (payloadView != null)
+			return payloadView.remaining() + " bytes";
+		return data;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,328 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Binary wire format for Message, MetaMessage and HeartBeat.
+ *
+ * Every frame is an int length (bytes following the length field), a version
+ * byte, a kind byte and the int request id, followed by the fixed width int
+ * fields, the strings (int length, -1 for null, then UTF-8 bytes) and finally
+ * the raw payload (int length, -1 for null, then the bytes). The payload is
+ * always last, so it can be written straight from its own buffer after the
+ * header, including a mapped chunk view, without copying it onto the heap.
+ */
+public class MessageCodec {
+
+	static final byte VERSION = 1;
+
+	static final byte KIND_MESSAGE = 1;
+	static final byte KIND_META_MESSAGE = 2;
+	static final byte KIND_HEART_BEAT = 3;
+
+	static final int MAX_FRAME = 64 * 1024 * 1024 + 64 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * A decoded frame: the request id and the message it carried.
+	 */
+	static class Frame {
+		final int reqId;
+		final Object msg;
+
+		Frame(int reqId, Object msg) {
+			this.reqId = reqId;
+			this.msg = msg;
+		}
+	}
+
+	/**
+	 * Encodes everything but the payload bytes. The length field already
+	 * accounts for the payload, so the caller must write payload(msg) right
+	 * after the returned buffer.
+	 */
+	static ByteBuffer encodeHeader(int reqId, Object msg) {
+		if (msg instanceof Message) {
+			Message m = (Message) msg;
+			byte[] fileName = bytes(m.fileName);
+			byte[] server1 = bytes(m.server1);
+			byte[] server2 = bytes(m.server2);
+			byte[] data = bytes(m.data);
+			int size = 4 + 2 + 4 + 5 * 4 + 8 + strSize(fileName)
+					+ strSize(server1) + strSize(server2) + strSize(data) + 4;
+			ByteBuffer buf = ByteBuffer.allocate(size);
+			buf.putInt(size - 4 + payloadLength(m));
+			buf.put(VERSION);
+			buf.put(KIND_MESSAGE);
+			buf.putInt(reqId);
+			buf.putInt(m.type);
+			buf.putInt(m.status);
+			buf.putInt(m.chunkNo);
+			buf.putInt(m.offSet);
+			buf.putInt(m.len);
+			buf.putLong(m.dataId);
+			putStr(buf, fileName);
+			putStr(buf, server1);
+			putStr(buf, server2);
+			putStr(buf, data);
+			buf.putInt(m.payload == null && m.payloadView == null ? -1
+					: payloadLength(m));
+			buf.flip();
+			return buf;
+		} else if (msg instanceof MetaMessage) {
+			MetaMessage m = (MetaMessage) msg;
+			byte[] fileName = bytes(m.fileName);
+			byte[] masterServer = bytes(m.masterServer);
+			byte[] server1 = bytes(m.server1);
+			byte[] server2 = bytes(m.server2);
+			byte[] data = bytes(m.data);
+			int size = 4 + 2 + 4 + 5 * 4 + strSize(fileName)
+					+ strSize(masterServer) + strSize(server1)
+					+ strSize(server2) + strSize(data) + 4 + 4;
+			byte[][][] replicas = null;
+			if (m.chunks != null) {
+				replicas = new byte[m.chunks.length][][];
+				for (int i = 0; i < m.chunks.length; i++) {
+					replicas[i] = new byte[m.replicas[i].length][];
+					size += 4 + 4 + 4;
+					for (int j = 0; j < replicas[i].length; j++) {
+						replicas[i][j] = bytes(m.replicas[i][j]);
+						size += strSize(replicas[i][j]);
+					}
+				}
+			}
+			ByteBuffer buf = ByteBuffer.allocate(size);
+			buf.putInt(size - 4);
+			buf.put(VERSION);
+			buf.put(KIND_META_MESSAGE);
+			buf.putInt(reqId);
+			buf.putInt(m.type);
+			buf.putInt(m.status);
+			buf.putInt(m.chunkNo);
+			buf.putInt(m.offSet);
+			buf.putInt(m.len);
+			putStr(buf, fileName);
+			putStr(buf, masterServer);
+			putStr(buf, server1);
+			putStr(buf, server2);
+			putStr(buf, data);
+			buf.putInt(m.lease);
+			buf.putInt(m.chunks == null ? -1 : m.chunks.length);
+			for (int i = 0; replicas != null && i < replicas.length; i++) {
+				buf.putInt(m.chunks[i]);
+				buf.putInt(m.sizes[i]);
+				buf.putInt(replicas[i].length);
+				for (byte[] r : replicas[i])
+					putStr(buf, r);
+			}
+			buf.flip();
+			return buf;
+		} else if (msg instanceof HeartBeat) {
+			HeartBeat hb = (HeartBeat) msg;
+			byte[] serverName = bytes(hb.serverName);
+			byte[][] files = new byte[hb.count][];
+			int size = 4 + 2 + 4 + 4 + 8 + 8 + 8 + 8 + strSize(serverName) + 4;
+			for (int i = 0; i < hb.count; i++) {
+				// runs of chunks of one file share the name, convert it once
+				files[i] = i > 0 && hb.files[i].equals(hb.files[i - 1]) ? files[i - 1]
+						: bytes(hb.files[i]);
+				size += strSize(files[i]) + 4 + 4 + 1;
+			}
+			ByteBuffer buf = ByteBuffer.allocate(size);
+			buf.putInt(size - 4);
+			buf.put(VERSION);
+			buf.put(KIND_HEART_BEAT);
+			buf.putInt(reqId);
+			buf.putInt(hb.type);
+			buf.putLong(hb.baseVersion);
+			buf.putLong(hb.version);
+			buf.putDouble(hb.requestRate);
+			buf.putLong(hb.replicationBytes);
+			putStr(buf, serverName);
+			buf.putInt(hb.count);
+			for (int i = 0; i < hb.count; i++) {
+				putStr(buf, files[i]);
+				buf.putInt(hb.chunks[i]);
+				buf.putInt(hb.sizes[i]);
+				buf.put((byte) (hb.master[i] ? 1 : 0));
+			}
+			buf.flip();
+			return buf;
+		}
+		throw new IllegalArgumentException("Can not encode " + msg);
+	}
+
+	/**
+	 * The payload bytes that follow the header, or null if there are none.
+	 * The returned buffer is private to the caller and may be consumed.
+	 */
+	static ByteBuffer payload(Object msg) {
+		if (msg instanceof Message) {
+			Message m = (Message) msg;
+			if (m.payloadView != null)
+				return m.payloadView.duplicate();
+			if (m.payload != null)
+				return ByteBuffer.wrap(m.payload);
+		}
+		return null;
+	}
+
+	/**
+	 * Writes a whole frame to out. The caller flushes.
+	 */
+	static void write(OutputStream out, int reqId, Object msg)
+			throws IOException {
+		ByteBuffer header = encodeHeader(reqId, msg);
+		out.write(header.array(), 0, header.limit());
+		ByteBuffer payload = payload(msg);
+		if (payload == null)
+			return;
+		if (payload.hasArray()) {
+			out.write(payload.array(), payload.arrayOffset()
+					+ payload.position(), payload.remaining());
+		} else {
+			WritableByteChannel channel = Channels.newChannel(out);
+			while (payload.hasRemaining())
+				channel.write(payload);
+		}
+	}
+
+	/**
+	 * Reads one whole frame from in.
+	 */
+	static Frame read(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 6 || length > MAX_FRAME)
+			throw new IOException("Invalid frame length " + length);
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return decode(ByteBuffer.wrap(frame));
+	}
+
+	/**
+	 * Decodes a frame body, i.e. everything after the length field.
+	 */
+	static Frame decode(ByteBuffer buf) throws IOException {
+		byte version = buf.get();
+		if (version != VERSION)
+			throw new IOException("Unsupported wire version " + version);
+		byte kind = buf.get();
+		int reqId = buf.getInt();
+
+		switch (kind) {
+		case KIND_MESSAGE: {
+			int type = buf.getInt();
+			int status = buf.getInt();
+			int chunkNo = buf.getInt();
+			int offSet = buf.getInt();
+			int len = buf.getInt();
+			long dataId = buf.getLong();
+			String fileName = getStr(buf);
+			String server1 = getStr(buf);
+			String server2 = getStr(buf);
+			String data = getStr(buf);
+			Message m = new Message(type, status, fileName, server1, server2,
+					chunkNo, offSet, len, data);
+			m.dataId = dataId;
+			int payloadLen = buf.getInt();
+			if (payloadLen >= 0) {
+				m.payload = new byte[payloadLen];
+				buf.get(m.payload);
+			}
+			return new Frame(reqId, m);
+		}
+		case KIND_META_MESSAGE: {
+			int type = buf.getInt();
+			int status = buf.getInt();
+			int chunkNo = buf.getInt();
+			int offSet = buf.getInt();
+			int len = buf.getInt();
+			String fileName = getStr(buf);
+			String masterServer = getStr(buf);
+			String server1 = getStr(buf);
+			String server2 = getStr(buf);
+			String data = getStr(buf);
+			MetaMessage m = new MetaMessage(type, status, fileName, offSet,
+					len, masterServer, server1, server2, null, data);
+			m.chunkNo = chunkNo;
+			m.lease = buf.getInt();
+			int count = buf.getInt();
+			if (count >= 0) {
+				m.chunks = new int[count];
+				m.sizes = new int[count];
+				m.replicas = new String[count][];
+				for (int i = 0; i < count; i++) {
+					m.chunks[i] = buf.getInt();
+					m.sizes[i] = buf.getInt();
+					m.replicas[i] = new String[buf.getInt()];
+					for (int j = 0; j < m.replicas[i].length; j++)
+						m.replicas[i][j] = getStr(buf);
+				}
+			}
+			return new Frame(reqId, m);
+		}
+		case KIND_HEART_BEAT: {
+			int type = buf.getInt();
+			long baseVersion = buf.getLong();
+			long hbVersion = buf.getLong();
+			double requestRate = buf.getDouble();
+			long replicationBytes = buf.getLong();
+			String serverName = getStr(buf);
+			int count = buf.getInt();
+			HeartBeat hb = new HeartBeat(type, serverName, baseVersion,
+					hbVersion, count);
+			hb.requestRate = requestRate;
+			hb.replicationBytes = replicationBytes;
+			String file = null;
+			for (int i = 0; i < count; i++) {
+				String name = getStr(buf);
+				// reuse the previous String for runs of chunks of one file
+				if (file == null || !file.equals(name))
+					file = name;
+				hb.add(file, buf.getInt(), buf.getInt(), buf.get() == 1);
+			}
+			return new Frame(reqId, hb);
+		}
+		default:
+			throw new IOException("Unknown frame kind " + kind);
+		}
+	}
+
+	private static int payloadLength(Message m) {
+		if (m.payloadView != null)
+			return m.payloadView.remaining();
+		return m.payload == null ? 0 : m.payload.length;
+	}
+
+	private static byte[] bytes(String str) {
+		return str == null ? null : str.getBytes(UTF8);
+	}
+
+	private static int strSize(byte[] str) {
+		return 4 + (str == null ? 0 : str.length);
+	}
+
+	private static void putStr(ByteBuffer buf, byte[] str) {
+		if (str == null) {
+			buf.putInt(-1);
+		} else {
+			buf.putInt(str.length);
+			buf.put(str);
+		}
+	}
+
+	private static String getStr(ByteBuffer buf) {
+		int len = buf.getInt();
+		if (len < 0)
+			return null;
+		String str = new String(buf.array(), buf.arrayOffset()
+				+ buf.position(), len, UTF8);
+		buf.position(buf.position() + len);
+		return str;
+	}
+}
@@ -0,0 +1,99 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Compares MessageCodec with Java serialization for READ replies and APPEND
+ * requests carrying an 8 KB chunk payload. Serialization is measured the way
+ * Sender used it: a fresh ObjectOutputStream/ObjectInputStream per message.
+ *
+ * Usage: java MessageCodecBenchmark [iterations]
+ */
+public class MessageCodecBenchmark {
+
+	static final int PAYLOAD = 8192;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.valueOf(args[0]) : 200000;
+
+		byte[] chunk = new byte[PAYLOAD];
+		for (int i = 0; i < chunk.length; i++)
+			chunk[i] = (byte) ('a' + i % 26);
+
+		Message read = new Message(Message.READ, Message.STATUS_SUCCESS,
+				"file1.txt", "dc02.utdallas.edu", "dc03.utdallas.edu", 7, 0,
+				PAYLOAD, null);
+		read.payload = chunk;
+		Message append = new Message(Message.APPEND, Message.STATUS_REQ,
+				"file1.txt", "dc02.utdallas.edu", "dc03.utdallas.edu", 7, 0,
+				PAYLOAD, null);
+		append.payload = chunk;
+
+		System.out.println("message\tformat\tbytes\tencode ops/s\tdecode ops/s");
+		run("READ", read, iterations / 10);
+		run("APPEND", append, iterations / 10);
+		run("READ", read, iterations);
+		run("APPEND", append, iterations);
+	}
+
+	static void run(String name, Message msg, int iterations)
+			throws Exception {
+		byte[] serialized = serialize(msg);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			serialized = serialize(msg);
+		long encode = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			deserialize(serialized);
+		long decode = System.nanoTime() - start;
+		print(name, "java", serialized.length, iterations, encode, decode);
+
+		byte[] encoded = encode(msg);
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			encoded = encode(msg);
+		encode = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			decode(encoded);
+		decode = System.nanoTime() - start;
+		print(name, "codec", encoded.length, iterations, encode, decode);
+	}
+
+	static byte[] serialize(Message msg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(PAYLOAD + 512);
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(msg);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	static Message deserialize(byte[] data) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				data));
+		return (Message) in.readObject();
+	}
+
+	static byte[] encode(Message msg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(PAYLOAD + 512);
+		MessageCodec.write(bytes, 1, msg);
+		return bytes.toByteArray();
+	}
+
+	static Message decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				data));
+		return (Message) MessageCodec.read(in).msg;
+	}
+
+	static void print(String name, String format, int size, int iterations,
+			long encode, long decode) {
+		System.out.println(name + "\t" + format + "\t" + size + "\t"
+				+ (long) (iterations / (encode / 1e9)) + "\t"
+				+ (long) (iterations / (decode / 1e9)));
+	}
+}
@@ -0,0 +1,455 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead operation log and checkpoints for the MetaServer's ChunkIndex.
+ *
+ * Every change to the index (a replica recorded with its size, a replica or a
+ * whole server dropped) is appended as a record with its log sequence number
+ * and a CRC. A single flusher thread writes whatever has piled up and forces
+ * it to disk once per batch, so concurrent appends share one fsync (group
+ * commit); callers that must not answer before their change is durable wait
+ * in sync(). If a write or fsync fails the log stops there: nothing later is
+ * made durable and sync() throws the error from then on.
+ *
+ * A checkpoint is a compact binary dump of the index tagged with the LSN the
+ * log was rotated at. Recovery loads the latest checkpoint and replays the
+ * records from that LSN on; a torn record at the tail ends the replay.
+ *
+ * Files live in meta_log_dir (default metalog): checkpoint, and one
+ * oplog.<lsn> segment per checkpoint generation.
+ */
+public class MetaLog implements Runnable {
+
+	static final byte UPDATE = 1;
+	static final byte REMOVE = 2;
+
+	static final int CHECKPOINT_MAGIC = 0x47465343;
+
+	private final File dir;
+	private final ChunkIndex index;
+
+	private FileChannel segment;
+	private long segmentStart;
+	// segments rotated away from, closed once the flusher is done with them
+	private final ArrayList<FileChannel> retired = new ArrayList<FileChannel>();
+
+	// records appended but not yet handed to the flusher
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+	private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+	private long nextLsn = 1;
+	private long pendingLsn = 0;
+	private volatile long durableLsn = 0;
+	// the error that stopped the flusher, if any
+	private volatile IOException failure;
+
+	private final CRC32 crc = new CRC32();
+
+	MetaLog(File dir, ChunkIndex index) {
+		this.dir = dir;
+		this.index = index;
+	}
+
+	/**
+	 * Loads the checkpoint and log in dir into index, then opens a new log
+	 * segment and starts the flusher. Appends made by the recovery itself are
+	 * not logged again.
+	 */
+	static MetaLog open(String dirName, ChunkIndex index) throws IOException {
+		File dir = new File(dirName);
+		dir.mkdirs();
+		MetaLog log = new MetaLog(dir, index);
+		long start = System.currentTimeMillis();
+		long lsn = log.recover();
+		log.nextLsn = lsn + 1;
+		log.durableLsn = lsn;
+		log.pendingLsn = lsn;
+		log.rotate();
+		index.log = log;
+
+		Thread flusher = new Thread(log, "metalog-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+		System.out.println("Recovered metadata up to LSN " + lsn + " in "
+				+ (System.currentTimeMillis() - start) + "ms");
+		return log;
+	}
+
+	/**
+	 * Appends a record and returns its LSN. The record is durable once
+	 * sync(lsn) returns.
+	 */
+	synchronized long append(byte type, String server, String file,
+			int chunkNo, int size, boolean master) {
+		long lsn = nextLsn++;
+		if (failure != null)
+			return lsn;
+		byte[] s = server.getBytes();
+		byte[] f = file == null ? new byte[0] : file.getBytes();
+		int length = 8 + 1 + 2 + s.length + 2 + f.length + 4 + 4 + 1;
+		if (pending.remaining() < 4 + length + 8) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(
+					pending.capacity() * 2, pending.position() + length + 12));
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+		int recordStart = pending.position();
+		pending.putInt(length);
+		pending.putLong(lsn);
+		pending.put(type);
+		pending.putShort((short) s.length);
+		pending.put(s);
+		pending.putShort((short) f.length);
+		pending.put(f);
+		pending.putInt(chunkNo);
+		pending.putInt(size);
+		pending.put((byte) (master ? 1 : 0));
+		crc.reset();
+		crc.update(pending.array(), recordStart + 4, length);
+		pending.putLong(crc.getValue());
+		pendingLsn = lsn;
+		notifyAll();
+		return lsn;
+	}
+
+	synchronized long lastLsn() {
+		return nextLsn - 1;
+	}
+
+	/**
+	 * Waits until every record up to lsn is on disk. Throws the error that
+	 * stopped the log if it is not going to be.
+	 */
+	void sync(long lsn) throws IOException {
+		if (lsn <= durableLsn)
+			return;
+		synchronized (this) {
+			while (durableLsn < lsn) {
+				if (failure != null)
+					throw new IOException("Metadata log failed", failure);
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			long batchLsn;
+			FileChannel channel;
+			synchronized (this) {
+				while (pending.position() == 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				ByteBuffer tmp = writing;
+				writing = pending;
+				pending = tmp;
+				pending.clear();
+				batchLsn = pendingLsn;
+				channel = segment;
+			}
+			try {
+				writing.flip();
+				while (writing.hasRemaining())
+					channel.write(writing);
+				channel.force(false);
+			} catch (IOException e) {
+				// what reached the disk is unknown, so the batch and all
+				// after it stay not durable
+				e.printStackTrace();
+				synchronized (this) {
+					failure = e;
+					pending.clear();
+					notifyAll();
+				}
+				return;
+			}
+			writing.clear();
+			synchronized (this) {
+				durableLsn = batchLsn;
+				notifyAll();
+				closeRetired();
+			}
+		}
+	}
+
+	/**
+	 * Starts a new log segment at the next LSN, dumps the index and drops the
+	 * segments the checkpoint covers. The dump is fuzzy: changes made while it
+	 * runs are replayed from the new segment on recovery, which converges
+	 * because records are replayed in order. Records still waiting for the
+	 * flusher go to the new segment; they are older than the dump, so that is
+	 * harmless.
+	 */
+	void checkpoint() throws IOException {
+		long start;
+		synchronized (this) {
+			if (failure != null)
+				throw new IOException("Metadata log failed", failure);
+			rotate();
+			start = segmentStart;
+		}
+
+		File tmp = new File(dir, "checkpoint.tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				fos, 256 * 1024));
+		writeIndex(out, start);
+		out.flush();
+		fos.getFD().sync();
+		out.close();
+		// the old checkpoint stays in place until the new one replaces it
+		Files.move(tmp.toPath(), new File(dir, "checkpoint").toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		syncDir();
+
+		for (File f : segments()) {
+			if (segmentLsn(f) < start)
+				f.delete();
+		}
+		log("Checkpoint at LSN " + start);
+	}
+
+	// makes the rename durable before the segments it covers are deleted
+	private void syncDir() throws IOException {
+		FileChannel d = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+		try {
+			d.force(true);
+		} finally {
+			d.close();
+		}
+	}
+
+	// the flusher closes the previous segments after its last write to them
+	private void rotate() throws IOException {
+		if (segment != null)
+			retired.add(segment);
+		if (pending.position() == 0 && durableLsn == pendingLsn)
+			closeRetired();
+		segmentStart = nextLsn;
+		segment = new RandomAccessFile(new File(dir, "oplog." + segmentStart),
+				"rw").getChannel();
+		segment.position(segment.size());
+	}
+
+	private void writeIndex(DataOutputStream out, long lsn) throws IOException {
+		// server names are written once and referred to by number
+		HashMap<String, Integer> serverIds = new HashMap<String, Integer>();
+		ArrayList<String> serverNames = new ArrayList<String>();
+		for (ChunkIndex.FileEntry f : index.files.values()) {
+			for (ChunkIndex.ChunkEntry c : f.chunks.values()) {
+				for (String r : c.replicas) {
+					if (!serverIds.containsKey(r)) {
+						serverIds.put(r, serverNames.size());
+						serverNames.add(r);
+					}
+				}
+			}
+		}
+
+		out.writeInt(CHECKPOINT_MAGIC);
+		out.writeLong(lsn);
+		out.writeInt(serverNames.size());
+		for (String s : serverNames)
+			writeString(out, s);
+		out.writeInt(index.files.size());
+		for (Entry<String, ChunkIndex.FileEntry> e : index.files.entrySet()) {
+			writeString(out, e.getKey());
+			out.writeInt(e.getValue().chunks.size());
+			for (ChunkIndex.ChunkEntry c : e.getValue().chunks.values()) {
+				String[] replicas = c.replicas;
+				String master = c.master;
+				out.writeInt(c.chunkNo);
+				out.writeInt(c.size);
+				out.writeShort(master == null || !serverIds.containsKey(master) ? -1
+						: serverIds.get(master));
+				out.writeShort(replicas.length);
+				for (String r : replicas)
+					out.writeShort(serverIds.get(r));
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the index and returns the last LSN applied.
+	 */
+	private long recover() throws IOException {
+		long lsn = 0;
+		File ckpt = new File(dir, "checkpoint");
+		if (ckpt.exists())
+			lsn = readIndex(ckpt) - 1;
+
+		File[] segs = segments();
+		Arrays.sort(segs, new java.util.Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(segmentLsn(a), segmentLsn(b));
+			}
+		});
+		for (File f : segs)
+			lsn = replay(f, lsn);
+		return lsn;
+	}
+
+	private long readIndex(File ckpt) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(ckpt, "r");
+		try {
+			ByteBuffer in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+					0, raf.length());
+			if (in.getInt() != CHECKPOINT_MAGIC)
+				throw new IOException("Not a checkpoint: " + ckpt);
+			long lsn = in.getLong();
+			String[] serverNames = new String[in.getInt()];
+			for (int i = 0; i < serverNames.length; i++)
+				serverNames[i] = readString(in);
+			int files = in.getInt();
+			for (int i = 0; i < files; i++) {
+				String name = readString(in);
+				ChunkIndex.FileEntry f = new ChunkIndex.FileEntry(name);
+				int chunks = in.getInt();
+				for (int j = 0; j < chunks; j++) {
+					ChunkIndex.ChunkEntry c = new ChunkIndex.ChunkEntry(
+							in.getInt());
+					c.size = in.getInt();
+					short master = in.getShort();
+					c.master = master < 0 ? null : serverNames[master];
+					String[] replicas = new String[in.getShort()];
+					for (int k = 0; k < replicas.length; k++)
+						replicas[k] = serverNames[in.getShort()];
+					c.replicas = replicas;
+					f.chunks.put(c.chunkNo, c);
+					f.raiseMax(c.chunkNo);
+				}
+				index.files.put(name, f);
+			}
+			return lsn;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] b = s.getBytes("UTF-8");
+		out.writeShort(b.length);
+		out.write(b);
+	}
+
+	private static String readString(ByteBuffer in) throws IOException {
+		byte[] b = new byte[in.getShort() & 0xffff];
+		in.get(b);
+		return new String(b, "UTF-8");
+	}
+
+	private long replay(File seg, long lsn) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(seg), 256 * 1024));
+		CRC32 check = new CRC32();
+		try {
+			while (true) {
+				int length = in.readInt();
+				if (length <= 0 || length > 64 * 1024)
+					break;
+				byte[] record = new byte[length];
+				in.readFully(record);
+				long sum = in.readLong();
+				check.reset();
+				check.update(record, 0, length);
+				if (check.getValue() != sum) {
+					System.out.println("Torn log record in " + seg);
+					break;
+				}
+				ByteBuffer r = ByteBuffer.wrap(record);
+				long recLsn = r.getLong();
+				byte type = r.get();
+				byte[] s = new byte[r.getShort()];
+				r.get(s);
+				byte[] f = new byte[r.getShort()];
+				r.get(f);
+				int chunkNo = r.getInt();
+				int size = r.getInt();
+				boolean master = r.get() == 1;
+				if (recLsn <= lsn)
+					continue;
+				apply(type, new String(s), new String(f), chunkNo, size, master);
+				lsn = recLsn;
+			}
+		} catch (EOFException e) {
+			// end of the segment
+		} finally {
+			in.close();
+		}
+		return lsn;
+	}
+
+	private void apply(byte type, String server, String file, int chunkNo,
+			int size, boolean master) {
+		if (type == UPDATE)
+			index.update(server, file, chunkNo, size, master);
+		else if (type == REMOVE)
+			index.remove(server, file, chunkNo);
+	}
+
+	// Called holding the lock, when the flusher is not writing
+	private void closeRetired() {
+		for (FileChannel channel : retired)
+			close(channel);
+		retired.clear();
+	}
+
+	private static void close(FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private File[] segments() {
+		File[] segs = dir.listFiles(new java.io.FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name) {
+				return name.startsWith("oplog.");
+			}
+		});
+		return segs == null ? new File[0] : segs;
+	}
+
+	private static long segmentLsn(File f) {
+		return Long.valueOf(f.getName().substring("oplog.".length()));
+	}
+
+	private static void log(String message) {
+		System.out.println(message);
+	}
+}
@@ -0,0 +1,97 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * MetaServer operation log: durable metadata updates per second with group
+ * commit as the number of concurrent requests grows, then checkpoint size
+ * and the time to recover an index of many chunks from it.
+ *
+ * Usage: java MetaLogBenchmark [dir] [chunks] [updatesPerThread]
+ */
+public class MetaLogBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String dir = args.length > 0 ? args[0] : "metalog.bench";
+		int chunks = args.length > 1 ? Integer.valueOf(args[1]) : 1000000;
+		final int updates = args.length > 2 ? Integer.valueOf(args[2]) : 500;
+
+		clear(new File(dir));
+		final ChunkIndex index = new ChunkIndex();
+		final MetaLog log = MetaLog.open(dir, index);
+
+		for (int threads : new int[] { 1, 4, 16, 64 }) {
+			final int t = threads;
+			Thread[] workers = new Thread[threads];
+			long start = System.nanoTime();
+			for (int i = 0; i < threads; i++) {
+				final int id = i;
+				workers[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int n = 0; n < updates; n++) {
+								// one APPEND: three replicas, then wait for the log
+								String file = "append" + t + "." + id;
+								index.update("dc01", file, n + 1, 100, true);
+								index.update("dc02", file, n + 1, 100, false);
+								log.sync(index.update("dc03", file, n + 1, 100,
+										false));
+							}
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}
+				};
+				workers[i].start();
+			}
+			for (Thread w : workers)
+				w.join();
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%d threads: %.0f durable appends/s%n", threads,
+					threads * updates / secs);
+		}
+
+		// fill up to the requested number of chunks, three replicas each
+		int files = Math.max(1, chunks / 100);
+		index.log = null;
+		for (int i = 0; i < chunks; i++) {
+			String file = "file" + (i % files);
+			int chunkNo = i / files + 1;
+			index.update("dc0" + (i % 7 + 1), file, chunkNo, 8192, true);
+			index.update("dc0" + ((i + 1) % 7 + 1), file, chunkNo, 8192, false);
+			index.update("dc0" + ((i + 2) % 7 + 1), file, chunkNo, 8192, false);
+		}
+		index.log = log;
+		// a tail of changes after the checkpoint to replay
+		long start = System.nanoTime();
+		log.checkpoint();
+		System.out.printf("checkpoint of %d chunks: %d ms, %d KB%n", chunks,
+				(System.nanoTime() - start) / 1000000,
+				new File(dir, "checkpoint").length() / 1024);
+		long lsn = 0;
+		for (int i = 0; i < 10000; i++)
+			lsn = index.update("dc09", "tail" + (i % 100), i / 100 + 1, 8192,
+					false);
+		log.sync(lsn);
+
+		System.gc();
+		ChunkIndex recovered = new ChunkIndex();
+		start = System.nanoTime();
+		MetaLog.open(dir, recovered);
+		long ms = (System.nanoTime() - start) / 1000000;
+		int count = 0;
+		for (ChunkIndex.FileEntry f : recovered.files.values())
+			count += f.chunks.size();
+		System.out.printf("recovered %d chunks in %d ms%n", count, ms);
+		clear(new File(dir));
+	}
+
+	static void clear(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+}
@@ -8,6 +8,9 @@ public class MetaMessage implements Serializable {
 	static final int WRITE = 2;
 	static final int APPEND = 3;
 	static final int CREATE = 4;
+	// locations of a run of chunks: chunkNo is the first (0 for the last
+	// chunk of the file), len how many
+	static final int LOCATE = 12;
 	// static final int HB_SER = 5;
 	// static final int HB_REG = 6;
 	// static final int HB_ACK = 7;
@@ -28,6 +31,13 @@ public class MetaMessage implements Serializable {
 	String data;
 	int chunkNo;
 
+	// LOCATE replies: per chunk its number, size and replicas, master first
+	int[] chunks;
+	int[] sizes;
+	String[][] replicas;
+	// how long, in ms, the client may use the locations without asking again
+	int lease;
+
 	public MetaMessage(int type, int status, String fileName, int offSet,
 			int len, String masterServer,String server1,String server2, String chunkName, String data) {
 		super();
@@ -83,6 +93,12 @@ public class MetaMessage implements Serializable {
 			msgtext.append("|" + masterServer+ "|"+server1+ "|"+server2 + "|" + fileName + "|" + chunkNo
 					+ "|-->" + data);
 			break;
+		case LOCATE:
+			msgtext.append("Locate");
+			msgtext.append("|" + fileName + "|" + chunkNo + "|" + len + "|"
+					+ (chunks == null ? 0 : chunks.length) + " chunks|-->"
+					+ data);
+			break;
 		default:
 			msgtext.append("unknown");
 		}
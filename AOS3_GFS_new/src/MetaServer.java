@@ -1,11 +1,9 @@
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 
@@ -21,9 +19,58 @@ public class MetaServer {
 	 */
 	volatile static ConcurrentHashMap<String, ServerInfo> servers = new ConcurrentHashMap<String, ServerInfo>();
 
+	static final ChunkIndex index = new ChunkIndex();
+
+	static final PlacementEngine placement = new PlacementEngine();
+
+	static final ReplicationScheduler replication = new ReplicationScheduler();
+
+	static MetaLog metaLog;
+
+	static final int MAX_LOCATE = 1024;
+	static final int DEFAULT_LEASE = 60000;
+	private static int locationLease = -1;
+
+	private static final ExecutorService padding = Executors.newFixedThreadPool(4);
+
+	private static final ConcurrentHashMap<String, Object> appendLocks = new ConcurrentHashMap<String, Object>();
+
 	// volatile static Queue<Message> inQ = new LinkedList<Message>();
 
+	/**
+	 * Answers a client. APPENDs to a file are taken one at a time, so two
+	 * neither take the same space in a chunk nor both start the next chunk
+	 * on different servers, whose CREATEs would then wait on each other.
+	 */
 	static MetaMessage requestHandler(MetaMessage msg) {
+		MetaMessage reply;
+		long[] written = new long[1];
+		if (msg.type == MetaMessage.APPEND && msg.fileName != null) {
+			synchronized (appendLock(msg.fileName)) {
+				reply = handle(msg, written);
+			}
+		} else {
+			reply = handle(msg, written);
+		}
+		// the client only learns about a chunk once it is in the log; later
+		// records of other requests are not waited for
+		if (written[0] > 0 && metaLog != null) {
+			try {
+				metaLog.sync(written[0]);
+			} catch (IOException e) {
+				reply.status = MetaMessage.STATUS_FAIL;
+				reply.data = "Error:" + e.getMessage();
+			}
+		}
+		log(reply.toString());
+		return reply;
+	}
+
+	/**
+	 * The answer to msg. written[0] is raised to the LSN of the last log
+	 * record the request made.
+	 */
+	private static MetaMessage handle(MetaMessage msg, long[] written) {
 		String fname = msg.fileName;
 		int len = msg.len;
 		int offSet = msg.offSet;
@@ -35,7 +82,8 @@ public class MetaServer {
 
 		if (msg.fileName == null
 				|| (msg.type != MetaMessage.APPEND
-						&& msg.type != MetaMessage.READ && msg.type != MetaMessage.WRITE)
+						&& msg.type != MetaMessage.READ && msg.type != MetaMessage.WRITE
+						&& msg.type != MetaMessage.LOCATE)
 				|| msg.status != MetaMessage.STATUS_REQ) {
 			reply.data = "Invalid request";
 			System.out.println(reply);
@@ -51,58 +99,38 @@ public class MetaServer {
 		String servers3[] =findServer2Append(fname);
 		if(servers3!=null&&servers3.length == 3)System.out.println("Selected servers:"+servers3[0]+":"+servers3[1]+":"+servers3[2]);
 		
-			if (maxchunk <= -1 || servers3 == null) {
+			if (maxchunk <= -1) {
 				reply.data = "Error:File does not exist";
 				break;
 			}
 			
-			int chunksize = servers.get(servers3[0]).findSize(fname, maxchunk);
+			int chunksize = index.get(fname, maxchunk).size;
 			log("chunk size of " + chunksize);
 
-			if ((8192 - chunksize) >= len) {
+			if (servers3 != null && (Config.chunkSize() - chunksize) >= len) {
 				reply.masterServer = servers3[0];
 				reply.server1=servers3[1];
 				reply.server2=servers3[2];				
 				reply.chunkNo = maxchunk;
 				reply.status = MetaMessage.STATUS_SUCCESS;
 				
-				servers.get(reply.masterServer).fs.addFile(fname,
-						maxchunk , chunksize+len,true);
-				servers.get(reply.server1).fs.addFile(fname,
-						maxchunk , chunksize+len,false);
-				servers.get(reply.server2).fs.addFile(fname,
-						maxchunk , chunksize+len,false);
+				recordAppend(written, servers3, fname, maxchunk,
+						chunksize + len, true);
 
 				
 			} else {
 
-				// append fill with nulls
-				Message rpyMsg = Sender.messageToFileServer(servers3[0], Config
-						.getValue(servers3[0]), new Message(Message.APPEND,
-						Message.STATUS_REQ, fname, servers3[1], servers3[2], (maxchunk), 0, 0, null));
-
-				if (rpyMsg != null && rpyMsg.status == Message.STATUS_SUCCESS) {
-					log(rpyMsg.toString());
-
-					servers.get(servers3[0]).fs.addFile(fname,
-							maxchunk , 8192,false);
-					servers.get(servers3[1]).fs.addFile(fname,
-							maxchunk , 8192,false);
-					servers.get(servers3[2]).fs.addFile(fname,
-							maxchunk , 8192,false);
-
-				} else {
-					if (rpyMsg != null)
-						log(rpyMsg.data);
-					reply.data = "Error:Failed to append nulls:" + fname;
-
-					log("" + reply.data);
-
-					break;
-				}
-
-				//So far we are getting top 3 available servers
-				String[] available = MetaServer.loadBalance();
+				// the chunk is closed for appends right away; the chunk servers
+				// fill it with nulls in the background. A chunk that lost a
+				// replica is closed as well, so appends go on in a new chunk
+				// until it is copied.
+				String[] closed = servers3 != null ? servers3 : index.get(
+						fname, maxchunk).ordered();
+				recordAppend(written, closed, fname, maxchunk,
+						Config.chunkSize(), false);
+				padChunk(closed, fname, maxchunk);
+
+				String[] available = place();
 				if(available.length >=3 ){
 					reply.masterServer = available[0];
 					reply.server1 = available[1];
@@ -126,17 +154,16 @@ public class MetaServer {
 					break;
 				}
 
-				if (rpyMsg.status == Message.STATUS_SUCCESS
-						&& rpy2Msg.status == Message.STATUS_SUCCESS) {
+				if (rpy2Msg.status == Message.STATUS_SUCCESS) {
 					reply.chunkNo = maxchunk + 1;
 					reply.status = MetaMessage.STATUS_SUCCESS;
 
-					servers.get(reply.masterServer).fs.addFile(fname,
-							maxchunk + 1, len,true);
-					servers.get(reply.server1).fs.addFile(fname,
-							maxchunk + 1, len,false);
-					servers.get(reply.server2).fs.addFile(fname,
-							maxchunk + 1, len,false);
+					logged(written, recordChunk(reply.masterServer, fname,
+							maxchunk + 1, len,true));
+					logged(written, recordChunk(reply.server1, fname,
+							maxchunk + 1, len,false));
+					logged(written, recordChunk(reply.server2, fname,
+							maxchunk + 1, len,false));
 				}
 
 			}
@@ -151,7 +178,7 @@ public class MetaServer {
 				break;
 			}
 
-			String[] available = MetaServer.loadBalance();
+			String[] available = place();
 			if(available.length >=3 ){
 				reply.masterServer = available[0];
 				reply.server1 = available[1];
@@ -171,38 +198,57 @@ public class MetaServer {
 
 			if (rpyMsg == null || rpyMsg.status == Message.STATUS_FAIL) {
 				reply.data = "Error:Create file on Server failed";
+				break;
 			} else {
 				log(rpyMsg.toString());
 			}
 
 			if (rpyMsg.status == Message.STATUS_SUCCESS) {
-				servers.get(reply.masterServer).fs.addFile(fname, 1, len,true);
-				servers.get(reply.server1).fs.addFile(fname, 1, len,true);
-				servers.get(reply.server2).fs.addFile(fname, 1, len,true);
+				logged(written, recordChunk(reply.masterServer, fname, 1, len,true));
+				logged(written, recordChunk(reply.server1, fname, 1, len,false));
+				logged(written, recordChunk(reply.server2, fname, 1, len,false));
 				reply.fileName = fname;
 				reply.chunkNo = 1;
 				reply.status = MetaMessage.STATUS_SUCCESS;
 			}
 			break;
 
+		case MetaMessage.LOCATE:
+			// a run of chunks in one round trip, for streaming clients;
+			// chunkNo 0 asks for the last chunk
+			int last = findMaxchunk(fname);
+			if (last <= -1) {
+				reply.data = "Error:File does not exist";
+				break;
+			}
+			int first = msg.chunkNo > 0 ? msg.chunkNo : last;
+			int count = Math.max(0, Math.min(Math.min(msg.len, MAX_LOCATE),
+					last - first + 1));
+			reply.chunks = new int[count];
+			reply.sizes = new int[count];
+			reply.replicas = new String[count][];
+			for (int i = 0; i < count; i++) {
+				ChunkIndex.ChunkEntry entry = index.get(fname, first + i);
+				reply.chunks[i] = first + i;
+				reply.sizes[i] = entry == null ? 0 : entry.size;
+				reply.replicas[i] = entry == null ? new String[0] : entry
+						.ordered();
+			}
+			reply.chunkNo = last;
+			reply.len = Config.chunkSize();
+			reply.lease = locationLease();
+			reply.status = MetaMessage.STATUS_SUCCESS;
+			break;
+
 		case MetaMessage.READ:
 
 			int maxchunkSize = -1;
-			for (Entry<String, ServerInfo> e : servers.entrySet()) {
-
-				if(e.getValue().fs !=null) log(e.getValue().fs.toString());
-				else continue;
-
-				int chunkSize = e.getValue().findSize(fname, offSet / 8192 + 1);
-
-				log(e.getValue() + " chunksize of " + (offSet / 8192 + 1) + ":"
-						+ chunkSize);
-
-				if (chunkSize > -1 && e.getValue().fs.isMaster(fname)) {
-					masterServer  = e.getKey();
-					maxchunkSize = chunkSize;
-					break;
-				}
+			ChunkIndex.ChunkEntry chunk = index.get(fname, offSet / Config.chunkSize() + 1);
+			if (chunk != null && chunk.replicas.length > 0) {
+				masterServer = chunk.ordered()[0];
+				maxchunkSize = chunk.size;
+				log(chunk + " chunksize of " + (offSet / Config.chunkSize() + 1) + ":"
+						+ maxchunkSize);
 			}
 
 			if (maxchunkSize <= -1) {
@@ -212,12 +258,12 @@ public class MetaServer {
 
 			reply.masterServer = masterServer ;
 			reply.fileName = fname;
-			reply.chunkNo = offSet / 8192 + 1;
-			reply.offSet = (offSet % 8192);
+			reply.chunkNo = offSet / Config.chunkSize() + 1;
+			reply.offSet = (offSet % Config.chunkSize());
 
-			log("Available size: " + maxchunkSize + "-" + (offSet % 8192) + "="
-					+ (maxchunkSize - (offSet % 8192)));
-			if (maxchunkSize - (offSet % 8192) >= 0) {
+			log("Available size: " + maxchunkSize + "-" + (offSet % Config.chunkSize()) + "="
+					+ (maxchunkSize - (offSet % Config.chunkSize())));
+			if (maxchunkSize - (offSet % Config.chunkSize()) >= 0) {
 				reply.status = MetaMessage.STATUS_SUCCESS;
 
 			} else {
@@ -227,181 +273,282 @@ public class MetaServer {
 
 			break;
 		}
-		log(reply.toString());
 		return reply;
 	}
 	/**
+	 * Queues the chunks of a failed server for re-replication.
 	 * 
 	 * @param serverName
 	 */
-	synchronized static void replicateFailedNode(String serverName){
+	static void replicateFailedNode(String serverName){
 		System.out.println("Replication started...."+serverName);
-		PriorityQueue<ServerInfo> sortedServs = new PriorityQueue<ServerInfo>(20,
-				new ServerComparator());
-		PriorityQueue<ServerInfo> remainingServs = new PriorityQueue<ServerInfo>(20,
-				new ServerComparator());
-		FileSystem failedFs = null;
-		
-		
-	    Iterator it = servers.entrySet().iterator();
-	    while (it.hasNext()) {
-	        Map.Entry pairs = (Map.Entry)it.next();
-//	        System.out.println(pairs.getKey() + " = " + ((ServerInfo)pairs.getValue()).toString());
-	        if(!((String)pairs.getKey()).equals(serverName)) 
-	        	sortedServs.add((ServerInfo) pairs.getValue());
-	        else
-	        	failedFs = ((ServerInfo) pairs.getValue()).fs;
-	    }
-	    
-	    if(sortedServs.size()<3) return ;
-	    
-	    System.out.println(servers.get(serverName));
-	    
-	    if(servers.get(serverName).fs==null || servers.get(serverName).fs.fileInfo == null){
-	    	System.out.println("Nothing to replicate");
-	    }
-	    
-		for (Entry<String, File> e : servers.get(serverName).fs.fileInfo.entrySet()) {
-			String fileName = e.getKey() ;
-			Integer fileChunks[] = e.getValue().fileChunks.keySet().toArray(new Integer[e.getValue().fileChunks.size()]);
-			
-			for(Integer chunkNo:fileChunks){
-				System.out.println("coping:"+fileName+chunkNo);
-				String destination = null;
-				while(!sortedServs.isEmpty()){
-					ServerInfo dest = sortedServs.poll();
-					if(dest.findSize(fileName, chunkNo)>-1){
-						remainingServs.add(dest);
-					}else if(destination ==null){
-						destination = dest.name;
-					}
-					if(remainingServs.size()>0 && destination!=null){
-					System.out.println("coping:"+fileName+chunkNo+remainingServs.peek().name+"-->"+destination);
-					FileOperations.copyFile(remainingServs.peek().name, destination, fileName+chunkNo);
-					System.out.println("copied to:"+destination);
-					servers.get(destination).fs.addFile(fileName, chunkNo, e.getValue().fileChunks.get(chunkNo), servers.get(destination).fs.isMaster(fileName));
-					sortedServs.add(dest);
-					while(!remainingServs.isEmpty()){
-						sortedServs.add(remainingServs.poll());							
-					}
-					break;
-
-				}
-				
-				}
-			}
+		ServerInfo info = servers.get(serverName);
+		if (info == null || info.fs == null || info.fs.fileInfo == null) {
+			System.out.println("Nothing to replicate");
+			return;
 		}
-
+		replication.failed(serverName, info.fs);
 	}
 	
+	static Object appendLock(String fname) {
+		Object lock = appendLocks.get(fname);
+		if (lock == null) {
+			appendLocks.putIfAbsent(fname, new Object());
+			lock = appendLocks.get(fname);
+		}
+		return lock;
+	}
+
 	/**
 	 * 
 	 * @param fname
 	 * @return
 	 */
 	private static int findMaxchunk(String fname) {
-		int maxchunk=-1;
-		for (Entry<String, ServerInfo> e : servers.entrySet()) {
-			if(!e.getValue().status)
-				continue;
-			int chunk = e.getValue().findMaxChunk(fname);
-			if (chunk > maxchunk) {
-				maxchunk = chunk;
-			}
-		}
-		return maxchunk;
+		return index.maxChunk(fname);
 	}
 
 
 	/**
+	 * The servers to append to the last chunk of the file, master first, or
+	 * null if there are fewer than three. A chunk that is being copied to a
+	 * new server after losing a replica takes appends on that server too, so
+	 * that the copy does not miss them.
 	 * 
 	 * @param fileName
 	 * @return
 	 */
 	static String[] findServer2Append(String fileName){
-		int maxchunk=-1;
-		maxchunk = findMaxchunk(fileName);
-		ArrayList<String> servs = new ArrayList<String>();
-		
-		for (Entry<String, ServerInfo> e : servers.entrySet()) {
-
-			if(!e.getValue().status)
-				continue;
-			
-			if(e.getValue().fs !=null) log(e.getValue().fs.toString());
-			else continue;
-
-			int chunkSize = e.getValue().findSize(fileName, maxchunk);
-			System.out.println(fileName+"("+chunkSize + ")"+e.getKey());
-
-			if (chunkSize > -1){
-			if( e.getValue().fs.isMaster(fileName)) {
-				servs.add(0,e.getKey());
-			}else if(servs.size()<3){
-				servs.add(e.getKey());
-			}else {
-				System.out.println("ERROR: More than 3 replicas found");
-				break;
-			}
-			}
+		ChunkIndex.ChunkEntry last = index.last(fileName);
+		if (last == null)
+			return null;
+		String servArr[] = last.ordered();
+		log("FindServers:" + last);
+
+		String copy = replication.appending(fileName, last.chunkNo);
+		if (copy != null && !Arrays.asList(servArr).contains(copy)) {
+			servArr = Arrays.copyOf(servArr, servArr.length + 1);
+			servArr[servArr.length - 1] = copy;
 		}
-		String servArr[] = servs.toArray(new String[servs.size()]);
-		System.out.println("FindServers:"+servArr[0]+":"+servArr[1]+":"+servArr[2]);
-
-		if(servArr.length==3){
-			return servArr;		
+		if(servArr.length>=ReplicationScheduler.REPLICAS){
+			return Arrays.copyOf(servArr, ReplicationScheduler.REPLICAS);
 		}
 		return null;
 		}
 
-	private static class ServerComparator implements Comparator<ServerInfo> {
-		@Override
-		public int compare(ServerInfo x, ServerInfo y) {
-			if (x.size < y.size) {
-				return -1;
+	/**
+	 * How long clients may cache chunk locations, location_lease in
+	 * config.properties (ms). Replica changes reach a client when its lease
+	 * runs out or when a chunk server tells it the location is stale.
+	 */
+	static int locationLease() {
+		if (locationLease < 0) {
+			String value = Config.getValue("location_lease");
+			locationLease = value == null ? DEFAULT_LEASE : Integer
+					.valueOf(value);
+		}
+		return locationLease;
+	}
+
+	/**
+	 * Fills the rest of a chunk with nulls on its replicas. Nothing waits for
+	 * it: appends that were handed the chunk before it was closed and commit
+	 * after the padding are refused as full and retried on the next chunk.
+	 * Three replicas are padded through the first, like an append; fewer,
+	 * as a chunk that lost one, each pad their own copy.
+	 */
+	static void padChunk(final String[] replicas, final String fname,
+			final int chunkNo) {
+		padding.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (replicas.length == 3) {
+					pad(replicas[0], Config.getValue(replicas[0]), replicas[1],
+							replicas[2]);
+					return;
+				}
+				for (String r : replicas)
+					pad(r, Server.serverPort(r), null, null);
 			}
-			if (x.size > y.size) {
-				return 1;
+
+			private void pad(String server, String port, String server1,
+					String server2) {
+				Message rpyMsg = Sender.messageToFileServer(server, port,
+						new Message(Message.APPEND, Message.STATUS_REQ, fname,
+								server1, server2, chunkNo, 0, 0, null));
+				if (rpyMsg != null && rpyMsg.status == Message.STATUS_SUCCESS)
+					log(rpyMsg.toString());
+				else
+					System.out.println("Error:Failed to append nulls:" + fname
+							+ chunkNo + (rpyMsg == null ? "" : ":" + rpyMsg.data));
 			}
-			return 0;
+		});
+	}
+
+	/**
+	 * Records a chunk replica in the server's metadata and in the index, and
+	 * returns the LSN to sync on for it, 0 if nothing is logged.
+	 */
+	static long recordChunk(String server, String fname, int chunkNo,
+			int size, boolean master) {
+		FileSystem fs = servers.get(server).fs;
+		fs.addFile(fname, chunkNo, size, master);
+		long lsn = index.update(server, fname, chunkNo, size, master);
+		placement.setBytes(server, fs.size.get());
+		// nothing new: the record that made it so is in the log already
+		if (lsn == 0 && metaLog != null)
+			lsn = metaLog.lastLsn();
+		return lsn;
+	}
+
+	/**
+	 * recordChunk for the servers of an append, the first one as master if
+	 * master is set. The destination of a copy in progress is left out; it is
+	 * recorded once the copy is done.
+	 */
+	private static void recordAppend(long[] written, String[] servers,
+			String fname, int chunkNo, int size, boolean master) {
+		ChunkIndex.ChunkEntry entry = index.get(fname, chunkNo);
+		for (int i = 0; i < servers.length; i++) {
+			if (entry != null
+					&& !Arrays.asList(entry.replicas).contains(servers[i]))
+				continue;
+			logged(written, recordChunk(servers[i], fname, chunkNo, size,
+					master && i == 0));
 		}
+	}
 
+	private static void logged(long[] written, long lsn) {
+		written[0] = Math.max(written[0], lsn);
 	}
 
+	/**
+	 * Three servers for the replicas of a new chunk, master first, or fewer
+	 * if there are not enough live servers.
+	 */
+	private static String[] place() {
+		String[] chosen = placement.place(3);
+		System.out.println("Load:" + Arrays.toString(chosen));
+		return chosen;
+	}
 
-	private static String[] loadBalance() {
-		PriorityQueue<ServerInfo> sortedServs = new PriorityQueue<ServerInfo>(20,
-				new ServerComparator());
-		
-		ArrayList<String> top = new ArrayList<String>();
-		
-	    Iterator it = servers.entrySet().iterator();
-	    while (it.hasNext()) {
-	        Map.Entry pairs = (Map.Entry)it.next();
-//	        System.out.println(pairs.getKey() + " = " + ((ServerInfo)pairs.getValue()).toString());
-			if(!((ServerInfo)pairs.getValue()).status)
-				continue;
-	        sortedServs.add((ServerInfo) pairs.getValue());
-	    }
-	    
-	    while(!sortedServs.isEmpty()){
-	    	ServerInfo sInfo = sortedServs.poll();
-//	    	System.out.println(sInfo.name);
-	    	if(sInfo.status){
-	    		top.add(sInfo.name);
-	    	}
-	    }
-
-	    String[] topArr = top.toArray(new String[top.size()]);
-	    
-	    System.out.println("Load:"+Arrays.toString(topArr));
-	    
-	    return topArr;
+	/**
+	 * Applies a chunk server heartbeat. A full snapshot (re)registers the
+	 * server; a delta is applied only on top of the version it was computed
+	 * against, otherwise the server is asked to resync with a full snapshot.
+	 */
+	static HeartBeat heartBeat(HeartBeat hb) {
+		HeartBeat reply = new HeartBeat(HeartBeat.ACK, hb.serverName,
+				hb.baseVersion, hb.version, 0);
+		ServerInfo info = servers.get(hb.serverName);
+
+		if (hb.type == HeartBeat.FULL || hb.type == HeartBeat.REGISTER) {
+			FileSystem fs = new FileSystem(hb.serverName);
+			boolean[] kept = new boolean[hb.count];
+			for (int i = 0; i < hb.count; i++) {
+				if (hb.type == HeartBeat.REGISTER
+						&& stale(hb.serverName, hb.files[i], hb.chunks[i],
+								hb.sizes[i])) {
+					log("Stale " + hb.files[i] + ":" + hb.chunks[i] + " on "
+							+ hb.serverName);
+					reply.add(hb.files[i], hb.chunks[i], -1, false);
+					continue;
+				}
+				kept[i] = true;
+				fs.addFile(hb.files[i], hb.chunks[i], hb.sizes[i], hb.master[i]);
+			}
+			updateMetaData(hb.serverName, fs);
+			info = servers.get(hb.serverName);
+			info.version = hb.version;
+			for (FileSystem.ChunkKey k : index.retain(hb.serverName, fs)) {
+				log("Lost " + k.file + ":" + k.chunkNo + " on " + hb.serverName);
+				replication.add(k.file, k.chunkNo, 0);
+			}
+			for (int i = 0; i < hb.count; i++) {
+				if (kept[i])
+					index.update(hb.serverName, hb.files[i], hb.chunks[i],
+							hb.sizes[i], hb.master[i]);
+			}
+		} else if (info == null || !info.status
+				|| info.version != hb.baseVersion) {
+			reply.type = HeartBeat.RESYNC;
+			log("Resync " + hb.serverName + " at " + hb.baseVersion);
+			return reply;
+		} else {
+			info.applyDelta(hb);
+			for (int i = 0; i < hb.count; i++) {
+				if (hb.sizes[i] < 0) {
+					// dropped by the server, as a corrupt replica is
+					index.remove(hb.serverName, hb.files[i], hb.chunks[i]);
+					replication.add(hb.files[i], hb.chunks[i], 0);
+				} else
+					index.update(hb.serverName, hb.files[i], hb.chunks[i],
+							hb.sizes[i], hb.master[i]);
+			}
+		}
+		info.lastHeartBeat = System.currentTimeMillis();
+		placement.report(hb.serverName, info.fs.size.get(), hb.requestRate,
+				hb.replicationBytes);
+		log("HB received:" + hb);
+		return reply;
+	}
+
+	/**
+	 * Whether the copy of a chunk a chunk server kept from before it started
+	 * is stale: shorter than the chunk, as when appends went on while the
+	 * server was down, or one more copy of a chunk that has its replicas
+	 * elsewhere by now. Only while another live server holds the chunk, so
+	 * the last copy is never dropped.
+	 */
+	static boolean stale(String server, String file, int chunkNo, int size) {
+		ChunkIndex.ChunkEntry entry = index.get(file, chunkNo);
+		if (entry == null)
+			return false;
+		boolean held = false;
+		int others = 0;
+		for (String r : entry.replicas) {
+			ServerInfo info = servers.get(r);
+			if (r.equals(server))
+				held = true;
+			else if (info != null && info.status)
+				others++;
+		}
+		if (others == 0)
+			return false;
+		if (size < entry.size)
+			return true;
+		if (replication.copying(file, chunkNo))
+			others++;
+		return !held && others >= ReplicationScheduler.REPLICAS;
+	}
+
+	/**
+	 * Marks servers that missed maxretry heartbeats in a row as failed and
+	 * re-replicates their chunks.
+	 */
+	static void monitorHeartBeats(long interval, int maxRetry) {
+		while (true) {
+			try {
+				Thread.sleep(interval);
+				long now = System.currentTimeMillis();
+				for (Entry<String, ServerInfo> e : servers.entrySet()) {
+					ServerInfo info = e.getValue();
+					if (info.status
+							&& now - info.lastHeartBeat > interval * maxRetry) {
+						System.out.println("Missed heartbeats from "
+								+ e.getKey());
+						setServer(e.getKey(), false, null);
+						replicateFailedNode(e.getKey());
+					}
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	static boolean updateMetaData(String serverName, FileSystem fs) {
 
-		fs = new FileSystem(fs);
 		if (serverName == null)
 			return false;
 		if (servers.get(serverName) == null) {
@@ -412,7 +559,7 @@ public class MetaServer {
 			servers.get(serverName).updateMetaData(serverName, fs);
 		}
 		log("After update:" + servers.get(serverName).fs);
-		System.out.println("Current FS:" + servers.get(serverName).fs);
+		placement.setLive(serverName, servers.get(serverName).status);
 
 		return true;
 	}
@@ -420,19 +567,84 @@ public class MetaServer {
 	static boolean setServer(String serverName, boolean status, FileSystem fs) {
 		if (serverName == null)
 			return false;
+		placement.setLive(serverName, status);
 		if (servers.get(serverName) == null) {
 			servers.put(serverName, new ServerInfo(serverName, status, fs));
 			return true;
 		} else {
 			servers.get(serverName).setStatus(status);
+			if (!status)
+				index.removeServer(serverName, servers.get(serverName).fs);
 			return true;
 		}
 	}
 
+	/**
+	 * Rebuilds the index from the checkpoint and operation log, and the
+	 * per-server metadata from the index. Restored servers count as alive
+	 * until they miss their heartbeats; their first heartbeat is answered
+	 * with RESYNC, so each sends a full snapshot.
+	 */
+	static void recover() throws Exception {
+		String dir = Config.getValue("meta_log_dir");
+		metaLog = MetaLog.open(dir == null ? "metalog" : dir, index);
+
+		for (ChunkIndex.FileEntry f : index.files.values()) {
+			for (ChunkIndex.ChunkEntry c : f.chunks.values()) {
+				for (String r : c.replicas) {
+					ServerInfo info = servers.get(r);
+					if (info == null) {
+						info = new ServerInfo(r, true, new FileSystem(r));
+						servers.put(r, info);
+					}
+					info.fs.addFile(f.name, c.chunkNo, c.size,
+							r.equals(c.master));
+				}
+			}
+		}
+		long now = System.currentTimeMillis();
+		for (ServerInfo info : servers.values()) {
+			info.size = info.fs.size.get();
+			info.lastHeartBeat = now;
+			placement.setLive(info.name, true);
+			placement.setBytes(info.name, info.size);
+		}
+		System.out.println("Restored " + index.files.size() + " files on "
+				+ servers.size() + " servers");
+	}
+
+	static void checkpoints(long interval) {
+		while (true) {
+			try {
+				metaLog.checkpoint();
+				Thread.sleep(interval);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	public static void main(String[] args) throws Exception {
 		int port = Integer.valueOf(Config.getValue("metaport"));
 		int reqPort = Integer.valueOf(Config.getValue("meta_req_port"));
 
+		recover();
+		String checkpoint = Config.getValue("checkpoint_interval");
+		final long checkpointInterval = (checkpoint == null ? 300 : Integer
+				.valueOf(checkpoint)) * 1000L;
+		Thread checkpointer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				checkpoints(checkpointInterval);
+			}
+		});
+		checkpointer.setDaemon(true);
+		checkpointer.start();
+
+		Thread replicator = new Thread(replication);
+		replicator.setDaemon(true);
+		replicator.start();
+
 		Thread HBListener = new Thread(new ListenerWrapper(port,
 				ListenerWrapper.DEMON));
 		HBListener.setPriority(Thread.MAX_PRIORITY);
@@ -442,6 +654,20 @@ public class MetaServer {
 				ListenerWrapper.META_REQ));
 		RequestListener.setPriority(Thread.MIN_PRIORITY + 4);
 		RequestListener.start();
+
+		String heartbeat = Config.getValue("heartbeat");
+		String maxretry = Config.getValue("maxretry");
+		final long interval = (heartbeat == null ? 5 : Integer
+				.valueOf(heartbeat)) * 1000L;
+		final int maxRetry = maxretry == null ? 3 : Integer.valueOf(maxretry);
+		Thread monitor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				monitorHeartBeats(interval, maxRetry);
+			}
+		});
+		monitor.setDaemon(true);
+		monitor.start();
 		HBListener.join();
 		// while (true) {
 		// Thread.sleep(10000);
@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Chooses the chunk servers for new chunks.
+ *
+ * Each live server has a cost: the bytes it stores, the requests per second
+ * it reported in its last heartbeat, and the replication traffic it is
+ * carrying (pushes buffered on the server plus copies the MetaServer has
+ * started to it), each relative to the cluster mean and weighted. A replica
+ * goes to the cheaper of two live servers sampled at random, so placing a
+ * chunk costs the same whatever the size of the cluster and never sorts the
+ * servers. Sampling rather than always taking the cheapest also keeps a
+ * burst of creates between two heartbeats from all landing on the same
+ * server.
+ *
+ * The replicas of a chunk go to different failure domains, set by
+ * failure_domains in config.properties: groups of hosts separated by ';',
+ * the hosts of a group by ','. A host in no group is a domain of its own.
+ * With fewer domains than replicas the rest are placed on any other server.
+ *
+ * The live servers are kept in an array that is only rebuilt when a server
+ * joins or fails; the totals behind the means are kept up to date as the
+ * servers report.
+ */
+public class PlacementEngine {
+
+	static final double BYTES_WEIGHT = 1.0;
+	static final double RATE_WEIGHT = 1.0;
+	static final double REPLICATION_WEIGHT = 0.5;
+	// samples per replica before giving up on a distinct domain
+	static final int TRIES = 8;
+
+	private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+	private final HashMap<String, String> domains;
+	private volatile Node[] live = new Node[0];
+
+	// sums over the live servers
+	private long totalBytes;
+	private double totalRate;
+	private long totalReplication;
+
+	PlacementEngine() {
+		this(Config.getValue("failure_domains"));
+	}
+
+	PlacementEngine(String failureDomains) {
+		domains = parseDomains(failureDomains);
+	}
+
+	static HashMap<String, String> parseDomains(String value) {
+		HashMap<String, String> domains = new HashMap<String, String>();
+		if (value == null)
+			return domains;
+		String[] groups = value.split(";");
+		for (int i = 0; i < groups.length; i++) {
+			for (String host : groups[i].split(",")) {
+				if (host.trim().length() > 0)
+					domains.put(host.trim(), "domain" + i);
+			}
+		}
+		return domains;
+	}
+
+	String domain(String server) {
+		String d = domains.get(server);
+		return d == null ? server : d;
+	}
+
+	/**
+	 * Marks a server alive or failed. Only a change rebuilds the array of
+	 * live servers.
+	 */
+	synchronized void setLive(String server, boolean alive) {
+		Node n = node(server);
+		if (n.alive == alive)
+			return;
+		n.alive = alive;
+		int sign = alive ? 1 : -1;
+		totalBytes += sign * n.bytes;
+		totalRate += sign * n.rate;
+		totalReplication += sign * n.replication();
+
+		ArrayList<Node> list = new ArrayList<Node>(Arrays.asList(live));
+		if (alive)
+			list.add(n);
+		else
+			list.remove(n);
+		live = list.toArray(new Node[list.size()]);
+	}
+
+	/**
+	 * What a server reported in a heartbeat: the bytes it stores, requests
+	 * per second and bytes of pushes it holds.
+	 */
+	synchronized void report(String server, long bytes, double rate,
+			long replication) {
+		Node n = node(server);
+		if (n.alive) {
+			totalBytes += bytes - n.bytes;
+			totalRate += rate - n.rate;
+			totalReplication += replication - n.reported;
+		}
+		n.bytes = bytes;
+		n.rate = rate;
+		n.reported = replication;
+	}
+
+	/**
+	 * The bytes a server stores as the MetaServer accounts for them, ahead of
+	 * its next heartbeat.
+	 */
+	synchronized void setBytes(String server, long bytes) {
+		Node n = node(server);
+		if (n.alive)
+			totalBytes += bytes - n.bytes;
+		n.bytes = bytes;
+	}
+
+	/**
+	 * Adds (or with a negative delta removes) replication traffic the
+	 * MetaServer started to or from a server.
+	 */
+	synchronized void addReplication(String server, long delta) {
+		Node n = node(server);
+		if (n.alive)
+			totalReplication += delta;
+		n.copying += delta;
+	}
+
+	/**
+	 * Up to count live servers for the replicas of a new chunk, master first,
+	 * none of them in exclude.
+	 */
+	String[] place(int count, String... exclude) {
+		Node[] nodes = live;
+		HashSet<String> excluded = new HashSet<String>(Arrays.asList(exclude));
+		ArrayList<Node> chosen = new ArrayList<Node>(count);
+		HashSet<String> used = new HashSet<String>();
+		for (String e : exclude)
+			used.add(domain(e));
+
+		double[] means = means(nodes.length);
+		while (chosen.size() < count) {
+			Node n = sample(nodes, excluded, chosen, used, means, true);
+			if (n == null)
+				n = sample(nodes, excluded, chosen, used, means, false);
+			if (n == null)
+				break;
+			chosen.add(n);
+			used.add(n.domain);
+		}
+
+		String[] names = new String[chosen.size()];
+		for (int i = 0; i < names.length; i++)
+			names[i] = chosen.get(i).name;
+		return names;
+	}
+
+	/**
+	 * The cheaper of two eligible servers sampled at random. If TRIES
+	 * samples find none, falls back to a scan, which only happens when few
+	 * servers are eligible.
+	 */
+	private Node sample(Node[] nodes, HashSet<String> excluded,
+			ArrayList<Node> chosen, HashSet<String> used, double[] means,
+			boolean distinct) {
+		if (nodes.length == 0)
+			return null;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Node best = null;
+		int found = 0;
+		for (int i = 0; i < TRIES && found < 2; i++) {
+			Node n = nodes[random.nextInt(nodes.length)];
+			if (n == best || !eligible(n, excluded, chosen, used, distinct))
+				continue;
+			if (best == null || cost(n, means) < cost(best, means))
+				best = n;
+			found++;
+		}
+		if (best != null)
+			return best;
+
+		ArrayList<Node> rest = new ArrayList<Node>();
+		for (Node n : nodes) {
+			if (eligible(n, excluded, chosen, used, distinct))
+				rest.add(n);
+		}
+		if (rest.isEmpty())
+			return null;
+		Collections.shuffle(rest, random);
+		best = rest.get(0);
+		if (rest.size() > 1 && cost(rest.get(1), means) < cost(best, means))
+			best = rest.get(1);
+		return best;
+	}
+
+	private boolean eligible(Node n, HashSet<String> excluded,
+			ArrayList<Node> chosen, HashSet<String> used, boolean distinct) {
+		return n.alive && !excluded.contains(n.name) && !chosen.contains(n)
+				&& (!distinct || !used.contains(n.domain));
+	}
+
+	private synchronized double[] means(int count) {
+		if (count == 0)
+			return new double[3];
+		return new double[] { (double) totalBytes / count, totalRate / count,
+				(double) totalReplication / count };
+	}
+
+	double cost(Node n, double[] means) {
+		double cost = 0;
+		if (means[0] > 0)
+			cost += BYTES_WEIGHT * n.bytes / means[0];
+		if (means[1] > 0)
+			cost += RATE_WEIGHT * n.rate / means[1];
+		if (means[2] > 0)
+			cost += REPLICATION_WEIGHT * n.replication() / means[2];
+		return cost;
+	}
+
+	private Node node(String server) {
+		Node n = nodes.get(server);
+		if (n == null) {
+			nodes.putIfAbsent(server, new Node(server, domain(server)));
+			n = nodes.get(server);
+		}
+		return n;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		double[] means = means(live.length);
+		for (Node n : live)
+			sb.append(n.name).append('(').append(n.bytes).append("B,")
+					.append(String.format("%.1f", n.rate)).append("/s,")
+					.append(n.replication()).append("B repl,")
+					.append(String.format("%.2f", cost(n, means))).append(") ");
+		return sb.toString();
+	}
+
+	static class Node {
+		final String name;
+		final String domain;
+		volatile boolean alive;
+		volatile long bytes;
+		volatile double rate;
+		// replication traffic reported by the server and started by the
+		// MetaServer
+		volatile long reported;
+		volatile long copying;
+
+		Node(String name, String domain) {
+			this.name = name;
+			this.domain = domain;
+		}
+
+		long replication() {
+			return reported + copying;
+		}
+	}
+}
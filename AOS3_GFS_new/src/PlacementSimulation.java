@@ -0,0 +1,224 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Replays a synthetic trace of creates and appends against the old placement
+ * (every live server sorted by the size of its last heartbeat, the three
+ * smallest taken) and against PlacementEngine, and prints the skew in bytes
+ * stored and requests served per server, how many chunks have two replicas
+ * in one failure domain, and the time to place a chunk.
+ *
+ * Appends go to files picked from a Zipf distribution, so a few hot files
+ * take most of the requests. Servers report in a heartbeat every
+ * heartbeatOps operations, and extra empty servers join half way through.
+ *
+ * Usage: java PlacementSimulation [servers] [domains] [ops] [files]
+ * [heartbeatOps] [joining]
+ */
+public class PlacementSimulation {
+
+	static final long CHUNK = 64L * 1024 * 1024;
+	static final int MAX_APPEND = 1024 * 1024;
+	static final double ZIPF = 1.1;
+
+	final int servers;
+	final int domains;
+	final int ops;
+	final int files;
+	final int heartbeatOps;
+	final int joining;
+
+	PlacementSimulation(int servers, int domains, int ops, int files,
+			int heartbeatOps, int joining) {
+		this.servers = servers;
+		this.domains = domains;
+		this.ops = ops;
+		this.files = files;
+		this.heartbeatOps = heartbeatOps;
+		this.joining = joining;
+	}
+
+	public static void main(String[] args) {
+		int servers = args.length > 0 ? Integer.valueOf(args[0]) : 20;
+		int domains = args.length > 1 ? Integer.valueOf(args[1]) : 4;
+		int ops = args.length > 2 ? Integer.valueOf(args[2]) : 2000000;
+		int files = args.length > 3 ? Integer.valueOf(args[3]) : 2000;
+		int heartbeatOps = args.length > 4 ? Integer.valueOf(args[4]) : 5000;
+		int joining = args.length > 5 ? Integer.valueOf(args[5]) : 2;
+
+		PlacementSimulation sim = new PlacementSimulation(servers, domains,
+				ops, files, heartbeatOps, joining);
+		System.out.printf(
+				"%d servers (+%d joining) in %d domains, %d ops on %d files, heartbeat every %d ops%n",
+				servers, joining, domains, ops, files, heartbeatOps);
+		sim.run(false);
+		sim.run(true);
+	}
+
+	void run(boolean engine) {
+		int total = servers + joining;
+		String[] names = new String[total];
+		StringBuilder groups = new StringBuilder();
+		for (int d = 0; d < domains; d++) {
+			if (d > 0)
+				groups.append(';');
+			for (int i = d; i < total; i += domains) {
+				names[i] = "s" + i;
+				if (i > d)
+					groups.append(',');
+				groups.append(names[i]);
+			}
+		}
+
+		Server[] state = new Server[total];
+		for (int i = 0; i < total; i++)
+			state[i] = new Server(names[i], i % domains);
+		PlacementEngine placement = new PlacementEngine(groups.toString());
+		for (int i = 0; i < servers; i++)
+			placement.setLive(names[i], true);
+		int alive = servers;
+
+		double[] zipf = zipf(files);
+		Random random = new Random(42);
+		// per file: the replicas of its last chunk and the bytes in it
+		int[][] replicas = new int[files][];
+		long[] filled = new long[files];
+		int chunks = 0;
+		int sameDomain = 0;
+		long placeNanos = 0;
+
+		for (int op = 0; op < ops; op++) {
+			if (op == ops / 2) {
+				for (int i = servers; i < total; i++)
+					placement.setLive(names[i], true);
+				alive = total;
+			}
+			if (op % heartbeatOps == 0) {
+				for (int i = 0; i < alive; i++) {
+					Server s = state[i];
+					s.reported = s.bytes;
+					placement.report(s.name, s.bytes, s.requests
+							- s.lastRequests, 0);
+					s.lastRequests = s.requests;
+				}
+			}
+
+			int f = pick(zipf, random.nextDouble());
+			int len = 1 + random.nextInt(MAX_APPEND);
+			if (replicas[f] == null || filled[f] + len > CHUNK) {
+				long start = System.nanoTime();
+				int[] chosen = engine ? indexes(placement.place(3))
+						: sorted(state, alive);
+				placeNanos += System.nanoTime() - start;
+				replicas[f] = chosen;
+				filled[f] = 0;
+				chunks++;
+				HashSet<Integer> seen = new HashSet<Integer>();
+				for (int r : chosen) {
+					if (!seen.add(state[r].domain)) {
+						sameDomain++;
+						break;
+					}
+				}
+			}
+			filled[f] += len;
+			for (int r : replicas[f]) {
+				state[r].bytes += len;
+				state[r].requests++;
+				if (engine)
+					placement.setBytes(state[r].name, state[r].bytes);
+			}
+		}
+
+		long[] bytes = new long[total];
+		long[] requests = new long[total];
+		for (int i = 0; i < total; i++) {
+			bytes[i] = state[i].bytes;
+			requests[i] = state[i].requests;
+		}
+		System.out.println(engine ? "PlacementEngine:" : "Sorted by size:");
+		System.out.printf("  bytes    %s%n", skew(bytes));
+		System.out.printf("  requests %s%n", skew(requests));
+		System.out.printf(
+				"  %d chunks, %d with replicas sharing a domain, %.0f ns per placement%n",
+				chunks, sameDomain, (double) placeNanos / chunks);
+	}
+
+	/**
+	 * The old MetaServer.loadBalance: every live server by the size it last
+	 * reported, the three smallest.
+	 */
+	static int[] sorted(final Server[] state, int alive) {
+		PriorityQueue<Integer> queue = new PriorityQueue<Integer>(alive,
+				new Comparator<Integer>() {
+					@Override
+					public int compare(Integer x, Integer y) {
+						return Long.compare(state[x].reported,
+								state[y].reported);
+					}
+				});
+		for (int i = 0; i < alive; i++)
+			queue.add(i);
+		return new int[] { queue.poll(), queue.poll(), queue.poll() };
+	}
+
+	static int[] indexes(String[] names) {
+		int[] indexes = new int[names.length];
+		for (int i = 0; i < names.length; i++)
+			indexes[i] = Integer.valueOf(names[i].substring(1));
+		return indexes;
+	}
+
+	static double[] zipf(int n) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			sum += 1 / Math.pow(i + 1, ZIPF);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < n; i++)
+			cdf[i] /= sum;
+		return cdf;
+	}
+
+	static int pick(double[] cdf, double u) {
+		int i = Arrays.binarySearch(cdf, u);
+		return Math.min(cdf.length - 1, i < 0 ? -i - 1 : i);
+	}
+
+	static String skew(long[] values) {
+		long max = Long.MIN_VALUE;
+		long min = Long.MAX_VALUE;
+		double sum = 0;
+		for (long v : values) {
+			max = Math.max(max, v);
+			min = Math.min(min, v);
+			sum += v;
+		}
+		double mean = sum / values.length;
+		double var = 0;
+		for (long v : values)
+			var += (v - mean) * (v - mean);
+		double cv = mean == 0 ? 0 : Math.sqrt(var / values.length) / mean;
+		return String.format("max/mean %.2f  min/mean %.2f  cv %.3f",
+				mean == 0 ? 0 : max / mean, mean == 0 ? 0 : min / mean, cv);
+	}
+
+	static class Server {
+		final String name;
+		final int domain;
+		long bytes;
+		// bytes as of the last heartbeat
+		long reported;
+		long requests;
+		long lastRequests;
+
+		Server(String name, int domain) {
+			this.name = name;
+			this.domain = domain;
+		}
+	}
+}
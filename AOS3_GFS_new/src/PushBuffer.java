@@ -0,0 +1,111 @@
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Data pushed to a chunk server ahead of the COMMIT that writes it. The
+ * client sends the data in packets along the replica chain; each server
+ * assembles the packets of one push here, keyed by its dataId, until the
+ * commit takes it. Pushes that are never committed, for example because the
+ * client gave up, expire after a while.
+ */
+public class PushBuffer {
+
+	static final long EXPIRY = 60000;
+
+	private static final ConcurrentHashMap<Long, Pushed> pushes = new ConcurrentHashMap<Long, Pushed>();
+
+	// bytes of the pushes held, reported to the MetaServer as replication
+	// traffic
+	static final AtomicLong bytes = new AtomicLong();
+
+	private static volatile long lastSweep = System.currentTimeMillis();
+
+	/**
+	 * Stores one packet, len bytes of data at offSet of a push of total
+	 * bytes. total comes from the sender, so a push larger than a chunk is
+	 * refused before anything is allocated for it.
+	 */
+	static boolean put(long dataId, int offSet, int total, byte[] data) {
+		if (data == null || total < 0 || total > Config.chunkSize()
+				|| offSet < 0 || offSet > total - data.length)
+			return false;
+		Pushed p = pushes.get(dataId);
+		if (p == null) {
+			if (pushes.putIfAbsent(dataId, new Pushed(total)) == null)
+				bytes.addAndGet(total);
+			p = pushes.get(dataId);
+		}
+		if (p.data.length != total)
+			return false;
+		p.add(offSet, data);
+		sweep();
+		return true;
+	}
+
+	/**
+	 * Removes and returns the data of a push, or null if it is missing or not
+	 * complete yet.
+	 */
+	static byte[] take(long dataId) {
+		Pushed p = pushes.get(dataId);
+		if (p == null || !p.complete())
+			return null;
+		if (pushes.remove(dataId, p))
+			bytes.addAndGet(-p.data.length);
+		return p.data;
+	}
+
+	private static void sweep() {
+		long now = System.currentTimeMillis();
+		if (now - lastSweep < EXPIRY)
+			return;
+		lastSweep = now;
+		Iterator<Pushed> it = pushes.values().iterator();
+		while (it.hasNext()) {
+			Pushed p = it.next();
+			if (now - p.created > EXPIRY) {
+				it.remove();
+				bytes.addAndGet(-p.data.length);
+			}
+		}
+	}
+
+	static class Pushed {
+		final byte[] data;
+		final long created = System.currentTimeMillis();
+		// the ranges received, start to end, apart and not touching; a packet
+		// sent twice covers nothing new
+		private final TreeMap<Integer, Integer> covered = new TreeMap<Integer, Integer>();
+
+		Pushed(int total) {
+			data = new byte[total];
+		}
+
+		synchronized void add(int offSet, byte[] packet) {
+			System.arraycopy(packet, 0, data, offSet, packet.length);
+			int start = offSet, end = offSet + packet.length;
+			if (start == end)
+				return;
+			Entry<Integer, Integer> before = covered.floorEntry(start);
+			if (before != null && before.getValue() >= start) {
+				start = before.getKey();
+				end = Math.max(end, before.getValue());
+			}
+			Entry<Integer, Integer> next;
+			while ((next = covered.ceilingEntry(start)) != null
+					&& next.getKey() <= end) {
+				end = Math.max(end, next.getValue());
+				covered.remove(next.getKey());
+			}
+			covered.put(start, end);
+		}
+
+		synchronized boolean complete() {
+			Integer end = covered.get(0);
+			return data.length == 0 || end != null && end >= data.length;
+		}
+	}
+}
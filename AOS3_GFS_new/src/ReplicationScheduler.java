@@ -0,0 +1,392 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Brings chunks that lost replicas back to REPLICAS copies.
+ *
+ * Chunks are queued by how many live replicas they have left, fewest first,
+ * so a chunk down to its last copy is copied before one that still has two.
+ * Up to replication_threads copies run at a time. Each copy is made by the
+ * destination, which reads the chunk from a live replica (REPLICATE), and is
+ * charged to a bandwidth budget of both servers: replication_source_bandwidth
+ * and replication_dest_bandwidth, in MB/s per server. A chunk whose source or
+ * destination is over budget waits while chunks on other servers go ahead,
+ * so recovery of a large server is spread over the cluster without
+ * saturating any one link. The destination is picked by the PlacementEngine.
+ *
+ * A chunk may take appends while it is copied. The MetaServer adds the
+ * destination to the chain of every append granted from the start of the
+ * copy on (appending()), so the destination applies them once it has the
+ * copy. Appends granted before it started do not reach the destination, so
+ * a chunk is only copied once its last append was granted longer ago than
+ * a request may take (request_timeout).
+ *
+ * Progress (chunks pending, copying, done, rate and ETA) is printed while
+ * there is work and available from stats().
+ */
+public class ReplicationScheduler implements Runnable {
+
+	static final int REPLICAS = 3;
+	static final int DEFAULT_THREADS = 8;
+	static final int DEFAULT_BANDWIDTH = 32;
+	static final int MAX_ATTEMPTS = 3;
+	// how far a server may run ahead of its budget, so small copies do not
+	// wait on each other
+	static final long BURST = 1000;
+	static final long REPORT_INTERVAL = 5000;
+
+	private final PriorityQueue<Task> queue = new PriorityQueue<Task>();
+	// the current task of every queued chunk; tasks that are not are stale
+	// and skipped
+	private final HashMap<FileSystem.ChunkKey, Task> queued = new HashMap<FileSystem.ChunkKey, Task>();
+	private final HashMap<FileSystem.ChunkKey, Task> copying = new HashMap<FileSystem.ChunkKey, Task>();
+	// the destination of each copy in progress
+	private final HashMap<FileSystem.ChunkKey, String> copyingTo = new HashMap<FileSystem.ChunkKey, String>();
+	private long seq = 0;
+
+	private final ConcurrentHashMap<String, Budget> sources = new ConcurrentHashMap<String, Budget>();
+	private final ConcurrentHashMap<String, Budget> destinations = new ConcurrentHashMap<String, Budget>();
+	private final long sourceRate;
+	private final long destRate;
+	private final ExecutorService copiers;
+	private final int threads;
+
+	final AtomicLong done = new AtomicLong();
+	final AtomicLong failed = new AtomicLong();
+	final AtomicLong copiedBytes = new AtomicLong();
+	private long pendingBytes = 0;
+	// start of the current recovery, for the copy rate
+	private long since = 0;
+	private long sinceBytes = 0;
+
+	ReplicationScheduler() {
+		threads = intValue("replication_threads", DEFAULT_THREADS);
+		sourceRate = intValue("replication_source_bandwidth",
+				DEFAULT_BANDWIDTH) * 1024L * 1024;
+		destRate = intValue("replication_dest_bandwidth", DEFAULT_BANDWIDTH) * 1024L * 1024;
+		copiers = Executors.newFixedThreadPool(threads);
+	}
+
+	private static int intValue(String key, int def) {
+		String value = Config.getValue(key);
+		return value == null ? def : Integer.valueOf(value);
+	}
+
+	/**
+	 * Queues every chunk the failed server held. Chunks already queued move
+	 * up if they have fewer live replicas now.
+	 */
+	void failed(String server, FileSystem fs) {
+		if (fs == null)
+			return;
+		int count = 0;
+		for (Entry<String, File> e : fs.fileInfo.entrySet()) {
+			for (Integer chunkNo : e.getValue().fileChunks.keySet()) {
+				add(e.getKey(), chunkNo, 0);
+				count++;
+			}
+		}
+		System.out.println("Replication of " + count + " chunks of " + server
+				+ " queued");
+	}
+
+	synchronized void add(String file, int chunkNo, int attempts) {
+		ChunkIndex.ChunkEntry entry = MetaServer.index.get(file, chunkNo);
+		if (entry == null)
+			return;
+		int live = live(entry.replicas);
+		if (live >= REPLICAS)
+			return;
+		FileSystem.ChunkKey key = new FileSystem.ChunkKey(file, chunkNo);
+		Task cur = queued.get(key);
+		if (cur != null && cur.live <= live)
+			return;
+		if (cur != null)
+			pendingBytes -= cur.size;
+		Task t = new Task(key, live, entry.size, attempts, seq++);
+		queued.put(key, t);
+		queue.add(t);
+		pendingBytes += t.size;
+		if (since == 0) {
+			since = System.currentTimeMillis();
+			sinceBytes = copiedBytes.get();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Called by the MetaServer as it grants an append to a chunk. Returns the
+	 * server the chunk is being copied to, which must take the append too, or
+	 * null.
+	 */
+	synchronized String appending(String file, int chunkNo) {
+		ChunkIndex.ChunkEntry entry = MetaServer.index.get(file, chunkNo);
+		if (entry != null)
+			entry.appended = System.currentTimeMillis();
+		return copyingTo.get(new FileSystem.ChunkKey(file, chunkNo));
+	}
+
+	/**
+	 * Whether chunkNo of file is being copied.
+	 */
+	synchronized boolean copying(String file, int chunkNo) {
+		return copyingTo.containsKey(new FileSystem.ChunkKey(file, chunkNo));
+	}
+
+	private static int live(String[] replicas) {
+		int live = 0;
+		for (String r : replicas) {
+			ServerInfo info = MetaServer.servers.get(r);
+			if (info != null && info.status)
+				live++;
+		}
+		return live;
+	}
+
+	@Override
+	public void run() {
+		long lastReport = 0;
+		while (true) {
+			try {
+				long wait = schedule();
+				long now = System.currentTimeMillis();
+				if (now - lastReport >= REPORT_INTERVAL && since != 0) {
+					System.out.println(stats());
+					lastReport = now;
+				}
+				synchronized (this) {
+					if (queue.isEmpty() && copying.isEmpty() && since != 0) {
+						System.out.println(stats());
+						since = 0;
+					}
+					wait(queue.isEmpty() ? REPORT_INTERVAL : Math.max(1,
+							Math.min(wait, REPORT_INTERVAL)));
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Starts copies in priority order until the copiers are busy or every
+	 * queued chunk waits on a budget. Returns how long until a budget frees
+	 * up.
+	 */
+	private synchronized long schedule() {
+		long now = System.currentTimeMillis();
+		long wait = Long.MAX_VALUE;
+		ArrayList<Task> deferred = new ArrayList<Task>();
+		while (copying.size() < threads && !queue.isEmpty()) {
+			Task t = queue.poll();
+			if (queued.get(t.key) != t)
+				continue;
+			// one copy of a chunk at a time; it is queued again when done
+			if (copying.containsKey(t.key)) {
+				deferred.add(t);
+				continue;
+			}
+			long delay = start(t, now);
+			if (delay > 0) {
+				deferred.add(t);
+				wait = Math.min(wait, delay);
+			}
+		}
+		queue.addAll(deferred);
+		return wait;
+	}
+
+	/**
+	 * Starts the copy of a chunk, or returns how long until its servers have
+	 * the budget for it.
+	 */
+	private long start(Task t, long now) {
+		ChunkIndex.ChunkEntry entry = MetaServer.index.get(t.key.file,
+				t.key.chunkNo);
+		String[] replicas = entry == null ? new String[0] : entry.ordered();
+		if (entry == null || live(replicas) >= REPLICAS) {
+			drop(t);
+			return 0;
+		}
+		// appends granted so far do not go to the destination; wait until
+		// they are done
+		long writing = entry.appended + ConnectionPool.getTimeout() - now;
+		if (writing > 0)
+			return writing;
+
+		String source = null;
+		long delay = Long.MAX_VALUE;
+		for (String r : replicas) {
+			ServerInfo info = MetaServer.servers.get(r);
+			if (info == null || !info.status)
+				continue;
+			long d = budget(sources, r, sourceRate).delay(now);
+			if (d < delay) {
+				source = r;
+				delay = d;
+			}
+		}
+		if (source == null) {
+			System.out.println("No live replica of " + t.key.file
+					+ t.key.chunkNo + " left to copy");
+			failed.incrementAndGet();
+			drop(t);
+			return 0;
+		}
+		if (delay > 0)
+			return delay;
+
+		String[] dest = MetaServer.placement.place(1, replicas);
+		if (dest.length == 0) {
+			// nowhere to put it until a server joins
+			return REPORT_INTERVAL;
+		}
+		delay = budget(destinations, dest[0], destRate).delay(now);
+		if (delay > 0)
+			return delay;
+
+		int size = Math.max(t.size, entry.size);
+		budget(sources, source, sourceRate).reserve(now, size);
+		budget(destinations, dest[0], destRate).reserve(now, size);
+		drop(t);
+		copying.put(t.key, t);
+		copyingTo.put(t.key, dest[0]);
+		copy(t, source, dest[0], size);
+		return 0;
+	}
+
+	private void drop(Task t) {
+		if (queued.remove(t.key) != null)
+			pendingBytes -= t.size;
+	}
+
+	private void copy(final Task t, final String source, final String dest,
+			final int size) {
+		MetaServer.placement.addReplication(source, size);
+		MetaServer.placement.addReplication(dest, size);
+		copiers.execute(new Runnable() {
+			@Override
+			public void run() {
+				boolean ok = false;
+				try {
+					Message reply = Sender.messageToFileServer(dest, Config
+							.getValue(dest), new Message(Message.REPLICATE,
+							Message.STATUS_REQ, t.key.file, source, null,
+							t.key.chunkNo, 0, size, null));
+					ok = reply != null && reply.status == Message.STATUS_SUCCESS;
+					if (ok) {
+						MetaServer.recordChunk(dest, t.key.file,
+								t.key.chunkNo, reply.len, false);
+						copiedBytes.addAndGet(reply.len);
+						done.incrementAndGet();
+						log("Copied " + t.key.file + t.key.chunkNo + " "
+								+ source + "-->" + dest);
+					} else {
+						System.out.println("Copy of " + t.key.file
+								+ t.key.chunkNo + " to " + dest + " failed"
+								+ (reply == null ? "" : ":" + reply.data));
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					MetaServer.placement.addReplication(source, -size);
+					MetaServer.placement.addReplication(dest, -size);
+					finished(t, ok);
+				}
+			}
+		});
+	}
+
+	private synchronized void finished(Task t, boolean ok) {
+		copying.remove(t.key);
+		copyingTo.remove(t.key);
+		if (ok)
+			add(t.key.file, t.key.chunkNo, 0);
+		else if (t.attempts + 1 < MAX_ATTEMPTS)
+			add(t.key.file, t.key.chunkNo, t.attempts + 1);
+		else
+			failed.incrementAndGet();
+		notifyAll();
+	}
+
+	private static Budget budget(ConcurrentHashMap<String, Budget> budgets,
+			String server, long rate) {
+		Budget b = budgets.get(server);
+		if (b == null) {
+			budgets.putIfAbsent(server, new Budget(rate));
+			b = budgets.get(server);
+		}
+		return b;
+	}
+
+	/**
+	 * Chunks pending and copying, chunks done and failed, the copy rate of
+	 * the current recovery and the time left at that rate.
+	 */
+	synchronized String stats() {
+		long elapsed = since == 0 ? 0 : System.currentTimeMillis() - since;
+		double rate = elapsed == 0 ? 0 : (copiedBytes.get() - sinceBytes)
+				* 1000.0 / elapsed;
+		String eta = rate == 0 ? "-" : String.format("%.0fs", pendingBytes
+				/ rate);
+		return String.format(
+				"Replication: %d pending, %d copying, %d done, %d failed, %.1f MB/s, ETA %s",
+				queued.size(), copying.size(), done.get(), failed.get(),
+				rate / (1024 * 1024), eta);
+	}
+
+	private static void log(String message) {
+		// System.out.println(message);
+	}
+
+	static class Task implements Comparable<Task> {
+		final FileSystem.ChunkKey key;
+		final int live;
+		final int size;
+		final int attempts;
+		final long seq;
+
+		Task(FileSystem.ChunkKey key, int live, int size, int attempts, long seq) {
+			this.key = key;
+			this.live = live;
+			this.size = size;
+			this.attempts = attempts;
+			this.seq = seq;
+		}
+
+		@Override
+		public int compareTo(Task o) {
+			if (live != o.live)
+				return live < o.live ? -1 : 1;
+			return seq < o.seq ? -1 : seq > o.seq ? 1 : 0;
+		}
+	}
+
+	/**
+	 * Bandwidth of one server in one direction. Copies reserve their bytes
+	 * ahead; the server is free again once the reservations have drained at
+	 * its rate, less the BURST allowance.
+	 */
+	static class Budget {
+		final long bytesPerSec;
+		private long next = 0;
+
+		Budget(long bytesPerSec) {
+			this.bytesPerSec = bytesPerSec;
+		}
+
+		synchronized long delay(long now) {
+			return Math.max(0, next - now - BURST);
+		}
+
+		synchronized void reserve(long now, long bytes) {
+			next = Math.max(next, now) + bytes * 1000 / bytesPerSec;
+		}
+	}
+}
@@ -1,11 +1,3 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-
 /**
  * A simple Swing-based client for the capitalization server. It has a main
  * frame window with a text field for entering strings and a textarea to see the
@@ -28,129 +20,75 @@ public class Sender {
 	}
 
 	/**
-	 * Implements the connection logic by prompting the end user for the
-	 * server's IP address, connecting, setting up streams, and consuming the
-	 * welcome messages from the server. The HeartBeatListener protocol says
-	 * that the server sends three lines of text to the client immediately after
-	 * establishing a connection.
+	 * Heartbeat loop of a chunk server. The first heartbeat registers the
+	 * server with a full snapshot of Fs, and the stale chunks the answer
+	 * lists are deleted; after that only the chunks changed since the last
+	 * version the MetaServer acknowledged are sent. A RESYNC answer makes the
+	 * next heartbeat a full snapshot again. Each heartbeat also reports the
+	 * request rate and buffered pushes for placement.
 	 */
 	static public void connectToServer(String serverAddress, String port,
 			FileSystem Fs) {
-
-		// Get the server address from a dialog box.
-		// Make connection and initialize streams
-		try {
-			Socket socket = new Socket(serverAddress, Integer.valueOf(port));
-			BufferedReader in = new BufferedReader(new InputStreamReader(
-					socket.getInputStream()));
-			OutputStream outStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outStream);
-
-			// Consume the initial welcoming messages from the server
-			System.out.println(in.readLine() + "\n");
-			while (true) {
-				try {
-					Thread.sleep(4000);
-					FileSystem newFs = new FileSystem(Fs);
-					System.out.println("Sending fs: " + newFs);
-					out.writeObject(newFs);
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-			}
-		} catch (NumberFormatException | IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-
-	}
-
-	static public Message messageToFileServer(String serverAddress,
-			String port, Message msg) {
-		// Get the server address from a dialog box.
-		// Make connection and initialize streams
-		log("trying to connect..");
-		Message returnMsg = null;
-
-		try {
-			Socket socket = new Socket(serverAddress, Integer.valueOf(port));
-			log("connected..");
-
-			OutputStream outStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outStream);
-
-			ObjectInputStream in = new ObjectInputStream(
-					socket.getInputStream());
-
-			// Consume the initial welcoming messages from the server
-			// System.out.println(in.readLine() + "\n");
+		String value = Config.getValue("heartbeat");
+		long interval = (value == null ? 5 : Integer.valueOf(value)) * 1000L;
+		long acked = -1;
+		boolean registered = false;
+		long lastRequests = Server.requests.get();
+		long lastTime = System.currentTimeMillis();
+
+		while (true) {
 			try {
-				out.writeObject(msg);
-				log("Seding msg:" + msg);
-				returnMsg = (Message) in.readObject();
+				HeartBeat hb = acked < 0 ? Fs.snapshot() : Fs.delta(acked);
+				if (!registered)
+					hb.type = HeartBeat.REGISTER;
+				long requests = Server.requests.get();
+				long now = System.currentTimeMillis();
+				hb.requestRate = (requests - lastRequests) * 1000.0
+						/ Math.max(1, now - lastTime);
+				hb.replicationBytes = PushBuffer.bytes.get();
+				lastRequests = requests;
+				lastTime = now;
+				log("Sending " + hb);
+				HeartBeat reply = (HeartBeat) ConnectionPool.request(
+						serverAddress, port, hb);
+				if (reply == null) {
+					log("No answer to heartbeat from " + serverAddress);
+				} else if (reply.type == HeartBeat.ACK) {
+					acked = reply.version;
+					registered = true;
+					Fs.acknowledge(acked);
+					for (int i = 0; i < reply.count; i++)
+						Server.drop(reply.files[i], reply.chunks[i]);
+				} else {
+					acked = -1;
+					continue;
+				}
+				Thread.sleep(interval);
 			} catch (Exception e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
-			} finally {
-				try {
-					socket.close();
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-
 			}
-		} catch (NumberFormatException | IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
 		}
+	}
 
-		return returnMsg;
+	/**
+	 * Sends msg to a chunk server over the pooled connection for that peer
+	 * and waits for the reply.
+	 */
+	static public Message messageToFileServer(String serverAddress,
+			String port, Message msg) {
+		log("Seding msg:" + msg);
+		return (Message) ConnectionPool.request(serverAddress, port, msg);
 	}
 
+	/**
+	 * Sends msg to the MetaServer over the pooled connection and waits for
+	 * the reply.
+	 */
 	static public MetaMessage messageToMetaServer(String serverAddress,
 			String port, MetaMessage msg) {
-		// Get the server address from a dialog box.
-		// Make connection and initialize streams
-		log("trying to connect..");
-		Socket socket;
-		MetaMessage returnMsg = null;
-
-		try {
-			socket = new Socket(serverAddress, Integer.valueOf(port));
-			log("connected..");
-
-			OutputStream outStream = socket.getOutputStream();
-			ObjectOutputStream out = new ObjectOutputStream(outStream);
-
-			ObjectInputStream in = new ObjectInputStream(
-					socket.getInputStream());
-
-			// Consume the initial welcoming messages from the server
-			// System.out.println(in.readLine() + "\n");
-			try {
-				out.writeObject(msg);
-				log("Seding msg:" + msg);
-				returnMsg = (MetaMessage) in.readObject();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			} finally {
-				try {
-					socket.close();
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-
-			}
-		} catch (NumberFormatException | IOException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-
-		return returnMsg;
+		log("Seding msg:" + msg);
+		return (MetaMessage) ConnectionPool.request(serverAddress, port, msg);
 	}
 
 	private static void log(String message) {
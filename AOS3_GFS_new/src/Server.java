@@ -1,12 +1,30 @@
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Server {
 	public static volatile FileSystem Fs = new FileSystem(findHostName());
 	public static String serverName = findHostName();
+	// client requests served, for the request rate in heartbeats
+	static final AtomicLong requests = new AtomicLong();
+	// block reads in flight while copying a chunk
+	static final int REPLICATE_AHEAD = 4;
+	// the server to server port of each chunk server, by name
+	private static final ConcurrentHashMap<String, String> serverPorts = new ConcurrentHashMap<String, String>();
 
+	/**
+	 * The name this server registers under and keeps its chunks in: the
+	 * gfs.host system property if set, so that several chunk servers can run
+	 * on one machine, otherwise the host name.
+	 */
 	static String findHostName() {
-		String hostname = "Unknown";
+		String hostname = System.getProperty("gfs.host");
+		if (hostname != null)
+			return hostname;
+		hostname = "Unknown";
 
 		try {
 			InetAddress addr;
@@ -18,53 +36,111 @@ public class Server {
 		return hostname;
 	}
 /**
+ * Handles client and MetaServer requests. Requests on the same chunk are
+ * ordered through its lock in ChunkLocks: reads share it, while writes and
+ * appends hold it exclusively until every replica has applied them.
  * 
  * @param msg
  * @return
  */
-	synchronized static Message requestHandler(Message msg) {
+	static Message requestHandler(Message msg) {
 		String fname = serverName + "/" + msg.fileName + msg.chunkNo;
+		requests.incrementAndGet();
 
 		Message reply = new Message(msg.type, Message.STATUS_FAIL,
 				msg.fileName, msg.server1, msg.server2, msg.chunkNo, msg.offSet, msg.len, null);
+		ChunkLocks.Handle handle = ChunkLocks.acquire(msg.fileName, msg.chunkNo);
+		try {
+			return handle(msg, reply, fname, handle.lock);
+		} finally {
+			ChunkLocks.release(handle);
+		}
+	}
 
+	private static Message handle(Message msg, Message reply, String fname,
+			ReentrantReadWriteLock lock) {
 		switch (msg.type) {
 		case Message.APPEND:
-
-			if (Append(msg.server1,msg.server2,msg)) {
-				reply.status = Message.STATUS_SUCCESS;
-				reply.data = "Successfully appended";
-			} else {
-				reply.data = "Failed to append file on disk";
+			lock.writeLock().lock();
+			try {
+				if (Append(msg.server1,msg.server2,msg)) {
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully appended";
+				} else {
+					reply.data = "Failed to append file on disk";
+				}
+			} finally {
+				lock.writeLock().unlock();
 			}
 			break;
 		case Message.WRITE:
-			if (Write(msg.server1,msg.server2,msg)) {
-				reply.status = Message.STATUS_SUCCESS;
-				reply.data = "Successfully written";
-			} else {
-				reply.data = "Failed to write file on disk";
+			lock.writeLock().lock();
+			try {
+				if (Write(msg.server1,msg.server2,msg)) {
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully written";
+				} else {
+					reply.data = "Failed to write file on disk";
+				}
+			} finally {
+				lock.writeLock().unlock();
 			}
 			break;
 
 		case Message.CREATE:
-			if (Create(msg.server1,msg.server2,msg)) {
-				reply.status = Message.STATUS_SUCCESS;
-				reply.data = "Successfully created";
-			} else {
-				reply.data = "Failed to create file on disk";
+			lock.writeLock().lock();
+			try {
+				if (Create(msg.server1,msg.server2,msg)) {
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully created";
+				} else {
+					reply.data = "Failed to create file on disk";
+				}
+			} finally {
+				lock.writeLock().unlock();
 			}
 			break;
 
+		case Message.PUSH:
+			return push(msg);
+
+		case Message.COMMIT:
+			lock.writeLock().lock();
+			try {
+				commit(msg, reply);
+			} finally {
+				lock.writeLock().unlock();
+			}
+			break;
+
+		case Message.REPLICATE:
+			// without the lock: appends that reach this server while it
+			// copies, whose primary holds the source's lock until they are
+			// applied here, would otherwise wait on the copy, which waits on
+			// reads from the source
+			replicate(msg, reply);
+			break;
+
 		case Message.READ:
-			reply.data = new String(FileOperations.readFile(fname, msg.offSet,
-					msg.len));
-			if (reply.data != null) {
+			lock.readLock().lock();
+			try {
+				reply.payloadView = ChunkStore.read(fname, msg.offSet, msg.len);
+			} finally {
+				lock.readLock().unlock();
+			}
+			if (reply.payloadView != null) {
 				reply.status = Message.STATUS_SUCCESS;
+			} else if (!new java.io.File(fname).exists()) {
+				reply.status = Message.STATUS_STALE;
+				reply.data = "Chunk not on " + serverName;
+				// moved aside as corrupt: the next heartbeat reports it gone
+				File f = Fs.fileInfo.get(msg.fileName);
+				if (f != null && f.fileChunks.containsKey(msg.chunkNo))
+					Fs.removeChunk(msg.fileName, msg.chunkNo);
 			} else {
 				reply.data = "Failed to read from the disk";
 			}
-			log("Read:" + reply.data);
+			log("Read:" + reply);
 			break;
 			
 		default:
@@ -90,26 +166,31 @@ public class Server {
 	public static void main(String[] args) throws Exception {
 		int reqPort = Integer.valueOf(Config.getValue(serverName));
 
-		FileOperations.deleteDirectory(serverName);
-
+		// chunks left from an earlier run are kept and registered again
 		FileOperations.createDirectory(serverName);
 
+		// the MetaServer keeps the master of each chunk and drops the ones
+		// that went stale while this server was down when it registers
 		String Filenames[] = FileOperations.listOfFiles(serverName);
-		int end = -1;
 		for (String s : Filenames) {
-			for (int i = s.length() - 1; i >= 0; i--) {
-				if (Character.isDigit(s.charAt(i)))
-					continue;
-				else {
-					end = i + 1;
-					break;
-				}
+			if (s.endsWith(ChunkChecksums.SUFFIX) || s.endsWith(ChunkStore.QUARANTINE))
+				continue;
+			int end = s.length();
+			while (end > 0 && Character.isDigit(s.charAt(end - 1)))
+				end--;
+			if (end == 0 || end == s.length() || s.length() - end > 9) {
+				System.out.println("Not a chunk: " + s);
+				continue;
 			}
 			Fs.addFile(s.substring(0, end), Integer.valueOf(s.substring(end)),
-					FileOperations.countCharsBuffer(serverName + "/" + s,
-							"US-ASCII"),true);
+					ChunkStore.length(serverName + "/" + s), false);
 		}
 
+		Thread scrubber = new Thread(new ChunkScrubber(serverName, Fs));
+		scrubber.setDaemon(true);
+		scrubber.setPriority(Thread.MIN_PRIORITY);
+		scrubber.start();
+
 		Thread RequestListener = new Thread(new ListenerWrapper(reqPort,
 				ListenerWrapper.REQ));
 		RequestListener.start();
@@ -137,57 +218,306 @@ public class Server {
 		Message reply = new Message(msg.type, Message.STATUS_FAIL,
 				msg.fileName, msg.server1, msg.server1, msg.chunkNo, msg.offSet, msg.len, null);
 
-		switch (msg.type) {
-		case Message.APPEND:
-
-			int fileSize = FileOperations.countCharsBuffer(fname, "US-ASCII");
-			StringBuilder sBuf = new StringBuilder();
-			String data = null;
+		if (msg.type == Message.HELLO) {
+			reply.data = "Alive";
+			reply.status = Message.STATUS_SUCCESS;
+			return reply;
+		}
+		if (msg.type == Message.PUSH)
+			return push(msg);
+		if (msg.type == Message.READ) {
+			// copies for re-replication read here, so they do not wait on
+			// client requests that wait on server to server ones
+			ChunkLocks.Handle handle = ChunkLocks.acquire(msg.fileName,
+					msg.chunkNo);
+			try {
+				return handle(msg, reply, fname, handle.lock);
+			} finally {
+				ChunkLocks.release(handle);
+			}
+		}
 
-			if (msg.data == null) {
-				for (int i = 0; i < 8192 - fileSize; i++) {
-					sBuf.append("\0");
+		// replicas apply changes to a chunk in the order the primary sends them
+		ChunkLocks.Handle handle = ChunkLocks.acquire(msg.fileName, msg.chunkNo);
+		handle.lock.writeLock().lock();
+		try {
+			switch (msg.type) {
+			case Message.APPEND:
+
+				int fileSize = FileOperations.countCharsBuffer(fname, "US-ASCII");
+				int newSize = msg.payload == null ? Math.max(fileSize,
+						Config.chunkSize()) : fileSize + msg.payload.length;
+
+				if (msg.payload == null ? pad(fname, fileSize)
+						: FileOperations.writeFile(fname, fileSize, msg.payload)) {
+					Fs.addFile(msg.fileName, msg.chunkNo, newSize,false);
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully appended";
+				} else {
+					reply.data = "Failed to append file on disk";
 				}
-				data = sBuf.toString();
-			} else {
-				data = msg.data;
-			}
+				break;
+			case Message.WRITE:
+				if (FileOperations.writeFile(fname, 0, msg.payload)) {
+					Fs.addFile(msg.fileName, msg.chunkNo, msg.payload.length,false);
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully written";
+				} else {
+					reply.data = "Failed to write file on disk";
+				}
+				break;
+
+			case Message.COMMIT:
+				// the primary chose the offset, so every replica lays the
+				// chunk out the same way
+				byte[] pushed = PushBuffer.take(msg.dataId);
+				if (pushed == null) {
+					reply.data = "Pushed data not found";
+				} else if (FileOperations.writeFile(fname, msg.offSet, pushed)) {
+					Fs.addFile(msg.fileName, msg.chunkNo, msg.offSet + pushed.length,false);
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully committed";
+				} else {
+					reply.data = "Failed to commit file on disk";
+				}
+				break;
+
+			case Message.CREATE:
+				if (FileOperations.createFile(fname)) {
+					Fs.addFile(msg.fileName, msg.chunkNo, 0,false);
+					reply.status = Message.STATUS_SUCCESS;
+					reply.data = "Successfully created";
+				} else {
+					reply.data = "Failed to create file on disk";
+				}
+				break;
 
-			if (FileOperations.writeFile(fname, fileSize, data)) {
-				Fs.addFile(msg.fileName, msg.chunkNo, fileSize + data.length(),false);
-				reply.status = Message.STATUS_SUCCESS;
-				reply.data = "Successfully appended";
-			} else {
-				reply.data = "Failed to append file on disk";
 			}
-			break;
-		case Message.WRITE:
-			if (FileOperations.writeFile(fname, 0, msg.data)) {
-				Fs.addFile(msg.fileName, msg.chunkNo, msg.data.length(),false);
-				reply.status = Message.STATUS_SUCCESS;
-				reply.data = "Successfully written";
-			} else {
-				reply.data = "Failed to write file on disk";
+		} finally {
+			handle.lock.writeLock().unlock();
+			ChunkLocks.release(handle);
+		}
+		return reply;
+	}
+
+	/**
+	 * Stores a packet of pushed data and passes it down the chain. The packet
+	 * is forwarded before it is buffered here and the reply waits for the
+	 * rest of the chain, so a push is acknowledged once every replica holds
+	 * it. server1 is the next server in the chain and server2 the one after.
+	 */
+	static Message push(Message msg) {
+		ConnectionPool.Pending next = forwardPush(msg);
+		boolean stored = PushBuffer.put(msg.dataId, msg.offSet, msg.len,
+				msg.payload);
+		Message fwdReply = null;
+		if (next != null)
+			fwdReply = (Message) ConnectionPool.await(next);
+		return pushed(msg, stored, next, fwdReply);
+	}
+
+	/**
+	 * push() for the listeners: the reply goes to reply once the rest of the
+	 * chain has answered, and no thread waits for it meanwhile. A worker
+	 * blocked on the next server of a chain could otherwise be what that
+	 * server's own pushes are waiting for.
+	 */
+	static void push(final Message msg, final Listener.Reply reply) {
+		final ConnectionPool.Pending next = forwardPush(msg);
+		final boolean stored = PushBuffer.put(msg.dataId, msg.offSet,
+				msg.len, msg.payload);
+		if (next == null) {
+			reply.send(pushed(msg, stored, null, null));
+			return;
+		}
+		next.then(new Runnable() {
+			@Override
+			public void run() {
+				reply.send(pushed(msg, stored, next,
+						(Message) ConnectionPool.await(next)));
 			}
-			break;
+		});
+	}
 
-		case Message.CREATE:
-			if (FileOperations.createFile(fname)) {
-				Fs.addFile(msg.fileName, msg.chunkNo, 0,false);
+	// Sends the packet on to server1, null at the end of the chain
+	private static ConnectionPool.Pending forwardPush(Message msg) {
+		if (msg.server1 == null)
+			return null;
+		Message fwd = new Message(Message.PUSH, Message.STATUS_REQ,
+				msg.fileName, msg.server2, null, msg.chunkNo, msg.offSet,
+				msg.len, null);
+		fwd.dataId = msg.dataId;
+		fwd.payload = msg.payload;
+		return ConnectionPool.send(msg.server1, serverPort(msg.server1), fwd);
+	}
+
+	// The reply to a push, given whether it was buffered here and what the
+	// next server, if any, answered
+	private static Message pushed(Message msg, boolean stored,
+			ConnectionPool.Pending next, Message fwdReply) {
+		Message reply = new Message(Message.PUSH, Message.STATUS_FAIL,
+				msg.fileName, null, null, msg.chunkNo, msg.offSet, msg.len, null);
+		reply.dataId = msg.dataId;
+		if (!stored) {
+			reply.data = "Invalid push";
+		} else if (next != null) {
+			if (fwdReply != null && fwdReply.status == Message.STATUS_SUCCESS) {
 				reply.status = Message.STATUS_SUCCESS;
-				reply.data = "Successfully created";
 			} else {
-				reply.data = "Failed to create file on disk";
+				reply.data = "Push to " + msg.server1 + " failed"
+						+ (fwdReply == null ? "" : ":" + fwdReply.data);
 			}
-			break;
+		} else {
+			reply.status = Message.STATUS_SUCCESS;
+		}
+		return reply;
+	}
 
-		case Message.HELLO:
-			reply.data = "Alive";
+	/**
+	 * Commits pushed data on the primary: picks the offset at the end of the
+	 * chunk, tells the secondaries to write the data there and writes it
+	 * locally meanwhile. Called with the chunk's write lock held, so commits
+	 * to a chunk get consecutive offsets.
+	 */
+	static void commit(Message msg, Message reply) {
+		String fname = serverName + "/" + msg.fileName + msg.chunkNo;
+		byte[] pushed = PushBuffer.take(msg.dataId);
+		if (pushed == null) {
+			reply.data = "Pushed data not found";
+			return;
+		}
+		int offSet = FileOperations.countCharsBuffer(fname, "US-ASCII");
+		if (offSet + pushed.length > Config.chunkSize()) {
+			reply.data = "Chunk full";
+			return;
+		}
+
+		Message ctl = new Message(Message.COMMIT, Message.STATUS_REQ,
+				msg.fileName, null, null, msg.chunkNo, offSet, pushed.length,
+				null);
+		ctl.dataId = msg.dataId;
+		ConnectionPool.Pending s1 = ConnectionPool.send(msg.server1,
+				serverPort(msg.server1), ctl);
+		ConnectionPool.Pending s2 = ConnectionPool.send(msg.server2,
+				serverPort(msg.server2), ctl);
+
+		boolean written = FileOperations.writeFile(fname, offSet, pushed);
+		if (written)
+			Fs.addFile(msg.fileName, msg.chunkNo, offSet + pushed.length,true);
+		Message r1 = (Message) ConnectionPool.await(s1);
+		Message r2 = (Message) ConnectionPool.await(s2);
+
+		if (!written) {
+			reply.data = "Failed to commit file on disk";
+		} else if (r1 == null || r1.status != Message.STATUS_SUCCESS) {
+			reply.data = "Commit on " + msg.server1 + " failed"
+					+ (r1 == null ? "" : ":" + r1.data);
+		} else if (r2 == null || r2.status != Message.STATUS_SUCCESS) {
+			reply.data = "Commit on " + msg.server2 + " failed"
+					+ (r2 == null ? "" : ":" + r2.data);
+		} else {
 			reply.status = Message.STATUS_SUCCESS;
-			break;
+			reply.offSet = offSet;
+			reply.len = pushed.length;
+			reply.data = "Successfully appended";
+		}
+	}
 
+	/**
+	 * Copies a chunk of msg.len bytes from msg.server1 for re-replication,
+	 * reading it in blocks with a few reads in flight. A short read ends the
+	 * copy early; the chunk is then as long as the source had it, or as the
+	 * appends committed here meanwhile made it. Those write the same bytes as
+	 * the copy where the two overlap, since the source has every append
+	 * below its end.
+	 */
+	static void replicate(Message msg, Message reply) {
+		String fname = serverName + "/" + msg.fileName + msg.chunkNo;
+		String source = msg.server1;
+		String port = serverPort(source);
+		ArrayDeque<ConnectionPool.Pending> inFlight = new ArrayDeque<ConnectionPool.Pending>();
+		int requested = 0;
+		int copied = 0;
+		boolean shortRead = false;
+		FileOperations.createFile(fname);
+
+		while (true) {
+			while (!shortRead && requested < msg.len
+					&& inFlight.size() < REPLICATE_AHEAD) {
+				int n = Math.min(GfsInputStream.BLOCK, msg.len - requested);
+				inFlight.add(ConnectionPool.send(source, port, new Message(
+						Message.READ, Message.STATUS_REQ, msg.fileName, null,
+						null, msg.chunkNo, requested, n, null)));
+				requested += n;
+			}
+			ConnectionPool.Pending p = inFlight.poll();
+			if (p == null)
+				break;
+			Message block = (Message) ConnectionPool.await(p);
+			if (shortRead)
+				continue;
+			if (block == null || block.status != Message.STATUS_SUCCESS) {
+				reply.data = "Read from " + source + " failed"
+						+ (block == null ? "" : ":" + block.data);
+				return;
+			}
+			byte[] data = block.payload == null ? new byte[0] : block.payload;
+			if (data.length > 0
+					&& !FileOperations.writeFile(fname, copied, data)) {
+				reply.data = "Failed to write file on disk";
+				return;
+			}
+			copied += data.length;
+			if (data.length < block.len)
+				shortRead = true;
 		}
-		return reply;
+		copied = Math.max(copied,
+				FileOperations.countCharsBuffer(fname, "US-ASCII"));
+		Fs.addFile(msg.fileName, msg.chunkNo, copied, false);
+		reply.status = Message.STATUS_SUCCESS;
+		reply.len = copied;
+		reply.data = "Copied from " + source;
+	}
+
+	/**
+	 * Deletes a chunk the MetaServer found stale when this server registered.
+	 */
+	static void drop(String fileName, int chunkNo) {
+		ChunkLocks.Handle handle = ChunkLocks.acquire(fileName, chunkNo);
+		handle.lock.writeLock().lock();
+		try {
+			System.out.println("Dropping stale " + fileName + chunkNo);
+			ChunkStore.delete(serverName + "/" + fileName + chunkNo);
+			Fs.removeChunk(fileName, chunkNo);
+		} finally {
+			handle.lock.writeLock().unlock();
+			ChunkLocks.release(handle);
+		}
+	}
+
+	/**
+	 * Fills the rest of a chunk with nulls by writing its last byte; the file
+	 * system leaves the gap as a hole that reads as zeros, so padding a large
+	 * chunk does not write it out.
+	 */
+	static boolean pad(String fname, int fileSize) {
+		int chunkSize = Config.chunkSize();
+		if (fileSize >= chunkSize)
+			return true;
+		return FileOperations.writeFile(fname, chunkSize - 1, new byte[1]);
+	}
+
+	/**
+	 * The port server listens on for other chunk servers, resolved once per
+	 * server.
+	 */
+	static String serverPort(String server) {
+		String port = serverPorts.get(server);
+		if (port == null) {
+			port = Integer.valueOf(Config.getValue(server)) - 100 + "";
+			serverPorts.put(server, port);
+		}
+		return port;
 	}
 
 	/**
@@ -222,10 +552,10 @@ public class Server {
 	 * @return
 	 */
 	private static boolean Create(String serverName, Message msg) {
-		String portNo = Integer.valueOf(Config.getValue(serverName))-100+"";
+		String portNo = serverPort(serverName);
 		Message reply = Sender.messageToFileServer(serverName, portNo, msg);
 		if(reply!=null) System.out.println("create to "+reply.toString());
-		if(reply.status == Message.STATUS_SUCCESS)
+		if(reply != null && reply.status == Message.STATUS_SUCCESS)
 			return true;
 		else
 			return false;
@@ -246,20 +576,12 @@ public class Server {
 		{
 			String fname = serverName + "/" + msg.fileName + msg.chunkNo;
 			int fileSize = FileOperations.countCharsBuffer(fname, "US-ASCII");
-			StringBuilder sBuf = new StringBuilder();
-			String data = null;
-
-			if (msg.data == null) {
-				for (int i = 0; i < 8192 - fileSize; i++) {
-					sBuf.append("\0");
-				}
-				data = sBuf.toString();
-			} else {
-				data = msg.data;
-			}
+			int newSize = msg.payload == null ? Math.max(fileSize,
+					Config.chunkSize()) : fileSize + msg.payload.length;
 
-			if (FileOperations.writeFile(fname, fileSize, data)) {
-				Fs.addFile(msg.fileName, msg.chunkNo, fileSize + data.length(),true);
+			if (msg.payload == null ? pad(fname, fileSize)
+					: FileOperations.writeFile(fname, fileSize, msg.payload)) {
+				Fs.addFile(msg.fileName, msg.chunkNo, newSize,true);
 				return( Append(s1,msg) && Append(s2, msg));
 			}
 		}
@@ -274,11 +596,11 @@ public class Server {
 	 * @return
 	 */
 	private static boolean Append(String serverName, Message msg) {
-		String portNo = Integer.valueOf(Config.getValue(serverName))-100+"";
+		String portNo = serverPort(serverName);
 		Message reply = Sender.messageToFileServer(serverName, portNo, msg);
 		if(reply!=null) System.out.println(reply.toString());
 
-		if(reply.status == Message.STATUS_SUCCESS)
+		if(reply != null && reply.status == Message.STATUS_SUCCESS)
 			return true;
 		else
 			return false;
@@ -298,8 +620,8 @@ public class Server {
 		boolean isS2Active = IsServerActive(s2);
 		if(isS1Active && isS2Active)
 		{
-			if (FileOperations.writeFile(fname, 0, msg.data)) {
-				Fs.addFile(msg.fileName, msg.chunkNo, msg.data.length(),true);
+			if (FileOperations.writeFile(fname, 0, msg.payload)) {
+				Fs.addFile(msg.fileName, msg.chunkNo, msg.payload.length,true);
 				return(Write(s1, msg) && Write(s2, msg));
 			}
 		}
@@ -314,11 +636,11 @@ public class Server {
 	 * @return
 	 */
 	private static boolean Write(String serverName, Message msg) {
-		String portNo = Integer.valueOf(Config.getValue(serverName))-100+"";
+		String portNo = serverPort(serverName);
 		Message reply = Sender.messageToFileServer(serverName, portNo, msg);
 		if(reply!=null) System.out.println(reply.toString());
 
-		if(reply.status == Message.STATUS_SUCCESS)
+		if(reply != null && reply.status == Message.STATUS_SUCCESS)
 			return true;
 		else
 			return false;
@@ -331,14 +653,14 @@ public class Server {
 	 */
 	private static boolean IsServerActive(String serverName) {
 		System.out.println(serverName);
-		String portNo = Integer.valueOf(Config.getValue(serverName))-100+"";
+		String portNo = serverPort(serverName);
 		Message hellowMsg = new Message(Message.HELLO, Message.STATUS_REQ, null, null, null, 0, 0, 0, null);
 		
 		Message reply = Sender.messageToFileServer(serverName, portNo, hellowMsg);
 		
 		if(reply!=null) System.out.println(reply.toString());
 		
-		if(reply.status == Message.STATUS_SUCCESS)
+		if(reply != null && reply.status == Message.STATUS_SUCCESS)
 		{
 //			System.out.println(serverName+" is active");
 			return true;
@@ -6,7 +6,10 @@ import java.util.Set;
 		String name;
 		boolean status;
 		FileSystem fs;
-		int size;
+		long size;
+		// last heartbeat version applied and when it arrived
+		volatile long version = -1;
+		volatile long lastHeartBeat = System.currentTimeMillis();
 		
 		ServerInfo(String name) {
 			this.name = name;
@@ -18,7 +21,7 @@ import java.util.Set;
 			this.name = name;
 			this.status = status;
 			this.fs = fs;
-			if(fs!=null)this.size=fs.size;
+			if(fs!=null)this.size=fs.size.get();
 			else size=0;
 		}
 
@@ -26,7 +29,7 @@ import java.util.Set;
 			this.name = name;
 			this.status = status;
 			this.fs = fs;
-			if(fs!=null)this.size=fs.size;
+			if(fs!=null)this.size=fs.size.get();
 			else size=0;
 		}
 
@@ -36,7 +39,7 @@ import java.util.Set;
 //				this.fs = null;
 		}
 
-		synchronized int getSize() {
+		synchronized long getSize() {
 			return size;
 		}
 		
@@ -72,22 +75,44 @@ import java.util.Set;
 					}
 				}
 				
-				this.size = this.fs.size;
+				this.size = this.fs.size.get();
 				return true;
 
 			} else if (this.name.equals(name) && !this.status) {
 				this.fs = new FileSystem(fs);
 				this.status = true;
 				
-				this.size = this.fs.size;
+				this.size = this.fs.size.get();
 				return true;
 			} else {
-				this.size = this.fs.size;
+				this.size = this.fs.size.get();
 				log(this.name + "!=" + name + "mismatch in serverinfo update");
 				return false;
 			}
 		}
 
+		/**
+		 * Applies the chunks of a delta heartbeat. Sizes only grow, as with
+		 * full updates, since the MetaServer may already have accounted for an
+		 * append the server has not finished; size -1 drops the chunk.
+		 */
+		synchronized void applyDelta(HeartBeat hb) {
+			for (int i = 0; i < hb.count; i++) {
+				if (hb.sizes[i] < 0) {
+					fs.removeChunk(hb.files[i], hb.chunks[i]);
+					continue;
+				}
+				File cur = fs.fileInfo.get(hb.files[i]);
+				Integer curSize = cur == null ? null : cur.fileChunks
+						.get(hb.chunks[i]);
+				if (curSize == null || curSize < hb.sizes[i])
+					fs.addFile(hb.files[i], hb.chunks[i], hb.sizes[i],
+							hb.master[i]);
+			}
+			this.version = hb.version;
+			this.size = this.fs.size.get();
+		}
+
 		 private static void log(String string) {
 //			 System.out.println(string);
 		}
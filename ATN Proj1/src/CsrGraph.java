@@ -0,0 +1,43 @@
+/**
+ * The links of a weight matrix in compressed sparse rows: the links out of
+ * vertex v are targets[offsets[v]] to targets[offsets[v + 1] - 1], in
+ * vertex order, with their weights alongside. A weight of 0 is no link, as
+ * in Graph.
+ */
+public class CsrGraph {
+	final int[] offsets;
+	final int[] targets;
+	final int[] weights;
+
+	public CsrGraph(int[][] edges) {
+		int n = edges.length;
+		offsets = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			int count = 0;
+			for (int w : edges[v])
+				if (w > 0)
+					count++;
+			offsets[v + 1] = offsets[v] + count;
+		}
+		targets = new int[offsets[n]];
+		weights = new int[offsets[n]];
+		int l = 0;
+		for (int v = 0; v < n; v++) {
+			for (int u = 0; u < n; u++) {
+				if (edges[v][u] > 0) {
+					targets[l] = u;
+					weights[l] = edges[v][u];
+					l++;
+				}
+			}
+		}
+	}
+
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	public int links() {
+		return targets.length;
+	}
+}
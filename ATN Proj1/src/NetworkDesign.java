@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * One topology of the network design problem of Proj1: the traffic demand
+ * between every pair of nodes is routed along a shortest path, load[i][j]
+ * sums up the demand routed over the link from i to j (Proj1's Tot_Cost),
+ * and the cost of the network is the sum of load times weight over the
+ * links i to j, j >= i.
+ *
+ * The paths are found by Dijkstra from every node, the same paths as
+ * DijkstraAlgorithm finds, or by a blocked Floyd-Warshall, as short but
+ * possibly other ones of equal length. The loads are then summed up each
+ * shortest path tree from the leaves, instead of looking for every link in
+ * every path.
+ */
+public class NetworkDesign {
+
+	public enum Method {
+		DIJKSTRA, FLOYD_WARSHALL
+	}
+
+	// Floyd-Warshall tile size
+	static final int BLOCK = 64;
+
+	final int K;
+	final int[][] weight;
+	final int[][] demand;
+	int[][] load;
+	long cost;
+
+	NetworkDesign(int K, int[][] weight, int[][] demand) {
+		this.K = K;
+		this.weight = weight;
+		this.demand = demand;
+	}
+
+	public int size() {
+		return weight.length;
+	}
+
+	public void evaluate(Method method) {
+		int n = size();
+		load = new int[n][n];
+		if (method == Method.FLOYD_WARSHALL)
+			floydWarshall();
+		else
+			dijkstra();
+		cost = 0;
+		for (int i = 0; i < n; i++)
+			for (int j = i; j < n; j++)
+				cost += (long) load[i][j] * weight[i][j];
+	}
+
+	private void dijkstra() {
+		int n = size();
+		int[] dist = new int[n];
+		int[] pred = new int[n];
+		int[] order = new int[n];
+		int[] flow = new int[n];
+		CsrGraph csr = null;
+		ShortestPaths.Heap heap = null;
+		boolean[] settled = null;
+		if (sparse()) {
+			csr = new CsrGraph(weight);
+			heap = new ShortestPaths.Heap(n);
+		} else {
+			settled = new boolean[n];
+		}
+		for (int s = 0; s < n; s++) {
+			int reached = csr != null ? ShortestPaths.dijkstra(csr, s, dist,
+					pred, order, heap) : ShortestPaths.dijkstra(weight, s,
+					dist, pred, order, settled);
+			// the farthest first: all of a node's subtree is in its flow
+			// before it goes to its predecessor
+			int[] from = demand[s];
+			for (int r = reached - 1; r > 0; r--) {
+				int v = order[r];
+				int p = pred[v];
+				int f = flow[v] + from[v];
+				load[p][v] += f;
+				flow[p] += f;
+				flow[v] = 0;
+			}
+			flow[s] = 0;
+		}
+	}
+
+	// Fewer links than it takes a heap to beat scanning the matrix
+	boolean sparse() {
+		int n = size();
+		long links = 0;
+		for (int[] row : weight)
+			for (int w : row)
+				if (w > 0)
+					links++;
+		int log = 32 - Integer.numberOfLeadingZeros(n);
+		return links * log < (long) n * n;
+	}
+
+	private void floydWarshall() {
+		int n = size();
+		int[] dist = new int[n * n];
+		int[] next = new int[n * n];
+		ShortestPaths.floydWarshall(weight, dist, next, BLOCK);
+		// the paths to t make a tree too, farther nodes sending through
+		// nearer ones
+		long[] byDist = new long[n];
+		int[] flow = new int[n];
+		for (int t = 0; t < n; t++) {
+			int count = 0;
+			for (int v = 0; v < n; v++) {
+				int d = dist[v * n + t];
+				if (v != t && d != ShortestPaths.FW_INF)
+					byDist[count++] = (long) d << 32 | v;
+			}
+			Arrays.sort(byDist, 0, count);
+			for (int r = count - 1; r >= 0; r--) {
+				int v = (int) byDist[r];
+				int hop = next[v * n + t];
+				int f = flow[v] + demand[v][t];
+				load[v][hop] += f;
+				flow[hop] += f;
+				flow[v] = 0;
+			}
+			flow[t] = 0;
+		}
+	}
+
+	/** Traffic demand as Proj1 draws it: 0 to 3 between distinct nodes. */
+	static int[][] demand(int n, Random rand) {
+		int[][] demand = new int[n][n];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				if (i != j)
+					demand[i][j] = rand.nextInt(4);
+		return demand;
+	}
+
+	/**
+	 * Links as Proj1 lays them for K: in a random order of the others, each
+	 * node links at weight 1 to the first K and to those it already did,
+	 * and at weight fallback to the rest (0 for no link).
+	 */
+	static void addLinks(int[][] weight, int K, int fallback, Random rand) {
+		int n = weight.length;
+		for (int k = 0; k < n; k++) {
+			ArrayList<Integer> numbers = new ArrayList<Integer>();
+			for (int i = 0; i < n; i++)
+				numbers.add(i);
+			Collections.shuffle(numbers, rand);
+			int temp = 0;
+			for (int i = 0; i < n; i++) {
+				int pick = numbers.get(i);
+				if (k != pick) {
+					if ((weight[k][pick] != 1 && temp < K)
+							|| weight[k][pick] == 1)
+						weight[k][pick] = 1;
+					else
+						weight[k][pick] = fallback;
+					temp++;
+				}
+			}
+		}
+	}
+
+	static int[][] copy(int[][] a) {
+		int[][] c = new int[a.length][];
+		for (int i = 0; i < a.length; i++)
+			c[i] = a[i].clone();
+		return c;
+	}
+
+	/**
+	 * Proj1's sweep over K from fromK to toK on n nodes: draws the demand
+	 * and adds the links for each K in turn on the one topology, as Proj1
+	 * does, and evaluates the designs in parallel on threads threads. Only
+	 * as many designs as threads wait for a thread at a time.
+	 */
+	static NetworkDesign[] sweep(int n, int fromK, int toK, int fallback,
+			long seed, final Method method, int threads)
+			throws InterruptedException, ExecutionException {
+		Random rand = new Random(seed);
+		int[][] weight = new int[n][n];
+		NetworkDesign[] designs = new NetworkDesign[toK - fromK + 1];
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final Semaphore waiting = new Semaphore(threads);
+		ArrayList<Future<?>> done = new ArrayList<Future<?>>();
+		try {
+			for (int K = fromK; K <= toK; K++) {
+				int[][] demand = demand(n, rand);
+				addLinks(weight, K, fallback, rand);
+				final NetworkDesign design = new NetworkDesign(K,
+						copy(weight), demand);
+				designs[K - fromK] = design;
+				waiting.acquire();
+				done.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						try {
+							design.evaluate(method);
+						} finally {
+							waiting.release();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : done)
+				f.get();
+		} finally {
+			pool.shutdown();
+		}
+		return designs;
+	}
+}
@@ -0,0 +1,150 @@
+import java.util.Random;
+
+/**
+ * Times the network design evaluation: Proj1's old way (DijkstraAlgorithm
+ * from every node, then every link looked for in every path), Dijkstra and
+ * blocked Floyd-Warshall through NetworkDesign, and the K sweep on one
+ * thread against all of them. Checks that the old way and Dijkstra load
+ * every link the same, and that Floyd-Warshall routes as cheaply.
+ *
+ * java NetworkDesignBenchmark [-sizes 40,100,200,500,1000,2000]
+ *   [-old 200] [-K 5] [-sweep 200] [-seed 1]
+ * Each size is timed on the dense topology of Proj1 (every other link at
+ * weight 300) and a sparse one with only the K links. The old way is only
+ * run on the dense ones up to -old nodes; it takes O(V^4) and more.
+ */
+public class NetworkDesignBenchmark {
+
+	// Proj1's Tot_Cost, the way it was computed
+	static int[][] old(int[][] weight, int[][] demand) {
+		int n = weight.length;
+		Graph graph = new Graph(n);
+		for (int i = 0; i < n; i++) {
+			graph.setLabel(i, i);
+			for (int j = 0; j < n; j++)
+				graph.addEdge(i, j, weight[i][j]);
+		}
+		Path[] path = new Path[n * n];
+		int l = 0;
+		for (int start = 0; start < n; start++) {
+			final int[] pred = DijkstraAlgorithm.dijkstra(graph, start);
+			for (int d = 0; d < n; d++) {
+				if (start != d) {
+					path[l] = DijkstraAlgorithm.printPath(graph, pred, start, d);
+					path[l].setSource(start);
+					path[l].setDest(d);
+					l++;
+				}
+			}
+		}
+		int[][] load = new int[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int k = 0; k < n; k++) {
+				if (i != k) {
+					int temp = 0;
+					for (int m = 0; m < l; m++)
+						if (path[m].compare(i, k) == 1)
+							temp += demand[path[m].getSource()][path[m]
+									.getDest()];
+					load[i][k] = temp;
+				}
+			}
+		}
+		return load;
+	}
+
+	// Demand times length of path, summed: the same for any shortest paths
+	static long routed(NetworkDesign d) {
+		long sum = 0;
+		for (int i = 0; i < d.size(); i++)
+			for (int j = 0; j < d.size(); j++)
+				sum += (long) d.load[i][j] * d.weight[i][j];
+		return sum;
+	}
+
+	static boolean same(int[][] a, int[][] b) {
+		for (int i = 0; i < a.length; i++)
+			for (int j = 0; j < a.length; j++)
+				if (a[i][j] != b[i][j])
+					return false;
+		return true;
+	}
+
+	static long ms(long since) {
+		return (System.nanoTime() - since) / 1000000;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String sizes = "40,100,200,500,1000,2000";
+		int oldUpTo = 200;
+		int K = 5;
+		int sweepSize = 200;
+		long seed = 1;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-sizes"))
+				sizes = args[i + 1];
+			else if (args[i].equals("-old"))
+				oldUpTo = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-K"))
+				K = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-sweep"))
+				sweepSize = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-seed"))
+				seed = Long.parseLong(args[i + 1]);
+		}
+
+		System.out.println(String.format("%-7s %6s %9s %10s %10s %10s  %s",
+				"graph", "nodes", "links", "old ms", "dijkstra", "floyd-w",
+				"check"));
+		for (String s : sizes.split(",")) {
+			int n = Integer.parseInt(s.trim());
+			for (int fallback : new int[] { 300, 0 }) {
+				Random rand = new Random(seed);
+				int[][] demand = NetworkDesign.demand(n, rand);
+				int[][] weight = new int[n][n];
+				NetworkDesign.addLinks(weight, K, fallback, rand);
+				NetworkDesign dijkstra = new NetworkDesign(K, weight, demand);
+				NetworkDesign fw = new NetworkDesign(K, weight, demand);
+				long links = new CsrGraph(weight).links();
+
+				// a warm up on the small ones
+				if (n <= 200) {
+					dijkstra.evaluate(NetworkDesign.Method.DIJKSTRA);
+					fw.evaluate(NetworkDesign.Method.FLOYD_WARSHALL);
+				}
+				long t = System.nanoTime();
+				dijkstra.evaluate(NetworkDesign.Method.DIJKSTRA);
+				long dMs = ms(t);
+				t = System.nanoTime();
+				fw.evaluate(NetworkDesign.Method.FLOYD_WARSHALL);
+				long fMs = ms(t);
+				String check = routed(dijkstra) == routed(fw) ? "fw ok"
+						: "FW ROUTES DIFFER";
+				String oldMs = "-";
+				// the old Dijkstra fails when some node cannot be reached
+				if (n <= oldUpTo && fallback != 0) {
+					t = System.nanoTime();
+					int[][] load = old(weight, demand);
+					oldMs = String.valueOf(ms(t));
+					check += same(load, dijkstra.load) ? ", old ok"
+							: ", OLD LOADS DIFFER";
+				}
+				System.out.println(String.format(
+						"%-7s %6d %9d %10s %10d %10d  %s",
+						fallback == 0 ? "sparse" : "dense", n, links, oldMs,
+						dMs, fMs, check));
+			}
+		}
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		System.out.println();
+		System.out.println("Sweep of K 3 to 15 on " + sweepSize + " nodes:");
+		for (int th : threads > 1 ? new int[] { 1, threads } : new int[] { 1 }) {
+			long t = System.nanoTime();
+			NetworkDesign[] designs = NetworkDesign.sweep(sweepSize, 3, 15,
+					300, seed, NetworkDesign.Method.DIJKSTRA, th);
+			System.out.println(th + " threads: " + ms(t) + " ms, cost at K=15 "
+					+ designs[designs.length - 1].cost);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+
+/**
+ * Shortest path searches over primitive arrays, for NetworkDesign.
+ *
+ * Both Dijkstras settle the vertices in the order DijkstraAlgorithm does,
+ * the nearest first and the lowest numbered of equally near ones, and keep
+ * the first predecessor found, so they find the very same paths. The heap
+ * one is for sparse graphs, the scan of the matrix for dense ones, where a
+ * heap only adds a log V to every link.
+ */
+public class ShortestPaths {
+	// no path; for the Floyd-Warshall distances, half of MAX_VALUE so two
+	// of them still add up
+	static final int INF = Integer.MAX_VALUE;
+	static final int FW_INF = Integer.MAX_VALUE / 2;
+
+	/**
+	 * Dijkstra from s over g. Fills dist and pred (-1 for s), and order with
+	 * the vertices reached in the order they were settled; returns how many
+	 * were reached. heap is scratch space of g.size() vertices.
+	 */
+	static int dijkstra(CsrGraph g, int s, int[] dist, int[] pred,
+			int[] order, Heap heap) {
+		Arrays.fill(dist, INF);
+		dist[s] = 0;
+		pred[s] = -1;
+		heap.clear(dist);
+		heap.push(s);
+		int reached = 0;
+		while (!heap.isEmpty()) {
+			int next = heap.pop();
+			order[reached++] = next;
+			int d = dist[next];
+			for (int l = g.offsets[next]; l < g.offsets[next + 1]; l++) {
+				int v = g.targets[l];
+				int alt = d + g.weights[l];
+				if (dist[v] > alt) {
+					boolean queued = dist[v] != INF;
+					dist[v] = alt;
+					pred[v] = next;
+					if (queued)
+						heap.decreased(v);
+					else
+						heap.push(v);
+				}
+			}
+		}
+		return reached;
+	}
+
+	/**
+	 * Dijkstra from s over the weight matrix w, scanning for the nearest
+	 * vertex as DijkstraAlgorithm does; as dijkstra() otherwise.
+	 */
+	static int dijkstra(int[][] w, int s, int[] dist, int[] pred,
+			int[] order, boolean[] settled) {
+		Arrays.fill(dist, INF);
+		Arrays.fill(settled, false);
+		dist[s] = 0;
+		pred[s] = -1;
+		int reached = 0;
+		while (true) {
+			int next = -1;
+			int min = INF;
+			for (int i = 0; i < dist.length; i++) {
+				if (!settled[i] && dist[i] < min) {
+					next = i;
+					min = dist[i];
+				}
+			}
+			if (next == -1)
+				return reached;
+			settled[next] = true;
+			order[reached++] = next;
+			int[] row = w[next];
+			for (int v = 0; v < row.length; v++) {
+				if (row[v] > 0 && dist[v] > min + row[v]) {
+					dist[v] = min + row[v];
+					pred[v] = next;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Floyd-Warshall over the weight matrix w, in tiles of block x block so
+	 * the three tiles it works on at a time stay in the cache. dist and next
+	 * are n x n, row by row: dist[i * n + j] is the length of the shortest
+	 * path from i to j, FW_INF if none, and next[i * n + j] the vertex after
+	 * i on it, -1 if none.
+	 */
+	static void floydWarshall(int[][] w, int[] dist, int[] next, int block) {
+		int n = w.length;
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				boolean link = w[i][j] > 0 && i != j;
+				dist[i * n + j] = i == j ? 0 : link ? w[i][j] : FW_INF;
+				next[i * n + j] = link ? j : -1;
+			}
+		}
+		int blocks = (n + block - 1) / block;
+		for (int kb = 0; kb < blocks; kb++) {
+			int k0 = kb * block, k1 = Math.min(n, k0 + block);
+			// the tile on the diagonal, then its row and column, which only
+			// need it, then the rest, which need those
+			tile(n, dist, next, k0, k1, k0, k1, k0, k1);
+			for (int b = 0; b < blocks; b++) {
+				if (b == kb)
+					continue;
+				int b0 = b * block, b1 = Math.min(n, b0 + block);
+				tile(n, dist, next, k0, k1, b0, b1, k0, k1);
+				tile(n, dist, next, b0, b1, k0, k1, k0, k1);
+			}
+			for (int ib = 0; ib < blocks; ib++) {
+				if (ib == kb)
+					continue;
+				int i0 = ib * block, i1 = Math.min(n, i0 + block);
+				for (int jb = 0; jb < blocks; jb++) {
+					if (jb == kb)
+						continue;
+					int j0 = jb * block;
+					tile(n, dist, next, i0, i1, j0, Math.min(n, j0 + block),
+							k0, k1);
+				}
+			}
+		}
+	}
+
+	// Relaxes the paths from rows i0..i1 to columns j0..j1 through k0..k1
+	private static void tile(int n, int[] dist, int[] next, int i0, int i1,
+			int j0, int j1, int k0, int k1) {
+		for (int k = k0; k < k1; k++) {
+			int kr = k * n;
+			for (int i = i0; i < i1; i++) {
+				int ir = i * n;
+				int dik = dist[ir + k];
+				if (dik == FW_INF)
+					continue;
+				int nik = next[ir + k];
+				for (int j = j0; j < j1; j++) {
+					int alt = dik + dist[kr + j];
+					if (alt < dist[ir + j]) {
+						dist[ir + j] = alt;
+						next[ir + j] = nik;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Binary heap of vertices, the nearest on top and the lowest numbered
+	 * of equally near ones, by the distances it is cleared with.
+	 */
+	static class Heap {
+		private final int[] heap;
+		// where each vertex is in heap, -1 if not
+		private final int[] pos;
+		private int size = 0;
+		private int[] dist;
+
+		Heap(int n) {
+			heap = new int[n];
+			pos = new int[n];
+			Arrays.fill(pos, -1);
+		}
+
+		void clear(int[] dist) {
+			for (int i = 0; i < size; i++)
+				pos[heap[i]] = -1;
+			size = 0;
+			this.dist = dist;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		void push(int v) {
+			heap[size] = v;
+			pos[v] = size;
+			up(size++);
+		}
+
+		// Moves v up after its distance went down
+		void decreased(int v) {
+			up(pos[v]);
+		}
+
+		int pop() {
+			int top = heap[0];
+			pos[top] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				pos[heap[0]] = 0;
+				down(0);
+			}
+			return top;
+		}
+
+		private boolean before(int a, int b) {
+			return dist[a] < dist[b] || dist[a] == dist[b] && a < b;
+		}
+
+		private void up(int i) {
+			int v = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!before(v, heap[parent]))
+					break;
+				heap[i] = heap[parent];
+				pos[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = v;
+			pos[v] = i;
+		}
+
+		private void down(int i) {
+			int v = heap[i];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && before(heap[child + 1], heap[child]))
+					child++;
+				if (!before(heap[child], v))
+					break;
+				heap[i] = heap[child];
+				pos[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = v;
+			pos[v] = i;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exact all-terminal reliability by factoring on one link after another,
+ * up or down, with the subproblems memoized: after the first k links all
+ * that matters of the ones taken is which of the frontier nodes, those
+ * with links on both sides of k, they joined, so the branches that joined
+ * them alike are merged, as in a BDD. A branch that cuts a node off for
+ * good is dropped. The work grows with the number of ways to split the
+ * frontier, not with 2^m: fine for grids and the like dozens of nodes
+ * across and any length, hopeless for dense networks past 20 nodes or so.
+ *
+ * Each branch carries either the chance of it, for links of their own
+ * probabilities, or the number of ways of it for each number of links
+ * up, for the polynomial in p.
+ */
+public class FrontierReliability {
+	// frontier nodes a key holds, 4 bits each
+	static final int MAX_FRONTIER = 16;
+
+	final Network net;
+	final int[] order;
+	// where each node's first and last link are in order
+	final int[] first;
+	final int[] last;
+	int widest = 0;
+	long branches = 0;
+
+	FrontierReliability(Network net) {
+		this.net = net;
+		order = net.order();
+		first = new int[net.size()];
+		last = new int[net.size()];
+		Arrays.fill(first, -1);
+		for (int k = 0; k < order.length; k++) {
+			for (int v : new int[] { net.from(order[k]), net.to(order[k]) }) {
+				if (first[v] == -1)
+					first[v] = k;
+				last[v] = k;
+			}
+		}
+	}
+
+	/** The reliability polynomial of net, the probabilities aside. */
+	public static ReliabilityPolynomial polynomial(Network net) {
+		double[] F = new FrontierReliability(net).run(null);
+		if (F == null)
+			F = new double[net.links() + 1];
+		return new ReliabilityPolynomial(F);
+	}
+
+	/** The reliability of net with each link up with its probability. */
+	public static double reliability(Network net) {
+		return reliability(net, net.probabilities());
+	}
+
+	public static double reliability(Network net, double[] p) {
+		double[] r = new FrontierReliability(net).run(p);
+		return r == null ? 0 : r[0];
+	}
+
+	/**
+	 * Takes the links in order. With p null a branch holds, for each i, the
+	 * share of the C(k,i) ways to have i of the first k links up that lead
+	 * to it, so the end holds ReliabilityPolynomial's F; else the chance of
+	 * it. Returns null if no branch survives.
+	 */
+	double[] run(double[] p) {
+		int n = net.size();
+		if (n <= 1) {
+			double[] one = new double[p == null ? net.links() + 1 : 1];
+			Arrays.fill(one, 1);
+			return one;
+		}
+		for (int v = 0; v < n; v++)
+			if (first[v] == -1)
+				return null;
+
+		int[] frontier = new int[0];
+		int entered = 0;
+		HashMap<Long, double[]> branch = new HashMap<Long, double[]>();
+		branch.put(0L, new double[] { 1 });
+		for (int k = 0; k < order.length; k++) {
+			int link = order[k];
+			int u = net.from(link), v = net.to(link);
+
+			// the frontier with the ends of the link that enter now
+			int[] front = frontier;
+			if (first[u] == k)
+				front = append(front, u);
+			if (first[v] == k && v != u)
+				front = append(front, v);
+			int added = front.length - frontier.length;
+			entered += added;
+			int iu = indexOf(front, u), iv = indexOf(front, v);
+			// and without those that leave
+			int[] next = new int[front.length];
+			int size = 0;
+			for (int w : front)
+				if (last[w] != k)
+					next[size++] = w;
+			next = Arrays.copyOf(next, size);
+			if (size > MAX_FRONTIER)
+				throw new IllegalArgumentException("frontier of " + size
+						+ " nodes is too wide for an exact answer");
+			widest = Math.max(widest, size);
+			boolean allIn = entered == n;
+
+			HashMap<Long, double[]> after = new HashMap<Long, double[]>();
+			int[] labels = new int[front.length];
+			for (Map.Entry<Long, double[]> e : branch.entrySet()) {
+				long key = e.getKey();
+				double[] s = e.getValue();
+				int fresh = 0;
+				for (int i = 0; i < frontier.length; i++) {
+					labels[i] = (int) (key >>> (4 * i)) & 15;
+					fresh = Math.max(fresh, labels[i] + 1);
+				}
+				for (int i = frontier.length; i < front.length; i++)
+					labels[i] = fresh++;
+
+				// link down
+				long down = leave(labels, front, k, size, allIn);
+				// link up: the ends join
+				int[] up = labels.clone();
+				int a = up[iu], b = up[iv];
+				if (a != b)
+					for (int i = 0; i < up.length; i++)
+						if (up[i] == b)
+							up[i] = a;
+				long upKey = leave(up, front, k, size, allIn);
+
+				if (p == null) {
+					// C(k,i) / C(k+1,i) and C(k,i) / C(k+1,i+1)
+					if (down != -1) {
+						double[] t = target(after, down, k + 2);
+						for (int i = 0; i <= k; i++)
+							t[i] += s[i] * (k + 1 - i) / (k + 1);
+					}
+					if (upKey != -1) {
+						double[] t = target(after, upKey, k + 2);
+						for (int i = 0; i <= k; i++)
+							t[i + 1] += s[i] * (i + 1) / (k + 1);
+					}
+				} else {
+					double q = p[link];
+					if (down != -1)
+						target(after, down, 1)[0] += s[0] * (1 - q);
+					if (upKey != -1)
+						target(after, upKey, 1)[0] += s[0] * q;
+				}
+			}
+			branches += after.size();
+			branch = after;
+			frontier = next;
+			if (branch.isEmpty())
+				return null;
+		}
+		return branch.get(0L);
+	}
+
+	/**
+	 * The key of a branch with the given labels on front once the nodes
+	 * whose last link is k have left, the labels renumbered by first
+	 * appearance; -1 if a node leaves alone while others are still to be
+	 * reached, as then the network cannot be connected.
+	 */
+	private long leave(int[] labels, int[] front, int k, int size,
+			boolean allIn) {
+		for (int i = 0; i < front.length; i++) {
+			if (last[front[i]] != k)
+				continue;
+			boolean alone = true;
+			for (int j = 0; j < front.length && alone; j++)
+				if (j != i && labels[j] == labels[i]
+						&& (last[front[j]] != k || j > i))
+					alone = false;
+			// the last of its part to leave: was it all?
+			if (alone && (size > 0 || !allIn || !lastToLeave(front, k, i)))
+				return -1;
+		}
+		int[] map = new int[front.length + 1];
+		Arrays.fill(map, -1);
+		long key = 0;
+		int next = 0, pos = 0;
+		for (int i = 0; i < front.length; i++) {
+			if (last[front[i]] == k)
+				continue;
+			int l = labels[i];
+			if (map[l] == -1)
+				map[l] = next++;
+			key |= (long) map[l] << (4 * pos++);
+		}
+		return key;
+	}
+
+	// No node leaving with i after it in front
+	private boolean lastToLeave(int[] front, int k, int i) {
+		for (int j = i + 1; j < front.length; j++)
+			if (last[front[j]] == k)
+				return false;
+		return true;
+	}
+
+	private static double[] target(HashMap<Long, double[]> map, long key,
+			int length) {
+		double[] t = map.get(key);
+		if (t == null) {
+			t = new double[length];
+			map.put(key, t);
+		}
+		return t;
+	}
+
+	private static int[] append(int[] a, int v) {
+		int[] b = Arrays.copyOf(a, a.length + 1);
+		b[a.length] = v;
+		return b;
+	}
+
+	private static int indexOf(int[] a, int v) {
+		for (int i = 0; i < a.length; i++)
+			if (a[i] == v)
+				return i;
+		return -1;
+	}
+}
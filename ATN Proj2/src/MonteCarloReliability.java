@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * All-terminal reliability estimated by sampling, for networks too large
+ * for FrontierReliability; links up with the same probability p.
+ *
+ * Rather than drawing the links up or down, each sample turns the links
+ * up one at a time in a random order and notes the number T it took to
+ * connect the network, as in the permutation Monte Carlo of Elperin,
+ * Gertsbakh and Lomonosov. The first i links of a random order are a
+ * random i of them, so given T the chance the network is up at p is
+ * exactly the chance that T or more links are up, and a sample adds that
+ * chance instead of a 0 or 1. That takes out most of the variance, keeps
+ * working when failures are rare, and one run of samples gives R at every
+ * p, with a confidence interval from the spread of the chances.
+ *
+ * The samples are split into chunks run on a pool of threads, each chunk
+ * with its own seeded Random, so the result depends on the seed and the
+ * number of samples only.
+ */
+public class MonteCarloReliability {
+	static final int CHUNK = 10000;
+
+	final Network net;
+	final long samples;
+	// tally[t]: samples connected by the first t links, m + 1 if never
+	final long[] tally;
+
+	MonteCarloReliability(Network net, long samples, long[] tally) {
+		this.net = net;
+		this.samples = samples;
+		this.tally = tally;
+	}
+
+	public static MonteCarloReliability run(final Network net, long samples,
+			final long seed, int threads) throws Exception {
+		final int m = net.links();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<long[]>> chunks = new ArrayList<Future<long[]>>();
+		try {
+			for (long done = 0; done < samples; done += CHUNK) {
+				final int count = (int) Math.min(CHUNK, samples - done);
+				final long chunkSeed = seed * 0x9E3779B97F4A7C15L + done;
+				chunks.add(pool.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() {
+						return sample(net, count, new Random(chunkSeed));
+					}
+				}));
+			}
+			long[] tally = new long[m + 2];
+			for (Future<long[]> f : chunks) {
+				long[] t = f.get();
+				for (int i = 0; i < tally.length; i++)
+					tally[i] += t[i];
+			}
+			return new MonteCarloReliability(net, samples, tally);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	static long[] sample(Network net, int count, Random rand) {
+		int n = net.size(), m = net.links();
+		long[] tally = new long[m + 2];
+		int[] links = new int[m];
+		for (int l = 0; l < m; l++)
+			links[l] = l;
+		int[] parent = new int[n];
+		for (int s = 0; s < count; s++) {
+			for (int v = 0; v < n; v++)
+				parent[v] = v;
+			int parts = n;
+			int t = 0;
+			// shuffle as it goes: only the links taken need drawing
+			while (parts > 1 && t < m) {
+				int j = t + rand.nextInt(m - t);
+				int l = links[j];
+				links[j] = links[t];
+				links[t] = l;
+				t++;
+				int a = find(parent, net.from(l)), b = find(parent, net.to(l));
+				if (a != b) {
+					parent[a] = b;
+					parts--;
+				}
+			}
+			tally[parts > 1 ? m + 1 : t]++;
+		}
+		return tally;
+	}
+
+	private static int find(int[] parent, int v) {
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	// chance[t]: that t or more of the links are up at p
+	private double[] upChance(double p) {
+		int m = net.links();
+		double[] b = ReliabilityPolynomial.binomial(m, p);
+		double[] chance = new double[m + 2];
+		for (int t = m; t >= 0; t--)
+			chance[t] = chance[t + 1] + b[t];
+		for (int t = 0; t <= m; t++)
+			chance[t] = Math.min(1, chance[t]);
+		return chance;
+	}
+
+	public double reliability(double p) {
+		double[] chance = upChance(p);
+		double sum = 0;
+		for (int t = 0; t < tally.length; t++)
+			sum += tally[t] * chance[t];
+		return sum / samples;
+	}
+
+	public double standardError(double p) {
+		double[] chance = upChance(p);
+		double mean = reliability(p);
+		double ss = 0;
+		for (int t = 0; t < tally.length; t++)
+			ss += tally[t] * (chance[t] - mean) * (chance[t] - mean);
+		return samples > 1 ? Math.sqrt(ss / (samples - 1) / samples) : 0;
+	}
+
+	/** The confidence interval at p, z standard errors either side. */
+	public double[] interval(double p, double z) {
+		double r = reliability(p), e = z * standardError(p);
+		return new double[] { Math.max(0, r - e), Math.min(1, r + e) };
+	}
+
+	/**
+	 * The estimate as a polynomial: F[i] is the share of the samples
+	 * connected by their first i links.
+	 */
+	public ReliabilityPolynomial polynomial() {
+		int m = net.links();
+		double[] F = new double[m + 1];
+		long connected = 0;
+		for (int i = 0; i <= m; i++) {
+			connected += tally[i];
+			F[i] = connected / (double) samples;
+		}
+		return new ReliabilityPolynomial(F);
+	}
+}
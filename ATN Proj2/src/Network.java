@@ -0,0 +1,162 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * An undirected network as a list of links, each up with its own
+ * probability, for the reliability engine. Unlike Graph it keeps parallel
+ * links apart and needs no n x n matrix.
+ */
+public class Network {
+	final int n;
+	private int[] from = new int[16];
+	private int[] to = new int[16];
+	private double[] p = new double[16];
+	private int m = 0;
+
+	public Network(int n) {
+		this.n = n;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public int links() {
+		return m;
+	}
+
+	public int from(int link) {
+		return from[link];
+	}
+
+	public int to(int link) {
+		return to[link];
+	}
+
+	public double probability(int link) {
+		return p[link];
+	}
+
+	public void setProbability(int link, double probability) {
+		p[link] = probability;
+	}
+
+	public int addLink(int u, int v) {
+		return addLink(u, v, 1);
+	}
+
+	public int addLink(int u, int v, double probability) {
+		if (m == from.length) {
+			from = Arrays.copyOf(from, 2 * m);
+			to = Arrays.copyOf(to, 2 * m);
+			p = Arrays.copyOf(p, 2 * m);
+		}
+		from[m] = u;
+		to[m] = v;
+		p[m] = probability;
+		return m++;
+	}
+
+	public double[] probabilities() {
+		return Arrays.copyOf(p, m);
+	}
+
+	/**
+	 * Every pair of n nodes linked, in the order (0,1), (0,2) .. (0,n-1),
+	 * (1,2) ..: the order of the bits of Proj2's subgraph numbers.
+	 */
+	public static Network complete(int n) {
+		Network net = new Network(n);
+		for (int i = 0; i < n; i++)
+			for (int j = i + 1; j < n; j++)
+				net.addLink(i, j);
+		return net;
+	}
+
+	// The links of g above its diagonal
+	public static Network of(Graph g) {
+		Network net = new Network(g.size());
+		for (int i = 0; i < g.size(); i++)
+			for (int j = i + 1; j < g.size(); j++)
+				if (g.isEdge(i, j) || g.isEdge(j, i))
+					net.addLink(i, j);
+		return net;
+	}
+
+	// rows x cols nodes, each linked to the ones right of and below it
+	public static Network grid(int rows, int cols) {
+		Network net = new Network(rows * cols);
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				int v = r * cols + c;
+				if (c + 1 < cols)
+					net.addLink(v, v + 1);
+				if (r + 1 < rows)
+					net.addLink(v, v + cols);
+			}
+		}
+		return net;
+	}
+
+	/**
+	 * A connected network of n nodes and m >= n - 1 links: a random tree,
+	 * then links between random distinct nodes, parallel ones allowed.
+	 */
+	public static Network random(int n, int m, Random rand) {
+		Network net = new Network(n);
+		for (int v = 1; v < n; v++)
+			net.addLink(rand.nextInt(v), v);
+		while (net.links() < m) {
+			int u = rand.nextInt(n), v = rand.nextInt(n);
+			if (u != v)
+				net.addLink(u, v);
+		}
+		return net;
+	}
+
+	/**
+	 * The links in an order that keeps few nodes half done at a time: the
+	 * nodes in breadth first order from node 0, and the links by the
+	 * earlier of their ends, then the later.
+	 */
+	int[] order() {
+		ArrayList<ArrayList<Integer>> adj = new ArrayList<ArrayList<Integer>>();
+		for (int v = 0; v < n; v++)
+			adj.add(new ArrayList<Integer>());
+		for (int l = 0; l < m; l++) {
+			adj.get(from[l]).add(to[l]);
+			adj.get(to[l]).add(from[l]);
+		}
+		int[] pos = new int[n];
+		Arrays.fill(pos, -1);
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		for (int s = 0; s < n; s++) {
+			if (pos[s] != -1)
+				continue;
+			pos[s] = tail;
+			queue[tail++] = s;
+			while (head < tail) {
+				int v = queue[head++];
+				for (int u : adj.get(v)) {
+					if (pos[u] == -1) {
+						pos[u] = tail;
+						queue[tail++] = u;
+					}
+				}
+			}
+		}
+		long[] keys = new long[m];
+		for (int l = 0; l < m; l++) {
+			long a = Math.min(pos[from[l]], pos[to[l]]);
+			long b = Math.max(pos[from[l]], pos[to[l]]);
+			keys[l] = (a * n + b) << 24 | l;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[m];
+		for (int i = 0; i < m; i++)
+			order[i] = (int) (keys[i] & 0xffffff);
+		return order;
+	}
+}
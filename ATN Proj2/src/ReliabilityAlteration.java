@@ -1,4 +1,9 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ReliabilityAlteration {
 	public float newRel[] = new float[100];
@@ -7,42 +12,13 @@ public class ReliabilityAlteration {
 
 		float p = (float) 0.95;
 		Proj2 graphFull = new Proj2();
-		float actualRel = graphFull.networkReliablity(p);
-
-		float total = 0;
-		float[] avg = new float[1000];
-		for (int k = 0; k < 100; k++) {
-			for (int i = 0; i < 1000; i++) {
-				total = actualRel;
-				ArrayList<Integer> numbers = RandomNumber.rNum();
-				for (int c = 0; c < numbers.size() && c <= k; c++) {
-					Graph grh = graphFull.graph[numbers.get(c)];
-					float graphRel = graphFull.graphReliability(grh, p);
-					if (grh.isConnected()) {
-						total = total - (graphRel); // subtracting 2 times is
-													// wrong. Because in the
-													// actual you just add once
-													// so you delete once. You
-													// need not delete it again
-													// because we will not
-													// subtract if the nw is
-													// disconnected.
-					} else if (!grh.isConnected()) {
-						total = total + (graphRel);
-					} else {
-						System.out.println("You shouldnt reach here.");
-					}
-				}
-				avg[i] = total;
-			}
-			float sum = 0;
-			// calculate average of values
-			for (int i = 0; i < avg.length; i++)
-				sum = sum + avg[i];
-			float average = sum / avg.length;
-
-			newRel[k] = average;
-		}
+		int[] ks = new int[newRel.length];
+		for (int k = 0; k < ks.length; k++)
+			ks[k] = k;
+		double[][] rel = alterations(graphFull.polynomial,
+				new double[] { p }, ks);
+		for (int k = 0; k < newRel.length; k++)
+			newRel[k] = (float) rel[0][k];
 		System.out.println();
 		System.out.println("The new reliability values are:");
 		for (int i = 0; i < newRel.length; i++) {
@@ -50,4 +26,63 @@ public class ReliabilityAlteration {
 					+ " : " + newRel[i]);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * The average reliability once the verdict, connected or not, of k + 1
+	 * of the 2^m subgraphs picked at random is turned over, which took
+	 * 1000 samples of every k: each subgraph is picked with chance
+	 * (k + 1) / 2^m, and takes its probability off if it was connected and
+	 * adds it if not, so on average (k + 1) / 2^m of (1 - R) - R.
+	 */
+	static double altered(double rel, int links, int k) {
+		return rel + (k + 1) / Math.pow(2, links) * (1 - 2 * rel);
+	}
+
+	// altered() for every p of ps and k of ks, from the one polynomial
+	static double[][] alterations(ReliabilityPolynomial poly, double[] ps,
+			int[] ks) {
+		double[][] rel = new double[ps.length][ks.length];
+		for (int i = 0; i < ps.length; i++) {
+			double r = poly.evaluate(ps[i]);
+			for (int j = 0; j < ks.length; j++)
+				rel[i][j] = altered(r, poly.links(), ks[j]);
+		}
+		return rel;
+	}
+
+	/**
+	 * Reliability of net under each scenario, a probability for each of its
+	 * links, worked out exactly on threads threads.
+	 */
+	static double[] whatIf(final Network net, double[][] scenarios,
+			int threads) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Double>> runs = new ArrayList<Future<Double>>();
+		try {
+			for (final double[] p : scenarios) {
+				runs.add(pool.submit(new Callable<Double>() {
+					@Override
+					public Double call() {
+						return FrontierReliability.reliability(net, p);
+					}
+				}));
+			}
+			double[] rel = new double[scenarios.length];
+			for (int i = 0; i < rel.length; i++)
+				rel[i] = runs.get(i).get();
+			return rel;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Scenario i: link i down for good, the others up at p
+	static double[][] linkFailures(Network net, double p) {
+		double[][] scenarios = new double[net.links()][net.links()];
+		for (int i = 0; i < scenarios.length; i++) {
+			Arrays.fill(scenarios[i], p);
+			scenarios[i][i] = 0;
+		}
+		return scenarios;
+	}
+}
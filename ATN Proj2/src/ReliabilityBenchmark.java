@@ -0,0 +1,173 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Times the reliability engine against the way Proj2 used to work it out:
+ * a Graph for every one of the 2^m subgraphs, checked by
+ * UndirectedConnectivityBFS, and the probability of each connected one
+ * summed up again for every p of the curve. Checks the exact curve
+ * against that one where it can be run, and the Monte Carlo estimate
+ * against the exact one.
+ *
+ * java ReliabilityBenchmark [-enumerate 20] [-samples 200000] [-seed 1]
+ *   [-threads n]
+ * The old way runs up to -enumerate links.
+ */
+public class ReliabilityBenchmark {
+
+	static final int STEPS = 100;
+
+	// The curve as Proj2 used to get it
+	static double[] enumerate(Network net) {
+		int n = net.size(), m = net.links();
+		boolean[] connected = new boolean[1 << m];
+		int[] up = new int[1 << m];
+		PrintStream console = System.out;
+		// isConnected() prints every verdict
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			for (int s = 0; s < 1 << m; s++) {
+				Graph g = new Graph(n);
+				for (int l = 0; l < m; l++) {
+					if ((s & 1 << l) != 0) {
+						g.setWeight(net.from(l), net.to(l), 1);
+						g.setWeight(net.to(l), net.from(l), 1);
+					}
+				}
+				connected[s] = g.checkConnected();
+				up[s] = Integer.bitCount(s);
+			}
+		} finally {
+			System.setOut(console);
+		}
+		double[] curve = new double[STEPS + 1];
+		for (int i = 0; i <= STEPS; i++) {
+			double p = i / (double) STEPS;
+			for (int s = 0; s < 1 << m; s++)
+				if (connected[s])
+					curve[i] += Math.pow(p, up[s]) * Math.pow(1 - p, m - up[s]);
+		}
+		return curve;
+	}
+
+	static double maxDiff(double[] a, double[] b) {
+		double d = 0;
+		for (int i = 0; i < a.length; i++)
+			d = Math.max(d, Math.abs(a[i] - b[i]));
+		return d;
+	}
+
+	static double ms(long since) {
+		return (System.nanoTime() - since) / 1e6;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int enumerateUpTo = 20;
+		long samples = 200000;
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-enumerate"))
+				enumerateUpTo = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-samples"))
+				samples = Long.parseLong(args[i + 1]);
+			else if (args[i].equals("-seed"))
+				seed = Long.parseLong(args[i + 1]);
+			else if (args[i].equals("-threads"))
+				threads = Integer.parseInt(args[i + 1]);
+		}
+		Random rand = new Random(seed);
+		String[] names = { "K5", "K6", "random 12/20", "K7", "grid 4x6",
+				"random 20/40", "grid 6x30", "grid 8x40", "random 1000/2000" };
+		Network[] nets = { Network.complete(5), Network.complete(6),
+				Network.random(12, 20, rand), Network.complete(7),
+				Network.grid(4, 6), Network.random(20, 40, rand),
+				Network.grid(6, 30), Network.grid(8, 40),
+				Network.random(1000, 2000, rand) };
+
+		System.out.println(String.format(
+				"%-17s %6s %12s %12s %9s %12s  %s", "network", "links",
+				"old ms", "exact ms", "frontier", "R(0.9)", "check"));
+		ReliabilityPolynomial[] exact = new ReliabilityPolynomial[nets.length];
+		for (int i = 0; i < nets.length; i++) {
+			Network net = nets[i];
+			String old = "-", check = "";
+			if (net.links() <= enumerateUpTo) {
+				long t = System.nanoTime();
+				double[] curve = enumerate(net);
+				old = String.format("%.1f", ms(t));
+				exact[i] = FrontierReliability.polynomial(net);
+				check = "max diff "
+						+ String.format("%.1e",
+								maxDiff(curve, exact[i].curve(STEPS)));
+			}
+			String exactMs = "-", width = "-", r = "-";
+			try {
+				long t = System.nanoTime();
+				FrontierReliability f = new FrontierReliability(net);
+				double[] F = f.run(null);
+				exact[i] = new ReliabilityPolynomial(
+						F != null ? F : new double[net.links() + 1]);
+				exact[i].curve(STEPS);
+				exactMs = String.format("%.1f", ms(t));
+				width = String.valueOf(f.widest);
+				r = String.format("%.8f", exact[i].evaluate(0.9));
+			} catch (IllegalArgumentException e) {
+				exact[i] = null;
+				check = "too wide for exact";
+			}
+			System.out.println(String.format(
+					"%-17s %6d %12s %12s %9s %12s  %s", names[i],
+					net.links(), old, exactMs, width, r, check));
+		}
+
+		System.out.println();
+		System.out.println("Monte Carlo, " + samples + " samples on "
+				+ threads + " threads, 95% intervals:");
+		for (int i = 0; i < nets.length; i++) {
+			long t = System.nanoTime();
+			MonteCarloReliability mc = MonteCarloReliability.run(nets[i],
+					samples, seed, threads);
+			double took = ms(t);
+			StringBuilder sb = new StringBuilder();
+			for (double p : new double[] { 0.7, 0.9, 0.99 }) {
+				double[] ci = mc.interval(p, 1.96);
+				sb.append(String.format("  R(%s) %.6g [%.6g, %.6g]", p,
+						mc.reliability(p), ci[0], ci[1]));
+				if (exact[i] != null) {
+					double e = exact[i].evaluate(p);
+					sb.append(e >= ci[0] && e <= ci[1] ? " ok" : " MISS");
+				}
+			}
+			System.out.println(String.format("%-17s %8.1f ms%s", names[i],
+					took, sb));
+		}
+		if (threads > 1) {
+			Network big = nets[nets.length - 1];
+			long t = System.nanoTime();
+			MonteCarloReliability.run(big, samples, seed, 1);
+			System.out.println("the last on 1 thread: "
+					+ String.format("%.1f", ms(t)) + " ms");
+		}
+
+		System.out.println();
+		Network grid = nets[6];
+		long t = System.nanoTime();
+		double[] failed = ReliabilityAlteration.whatIf(grid,
+				ReliabilityAlteration.linkFailures(grid, 0.9), threads);
+		int worst = 0;
+		for (int l = 1; l < failed.length; l++)
+			if (failed[l] < failed[worst])
+				worst = l;
+		System.out.println(String.format(
+				"What if each link of grid 6x30 failed, at p 0.9: %d runs in"
+						+ " %.1f ms, worst link %d-%d leaves %.8f",
+				failed.length, ms(t), grid.from(worst), grid.to(worst),
+				failed[worst]));
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * All-terminal reliability of a network of m links, each up with the same
+ * probability p, as a polynomial in p:
+ *
+ * R(p) = sum over i of F[i] * C(m,i) * p^i * (1-p)^(m-i)
+ *
+ * where F[i] is the chance the network is connected when i links picked
+ * at random are up, so F[i] * C(m,i) of the subgraphs with i links are
+ * connected. Kept as F rather than the counts, which overflow a double
+ * past a thousand or so links. Computed once, it gives R at any p.
+ */
+public class ReliabilityPolynomial {
+	final int m;
+	final double[] F;
+
+	ReliabilityPolynomial(double[] F) {
+		this.m = F.length - 1;
+		this.F = F;
+	}
+
+	public int links() {
+		return m;
+	}
+
+	public double evaluate(double p) {
+		double[] b = binomial(m, p);
+		double r = 0;
+		for (int i = 0; i <= m; i++)
+			r += F[i] * b[i];
+		return r;
+	}
+
+	// R at p = 0, 1/steps, 2/steps .. 1
+	public double[] curve(int steps) {
+		double[] r = new double[steps + 1];
+		for (int i = 0; i <= steps; i++)
+			r[i] = evaluate(i / (double) steps);
+		return r;
+	}
+
+	// Number of connected spanning subgraphs
+	public double connectedSubgraphs() {
+		double count = 0;
+		double c = 1; // C(m,i)
+		for (int i = 0; i <= m; i++) {
+			count += F[i] * c;
+			c = c * (m - i) / (i + 1);
+		}
+		return count;
+	}
+
+	/**
+	 * The binomial distribution of the number of m links up at p, by way of
+	 * logarithms so the terms of large m neither overflow nor underflow
+	 * before they are small enough not to matter.
+	 */
+	static double[] binomial(int m, double p) {
+		double[] b = new double[m + 1];
+		if (p <= 0) {
+			b[0] = 1;
+			return b;
+		}
+		if (p >= 1) {
+			b[m] = 1;
+			return b;
+		}
+		double lp = Math.log(p), lq = Math.log1p(-p);
+		double logC = 0;
+		for (int i = 0; i <= m; i++) {
+			b[i] = Math.exp(logC + i * lp + (m - i) * lq);
+			logC += Math.log(m - i) - Math.log(i + 1);
+		}
+		return b;
+	}
+}
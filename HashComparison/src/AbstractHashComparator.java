@@ -15,6 +15,29 @@ public class AbstractHashComparator {
 	public void Insert(BigInteger value){ System.out.println("AHC");}
 	public void Delete(BigInteger value){ }
 	public boolean Find(BigInteger value){ return true;}
+	
+	// Keys that fit a long; the primitive tables take them as they are
+	public void Insert(long value){ Insert(BigInteger.valueOf(value)); }
+	public void Delete(long value){ Delete(BigInteger.valueOf(value)); }
+	public boolean Find(long value){ return Find(BigInteger.valueOf(value)); }
+	
+	// Read4mFile's running max and min, for keys read as longs: a
+	// BigInteger only when one of them moves
+	void Seen(long value){
+		if(max.bitLength() < 64 ? value > max.longValue() : max.signum() < 0)
+			max = BigInteger.valueOf(value);
+		if(min.bitLength() < 64 ? value < min.longValue() : min.signum() > 0)
+			min = BigInteger.valueOf(value);
+	}
+	
+	public int Ops(){
+		return insert + find + remove;
+	}
+	
+	// Slots or chain entries a Find of value looks at, for HashBenchmark
+	public int Probes(BigInteger value){ return 0; }
+	public int Probes(long value){ return Probes(BigInteger.valueOf(value)); }
+	
 	public void Display(){ }
 	public void FindMax(){ }
 	public void FindMin(){ }
@@ -109,6 +109,11 @@ public class CuckooHash extends AbstractHashComparator{
 		}
 	}
 	
+	public int Probes(BigInteger value){
+		int index1 = value.mod(maxTabSize).intValue();
+		return hashTable1[index1].key.equals(value) ? 1 : 2;
+	}
+	
 	public void FindMax(){ 
 		max = new BigInteger("0");
 		int i = 0;
@@ -0,0 +1,272 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/*
+ * Times the tables one operation at a time on keys made up front by
+ * KeyStream, where HashComparator dates a whole run of Read4mFile, file
+ * reading, String.split and BigInteger parsing included. For each stream
+ * and load, load * size keys go into a fresh table of maxTabSize size,
+ * then each kind of Find, FindMax and FindMin, and a Delete of half of
+ * them are timed in turn; the warmup rounds are thrown away and the
+ * median of the rest kept, with the bytes allocated per op by the thread
+ * and how many slots or chain entries each Find looked at.
+ *
+ * java HashBenchmark [-size 131071] [-collideSize 8191] [-loads 0.25,0.5,0.75]
+ *   [-streams uniform,zipfian,sequential,collisions] [-tables Cuckoo,Long]
+ *   [-warmup 2] [-iterations 3] [-finds 100000] [-misses 50] [-scans 3]
+ *   [-zipf 0.99] [-seed 1]
+ * -tables keeps the tables whose names hold one of the words. The
+ * collisions stream runs on tables of collideSize, as it makes the
+ * BigInteger tables quadratic. Loads are under 1: a full OpenAddressingHash
+ * probes for ever.
+ */
+public class HashBenchmark {
+	static final String OPS[] = { "Insert", "FindHit", "FindMiss", "FindMax", "FindMin", "Delete" };
+	static final int INSERT = 0, HIT = 1, MISS = 2, MAX = 3, MIN = 4, DELETE = 5;
+	// lower ends of the probe histogram's buckets
+	static final int BUCKETS[] = { 0, 1, 2, 3, 5, 9, 17, 65, 1025 };
+	static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	// so the JIT cannot drop the finds
+	static int sink;
+	
+	static abstract class Table {
+		final String name;
+		final boolean longKeys;
+		
+		Table(String name, boolean longKeys){
+			this.name = name;
+			this.longKeys = longKeys;
+		}
+		
+		abstract AbstractHashComparator make(BigInteger maxTabSize);
+	}
+	
+	static Table[] tables(){
+		return new Table[]{
+			new Table("CuckooHash", false){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new CuckooHash(maxTabSize); }
+			},
+			new Table("LongCuckooHash", true){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new LongCuckooHash(maxTabSize); }
+			},
+			new Table("SeperateChaining", false){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new SeperateChaining(maxTabSize); }
+			},
+			new Table("LongSeperateChaining", true){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new LongSeperateChaining(maxTabSize); }
+			},
+			new Table("SeperateChaining1way", false){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new SeperateChaining1way(maxTabSize); }
+			},
+			new Table("LongSeperateChaining1way", true){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new LongSeperateChaining1way(maxTabSize); }
+			},
+			new Table("OpenAddressingHash", false){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new OpenAddressingHash(maxTabSize); }
+			},
+			new Table("LongOpenAddressingHash", true){
+				AbstractHashComparator make(BigInteger maxTabSize){ return new LongOpenAddressingHash(maxTabSize); }
+			},
+		};
+	}
+	
+	// Bytes this thread has allocated, -1 where the JVM does not say
+	static long allocated(){
+		if(THREADS instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+	
+	// Does op on hash, returning how many times
+	static int run(int op, Table table, AbstractHashComparator hash, KeyStream keys, int scans){
+		int i;
+		switch(op){
+		case INSERT:
+			if(table.longKeys)
+				for(i = 0; i < keys.inserts.length; i++)
+					hash.Insert(keys.inserts[i]);
+			else
+				for(i = 0; i < keys.bigInserts.length; i++)
+					hash.Insert(keys.bigInserts[i]);
+			return keys.inserts.length;
+		case HIT:
+			return find(table, hash, keys.hits, keys.bigHits);
+		case MISS:
+			return find(table, hash, keys.misses, keys.bigMisses);
+		case MAX:
+			for(i = 0; i < scans; i++)
+				hash.FindMax();
+			return scans;
+		case MIN:
+			for(i = 0; i < scans; i++)
+				hash.FindMin();
+			return scans;
+		default:
+			if(table.longKeys)
+				for(i = 0; i < keys.deletes.length; i++)
+					hash.Delete(keys.deletes[i]);
+			else
+				for(i = 0; i < keys.bigDeletes.length; i++)
+					hash.Delete(keys.bigDeletes[i]);
+			return keys.deletes.length;
+		}
+	}
+	
+	static int find(Table table, AbstractHashComparator hash, long keys[], BigInteger bigKeys[]){
+		int found = 0;
+		if(table.longKeys){
+			for(int i = 0; i < keys.length; i++)
+				if(hash.Find(keys[i]))
+					found++;
+		}
+		else{
+			for(int i = 0; i < bigKeys.length; i++)
+				if(hash.Find(bigKeys[i]))
+					found++;
+		}
+		sink += found;
+		return keys.length;
+	}
+	
+	// The probes of a Find of each key, bucketed, with the mean and most
+	static String histogram(Table table, AbstractHashComparator hash, long keys[], BigInteger bigKeys[]){
+		long counts[] = new long[BUCKETS.length];
+		long total = 0;
+		int most = 0;
+		for(int i = 0; i < keys.length; i++){
+			int probes = table.longKeys ? hash.Probes(keys[i]) : hash.Probes(bigKeys[i]);
+			int b = BUCKETS.length - 1;
+			while(probes < BUCKETS[b])
+				b--;
+			counts[b]++;
+			total += probes;
+			most = Math.max(most, probes);
+		}
+		StringBuilder sb = new StringBuilder(String.format("mean %.2f max %d ", keys.length == 0 ? 0.0 : total / (double)keys.length, most));
+		for(int b = 0; b < BUCKETS.length; b++){
+			if(counts[b] == 0)
+				continue;
+			int hi = b + 1 < BUCKETS.length ? BUCKETS[b + 1] - 1 : -1;
+			String range = hi == BUCKETS[b] ? "" + hi : hi == -1 ? BUCKETS[b] + "+" : BUCKETS[b] + "-" + hi;
+			sb.append(String.format(" %s:%.1f%%", range, 100.0 * counts[b] / keys.length));
+		}
+		return sb.toString();
+	}
+	
+	static double median(double values[]){
+		double sorted[] = values.clone();
+		Arrays.sort(sorted);
+		int mid = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+	}
+	
+	static void bench(Table table, KeyStream keys, BigInteger maxTabSize, int warmup, int iterations, int scans){
+		double rate[][] = new double[OPS.length][iterations];
+		long bytes[] = new long[OPS.length], count[] = new long[OPS.length];
+		String hits = "", misses = "";
+		for(int it = -warmup; it < iterations; it++){
+			AbstractHashComparator hash = table.make(maxTabSize);
+			for(int op = 0; op < OPS.length; op++){
+				if(op == DELETE && it == iterations - 1){
+					hits = histogram(table, hash, keys.hits, keys.bigHits);
+					misses = histogram(table, hash, keys.misses, keys.bigMisses);
+				}
+				long a = allocated();
+				long t = System.nanoTime();
+				int ops = run(op, table, hash, keys, scans);
+				t = System.nanoTime() - t;
+				a = allocated() - a;
+				if(it >= 0){
+					rate[op][it] = ops * 1e9 / Math.max(t, 1);
+					bytes[op] += a;
+					count[op] += ops;
+				}
+			}
+		}
+		StringBuilder ops = new StringBuilder(String.format("%-26s%6s", table.name, "ops/s"));
+		StringBuilder alloc = new StringBuilder(String.format("%-26s%6s", "", "B/op"));
+		for(int op = 0; op < OPS.length; op++){
+			ops.append(String.format(" %11.4g", median(rate[op])));
+			alloc.append(allocated() == -1 ? String.format(" %11s", "-") : String.format(" %11.1f", bytes[op] / (double)Math.max(count[op], 1)));
+		}
+		System.out.println(ops);
+		System.out.println(alloc);
+		System.out.println("  hit probes  " + hits);
+		System.out.println("  miss probes " + misses);
+	}
+	
+	public static void main(String[] args) {
+		int size = 131071, collideSize = 8191;
+		String loads[] = { "0.25", "0.5", "0.75" };
+		String streams[] = { "uniform", "zipfian", "sequential", "collisions" };
+		String only[] = null;
+		int warmup = 2, iterations = 3, finds = 100000, misses = 50, scans = 3;
+		double zipf = 0.99;
+		long seed = 1;
+		for(int i = 0; i + 1 < args.length; i += 2){
+			if(args[i].equals("-size"))
+				size = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-collideSize"))
+				collideSize = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-loads"))
+				loads = args[i + 1].split(",");
+			else if(args[i].equals("-streams"))
+				streams = args[i + 1].split(",");
+			else if(args[i].equals("-tables"))
+				only = args[i + 1].split(",");
+			else if(args[i].equals("-warmup"))
+				warmup = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-iterations"))
+				iterations = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-finds"))
+				finds = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-misses"))
+				misses = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-scans"))
+				scans = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-zipf"))
+				zipf = Double.parseDouble(args[i + 1]);
+			else if(args[i].equals("-seed"))
+				seed = Long.parseLong(args[i + 1]);
+		}
+		
+		for(String stream : streams){
+			for(String load : loads){
+				int tabSize = stream.equals("collisions") ? collideSize : size;
+				int n = Math.min((int)(Double.parseDouble(load) * tabSize), tabSize - 1);
+				int f = Math.min(finds, Math.max(n, 1));
+				Random rand = new Random(seed);
+				KeyStream keys;
+				if(stream.equals("uniform"))
+					keys = KeyStream.uniform(n, f, misses, rand);
+				else if(stream.equals("zipfian"))
+					keys = KeyStream.zipfian(n, f, misses, zipf, rand);
+				else if(stream.equals("sequential"))
+					keys = KeyStream.sequential(n, f, misses, 1000000000L, rand);
+				else if(stream.equals("collisions"))
+					keys = KeyStream.collisions(n, f, misses, tabSize, rand);
+				else
+					throw new IllegalArgumentException("no key stream " + stream);
+				
+				System.out.println();
+				System.out.println(String.format("%s, load %s: %d keys into tables of %d, %d hits, %d misses, %d scans",
+						keys.name, load, n, tabSize, f, misses, scans));
+				StringBuilder header = new StringBuilder(String.format("%-32s", "table"));
+				for(String op : OPS)
+					header.append(String.format(" %11s", op));
+				System.out.println(header);
+				for(Table table : tables()){
+					boolean wanted = only == null;
+					for(int i = 0; only != null && i < only.length; i++)
+						wanted |= table.name.contains(only[i]);
+					if(wanted)
+						bench(table, keys, BigInteger.valueOf(tabSize), warmup, iterations, scans);
+				}
+			}
+		}
+	}
+}
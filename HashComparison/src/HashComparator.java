@@ -8,46 +8,66 @@ public class HashComparator {
 		return Math.min(Math.min(open,seperate), Math.min(cuckoo,seperate1way));		
 	}
 	
+	// Heap in use once the garbage is collected, in MB
+	static long usedMemory(){
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+			System.gc();
+		return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+	}
+	
+	/*
+	 * Runs the file on hash, made when usedMemory() was before, and prints
+	 * what the table took and how fast it went; returns its failures.
+	 */
+	static int run(String name, AbstractHashComparator hash, long before, Read4mFile readFile){
+		long built = usedMemory();
+		System.out.println(name + " starts at :" + new Date());
+		long start = System.nanoTime();
+		readFile.process(hash);
+		long took = System.nanoTime() - start;
+		System.out.println(name + " Ends at :" + new Date());
+		long after = usedMemory();
+		System.out.println(String.format("%s: %d MB empty, %d MB full, %d ops in %d ms, %.0f ops/s, %d fails",
+				name, built - before, after - before, hash.Ops(), took / 1000000,
+				hash.Ops() * 1e9 / Math.max(took, 1), hash.fail));
+		return hash.fail;
+	}
+	
 	public static void main(String[] args) {
 		
 		BigInteger maxTabSize;
 		maxTabSize = Constants.maxTabSize;
 		
 		Read4mFile readFile;
-		readFile = new Read4mFile(Constants.fileName);
+		readFile = new Read4mFile(args.length > 0 ? args[0] : Constants.fileName);
 		
 		System.out.println("Before Processing");
+		long before;
 
-		System.out.println("Cuckoo Hashing starts at :" +new Date());
-		AbstractHashComparator cuckooHash = new CuckooHash(maxTabSize);
-		readFile.process(cuckooHash);
-		int cuckoo = cuckooHash.fail;
-		cuckooHash = null;
-		System.out.println("Cuckoo Hashing Ends at :" +new Date());
-		
-		System.out.println("Seperate Chaining starts at :" +new Date());
-		AbstractHashComparator seperateHash = new SeperateChaining(maxTabSize);
-		readFile.process(seperateHash);
-		int seperate = seperateHash.fail;
-		seperateHash = null;
-		System.out.println("Seperate Chaining Ends at :" +new Date());
-		
-		System.out.println("SChaining 1 way starts at :" +new Date());
-		AbstractHashComparator seperateHash1way = new SeperateChaining1way(maxTabSize);
-		readFile.process(seperateHash1way);
-		int seperate1way = seperateHash1way.fail;
-		seperateHash1way = null;
-		System.out.println("SChaining 1 way Ends at :" +new Date());
+		before = usedMemory();
+		int cuckoo = run("Cuckoo Hashing", new CuckooHash(maxTabSize), before, readFile);
+		before = usedMemory();
+		int longCuckoo = run("Cuckoo Hashing, long keys", new LongCuckooHash(maxTabSize), before, readFile);
+		
+		before = usedMemory();
+		int seperate = run("Seperate Chaining", new SeperateChaining(maxTabSize), before, readFile);
+		before = usedMemory();
+		int longSeperate = run("Seperate Chaining, long keys", new LongSeperateChaining(maxTabSize), before, readFile);
+		
+		before = usedMemory();
+		int seperate1way = run("SChaining 1 way", new SeperateChaining1way(maxTabSize), before, readFile);
+		before = usedMemory();
+		int longSeperate1way = run("SChaining 1 way, long keys", new LongSeperateChaining1way(maxTabSize), before, readFile);
 
-		System.out.println("Open Addressing Starts at :" + new Date());
-		AbstractHashComparator openAddHash = new OpenAddressingHash(maxTabSize);
-		readFile.process(openAddHash);
-		int open = openAddHash.fail;
-		openAddHash = null;
-		System.out.println("Open Addressing Ends at :" +new Date());
+		before = usedMemory();
+		int open = run("Open Addressing", new OpenAddressingHash(maxTabSize), before, readFile);
+		before = usedMemory();
+		int longOpen = run("Open Addressing, long keys", new LongOpenAddressingHash(maxTabSize), before, readFile);
 		
 		
 		System.out.println(compareFailures(open, cuckoo, seperate, seperate1way));
+		System.out.println(compareFailures(longOpen, longCuckoo, longSeperate, longSeperate1way));
 		
 		System.out.println("Completed");
 	}
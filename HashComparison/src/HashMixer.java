@@ -0,0 +1,36 @@
+import java.math.BigInteger;
+
+
+/*
+ * Hashing for the primitive long tables: the 64 bit finalizer of
+ * MurmurHash3, as xxHash ends with too, spreads every bit of the key over
+ * the whole word, so a power of two table can take the low bits with a
+ * mask instead of a mod, and the high half makes a second, independent
+ * index for the two way tables.
+ */
+public class HashMixer {
+	
+	static long mix(long key){
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+	
+	// Smallest power of two holding maxTabSize
+	static int tableSize(BigInteger maxTabSize){
+		int size = 16;
+		while(size < maxTabSize.intValue() && size < (1 << 30))
+			size <<= 1;
+		return size;
+	}
+	
+	// The key a primitive table takes for value, which must fit a long
+	static long key(BigInteger value){
+		if(value.bitLength() > 63)
+			throw new ArithmeticException(value + " does not fit a long");
+		return value.longValue();
+	}
+}
@@ -0,0 +1,138 @@
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Random;
+
+
+/*
+ * The keys of one HashBenchmark workload, made before anything is timed:
+ * n distinct keys to insert, keys of them to find, keys not among them to
+ * find, and the order to delete half of them in, as longs and as
+ * BigIntegers both so neither kind of table pays for converting.
+ */
+public class KeyStream {
+	static final long RANGE = 1000000000000L;
+	
+	String name;
+	long inserts[], hits[], misses[], deletes[];
+	BigInteger bigInserts[], bigHits[], bigMisses[], bigDeletes[];
+	
+	// Random keys below RANGE, found uniformly
+	static KeyStream uniform(int n, int finds, int misses, Random rand){
+		return random("uniform", n, finds, misses, rand).done(rand);
+	}
+	
+	private static KeyStream random(String name, int n, int finds, int misses, Random rand){
+		KeyStream k = new KeyStream(name);
+		HashSet<Long> taken = new HashSet<Long>();
+		k.inserts = new long[n];
+		for(int i = 0; i < n; i++)
+			k.inserts[i] = fresh(taken, rand);
+		k.hits = pick(k.inserts, finds, rand);
+		k.misses = new long[misses];
+		for(int i = 0; i < misses; i++)
+			k.misses[i] = fresh(taken, rand);
+		return k;
+	}
+	
+	/*
+	 * Random keys as uniform, but found as a Zipf distribution with
+	 * exponent s over them, the first inserted the most: a few hot keys
+	 * and a long tail, as real lookups go.
+	 */
+	static KeyStream zipfian(int n, int finds, int misses, double s, Random rand){
+		KeyStream k = random("zipfian", n, finds, misses, rand);
+		double cdf[] = new double[n];
+		double sum = 0;
+		for(int i = 0; i < n; i++){
+			sum += 1 / Math.pow(i + 1, s);
+			cdf[i] = sum;
+		}
+		for(int i = 0; i < k.hits.length; i++){
+			double u = rand.nextDouble() * sum;
+			int lo = 0, hi = n - 1;
+			while(lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if(cdf[mid] < u)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			k.hits[i] = k.inserts[lo];
+		}
+		return k.done(rand);
+	}
+	
+	// start, start + 1 .. as ids handed out in turn, missed just past the end
+	static KeyStream sequential(int n, int finds, int misses, long start, Random rand){
+		KeyStream k = new KeyStream("sequential");
+		k.inserts = new long[n];
+		for(int i = 0; i < n; i++)
+			k.inserts[i] = start + i;
+		k.hits = pick(k.inserts, finds, rand);
+		k.misses = new long[misses];
+		for(int i = 0; i < misses; i++)
+			k.misses[i] = start + n + rand.nextInt(Math.max(n, 1));
+		return k.done(rand);
+	}
+	
+	/*
+	 * Multiples of tabSize, which all land in slot 0 of the tables that take
+	 * value mod maxTabSize, and in different second slots, so CuckooHash
+	 * still terminates; the misses are further multiples.
+	 */
+	static KeyStream collisions(int n, int finds, int misses, long tabSize, Random rand){
+		KeyStream k = new KeyStream("collisions");
+		k.inserts = new long[n];
+		for(int i = 0; i < n; i++)
+			k.inserts[i] = (i + 1) * tabSize;
+		k.hits = pick(k.inserts, finds, rand);
+		k.misses = new long[misses];
+		for(int i = 0; i < misses; i++)
+			k.misses[i] = (n + 1 + i) * tabSize;
+		return k.done(rand);
+	}
+	
+	KeyStream(String name){
+		this.name = name;
+	}
+	
+	private static long fresh(HashSet<Long> taken, Random rand){
+		long key;
+		do{
+			key = 1 + (long)(rand.nextDouble() * (RANGE - 1));
+		}while(!taken.add(key));
+		return key;
+	}
+	
+	private static long[] pick(long keys[], int count, Random rand){
+		long picked[] = new long[count];
+		for(int i = 0; i < count; i++)
+			picked[i] = keys[rand.nextInt(keys.length)];
+		return picked;
+	}
+	
+	// Half the inserts in random order, and the BigInteger copies
+	private KeyStream done(Random rand){
+		long shuffled[] = inserts.clone();
+		for(int i = shuffled.length - 1; i > 0; i--){
+			int j = rand.nextInt(i + 1);
+			long t = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = t;
+		}
+		deletes = new long[shuffled.length / 2];
+		System.arraycopy(shuffled, 0, deletes, 0, deletes.length);
+		bigInserts = big(inserts);
+		bigHits = big(hits);
+		bigMisses = big(misses);
+		bigDeletes = big(deletes);
+		return this;
+	}
+	
+	private static BigInteger[] big(long keys[]){
+		BigInteger big[] = new BigInteger[keys.length];
+		for(int i = 0; i < keys.length; i++)
+			big[i] = BigInteger.valueOf(keys[i]);
+		return big;
+	}
+}
@@ -0,0 +1,196 @@
+import java.math.BigInteger;
+
+
+/*
+ * CuckooHash on parallel primitive arrays: the keys in long[] and whether
+ * a slot holds one in byte[], two tables of a power of two size indexed by
+ * the low and the high half of HashMixer.mix. A key is kept once; when an
+ * insert has kicked keys around MAX_KICKS times the tables are doubled and
+ * everything put back under a new seed.
+ */
+public class LongCuckooHash extends AbstractHashComparator{
+	static final byte EMPTY = 0, OCCUPIED = 1;
+	static final int MAX_KICKS = 64;
+	
+	long keys1[], keys2[];
+	byte state1[], state2[];
+	int mask;
+	int count = 0;
+	long seed = 0;
+	// the key left without a slot when place() gives up
+	private long spare;
+	
+	LongCuckooHash(BigInteger maxTabSize){
+		this.maxTabSize = maxTabSize;
+		allocate(HashMixer.tableSize(maxTabSize));
+	}
+	
+	private void allocate(int size){
+		keys1 = new long[size];
+		keys2 = new long[size];
+		state1 = new byte[size];
+		state2 = new byte[size];
+		mask = size - 1;
+	}
+	
+	private int index1(long value){
+		return (int)HashMixer.mix(value ^ seed) & mask;
+	}
+	
+	private int index2(long value){
+		return (int)(HashMixer.mix(value ^ seed) >>> 32) & mask;
+	}
+	
+	public void Display(){
+		int i = 0;
+		for(i=0;i<keys1.length;i++)
+			System.out.print((state1[i] == OCCUPIED ? keys1[i] : -1) + " ");
+	
+		for(i=0;i<keys2.length;i++)
+			System.out.print((state2[i] == OCCUPIED ? keys2[i] : -1) + " ");
+	}
+	
+	public void Insert(BigInteger value){
+		Insert(HashMixer.key(value));
+	}
+	
+	public void Insert(long value){
+		insert++;
+		if(where(value) != 0)
+			return;
+		count++;
+		if(!place(value))
+			rehash(spare);
+	}
+	
+	/*
+	 * Puts value in its slot of the first table, the key there into its slot
+	 * of the second, and so on; false if that goes on too long, with the key
+	 * left over in spare.
+	 */
+	private boolean place(long value){
+		long dummy;
+		for(int kick = 0; kick < MAX_KICKS; kick++){
+			int index = index1(value);
+			if(state1[index] == EMPTY){
+				keys1[index] = value;
+				state1[index] = OCCUPIED;
+				return true;
+			}
+			dummy = keys1[index];
+			keys1[index] = value;
+			value = dummy;
+			
+			index = index2(value);
+			if(state2[index] == EMPTY){
+				keys2[index] = value;
+				state2[index] = OCCUPIED;
+				return true;
+			}
+			dummy = keys2[index];
+			keys2[index] = value;
+			value = dummy;
+		}
+		spare = value;
+		return false;
+	}
+	
+	// Doubles the tables, under a new seed, till all the keys and extra fit
+	private void rehash(long extra){
+		long all[] = new long[count];
+		int n = 0;
+		for(int i = 0; i < keys1.length; i++){
+			if(state1[i] == OCCUPIED)
+				all[n++] = keys1[i];
+			if(state2[i] == OCCUPIED)
+				all[n++] = keys2[i];
+		}
+		all[n++] = extra;
+		int size = keys1.length;
+		boolean placed = false;
+		while(!placed){
+			size *= 2;
+			allocate(size);
+			seed = HashMixer.mix(seed + 0x9e3779b97f4a7c15L);
+			placed = true;
+			for(int i = 0; i < n && placed; i++)
+				placed = place(all[i]);
+		}
+	}
+	
+	// 1 if value is in the first table, 2 the second, else 0
+	private int where(long value){
+		int index = index1(value);
+		if(state1[index] == OCCUPIED && keys1[index] == value)
+			return 1;
+		index = index2(value);
+		if(state2[index] == OCCUPIED && keys2[index] == value)
+			return 2;
+		return 0;
+	}
+	
+	public void Delete(BigInteger value){
+		Delete(HashMixer.key(value));
+	}
+	
+	public void Delete(long value){
+		remove++;
+		int at = where(value);
+		if(at == 1)
+			state1[index1(value)] = EMPTY;
+		else if(at == 2)
+			state2[index2(value)] = EMPTY;
+		if(at != 0)
+			count--;
+	}
+	
+	public boolean Find(BigInteger value){
+		return Find(HashMixer.key(value));
+	}
+	
+	public boolean Find(long value){
+		find++;
+		int at = where(value);
+		// as CuckooHash counts it, a find in the second table is a fail too
+		if(at != 1)
+			fail++;
+		return at != 0;
+	}
+	
+	public int Probes(BigInteger value){
+		return Probes(HashMixer.key(value));
+	}
+	
+	public int Probes(long value){
+		return where(value) == 1 ? 1 : 2;
+	}
+	
+	public void FindMax(){
+		long m = 0;
+		for(int i = 0; i < keys1.length; i++){
+			if(state1[i] == OCCUPIED && keys1[i] > m)
+				m = keys1[i];
+			if(state2[i] == OCCUPIED && keys2[i] > m)
+				m = keys2[i];
+		}
+		max = BigInteger.valueOf(m);
+	}
+	
+	public void FindMin(){
+		min = new BigInteger("10000000000000000000");
+		boolean any = false;
+		long m = Long.MAX_VALUE;
+		for(int i = 0; i < keys1.length; i++){
+			if(state1[i] == OCCUPIED && keys1[i] <= m){
+				m = keys1[i];
+				any = true;
+			}
+			if(state2[i] == OCCUPIED && keys2[i] <= m){
+				m = keys2[i];
+				any = true;
+			}
+		}
+		if(any)
+			min = BigInteger.valueOf(m);
+	}
+}
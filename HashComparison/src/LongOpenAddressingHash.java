@@ -0,0 +1,151 @@
+import java.math.BigInteger;
+
+
+/*
+ * OpenAddressingHash on parallel primitive arrays: the keys in long[] and
+ * E/O/D in byte[]. The table is a power of two, the first slot the low bits
+ * of HashMixer.mix and the step the high half made odd, so a probe reaches
+ * every slot. A probe stops at an empty slot instead of going round the
+ * whole table, and the table doubles, dropping the deleted slots, when
+ * more than three quarters are not empty.
+ */
+public class LongOpenAddressingHash extends AbstractHashComparator{
+	static final byte EMPTY = 0, OCCUPIED = 1, DELETED = 2;
+	
+	long keys[];
+	byte status[];
+	int mask;
+	// slots not empty, deleted ones included
+	int used = 0;
+	
+	LongOpenAddressingHash(BigInteger maxTabSize){
+		this.maxTabSize = maxTabSize;
+		int size = HashMixer.tableSize(maxTabSize);
+		keys = new long[size];
+		status = new byte[size];
+		mask = size - 1;
+	}
+	
+	public void Display(){
+		int i = 0;
+		for(i=0;i<keys.length;i++)
+			System.out.println(status[i] == OCCUPIED ? keys[i] : -1);
+	}
+	
+	public void Insert(BigInteger value){
+		Insert(HashMixer.key(value));
+	}
+	
+	public void Insert(long value){
+		insert++;
+		if(used + 1 > keys.length - (keys.length >> 2))
+			grow();
+		long hash = HashMixer.mix(value);
+		int index = (int)hash & mask, step = (int)(hash >>> 32) | 1;
+		while(status[index] == OCCUPIED)
+			index = (index + step) & mask;
+		if(status[index] == EMPTY)
+			used++;
+		keys[index] = value;
+		status[index] = OCCUPIED;
+	}
+	
+	private void grow(){
+		long oldKeys[] = keys;
+		byte oldStatus[] = status;
+		int size = keys.length;
+		// only double if the deleted slots were not most of it
+		int live = 0;
+		for(int i = 0; i < oldStatus.length; i++)
+			if(oldStatus[i] == OCCUPIED)
+				live++;
+		if(live >= size >> 1)
+			size <<= 1;
+		keys = new long[size];
+		status = new byte[size];
+		mask = size - 1;
+		used = live;
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldStatus[i] != OCCUPIED)
+				continue;
+			long hash = HashMixer.mix(oldKeys[i]);
+			int index = (int)hash & mask, step = (int)(hash >>> 32) | 1;
+			while(status[index] != EMPTY)
+				index = (index + step) & mask;
+			keys[index] = oldKeys[i];
+			status[index] = OCCUPIED;
+		}
+	}
+	
+	// The slot holding value, or -1
+	private int slot(long value){
+		long hash = HashMixer.mix(value);
+		int index = (int)hash & mask, step = (int)(hash >>> 32) | 1;
+		while(status[index] != EMPTY){
+			if(status[index] == OCCUPIED && keys[index] == value)
+				return index;
+			index = (index + step) & mask;
+		}
+		return -1;
+	}
+	
+	public void Delete(BigInteger value){
+		Delete(HashMixer.key(value));
+	}
+	
+	public void Delete(long value){
+		remove++;
+		int index = slot(value);
+		if(index != -1)
+			status[index] = DELETED;
+	}
+	
+	public boolean Find(BigInteger value){
+		return Find(HashMixer.key(value));
+	}
+	
+	public boolean Find(long value){
+		find++;
+		if(slot(value) != -1)
+			return true;
+		fail++;
+		return false;
+	}
+	
+	public int Probes(BigInteger value){
+		return Probes(HashMixer.key(value));
+	}
+	
+	// the empty slot that ends a probe counts
+	public int Probes(long value){
+		long hash = HashMixer.mix(value);
+		int index = (int)hash & mask, step = (int)(hash >>> 32) | 1, probes = 1;
+		while(status[index] != EMPTY && !(status[index] == OCCUPIED && keys[index] == value)){
+			index = (index + step) & mask;
+			probes++;
+		}
+		return probes;
+	}
+	
+	public void FindMax(){
+		long m = 0;
+		for(int i = 0; i < keys.length; i++)
+			if(status[i] == OCCUPIED && keys[i] > m)
+				m = keys[i];
+		max = BigInteger.valueOf(m);
+	}
+	
+	public void FindMin(){
+		min = new BigInteger("10000000000000000000");
+		boolean any = false;
+		long m = Long.MAX_VALUE;
+		for(int i = 0; i < keys.length; i++){
+			if(status[i] == OCCUPIED && keys[i] <= m){
+				m = keys[i];
+				any = true;
+			}
+		}
+		if(any)
+			min = BigInteger.valueOf(m);
+	}
+}
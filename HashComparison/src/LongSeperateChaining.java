@@ -0,0 +1,179 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+
+/*
+ * SeperateChaining without an ArrayList per bucket: the chains are linked
+ * through int[] next over one long[] of keys, head[] the first entry of
+ * each bucket, -1 for none, and removed entries go on a free list. The two
+ * buckets of a key are the low and the high half of HashMixer.mix masked
+ * to a power of two table, and length[] keeps the length of each chain,
+ * stuck at 127, to pick the shorter without walking them.
+ */
+public class LongSeperateChaining extends AbstractHashComparator{
+	int head[];
+	byte length[];
+	long keys[];
+	int next[];
+	int mask;
+	// entries handed out so far, and the first of the removed ones
+	int top = 0, free = -1;
+	
+	LongSeperateChaining(BigInteger maxTabSize){
+		this.maxTabSize = maxTabSize;
+		int size = HashMixer.tableSize(maxTabSize);
+		head = new int[size];
+		Arrays.fill(head, -1);
+		length = new byte[size];
+		mask = size - 1;
+		keys = new long[16];
+		next = new int[16];
+	}
+	
+	public void Display(){
+		int i = 0;
+		for(i=0;i<head.length;i++){
+			StringBuilder chain = new StringBuilder("[");
+			for(int e = head[i]; e != -1; e = next[e])
+				chain.append(e == head[i] ? "" : ", ").append(keys[e]);
+			System.out.println(chain.append("]"));
+		}
+	}
+	
+	public void Insert(BigInteger value){
+		Insert(HashMixer.key(value));
+	}
+	
+	public void Insert(long value){
+		long hash = HashMixer.mix(value);
+		int index1 = (int)hash & mask, index2 = (int)(hash >>> 32) & mask;
+		insert++;
+		int index = length[index1] > length[index2] ? index2 : index1;
+		
+		int e = free;
+		if(e != -1)
+			free = next[e];
+		else{
+			if(top == keys.length){
+				keys = Arrays.copyOf(keys, 2 * top);
+				next = Arrays.copyOf(next, 2 * top);
+			}
+			e = top++;
+		}
+		// at the front: equal keys are alike, so the order does not matter
+		keys[e] = value;
+		next[e] = head[index];
+		head[index] = e;
+		if(length[index] < Byte.MAX_VALUE)
+			length[index]++;
+	}
+	
+	// Takes the first value off the chain of index, false if there is none
+	private boolean unlink(int index, long value){
+		int prev = -1;
+		for(int e = head[index]; e != -1; prev = e, e = next[e]){
+			if(keys[e] != value)
+				continue;
+			if(prev == -1)
+				head[index] = next[e];
+			else
+				next[prev] = next[e];
+			next[e] = free;
+			free = e;
+			if(length[index] < Byte.MAX_VALUE)
+				length[index]--;
+			else{
+				int n = 0;
+				for(int f = head[index]; f != -1 && n < Byte.MAX_VALUE; f = next[f])
+					n++;
+				length[index] = (byte)n;
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean contains(int index, long value){
+		for(int e = head[index]; e != -1; e = next[e])
+			if(keys[e] == value)
+				return true;
+		return false;
+	}
+	
+	public void Delete(BigInteger value){
+		Delete(HashMixer.key(value));
+	}
+	
+	public void Delete(long value){
+		long hash = HashMixer.mix(value);
+		remove++;
+		if(!unlink((int)hash & mask, value))
+			unlink((int)(hash >>> 32) & mask, value);
+	}
+	
+	public boolean Find(BigInteger value){
+		return Find(HashMixer.key(value));
+	}
+	
+	public boolean Find(long value){
+		find++;
+		long hash = HashMixer.mix(value);
+		
+		if(contains((int)hash & mask, value)){
+			return true;
+		}
+		else if(contains((int)(hash >>> 32) & mask, value)){
+			fail++;
+			return true;
+		}
+		else{
+			fail++;
+			return false;
+		}
+	}
+	
+	public int Probes(BigInteger value){
+		return Probes(HashMixer.key(value));
+	}
+	
+	public int Probes(long value){
+		long hash = HashMixer.mix(value);
+		int probes = 0;
+		for(int e = head[(int)hash & mask]; e != -1; e = next[e]){
+			probes++;
+			if(keys[e] == value)
+				return probes;
+		}
+		for(int e = head[(int)(hash >>> 32) & mask]; e != -1; e = next[e]){
+			probes++;
+			if(keys[e] == value)
+				return probes;
+		}
+		return probes;
+	}
+	
+	public void FindMax(){
+		long m = 0;
+		for(int i = 0; i < head.length; i++)
+			for(int e = head[i]; e != -1; e = next[e])
+				if(keys[e] > m)
+					m = keys[e];
+		max = BigInteger.valueOf(m);
+	}
+	
+	public void FindMin(){
+		min = new BigInteger("10000000000000000000");
+		boolean any = false;
+		long m = Long.MAX_VALUE;
+		for(int i = 0; i < head.length; i++){
+			for(int e = head[i]; e != -1; e = next[e]){
+				if(keys[e] <= m){
+					m = keys[e];
+					any = true;
+				}
+			}
+		}
+		if(any)
+			min = BigInteger.valueOf(m);
+	}
+}
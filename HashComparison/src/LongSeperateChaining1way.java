@@ -0,0 +1,149 @@
+import java.math.BigInteger;
+import java.util.Arrays;
+
+
+/*
+ * SeperateChaining1way the way LongSeperateChaining keeps its chains: one
+ * long[] of keys linked through int[] next, head[] the first entry of each
+ * bucket and a free list of removed ones, the bucket the low bits of
+ * HashMixer.mix masked to a power of two table.
+ */
+public class LongSeperateChaining1way extends AbstractHashComparator{
+	int head[];
+	long keys[];
+	int next[];
+	int mask;
+	// entries handed out so far, and the first of the removed ones
+	int top = 0, free = -1;
+	
+	LongSeperateChaining1way(BigInteger maxTabSize){
+		this.maxTabSize = maxTabSize;
+		int size = HashMixer.tableSize(maxTabSize);
+		head = new int[size];
+		Arrays.fill(head, -1);
+		mask = size - 1;
+		keys = new long[16];
+		next = new int[16];
+	}
+	
+	public void Display(){
+		int i = 0;
+		for(i=0;i<head.length;i++){
+			StringBuilder chain = new StringBuilder("[");
+			for(int e = head[i]; e != -1; e = next[e])
+				chain.append(e == head[i] ? "" : ", ").append(keys[e]);
+			System.out.println(chain.append("]"));
+		}
+	}
+	
+	public void Insert(BigInteger value){
+		Insert(HashMixer.key(value));
+	}
+	
+	public void Insert(long value){
+		int index = (int)HashMixer.mix(value) & mask;
+		insert++;
+		
+		int e = free;
+		if(e != -1)
+			free = next[e];
+		else{
+			if(top == keys.length){
+				keys = Arrays.copyOf(keys, 2 * top);
+				next = Arrays.copyOf(next, 2 * top);
+			}
+			e = top++;
+		}
+		// at the front: equal keys are alike, so the order does not matter
+		keys[e] = value;
+		next[e] = head[index];
+		head[index] = e;
+	}
+	
+	// Takes the first value off the chain of index, false if there is none
+	private boolean unlink(int index, long value){
+		int prev = -1;
+		for(int e = head[index]; e != -1; prev = e, e = next[e]){
+			if(keys[e] != value)
+				continue;
+			if(prev == -1)
+				head[index] = next[e];
+			else
+				next[prev] = next[e];
+			next[e] = free;
+			free = e;
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean contains(int index, long value){
+		for(int e = head[index]; e != -1; e = next[e])
+			if(keys[e] == value)
+				return true;
+		return false;
+	}
+	
+	public void Delete(BigInteger value){
+		Delete(HashMixer.key(value));
+	}
+	
+	public void Delete(long value){
+		remove++;
+		unlink((int)HashMixer.mix(value) & mask, value);
+	}
+	
+	public boolean Find(BigInteger value){
+		return Find(HashMixer.key(value));
+	}
+	
+	public boolean Find(long value){
+		find++;
+		if(contains((int)HashMixer.mix(value) & mask, value)){
+			return true;
+		}
+		else{
+			fail++;
+			return false;
+		}
+	}
+	
+	public int Probes(BigInteger value){
+		return Probes(HashMixer.key(value));
+	}
+	
+	public int Probes(long value){
+		int probes = 0;
+		for(int e = head[(int)HashMixer.mix(value) & mask]; e != -1; e = next[e]){
+			probes++;
+			if(keys[e] == value)
+				break;
+		}
+		return probes;
+	}
+	
+	public void FindMax(){
+		long m = 0;
+		for(int i = 0; i < head.length; i++)
+			for(int e = head[i]; e != -1; e = next[e])
+				if(keys[e] > m)
+					m = keys[e];
+		max = BigInteger.valueOf(m);
+	}
+	
+	public void FindMin(){
+		min = new BigInteger("10000000000000000000");
+		boolean any = false;
+		long m = Long.MAX_VALUE;
+		for(int i = 0; i < head.length; i++){
+			for(int e = head[i]; e != -1; e = next[e]){
+				if(keys[e] <= m){
+					m = keys[e];
+					any = true;
+				}
+			}
+		}
+		if(any)
+			min = BigInteger.valueOf(m);
+	}
+}
@@ -106,6 +106,20 @@ public class OpenAddressingHash extends AbstractHashComparator{
 		}
 	}
 	
+	public int Probes(BigInteger value){
+		int firstIndex = value.mod(maxTabSize).intValue();
+		int index = firstIndex, i = 1, probes = 1;
+		int newHash = this.q.intValue() - (value.mod(q)).intValue();
+		while(!(hashTable[index].key.equals(value) && hashTable[index].status == 'O')){
+			index = (firstIndex + (i * newHash)) % maxTabSize.intValue();
+			if(index == firstIndex)
+				break;
+			probes++;
+			i++;
+		}
+		return probes;
+	}
+	
 	public void FindMax(){ 
 		max = new BigInteger("0");
 		int i = 0;
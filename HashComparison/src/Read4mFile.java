@@ -10,6 +10,18 @@ public class Read4mFile {
 	}
 	
 	
+	// At most 18 digits, so no BigInteger is needed to read it
+	static boolean isLong(String s){
+		int i = s.startsWith("-") ? 1 : 0;
+		if(s.length() == i || s.length() - i > 18)
+			return false;
+		for(; i < s.length(); i++){
+			if(s.charAt(i) < '0' || s.charAt(i) > '9')
+				return false;
+		}
+		return true;
+	}
+	
 	void parse(String Line, AbstractHashComparator hash){
 		String[] lines = new String[10];
 		BigInteger dummy;
@@ -19,7 +31,12 @@ public class Read4mFile {
 			
 			if(lines[0].equals("Insert")){
 				for(i=1;i<lines.length;i++){
-					if(lines[i]!="0"){
+					if(lines[i]!="0" && isLong(lines[i])){
+						long key = Long.parseLong(lines[i]);
+						hash.Seen(key);
+						hash.Insert(key);
+					}
+					else if(lines[i]!="0"){
 						dummy = new BigInteger(lines[i]);
 						if(dummy.compareTo(hash.max) > 0){
 							hash.max = dummy;
@@ -33,11 +50,17 @@ public class Read4mFile {
 			}
 			
 			else if(lines[0].equals("Remove")){
-				hash.Delete(new BigInteger(lines[1]));
+				if(isLong(lines[1]))
+					hash.Delete(Long.parseLong(lines[1]));
+				else
+					hash.Delete(new BigInteger(lines[1]));
 			}
 			
 			else if(lines[0].equals("Find")){
-				hash.Find(new BigInteger(lines[1]));
+				if(isLong(lines[1]))
+					hash.Find(Long.parseLong(lines[1]));
+				else
+					hash.Find(new BigInteger(lines[1]));
 			}
 			else if(lines[0].equals("FindMax")){
 //				if(hash.Find(hash.max)){
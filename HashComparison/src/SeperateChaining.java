@@ -67,6 +67,18 @@ public class SeperateChaining extends AbstractHashComparator{
 		}
 	}
 	
+	public int Probes(BigInteger value){
+		int index1, index2, at;
+		index1 = value.mod(maxTabSize).intValue();
+		index2 = ((value.divide(maxTabSize)).mod(maxTabSize)).intValue();
+		
+		if((at = hashTable[index1].key.indexOf(value)) != -1)
+			return at + 1;
+		if((at = hashTable[index2].key.indexOf(value)) != -1)
+			return hashTable[index1].key.size() + at + 1;
+		return hashTable[index1].key.size() + hashTable[index2].key.size();
+	}
+	
 	public void FindMax(){
 		max = new BigInteger("0");
 		int i = 0, j = 0;
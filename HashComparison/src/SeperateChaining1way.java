@@ -53,6 +53,14 @@ public class SeperateChaining1way extends AbstractHashComparator{
 		}
 	}
 
+	public int Probes(BigInteger value){
+		int index, at;
+		index = value.mod(maxTabSize).intValue();
+		
+		at = hashTable[index].key.indexOf(value);
+		return at != -1 ? at + 1 : hashTable[index].key.size();
+	}
+	
 	public void FindMax(){
 		max = new BigInteger("0");
 		int i = 0, j = 0;
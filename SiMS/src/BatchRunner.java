@@ -0,0 +1,286 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Schedulability study over many task sets: generates task sets with
+ * TaskSetGeneration at every utilization of a sweep, schedules each with
+ * every algorithm asked for, one Simulation per run, sharded across the
+ * cores with a fork-join pool, and sums up the runs per algorithm and
+ * utilization into a CSV file.
+ *
+ * java BatchRunner [-util 0.2:1.8:0.2] [-sets 100] [-tasks 10] [-procs 2]
+ *   [-alg EDF,RM,DM] [-hyper h] [-threads n] [-out summary.csv]
+ *   [-runs runs.csv]
+ * -util is from:to:step or a list; -runs also writes a line per run. Every
+ * algorithm gets the same task sets.
+ */
+public class BatchRunner {
+
+	// One task set scheduled with one algorithm
+	static class Run {
+		final SchedulingAlgorithm algorithm;
+		final double utilization;
+		final int set;
+		final String[] tuples;
+
+		boolean done = false;
+		int jobs;
+		int hits;
+		int started;
+		double response;
+		double maxResponse;
+		double turnAround;
+		double busy;
+		double capacity;
+
+		Run(SchedulingAlgorithm algorithm, double utilization, int set,
+				String[] tuples) {
+			this.algorithm = algorithm;
+			this.utilization = utilization;
+			this.set = set;
+			this.tuples = tuples;
+		}
+
+		void simulate(int procs, int hyper) {
+			Simulation sim = new Simulation(tuples, algorithm, procs);
+			sim.HyperPeriod = hyper;
+			sim.out = null;
+			try {
+				sim.run();
+			} catch (Exception e) {
+				e.printStackTrace();
+				return;
+			}
+			for (JobTuple job : sim.jobSet.Jobset) {
+				// Hit as in the Status of jobslist.txt
+				if (job.execBalance <= 0
+						&& job.getRecentEndTime() <= job.absdeadline) {
+					hits++;
+					turnAround += job.getTurnAroundTime();
+				}
+				double r = job.getResposeTime();
+				if (r != -1) {
+					started++;
+					response += r;
+					maxResponse = Math.max(maxResponse, r);
+				}
+			}
+			jobs = sim.jobSet.Jobset.length;
+			for (Processor p : sim.processors)
+				busy += p.Utilization;
+			capacity = sim.getHyperPeriod() * procs;
+			done = true;
+		}
+	}
+
+	// Splits the runs in halves down to one run a task
+	static class Shard extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final Run[] runs;
+		final int from, to, procs, hyper;
+
+		Shard(Run[] runs, int from, int to, int procs, int hyper) {
+			this.runs = runs;
+			this.from = from;
+			this.to = to;
+			this.procs = procs;
+			this.hyper = hyper;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				runs[from].simulate(procs, hyper);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Shard(runs, from, mid, procs, hyper), new Shard(
+						runs, mid, to, procs, hyper));
+			}
+		}
+	}
+
+	// The runs of one algorithm at one utilization
+	static class Summary {
+		final SchedulingAlgorithm algorithm;
+		final double utilization;
+		int sets, schedulable, failed;
+		long jobs, hits, started;
+		double response, maxResponse, turnAround, busy, capacity;
+
+		Summary(SchedulingAlgorithm algorithm, double utilization) {
+			this.algorithm = algorithm;
+			this.utilization = utilization;
+		}
+
+		void add(Run r) {
+			if (!r.done) {
+				failed++;
+				return;
+			}
+			sets++;
+			if (r.hits == r.jobs)
+				schedulable++;
+			jobs += r.jobs;
+			hits += r.hits;
+			started += r.started;
+			response += r.response;
+			maxResponse = Math.max(maxResponse, r.maxResponse);
+			turnAround += r.turnAround;
+			busy += r.busy;
+			capacity += r.capacity;
+		}
+
+		String toCSV() {
+			return algorithm + "," + utilization + "," + sets + "," + failed
+					+ "," + ratio(schedulable, sets) + "," + jobs + ","
+					+ ratio(hits, jobs) + "," + ratio(jobs - hits, jobs) + ","
+					+ ratio(response, started) + "," + maxResponse + ","
+					+ ratio(turnAround, hits) + "," + ratio(busy, capacity);
+		}
+	}
+
+	static final String SUMMARY_HEADER = "algorithm,utilization,task_sets,failed,"
+			+ "schedulable_ratio,jobs,hit_ratio,miss_ratio,mean_response,"
+			+ "max_response,mean_turnaround,processor_utilization";
+	static final String RUN_HEADER = "algorithm,utilization,task_set,jobs,hits,"
+			+ "misses,mean_response,max_response,processor_utilization";
+
+	static double ratio(double a, double b) {
+		return b == 0 ? 0 : Math.round(a / b * 1e6) / 1e6;
+	}
+
+	static double[] utilizations(String sweep) {
+		if (sweep.contains(":")) {
+			String[] r = sweep.split(":");
+			double from = Double.parseDouble(r[0]);
+			double to = Double.parseDouble(r[1]);
+			double step = Double.parseDouble(r[2]);
+			int n = (int) Math.floor((to - from) / step + 1e-9) + 1;
+			double[] u = new double[n];
+			for (int i = 0; i < n; i++)
+				u[i] = Math.round((from + i * step) * 1e6) / 1e6;
+			return u;
+		}
+		String[] l = sweep.split(",");
+		double[] u = new double[l.length];
+		for (int i = 0; i < l.length; i++)
+			u[i] = Double.parseDouble(l[i]);
+		return u;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String sweep = "0.2:1.8:0.2";
+		int sets = 100;
+		int tasks = Configuration.TasksInTestTaskSet;
+		int procs = Configuration.NoOfProcessors;
+		String algorithms = "EDF,RM,DM";
+		int hyper = Configuration.HyperPeriod;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String out = "summary.csv";
+		String runsOut = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			if (args[i].equals("-util")) {
+				sweep = value;
+			} else if (args[i].equals("-sets")) {
+				sets = Integer.parseInt(value);
+			} else if (args[i].equals("-tasks")) {
+				tasks = Integer.parseInt(value);
+			} else if (args[i].equals("-procs")) {
+				procs = Integer.parseInt(value);
+			} else if (args[i].equals("-alg")) {
+				algorithms = value;
+			} else if (args[i].equals("-hyper")) {
+				hyper = Integer.parseInt(value);
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(value);
+			} else if (args[i].equals("-out")) {
+				out = value;
+			} else if (args[i].equals("-runs")) {
+				runsOut = value;
+			} else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		double[] utils = utilizations(sweep);
+		ArrayList<SchedulingAlgorithm> algs = new ArrayList<SchedulingAlgorithm>();
+		for (String a : algorithms.split(","))
+			algs.add(SchedulingAlgorithm.valueOf(a.trim()));
+
+		ArrayList<Run> all = new ArrayList<Run>();
+		for (double u : utils) {
+			for (int s = 0; s < sets; s++) {
+				String[] tuples = TaskSetGeneration.generate(tasks, u);
+				for (SchedulingAlgorithm a : algs)
+					all.add(new Run(a, u, s, tuples));
+			}
+		}
+		Run[] runs = all.toArray(new Run[all.size()]);
+
+		PrintStream console = System.out;
+		console.println(runs.length + " runs: " + tasks + " tasks, " + procs
+				+ " processors, " + utils.length + " utilizations x " + sets
+				+ " task sets x " + algs + " on " + threads + " threads");
+		long start = System.nanoTime();
+		if (runs.length > 0)
+			new ForkJoinPool(threads).invoke(new Shard(runs, 0, runs.length,
+					procs, hyper));
+		long ms = (System.nanoTime() - start) / 1000000;
+
+		ArrayList<Summary> summaries = new ArrayList<Summary>();
+		for (SchedulingAlgorithm a : algs) {
+			for (double u : utils) {
+				Summary sum = new Summary(a, u);
+				for (Run r : runs)
+					if (r.algorithm == a && r.utilization == u)
+						sum.add(r);
+				summaries.add(sum);
+			}
+		}
+
+		try {
+			PrintWriter pr = new PrintWriter(new BufferedWriter(new FileWriter(
+					out, false)));
+			pr.println(SUMMARY_HEADER);
+			for (Summary sum : summaries)
+				pr.println(sum.toCSV());
+			pr.close();
+			if (runsOut != null) {
+				pr = new PrintWriter(new BufferedWriter(new FileWriter(runsOut,
+						false)));
+				pr.println(RUN_HEADER);
+				for (Run r : runs) {
+					if (!r.done)
+						continue;
+					pr.println(r.algorithm + "," + r.utilization + "," + r.set
+							+ "," + r.jobs + "," + r.hits + ","
+							+ (r.jobs - r.hits) + ","
+							+ ratio(r.response, r.started) + ","
+							+ r.maxResponse + "," + ratio(r.busy, r.capacity));
+				}
+				pr.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		console.println(String.format("%-4s %6s %6s %12s %9s %13s %11s",
+				"alg", "util", "sets", "schedulable", "hit", "mean response",
+				"proc util"));
+		for (Summary sum : summaries)
+			console.println(String.format(
+					"%-4s %6.2f %6d %12.3f %9.3f %13.3f %11.3f",
+					sum.algorithm, sum.utilization, sum.sets,
+					ratio(sum.schedulable, sum.sets), ratio(sum.hits, sum.jobs),
+					ratio(sum.response, sum.started),
+					ratio(sum.busy, sum.capacity)));
+		console.println("Done in " + ms + " ms, summary in " + out);
+	}
+}
@@ -1,34 +1,36 @@
 public class Clock implements Runnable {
 	double HyperPeriod;
-
-	private static Clock instance = null;
+	// the run this clock keeps the time of, whichever thread runs it
+	private final Simulation sim;
 
 	protected Clock(double HyperPeriod) {
 		this.HyperPeriod = HyperPeriod;
+		this.sim = Simulation.current();
 	}
 
 	public static Clock getInstance(double HyperPeriod) {
-		if (instance == null) {
-			instance = new Clock(HyperPeriod);
+		Simulation sim = Simulation.current();
+		if (sim.clock == null) {
+			sim.clock = new Clock(HyperPeriod);
 		}
-		return instance;
+		return sim.clock;
 	}
 
+	// Simulated time needs no wall time: the Scheduler moves the clock from
+	// event to event
 	void updateClock() {
-		try {
-			Thread.sleep(5); // sleep for 1 mill second
-		} catch (InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		Processor.processorClock++;
-
+		Processor.updateClock();
 	}
 
 	@Override
 	public void run() {
 		// TODO Auto-generated method stub
-		while (Processor.processorClock < HyperPeriod)
-			updateClock();
+		Simulation outer = sim.enter();
+		try {
+			while (sim.processorClock < HyperPeriod)
+				updateClock();
+		} finally {
+			sim.exit(outer);
+		}
 	}
 }
\ No newline at end of file
@@ -1,7 +1,3 @@
-enum SchedulingAlgorithm {
-	EDF, RM, DM;
-}
-
 public class Configuration {
 	// Parameters for Scheduling
 	public static int NoOfProcessors = 2;
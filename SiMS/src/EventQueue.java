@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+/**
+ * Pending events of the simulation, earliest first: job releases (and
+ * resumptions after a suspension), and the completions and suspensions of
+ * the jobs started on the processors. Kept as a binary heap over primitive
+ * arrays.
+ *
+ * Events are not removed when they no longer hold, as when a job is
+ * preempted before it completes; a stale event only makes the Scheduler
+ * look at one tick in which nothing happens.
+ */
+public class EventQueue {
+	static final int RELEASE = 0;
+	static final int COMPLETION = 1;
+	static final int SUSPENSION = 2;
+
+	private double[] times = new double[64];
+	private int[] jobs = new int[64];
+	private int[] types = new int[64];
+	private int size = 0;
+
+	void add(double time, int type, int jobNo) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size * 2);
+			jobs = Arrays.copyOf(jobs, size * 2);
+			types = Arrays.copyOf(types, size * 2);
+		}
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (times[parent] <= time)
+				break;
+			move(parent, i);
+			i = parent;
+		}
+		times[i] = time;
+		jobs[i] = jobNo;
+		types[i] = type;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	// Time of the earliest event, infinity if there is none
+	double peekTime() {
+		return size == 0 ? Double.POSITIVE_INFINITY : times[0];
+	}
+
+	int peekJob() {
+		return size == 0 ? -1 : jobs[0];
+	}
+
+	int peekType() {
+		return size == 0 ? -1 : types[0];
+	}
+
+	// Drops the events at or before time
+	void pollUntil(double time) {
+		while (size > 0 && times[0] <= time)
+			poll();
+	}
+
+	void poll() {
+		size--;
+		if (size == 0)
+			return;
+		double time = times[size];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && times[child + 1] < times[child])
+				child++;
+			if (times[child] >= time)
+				break;
+			move(child, i);
+			i = child;
+		}
+		times[i] = time;
+		jobs[i] = jobs[size];
+		types[i] = types[size];
+	}
+
+	private void move(int from, int to) {
+		times[to] = times[from];
+		jobs[to] = jobs[from];
+		types[to] = types[from];
+	}
+}
@@ -1,41 +1,51 @@
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.LinkedList;
 
 public class JobSet {
 
 	JobTuple[] Jobset = null;
 	int TotalNoOfJobs = 0;
 	int[] JobsPerTask = null;
+	// the jobs by jobNo - firstJobNo, Jobset itself gets sorted
+	private JobTuple[] byJobNo = null;
+	int firstJobNo = 0;
+	// index in byJobNo of the first job of each task
+	private int[] taskStart = null;
 	double HyperPeriod = 0;
-	private static JobSet instance = null;
 
+	// The jobs of the current Simulation, made on the first call
 	public static JobSet getInstance(double HyperPeriod) {
-		if (instance == null) {
-			instance = new JobSet(HyperPeriod);
+		Simulation sim = Simulation.current();
+		if (sim.jobSet == null) {
+			sim.jobSet = new JobSet(HyperPeriod);
 		}
-		return instance;
+		return sim.jobSet;
 	}
 
 	public static JobSet getInstance() {
-		if (instance == null) {
-			return null;
-		}
-		return instance;
+		return Simulation.current().jobSet;
 	}
 
 	public JobTuple getJob(int jobNo) {
-		for (JobTuple job : Jobset) {
-			if (job.jobNo == jobNo) {
-				return job;
-			}
+		int i = jobNo - firstJobNo;
+		if (i < 0 || i >= byJobNo.length) {
+			// System.out.println("Job not found for jobNo:" + jobNo);
+			return null;
 		}
-		// System.out.println("Job not found for jobNo:" + jobNo);
-		return null;
+		return byJobNo[i];
+	}
+
+	// Instance jobIndex (from 1) of task taskNo
+	public JobTuple getJob(int taskNo, int jobIndex) {
+		int i = taskStart[taskNo - 1] + jobIndex - 1;
+		if (jobIndex < 1 || i >= taskStart[taskNo])
+			return null;
+		return byJobNo[i];
 	}
 
 	private JobSet(double HyperPeriod) {
@@ -54,16 +64,23 @@ public class JobSet {
 		}
 
 		Jobset = new JobTuple[this.TotalNoOfJobs];
+		taskStart = new int[JobsPerTask.length + 1];
 
 		for (TaskTuple task : TaskSet.getInstance().Tasks) {
 			NoOfJobs = (int) Math
 					.ceil((HyperPeriod - task.phase) / task.period);
 			// TotalNoOfJobs += NoOfJobs;
+			taskStart[task.taskNo - 1] = jobNo;
 			for (avail = task.phase, i = 0; i < NoOfJobs && avail < HyperPeriod; i++, avail += task.period) {
 				Jobset[jobNo++] = new JobTuple(task.taskNo, i + 1, avail);
 			}
+			taskStart[task.taskNo] = jobNo;
 		}
-		System.out.println("Total Jobs:" + this.Jobset.length);
+		byJobNo = Jobset.clone();
+		firstJobNo = Jobset.length == 0 ? 0 : Jobset[0].jobNo;
+		PrintStream out = Simulation.current().out;
+		if (out != null)
+			out.println("Total Jobs:" + this.Jobset.length);
 	}
 
 	// public int[] getJobNo(JobTuple job, int dependence[]) {
@@ -96,10 +113,10 @@ public class JobSet {
 	// }
 	// }
 
-	public LinkedList<Integer> queue() {
-		LinkedList<Integer> q = new LinkedList<Integer>();
+	public ReadyQueue queue() {
+		ReadyQueue q = new ReadyQueue(this);
 		for (JobTuple job : this.Jobset) {
-			q.add(job.jobNo);
+			q.add(job);
 		}
 		return q;
 	}
@@ -107,8 +124,7 @@ public class JobSet {
 	public void Print() {
 
 		try {
-			int HyperPeriod = (int) ((Configuration.HyperPeriod == -1) ? TaskSet
-					.getInstance().HyperPeriod() : Configuration.HyperPeriod);
+			int HyperPeriod = (int) Simulation.current().getHyperPeriod();
 			File file = new File("jobslist.txt");
 			// if file doesnt exists, then create it
 			int noSnE, len;
@@ -133,7 +149,7 @@ public class JobSet {
 					/ 1000);
 			pr.println("Hyper-Period: " + HyperPeriod);
 
-			for (int i = 1; i <= Configuration.NoOfProcessors; i++) {
+			for (int i = 1; i <= Simulation.current().NoOfProcessors; i++) {
 				pr.println("Utilization of Processor"
 						+ i
 						+ ": "
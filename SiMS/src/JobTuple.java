@@ -1,3 +1,4 @@
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedList;
@@ -11,7 +12,6 @@ enum JobStatus {
 
 public class JobTuple implements Comparator<JobTuple>, Comparable<JobTuple> {
 
-	static int totalJobs = 0;
 	int jobNo;
 	int taskNo;
 	int jobIndex;// starts from 1
@@ -24,6 +24,9 @@ public class JobTuple implements Comparator<JobTuple>, Comparable<JobTuple> {
 	JobStatus jobStatus = JobStatus.Undefiened;
 	// start and stop history of a job
 	TreeMap<Double, Double> StartnStop = new TreeMap<Double, Double>();
+	// trace record of the last segment traced, and its start
+	long tracedRecord = -1;
+	double tracedStart;
 	// TreeMap<Double, Double> suspends = new TreeMap<Double, Double>();
 	TreeMap<Double, Double> suspends = new TreeMap<Double, Double>();
 	TreeMap<Integer, Boolean> ImDependOn = null;
@@ -41,7 +44,7 @@ public class JobTuple implements Comparator<JobTuple>, Comparable<JobTuple> {
 	@SuppressWarnings("unchecked")
 	public JobTuple(int taskNo, int jobIndex, int jobPartNo, double availTime) {
 		TaskTuple currentTask = TaskSet.getInstance().Tasks[taskNo - 1];
-		this.jobNo = ++totalJobs;
+		this.jobNo = ++Simulation.current().totalJobs;
 		this.taskNo = taskNo;
 		this.jobIndex = jobIndex;
 		this.availTime = availTime;
@@ -83,22 +86,26 @@ public class JobTuple implements Comparator<JobTuple>, Comparable<JobTuple> {
 			double suspen[], exec[], totEx = 0;
 			suspen = randSum(rand, this.suspension);
 			exec = randSum(rand + 1, this.executionTime);
-			System.out.print("Divided into: " + (rand + 1) + "->");
+			PrintStream out = Simulation.current().out;
+			if (out != null)
+				out.print("Divided into: " + (rand + 1) + "->");
 			for (int i = 0; i < rand; i++) {// last exec don't need suspension
 				totEx += exec[i];
 				suspends.put(totEx, suspen[i]);
-				System.out.print("e:" + exec[i] + " " + totEx + " " + "p"
-						+ suspen[i] + ",");
+				if (out != null)
+					out.print("e:" + exec[i] + " " + totEx + " " + "p"
+							+ suspen[i] + ",");
 			}
 			totEx += exec[rand];
-			System.out.println("e:" + exec[rand] + "=" + totEx);
+			if (out != null)
+				out.println("e:" + exec[rand] + "=" + totEx);
 		}
 
 	}
 
 	public boolean isDependent() {
 		if (this.ImDependOn != null) {
-			if (this.ImDependOn.toString().contains("false"))
+			if (this.ImDependOn.containsValue(false))
 				return false;
 		}
 		return true;
@@ -338,7 +345,7 @@ public class JobTuple implements Comparator<JobTuple>, Comparable<JobTuple> {
 	}
 
 	private int myCompareTo(JobTuple o) {
-		switch (Configuration.TypeOfScheduliing) {
+		switch (Simulation.current().TypeOfScheduliing) {
 		case EDF:
 			if (this.absdeadline < o.absdeadline) {
 				return -1;
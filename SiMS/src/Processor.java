@@ -5,25 +5,28 @@ public class Processor implements Runnable {
 	int HitsCount;
 	int MissCount;
 	public double currentTime;
-	static double processorClock;
+	// slack for the rounding of execution times to 6 places
+	static final double EPSILON = 1e-5;
 	JobTuple currentJob = null;
 	int jobNo;
 
-	private static Processor instance[] = null;
-
+	// The processors of the current Simulation, made on the first call
 	public static Processor[] getAllProcessors(int noOfProc) {
-		if (instance == null) {
-			instance = new Processor[noOfProc];
+		Simulation sim = Simulation.current();
+		if (sim.processors == null) {
+			Processor[] instance = new Processor[noOfProc];
 			// set processor
 			for (int i = 1; i <= noOfProc; i++) {
 				instance[i - 1] = new Processor();
 				instance[i - 1].ProcessorNo = i;
 			}
+			sim.processors = instance;
 		}
-		return instance;
+		return sim.processors;
 	}
 
 	public static Processor getProcessor(int procNo) {
+		Processor[] instance = Simulation.current().processors;
 		if (instance != null) {
 			return instance[procNo - 1];
 		} else {
@@ -31,12 +34,16 @@ public class Processor implements Runnable {
 		}
 	}
 
+	static double getProcessorClock() {
+		return Simulation.current().processorClock;
+	}
+
 	private Processor() {
 		Utilization = 0;
 		HitsCount = 0;
 		MissCount = 0;
 		jobsCount = 0;
-		Processor.processorClock = 0;
+		Simulation.current().processorClock = 0;
 		this.currentTime = 0;
 	}
 
@@ -64,10 +71,10 @@ public class Processor implements Runnable {
 
 	// Clock setters and getters
 	static void setProcessorClock(double ProcessorClock) {
-		Processor.processorClock = ProcessorClock;
-		Processor procsers[] = Processor
-				.getAllProcessors(Configuration.NoOfProcessors);
-		for (int i = 0; i < Configuration.NoOfProcessors; i++)
+		Simulation sim = Simulation.current();
+		sim.processorClock = ProcessorClock;
+		Processor procsers[] = Processor.getAllProcessors(sim.NoOfProcessors);
+		for (int i = 0; i < sim.NoOfProcessors; i++)
 			procsers[i].currentTime = ProcessorClock;
 	}
 
@@ -78,13 +85,32 @@ public class Processor implements Runnable {
 		// // TODO Auto-generated catch block
 		// e.printStackTrace();
 		// }
-		Processor.processorClock += Configuration.TickSize;
+		Simulation sim = Simulation.current();
+		sim.processorClock += sim.TickSize;
 		// Processor.processorClock =
 		// Clock.getInstance(HyperPeriod).processorClock;
-		Processor procsers[] = Processor
-				.getAllProcessors(Configuration.NoOfProcessors);
-		for (int i = 0; i < Configuration.NoOfProcessors; i++)
-			procsers[i].currentTime = Processor.processorClock;
+		Processor procsers[] = Processor.getAllProcessors(sim.NoOfProcessors);
+		for (int i = 0; i < sim.NoOfProcessors; i++)
+			procsers[i].currentTime = sim.processorClock;
+	}
+
+	// Skips the ticks whose window (clock, clock + 1] ends before event,
+	// stopping at limit. The clock lands on the same value as it would
+	// ticking one by one.
+	static void skipClock(double event, double limit) {
+		Simulation sim = Simulation.current();
+		double clock = sim.processorClock;
+		if (sim.TickSize == 1 && clock == Math.rint(clock)) {
+			double ticks = Math.min(Math.ceil(limit - clock),
+					Math.ceil(event - 1 - EPSILON - clock));
+			if (ticks > 0)
+				clock += ticks;
+		} else {
+			while (clock < limit && clock + 1 + EPSILON < event)
+				clock += sim.TickSize;
+		}
+		if (clock != sim.processorClock)
+			setProcessorClock(clock);
 	}
 
 	void setJob(int jobNo) {
@@ -104,7 +130,7 @@ public class Processor implements Runnable {
 		System.out.println("Hits:Misss=" + this.HitsCount + ":"
 				+ this.MissCount);
 		System.out.println("CurrentJob:" + this.currentJob);
-		System.out.println("ClockTime:" + Processor.processorClock);
+		System.out.println("ClockTime:" + getProcessorClock());
 	}
 
 	@Override
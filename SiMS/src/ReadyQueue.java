@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The ready queue of the Scheduler: the jobs still to run, in the order the
+ * scheduling algorithm picks them, and in the order they were queued among
+ * jobs of the same priority.
+ *
+ * Jobs not available yet wait in an EventQueue by availability time. The
+ * available ones are in a binary heap by (priority, order queued), indexed
+ * by jobNo so a job is removed from wherever it is. Picking the job to run
+ * costs O(log n), plus the available jobs passed over because a job they
+ * depend on is not done.
+ */
+public class ReadyQueue {
+	// state of a job
+	private static final int ABSENT = -1;
+	private static final int PENDING = -2;
+
+	private final JobSet jobs;
+	private final int base;
+
+	// by jobNo - base: place in the heap, or ABSENT, or PENDING
+	private final int[] pos;
+	private final double[] keys;
+	private final long[] order;
+	private long queued = 0;
+
+	private final EventQueue pending = new EventQueue();
+	// jobs available at or before released are in the heap
+	private double released = Double.NEGATIVE_INFINITY;
+	private int[] heap;
+	private int size = 0;
+	private int count = 0;
+	private int[] skipped = new int[16];
+
+	// jobs picked so far
+	long decisions = 0;
+
+	ReadyQueue(JobSet jobs) {
+		this.jobs = jobs;
+		this.base = jobs.firstJobNo;
+		int n = jobs.Jobset.length;
+		pos = new int[n];
+		keys = new double[n];
+		order = new long[n];
+		heap = new int[Math.max(n, 1)];
+		Arrays.fill(pos, ABSENT);
+	}
+
+	// Priority of a job under the scheduling algorithm, lower first
+	static double priority(JobTuple job) {
+		switch (Simulation.current().TypeOfScheduliing) {
+		case DM:
+			return TaskSet.getInstance().Tasks[job.taskNo - 1].deadline;
+		case RM:
+			return TaskSet.getInstance().Tasks[job.taskNo - 1].period;
+		default:
+			return job.absdeadline;
+		}
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	int size() {
+		return count;
+	}
+
+	boolean contains(int jobNo) {
+		int i = jobNo - base;
+		return i >= 0 && i < pos.length && pos[i] != ABSENT;
+	}
+
+	// Queues a job behind the ones of the same priority; false if it is
+	// already queued
+	boolean add(JobTuple job) {
+		int i = job.jobNo - base;
+		if (pos[i] != ABSENT)
+			return false;
+		keys[i] = priority(job);
+		order[i] = queued++;
+		count++;
+		if (job.CurrAvailTime <= released) {
+			push(i);
+		} else {
+			pos[i] = PENDING;
+			pending.add(job.CurrAvailTime, EventQueue.RELEASE, job.jobNo);
+		}
+		return true;
+	}
+
+	boolean remove(int jobNo) {
+		if (!contains(jobNo))
+			return false;
+		int i = jobNo - base;
+		// a pending job is left in the EventQueue, and dropped when released
+		if (pos[i] != PENDING)
+			removeAt(pos[i]);
+		pos[i] = ABSENT;
+		count--;
+		return true;
+	}
+
+	/**
+	 * The first job in the queue available at time, and whose dependences
+	 * are done if dependence is set; null if there is none.
+	 */
+	JobTuple first(double time, boolean dependence) {
+		release(time);
+		decisions++;
+		JobTuple found = null;
+		int passed = 0;
+		while (size > 0) {
+			JobTuple job = jobs.getJob(heap[0] + base);
+			if (job.CurrAvailTime <= time && (!dependence || job.isDependent())) {
+				found = job;
+				break;
+			}
+			if (passed == skipped.length)
+				skipped = Arrays.copyOf(skipped, passed * 2);
+			skipped[passed++] = heap[0];
+			removeAt(0);
+		}
+		while (passed > 0)
+			push(skipped[--passed]);
+		return found;
+	}
+
+	/**
+	 * The jobs available at or before the first job in the queue available
+	 * at time, by availability time, then priority, the ones queued last
+	 * first. These are the jobs the Scheduler looks at for the rest of a
+	 * tick when none is available at the processor's current time.
+	 */
+	JobTuple[] available(double time) {
+		JobTuple first = first(time, false);
+		decisions--;
+		if (first == null)
+			return new JobTuple[0];
+		JobTuple[] list = new JobTuple[size];
+		int n = 0;
+		for (int k = 0; k < size; k++) {
+			JobTuple job = jobs.getJob(heap[k] + base);
+			if (job.CurrAvailTime <= first.CurrAvailTime)
+				list[n++] = job;
+		}
+		list = Arrays.copyOf(list, n);
+		Arrays.sort(list, new Comparator<JobTuple>() {
+			public int compare(JobTuple a, JobTuple b) {
+				if (a.CurrAvailTime != b.CurrAvailTime)
+					return a.CurrAvailTime < b.CurrAvailTime ? -1 : 1;
+				int i = a.jobNo - base, j = b.jobNo - base;
+				if (keys[i] != keys[j])
+					return keys[i] < keys[j] ? -1 : 1;
+				return order[i] > order[j] ? -1 : order[i] < order[j] ? 1 : 0;
+			}
+		});
+		return list;
+	}
+
+	// Moves the jobs available at or before time into the heap
+	private void release(double time) {
+		if (time <= released)
+			return;
+		released = time;
+		while (pending.peekTime() <= time) {
+			int i = pending.peekJob() - base;
+			double avail = pending.peekTime();
+			pending.poll();
+			if (pos[i] == PENDING
+					&& jobs.getJob(i + base).CurrAvailTime == avail)
+				push(i);
+		}
+	}
+
+	private boolean before(int i, int j) {
+		if (keys[i] != keys[j])
+			return keys[i] < keys[j];
+		return order[i] < order[j];
+	}
+
+	private void push(int i) {
+		int k = size++;
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			if (!before(i, heap[parent]))
+				break;
+			place(heap[parent], k);
+			k = parent;
+		}
+		place(i, k);
+	}
+
+	private void removeAt(int k) {
+		int last = heap[--size];
+		if (k == size)
+			return;
+		// sift the last job down from k, or up if it goes before k's parent
+		while (k > 0 && before(last, heap[(k - 1) >>> 1])) {
+			place(heap[(k - 1) >>> 1], k);
+			k = (k - 1) >>> 1;
+		}
+		while (true) {
+			int child = 2 * k + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(heap[child + 1], heap[child]))
+				child++;
+			if (!before(heap[child], last))
+				break;
+			place(heap[child], k);
+			k = child;
+		}
+		place(last, k);
+	}
+
+	private void place(int i, int k) {
+		heap[k] = i;
+		pos[i] = k;
+	}
+
+	@Override
+	public String toString() {
+		return count + " jobs, " + size + " available by " + released;
+	}
+}
@@ -0,0 +1,330 @@
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.swing.JComponent;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+
+/**
+ * Gantt chart of a schedule trace, one lane per processor under a lane of
+ * releases. Only the visible window is drawn: segment by segment when a
+ * lane has few of them in it, else one column per pixel from the
+ * TraceReader's busy time pyramid, shaded by how busy the processor was,
+ * with the misses in red.
+ *
+ * The mouse wheel zooms around the pointer, dragging pans, a double click
+ * shows the whole hyper-period again.
+ */
+public class ScheduleView extends JComponent {
+	private static final long serialVersionUID = 1L;
+
+	static final int LANE = 40;
+	static final int GAP = 10;
+	static final int LEFT = 40;
+	static final int AXIS = 24;
+	// segments in a lane drawn one by one up to this many a pixel
+	static final int SEGMENTS_PER_PIXEL = 2;
+
+	final TraceReader trace;
+	// visible window
+	double from;
+	double to;
+	private int dragX;
+
+	ScheduleView(TraceReader trace) {
+		this.trace = trace;
+		this.from = 0;
+		this.to = Math.max(trace.hyperPeriod, 1);
+		setToolTipText("");
+		MouseAdapter mouse = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragX = e.getX();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				double shift = (dragX - e.getX()) * perPixel();
+				dragX = e.getX();
+				window(from + shift, to + shift);
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				double at = time(e.getX());
+				double scale = Math.pow(1.25, e.getWheelRotation());
+				window(at - (at - from) * scale, at + (to - at) * scale);
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2)
+					window(0, Math.max(ScheduleView.this.trace.hyperPeriod, 1));
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+	}
+
+	// Moves the window, keeping it inside the hyper-period
+	void window(double from, double to) {
+		double span = Math.min(to - from, Math.max(trace.hyperPeriod, 1));
+		span = Math.max(span, 1e-6);
+		from = Math.max(0, Math.min(from, trace.hyperPeriod - span));
+		this.from = from;
+		this.to = from + span;
+		repaint();
+	}
+
+	private int width() {
+		return Math.max(1, getWidth() - LEFT);
+	}
+
+	private double perPixel() {
+		return (to - from) / width();
+	}
+
+	double time(int x) {
+		return from + (x - LEFT) * perPixel();
+	}
+
+	int x(double time) {
+		return LEFT + (int) Math.round((time - from) / perPixel());
+	}
+
+	// top of the lane of processor p (from 1); releases are lane 0
+	int lane(int p) {
+		return GAP + p * (LANE + GAP);
+	}
+
+	static Color taskColor(int taskNo) {
+		return Color.getHSBColor((taskNo * 0.618034f) % 1f, 0.55f, 0.9f);
+	}
+
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(640, lane(trace.processors + 1) + AXIS);
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setColor(Color.WHITE);
+		g2.fillRect(0, 0, getWidth(), getHeight());
+		g2.setColor(Color.BLACK);
+		g2.drawString("R", 4, lane(0) + LANE / 2);
+		drawReleases(g2);
+		for (int p = 1; p <= trace.processors; p++) {
+			g2.setColor(Color.BLACK);
+			g2.drawString("P" + p, 4, lane(p) + LANE / 2);
+			g2.setColor(Color.LIGHT_GRAY);
+			g2.drawLine(LEFT, lane(p) + LANE, getWidth(), lane(p) + LANE);
+			int[] list = trace.segments[p - 1];
+			int lo = trace.firstEndingAfter(list, from, false);
+			int hi = trace.firstStartingFrom(list, to);
+			if (hi - lo <= (long) width() * SEGMENTS_PER_PIXEL)
+				drawSegments(g2, p, list, lo, hi);
+			else
+				drawBusy(g2, p);
+		}
+		drawAxis(g2, lane(trace.processors + 1));
+	}
+
+	private void drawReleases(Graphics2D g2) {
+		int top = lane(0);
+		for (int t = 0; t < trace.tasks; t++) {
+			int[] list = trace.releases[t];
+			int lo = trace.firstEndingAfter(list, from, true);
+			int hi = trace.firstStartingFrom(list, to);
+			// too many to tell apart
+			if (hi - lo > width())
+				continue;
+			g2.setColor(taskColor(t + 1).darker());
+			for (int i = lo; i < hi; i++) {
+				int x = x(trace.start(list[i]));
+				g2.drawLine(x, top + LANE / 2, x, top + LANE);
+				g2.drawLine(x - 2, top + LANE / 2 + 3, x, top + LANE / 2);
+				g2.drawLine(x + 2, top + LANE / 2 + 3, x, top + LANE / 2);
+			}
+		}
+	}
+
+	private void drawSegments(Graphics2D g2, int p, int[] list, int lo,
+			int hi) {
+		int top = lane(p);
+		for (int i = lo; i < hi; i++) {
+			int r = list[i];
+			int x0 = Math.max(LEFT, x(trace.start(r)));
+			int x1 = Math.min(getWidth(), x(trace.end(r)));
+			g2.setColor(taskColor(trace.task(r)));
+			g2.fillRect(x0, top + 8, Math.max(1, x1 - x0), LANE - 8);
+			switch (trace.kind(r)) {
+			case TraceWriter.COMPLETED:
+				g2.setColor(Color.GREEN.darker());
+				break;
+			case TraceWriter.MISSED:
+				g2.setColor(Color.RED);
+				break;
+			default:
+				g2.setColor(Color.DARK_GRAY);
+			}
+			g2.drawLine(x1, top + 4, x1, top + LANE);
+			if (x1 - x0 > 30) {
+				g2.setColor(Color.BLACK);
+				g2.drawString("T" + trace.task(r) + ":" + trace.jobIndex(r),
+						x0 + 2, top + LANE - 4);
+			}
+		}
+	}
+
+	private void drawBusy(Graphics2D g2, int p) {
+		float[][] busy = trace.busy[p - 1];
+		int[][] missed = trace.missed[p - 1];
+		// finest level whose buckets are at least a pixel wide
+		int level = 0;
+		while (level + 1 < busy.length
+				&& trace.bucketWidth * (1 << level) < perPixel())
+			level++;
+		double width = trace.bucketWidth * (1 << level);
+		float[] b = busy[level];
+		int[] m = missed[level];
+		int top = lane(p);
+		for (int x = LEFT; x < getWidth(); x++) {
+			double t0 = time(x), t1 = time(x + 1);
+			int i0 = (int) Math.max(0, Math.floor(t0 / width));
+			int i1 = (int) Math.min(b.length - 1, Math.ceil(t1 / width) - 1);
+			double sum = 0;
+			int misses = 0;
+			for (int i = i0; i <= i1; i++) {
+				sum += b[i];
+				misses += m[i];
+			}
+			double span = Math.max(i1 - i0 + 1, 1) * width;
+			float load = (float) Math.min(1, sum / span);
+			if (load > 0) {
+				g2.setColor(new Color(0.25f, 0.35f, 0.85f, 0.15f + 0.85f * load));
+				int h = Math.max(1, Math.round(load * (LANE - 8)));
+				g2.drawLine(x, top + LANE - h, x, top + LANE);
+			}
+			if (misses > 0) {
+				g2.setColor(Color.RED);
+				g2.drawLine(x, top, x, top + 6);
+			}
+		}
+	}
+
+	private void drawAxis(Graphics2D g2, int y) {
+		g2.setColor(Color.BLACK);
+		g2.drawLine(LEFT, y, getWidth(), y);
+		FontMetrics fm = g2.getFontMetrics();
+		// a tick every 1, 2 or 5 times a power of ten, 80 pixels or more
+		double step = Math.pow(10, Math.floor(Math.log10(perPixel() * 80)));
+		if (step / perPixel() < 80)
+			step *= 2;
+		if (step / perPixel() < 80)
+			step *= 2.5;
+		if (step / perPixel() < 80)
+			step *= 2;
+		for (double t = Math.ceil(from / step) * step; t <= to; t += step) {
+			int x = x(t);
+			g2.drawLine(x, y, x, y + 4);
+			String label = step >= 1 ? String.valueOf(Math.round(t))
+					: String.format("%.6g", t);
+			g2.drawString(label, x - fm.stringWidth(label) / 2, y + 4
+					+ fm.getAscent());
+		}
+	}
+
+	@Override
+	public String getToolTipText(MouseEvent e) {
+		int p = (e.getY() - GAP) / (LANE + GAP);
+		if (p < 1 || p > trace.processors || e.getX() < LEFT)
+			return null;
+		int[] list = trace.segments[p - 1];
+		double t = time(e.getX());
+		int i = trace.firstEndingAfter(list, t, false);
+		if (i == list.length || trace.start(list[i]) > t)
+			return String.format("P%d idle at %.3f", p, t);
+		int r = list[i];
+		String[] kinds = { "released", "completed", "preempted", "missed",
+				"running at the end" };
+		return String.format("T%d:%d (job %d) on P%d, %.3f to %.3f, %s",
+				trace.task(r), trace.jobIndex(r), trace.job(r), p,
+				trace.start(r), trace.end(r), kinds[trace.kind(r)]);
+	}
+
+	// Opens the trace to view, or to save as a picture
+	public static void Draw(File file) {
+		System.out.println("Creating Graph ...");
+		final TraceReader trace;
+		try {
+			trace = new TraceReader(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		System.out.println("Total no of start and stops of jobs:"
+				+ (trace.records - count(trace.releases)));
+
+		ScheduleView view = new ScheduleView(trace);
+		JFrame f = new JFrame("SiMS");
+		f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		f.add(view, BorderLayout.CENTER);
+		f.pack();
+		f.setLocationRelativeTo(null);
+		f.setLocationByPlatform(true);
+
+		JPanel panel = new JPanel();
+		JLabel label = new JLabel(
+				"Press SaveAs to save the Graph or Press View to View the Graph");
+		panel.add(label);
+		String[] options = new String[] { "SaveAs", "View" };
+		int option = JOptionPane.showOptionDialog(null, panel,
+				"Make your choice", JOptionPane.NO_OPTION,
+				JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+
+		if (option == 1) {
+			f.setVisible(true);
+		} else if (option == 0) {
+			JFileChooser chooser = new JFileChooser();
+			chooser.setSelectedFile(new File("schedule.png"));
+			if (chooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+				view.setSize(Math.max(1280, view.getPreferredSize().width),
+						view.getPreferredSize().height);
+				BufferedImage image = new BufferedImage(view.getWidth(),
+						view.getHeight(), BufferedImage.TYPE_INT_RGB);
+				Graphics2D g2 = image.createGraphics();
+				view.paint(g2);
+				g2.dispose();
+				try {
+					ImageIO.write(image, "png", chooser.getSelectedFile());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			f.dispose();
+		}
+	}
+
+	private static long count(int[][] lists) {
+		long n = 0;
+		for (int[] list : lists)
+			n += list.length;
+		return n;
+	}
+}
@@ -1,6 +1,6 @@
+import java.io.File;
+import java.io.IOException;
 import java.util.AbstractMap;
-import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Handler;
@@ -15,39 +15,25 @@ public class Scheduler {
 	// if any of the jobs have more priority than jobs on processors. Preempt
 	// the job on processors and put them back on ReadyQueue.
 
-	public static LinkedList<Integer> Q = null;
 	public static Handler shedulingLog;
 	private static Logger MyLogger = Logger.getLogger("shedulingLog");
+	static {
+		MyLogger.setUseParentHandlers(false);
+	}
 	double HyperPeriod = 0;
+	// the run scheduled: its ready queue, events and clock
+	final Simulation sim;
 
 	Scheduler(double HyperPeriod) {
 		this.HyperPeriod = HyperPeriod;
+		this.sim = Simulation.current();
 	}
 
-	public static synchronized void add(int index, int jobNo) {
-		Q.add(index, jobNo);
-		MyLogger.log(Level.INFO, "AddQueue: Job " + jobNo
-				+ " added to the Queue");
-	}
-
-	public static void addQueue(int jobNo) {
-
-		JobTuple job = JobSet.getInstance().getJob(jobNo);
-		int i = 0;
-		for (Integer current : Q) {
-			if (current == job.jobNo) {
-				// Job already exists in the Queue
-				return;
-			}
-			if (JobSet.getInstance().getJob(current).compareTo(job) > 0) {
-				// this.absdeadline > o.absdeadline
-				break;
-			} else {
-				i++;
-			}
-		}
-		MyLogger.info("Adding at:" + i);
-		Scheduler.add(i, jobNo);
+	public static synchronized void addQueue(int jobNo) {
+		// Job already exists in the Queue
+		if (Simulation.current().Q.add(JobSet.getInstance().getJob(jobNo)))
+			MyLogger.log(Level.INFO, "AddQueue: Job " + jobNo
+					+ " added to the Queue");
 	}
 
 	public static void addQueue(JobTuple job) {
@@ -55,24 +41,8 @@ public class Scheduler {
 		Scheduler.addQueue(job.jobNo);
 	}
 
-	public static synchronized void remove(int index) {
-		Q.remove(index);
-	}
-
-	public static void removeQueue(int jobNo) {
-
-		int i = 0;
-		boolean found = false;
-		for (Integer current : Q) {
-			if (jobNo == current.intValue()) {
-				found = true;
-				break;
-			} else {
-				i++;
-			}
-		}
-		if (found) {
-			Scheduler.remove(i);
+	public static synchronized void removeQueue(int jobNo) {
+		if (Simulation.current().Q.remove(jobNo)) {
 			MyLogger.info("RemoveQueue: Job " + jobNo
 					+ " removed from the Queue");
 		} else {
@@ -85,23 +55,37 @@ public class Scheduler {
 	}
 
 	public void scheduler(int procs) {
-		while (!Q.isEmpty() && Processor.processorClock < HyperPeriod) {
+		if (sim.events == null) {
+			sim.events = new EventQueue();
+			for (JobTuple job : JobSet.getInstance().Jobset) {
+				sim.events.add(job.CurrAvailTime, EventQueue.RELEASE, job.jobNo);
+				if (sim.trace != null)
+					sim.trace.release(job);
+			}
+		}
+		long before;
+
+		while (!sim.Q.isEmpty() && sim.processorClock < HyperPeriod) {
+			before = sim.changes;
 			for (int i = 1; i <= procs; i++) {
 				MyLogger.info("call for Processor.." + i + "at time"
 						+ Processor.getProcessor(i).currentTime + " VS "
-						+ Processor.processorClock);
+						+ sim.processorClock);
 				schedule(i);
 
 			}
 			Processor.updateClock();// Clock update
+			if (sim.changes == before)
+				Processor.skipClock(nextEvent(), HyperPeriod);
 		}
 
 		// Unfinished jobs on the processors
 		int count = procs;
 
-		while (count != 0 && Processor.processorClock < HyperPeriod) {
+		while (count != 0 && sim.processorClock < HyperPeriod) {
+			before = sim.changes;
 			for (int i = 1; i <= procs; i++) {
-				if (Q.isEmpty() && Processor.processorClock < HyperPeriod
+				if (sim.Q.isEmpty() && sim.processorClock < HyperPeriod
 						&& Processor.getProcessor(i).currentJob != null) {
 					schedule(i);
 				} else {
@@ -109,6 +93,24 @@ public class Scheduler {
 				}
 			}
 			Processor.updateClock();// Clock update
+			if (sim.changes == before) {
+				// every tick skipped counts down the processors left out
+				int idle = 0;
+				for (int i = 1; i <= procs; i++) {
+					if (!sim.Q.isEmpty()
+							|| Processor.getProcessor(i).currentJob == null)
+						idle++;
+				}
+				double event = nextEvent();
+				while (idle > 0 && count > 0
+						&& sim.processorClock < HyperPeriod
+						&& sim.processorClock + 1 + Processor.EPSILON < event) {
+					count -= idle;
+					Processor.updateClock();
+				}
+				if (count != 0)
+					Processor.skipClock(event, HyperPeriod);
+			}
 		}
 
 		JobTuple currentJob = null;
@@ -116,16 +118,42 @@ public class Scheduler {
 		for (int i = 1; i <= procs; i++) {
 			currentJob = Processor.getProcessor(i).currentJob;
 			if (currentJob != null) {
+				double start = currentJob.getRecentStartTime();
 				currentJob.setEndTime(i, HyperPeriod);
+				traceSegment(currentJob, i, start, TraceWriter.CUT);
 			}
 		}
 
 	}
 
+	// Time of the next event still to be seen. An event at t is seen by the
+	// tick whose window (clock, clock + 1] holds it, and again by the next
+	// one, at whose start currentTime has reached t: the jobs
+	// getNextAvailableJobs() leaves out for the window are only picked then.
+	double nextEvent() {
+		sim.events.pollUntil(sim.processorClock - 1 - Processor.EPSILON);
+		MyLogger.info("Next event at " + sim.events.peekTime() + " for job "
+				+ sim.events.peekJob());
+		return sim.events.peekTime();
+	}
+
+	// Queues the completion and the next suspension of a job started at
+	// startTime
+	void jobStarted(JobTuple job, double startTime) {
+		sim.changes++;
+		double executed = job.getJobExecutedTime();
+		sim.events.add(startTime + job.executionTime - executed,
+				EventQueue.COMPLETION, job.jobNo);
+		if (job.suspends != null && !job.suspends.isEmpty()
+				&& executed < job.suspends.firstKey())
+			sim.events.add(startTime + job.suspends.firstKey() - executed,
+					EventQueue.SUSPENSION, job.jobNo);
+	}
+
 	public void schedule(int procNo) {// , double balance) {
 		MyLogger.info("Got call for Processor.." + procNo + "at time"
 				+ Processor.getProcessor(procNo).currentTime + " VS "
-				+ Processor.processorClock);
+				+ sim.processorClock);
 
 		// MyLogger.info("assignJob called..." + procNo);
 		// balance is negative and procNo
@@ -137,34 +165,33 @@ public class Scheduler {
 		Processor processor = Processor.getProcessor(procNo);
 		currentJob = Jobset.getJob(processor.jobNo);
 
-		if (!Q.isEmpty()
-				&& processor.currentTime <= Processor.processorClock + 1
+		if (!sim.Q.isEmpty()
+				&& processor.currentTime <= sim.processorClock + 1
 				&& processor.currentTime <= this.HyperPeriod) {
 
 			if (currentJob == null) {
 
-				for (Integer jobNo : Q) {// Job is present of ReadyQueue
-					if (isScheduleable(jobNo, processor.currentTime)) {
-						// set job no to remove from the Queue
-						jobOnProc = jobNo;
-						break;
-					}
+				// first job of the ReadyQueue that can be scheduled
+				JobTuple first = sim.Q.first(processor.currentTime, true);
+				if (first != null) {
+					// set job no to remove from the Queue
+					jobOnProc = first.jobNo;
 				}
 				MyLogger.info("\n");
 
 				// No Job found whose currentAvailTime <= processor.currentTime
 				if (jobOnProc == -1) {
 					MyLogger.info("check till next tick time"
-							+ Processor.processorClock + 1);
+							+ sim.processorClock + 1);
 					MyLogger.info("getNextAvailableJobs:");
 					jobsList = this
-							.getNextAvailableJobs(Processor.processorClock + 1);
+							.getNextAvailableJobs(sim.processorClock + 1);
 
 					MyLogger.info("\n");
 					if (jobsList != null) {
 						for (int i = 0; i < jobsList.length; i++) {
 							if (isScheduleable(jobsList[i].jobNo,
-									Processor.processorClock + 1)) {
+									sim.processorClock + 1)) {
 								jobOnProc = jobsList[i].jobNo;
 								break;
 							}
@@ -186,6 +213,7 @@ public class Scheduler {
 					processor.setJob(jobOnProc);
 
 					currentJob.assignProc(procNo, processor.currentTime);
+					this.jobStarted(currentJob, processor.currentTime);
 
 				}
 			} else {
@@ -242,11 +270,11 @@ public class Scheduler {
 				// MyLogger.info("Job Preempted1");
 				this.jobPreempted(procNo);
 				// return;
-				int nextProc = (procNo) % Configuration.NoOfProcessors + 1;
+				int nextProc = (procNo) % sim.NoOfProcessors + 1;
 				;
 				while (nextProc != procNo) {
 					this.schedule(nextProc);
-					nextProc = (nextProc) % Configuration.NoOfProcessors + 1;
+					nextProc = (nextProc) % sim.NoOfProcessors + 1;
 				}
 				this.schedule(procNo);
 
@@ -262,7 +290,7 @@ public class Scheduler {
 				// currentJob.getJobExecutedTime())));
 
 				newBal = bal
-						- (Processor.processorClock + 1 - currentJob
+						- (sim.processorClock + 1 - currentJob
 								.getRecentStartTime());
 				// MyLogger.info("RecentStart:" +
 				// currentJob.getRecentStartTime());
@@ -271,17 +299,17 @@ public class Scheduler {
 					// MyLogger.info("bal:" + bal + "newbal:" + newBal);
 					// Job is done
 
-					processor.currentTime = Processor.processorClock + 1
+					processor.currentTime = sim.processorClock + 1
 							+ newBal;
 
 					// MyLogger.info("Job Preempted2");
 
 					this.jobPreempted(procNo);
 					// return;
-					int nextProc = (procNo) % Configuration.NoOfProcessors + 1;
+					int nextProc = (procNo) % sim.NoOfProcessors + 1;
 					while (nextProc != procNo) {
 						this.schedule(nextProc);
-						nextProc = (nextProc) % Configuration.NoOfProcessors
+						nextProc = (nextProc) % sim.NoOfProcessors
 								+ 1;
 					}
 					this.schedule(procNo);
@@ -292,8 +320,8 @@ public class Scheduler {
 				}
 			}
 			// Processor is occupied
-		} else if (Q.isEmpty()
-				&& processor.currentTime <= Processor.processorClock + 1
+		} else if (sim.Q.isEmpty()
+				&& processor.currentTime <= sim.processorClock + 1
 				&& processor.currentTime <= HyperPeriod
 				&& processor.currentJob != null) {
 
@@ -308,23 +336,23 @@ public class Scheduler {
 			// currentJob.getJobExecutedTime())));
 
 			newBal = bal
-					- (Processor.processorClock + 1 - currentJob
+					- (sim.processorClock + 1 - currentJob
 							.getRecentStartTime());
 
 			if (newBal <= 0) {
 				// MyLogger.info("bal:" + bal + "newbal:" + newBal);
 				// Job is done
 
-				processor.currentTime = Processor.processorClock + 1 + newBal;
+				processor.currentTime = sim.processorClock + 1 + newBal;
 
 				// MyLogger.info("Job Preempted3");
 
 				this.jobPreempted(procNo);
 				// return;
-				int nextProc = (procNo) % Configuration.NoOfProcessors + 1;
+				int nextProc = (procNo) % sim.NoOfProcessors + 1;
 				while (nextProc != procNo) {
 					this.schedule(nextProc);
-					nextProc = (nextProc) % Configuration.NoOfProcessors + 1;
+					nextProc = (nextProc) % sim.NoOfProcessors + 1;
 				}
 				this.schedule(procNo);
 
@@ -344,7 +372,9 @@ public class Scheduler {
 		if (pJob == null) {// processor is empty
 			MyLogger.log(Level.SEVERE, "Processor is free");
 		}
+		sim.changes++;
 
+		double start = pJob.getRecentStartTime();
 		setEndTime(processor.jobNo, procNo);
 
 		// double excutedTime = Double.parseDouble(String.format("%.6f",
@@ -372,6 +402,7 @@ public class Scheduler {
 
 			jobDone(processor.jobNo);
 			processor.HitsCount++;
+			traceSegment(pJob, procNo, start, TraceWriter.COMPLETED);
 
 			// MyLogger.info("True");
 		} else if (pJob.execBalance > 0) {
@@ -379,25 +410,33 @@ public class Scheduler {
 					+ " back to Queue");
 
 			Scheduler.addQueue(pJob.jobNo);
-			try {
-				// Thread.sleep(5000);
-				Thread.sleep(0);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			sim.events.add(pJob.CurrAvailTime, EventQueue.RELEASE, pJob.jobNo);
+			traceSegment(pJob, procNo, start, TraceWriter.PREEMPTED);
 
 		} else if (pJob.getRecentEndTime() > pJob.absdeadline) {
 			MyLogger.log(Level.WARNING, "jobPreempted:Job " + pJob.jobNo
 					+ " missed deadline ");
 
 			processor.MissCount++;
+			traceSegment(pJob, procNo, start, TraceWriter.MISSED);
 
 		}
 		processor.currentJob = null;
 		processor.setJob(0);
 	}
 
+	// Writes the segment of job from start to the trace, unless setEndTime()
+	// dropped it as empty or ended it no later than it started, as when the
+	// processor's time lags the start it was given. Such a segment is run
+	// again from the same start, and traced with its final end then.
+	void traceSegment(JobTuple job, int procNo, double start, byte kind) {
+		if (sim.trace == null)
+			return;
+		Double end = job.StartnStop.get(start);
+		if (end != null && end != -1 && end > start)
+			sim.trace.segment(job, procNo, start, end, kind);
+	}
+
 	public Entry<Double, Double> isSuspended(int jobNo, int procNo) {
 		JobSet Jobset = JobSet.getInstance();
 		Processor processor = Processor.getProcessor(procNo);
@@ -423,7 +462,7 @@ public class Scheduler {
 
 			if (excutedTime < exec) {
 
-				if ((excutedTime + Processor.processorClock + 1 - pJob
+				if ((excutedTime + sim.processorClock + 1 - pJob
 						.getRecentStartTime()) >= exec) {
 					newCurrentTime = pJob.getRecentStartTime() + exec
 							- excutedTime;
@@ -453,18 +492,17 @@ public class Scheduler {
 		JobTuple jDone = Jobset.getJob(jobNo);
 		int jDoneIndex = jDone.jobIndex;
 		if (jDone.OthersDependOnMe != null) {
-			for (JobTuple job : Jobset.Jobset) {
-				for (int jDoneNo : jDone.OthersDependOnMe)
-					if (job.taskNo == jDoneNo && job.jobIndex == jDoneIndex) {
-						// MyLogger.info("" + job.taskNo + "==" + jDoneNo
-						// + "&&" + job.jobIndex + "==" + jDoneIndex);
-						job.ImDependOn.put(jDone.taskNo, true);
-						// MyLogger.info("Making true:" + job.jobNo + "("
-						// + job.taskNo + "," + job.jobIndex + ")"
-						// + " dependence " + jDone.taskNo + ","
-						// + jDone.jobIndex);
-						// displayJobDep();
-					}
+			for (int jDoneNo : jDone.OthersDependOnMe) {
+				// same instance of the dependent task
+				JobTuple job = Jobset.getJob(jDoneNo, jDoneIndex);
+				if (job != null) {
+					job.ImDependOn.put(jDone.taskNo, true);
+					// MyLogger.info("Making true:" + job.jobNo + "("
+					// + job.taskNo + "," + job.jobIndex + ")"
+					// + " dependence " + jDone.taskNo + ","
+					// + jDone.jobIndex);
+					// displayJobDep();
+				}
 			}
 		}
 	}
@@ -513,34 +551,27 @@ public class Scheduler {
 
 	public void setStartTime(int jobNo, double balTime) {
 		JobSet Jobset = JobSet.getInstance();
-		Jobset.getJob(jobNo).setStartTime(Processor.processorClock + balTime);
+		Jobset.getJob(jobNo).setStartTime(sim.processorClock + balTime);
 		MyLogger.info("Job " + jobNo + " started at "
-				+ (Processor.processorClock + balTime));
+				+ (sim.processorClock + balTime));
 	}
 
 	JobTuple CheckForPriorityJobs(int sjobNo, int procNo) {
 		// MyLogger.info("CheckForPriorityJobs called...");
-		JobSet.getInstance().Sort();// sorting based on the scheduling algorithm
 		JobSet Jobset = JobSet.getInstance();
 		// Processor processor = Processor.getProcessor(procNo);
 		JobTuple qJob = null, pJob = null;
 
 		// pJob = Jobset.getJob(processor.jobNo);
 		pJob = Jobset.getJob(sjobNo);
-		for (Integer jobNo : Q) {// Job is present of ReadyQueue
-			qJob = Jobset.getJob(jobNo.intValue());
-			if (qJob.compareTo(pJob) < 0) {
-				// if this is true for high priority
-				if (isScheduleable(qJob.jobNo, Processor.processorClock + 1)) {
-
-					return qJob;
-				}
-			} else { // No high priority jobs
-				MyLogger.info("No high priority jobs to asign");
-				return null;
-			}
-			MyLogger.info("\n");
+		// the first job that can be scheduled in the tick, if it has the
+		// higher priority
+		qJob = sim.Q.first(sim.processorClock + 1, true);
+		if (qJob != null && qJob.compareTo(pJob) < 0) {
+			return qJob;
 		}
+		// No high priority jobs
+		MyLogger.info("No high priority jobs to asign");
 		return null;
 	}
 
@@ -556,68 +587,27 @@ public class Scheduler {
 	 * (jobAddIndex != -1) { Scheduler.addQueue(jobAddIndex); jobAddIndex = -1;
 	 * } }
 	 */
+	// Jobs available at or before the first job of the Q available at
+	// MaxAvailTime, by CurrAvailTime and then priority
 	public JobTuple[] getNextAvailableJobs(double MaxAvailTime) {
 
-		JobSet Jobset = JobSet.getInstance();
-		ArrayList<JobTuple> jobsBasedOnAvailTime = new ArrayList<JobTuple>();
-		JobTuple JobList[] = null;
-		JobTuple job = null;
-		int index = 0;
-		for (int jobNo : Q) {
-			job = Jobset.getJob(jobNo);
-			if (job.CurrAvailTime <= MaxAvailTime) {
-				if (jobsBasedOnAvailTime.isEmpty() == false) {
-
-					for (index = 0; index < jobsBasedOnAvailTime.size(); index++) {
-						if (job.CurrAvailTime <= jobsBasedOnAvailTime
-								.get(index).CurrAvailTime) {
-							while (index < jobsBasedOnAvailTime.size()
-									&& job.CurrAvailTime == jobsBasedOnAvailTime
-											.get(index).CurrAvailTime) {
-								// this.absdeadline > o.absdeadline
-								if (job.compareTo(jobsBasedOnAvailTime
-										.get(index)) == 1) {
-									index++;
-								} else {
-									// this.absdeadline <= o.absdeadline
-									break;
-								}
-							}
-							jobsBasedOnAvailTime.add(index, job);
-							break;
-						} else {
-							// MyLogger.info("skipping " + index);
-						}
-					}
-
-				} else {
-					jobsBasedOnAvailTime.add(job);
-				}
-			}
-		}
-
-		JobList = new JobTuple[jobsBasedOnAvailTime.size()];
-
-		jobsBasedOnAvailTime.toArray(JobList);
+		JobTuple JobList[] = sim.Q.available(MaxAvailTime);
 		for (JobTuple ljob : JobList) {
 			MyLogger.info("(" + ljob.CurrAvailTime + "," + ljob.absdeadline
 					+ ")" + ",");
 		}
-		// Arrays.sort(JobList);
-		// MyLogger.info(jobsBasedOnAvailTime.get(0).CurrAvailTime + ","
-		// + jobsBasedOnAvailTime.get(0).absdeadline);
 		return JobList;
 	}
 
 	public static void main(String args[]) throws Exception {
 		// TaskSet.getInstance().Display();
-		MyLogger.setUseParentHandlers(false);
 		TaskSet.getInstance().SystemUtilization();
 		double HyperPeriod = -1;
-		if (Configuration.HyperPeriod == -1) {
+		Simulation sim = Simulation.current();
+		if (sim.HyperPeriod == -1) {
 			HyperPeriod = TaskSet.getInstance().HyperPeriod();
 		} else {
-			HyperPeriod = Configuration.HyperPeriod;
+			HyperPeriod = sim.HyperPeriod;
 		}
 		try {
 			// shedulingLog = new FileHandler("sheduling.log");
@@ -635,15 +625,25 @@ public class Scheduler {
 
 		// java.util.logging.ConsoleHandler.level = OFF;
 
-		Scheduler.Q = JobSet.getInstance().queue();
-		MyLogger.info("Jobs::" + Q.toString());
-		Processor.getAllProcessors(Configuration.NoOfProcessors);
+		sim.Q = JobSet.getInstance().queue();
+		MyLogger.info("Jobs::" + sim.Q.toString());
+		Processor.getAllProcessors(sim.NoOfProcessors);
 		Scheduler s = new Scheduler(HyperPeriod);
+		File trace = new File("schedule.trace");
+		try {
+			sim.trace = new TraceWriter(trace, sim.NoOfProcessors,
+					TaskSet.getInstance().Tasks.length, HyperPeriod);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		Jobset.Print();
 		// s.getNextAvailableJobs(10);
-		s.scheduler(Configuration.NoOfProcessors);
+		s.scheduler(sim.NoOfProcessors);
 		Jobset.Print();
-		Graph.Draw(Jobset);
+		if (sim.trace != null) {
+			sim.trace.close();
+			ScheduleView.Draw(trace);
+		}
 		Jobset.Print();
 	}
 }
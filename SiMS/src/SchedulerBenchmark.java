@@ -0,0 +1,84 @@
+/**
+ * Times the Scheduler on task sets made by TaskSetGeneration, bigger and
+ * bigger, to see the cost of a scheduling decision as the jobs grow.
+ *
+ * The times include making the jobs. -runs task sets are scheduled
+ * at every size, the first ones warming the JIT up.
+ *
+ * java SchedulerBenchmark [-tasks 10,20,40,80] [-util 1.2] [-procs 2]
+ *   [-hyper h] [-alg EDF] [-runs 3]
+ * -hyper overrides the hyper-period of the task sets (the LCM of their
+ * periods), to get more jobs out of the same tasks.
+ */
+public class SchedulerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String sizes = "10,20,40,80";
+		double util = 1.2;
+		int procs = 2;
+		int hyper = -1;
+		String alg = "EDF";
+		int runs = 3;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			if (args[i].equals("-tasks")) {
+				sizes = value;
+			} else if (args[i].equals("-util")) {
+				util = Double.parseDouble(value);
+			} else if (args[i].equals("-procs")) {
+				procs = Integer.parseInt(value);
+			} else if (args[i].equals("-hyper")) {
+				hyper = Integer.parseInt(value);
+			} else if (args[i].equals("-alg")) {
+				alg = value;
+			} else if (args[i].equals("-runs")) {
+				runs = Integer.parseInt(value);
+			} else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+
+		System.out.println(alg + ", " + procs + " processors, utilization "
+				+ util + ", " + runs + " task sets each");
+		System.out.println(String.format("%6s %9s %11s %10s %12s", "tasks",
+				"jobs", "decisions", "ms", "us/decision"));
+		for (String size : sizes.split(",")) {
+			int n = Integer.parseInt(size);
+			long jobs = 0, decisions = 0, nanos = 0;
+			int done = 0;
+			for (int r = 0; r < runs; r++) {
+				long[] result = run(TaskSetGeneration.generate(n, util), hyper,
+						procs, SchedulingAlgorithm.valueOf(alg));
+				if (result == null)
+					continue;
+				jobs += result[0];
+				decisions += result[1];
+				nanos += result[2];
+				done++;
+			}
+			if (done == 0)
+				continue;
+			System.out.println(String.format("%6d %9d %11d %10.1f %12.3f", n,
+					jobs / done, decisions / done, nanos / 1e6 / done, nanos
+							/ 1e3 / Math.max(1, decisions)));
+		}
+	}
+
+	// Schedules the task set: {jobs, decisions, nanos}
+	static long[] run(String[] tasks, int hyper, int procs,
+			SchedulingAlgorithm alg) {
+		Simulation sim = new Simulation(tasks, alg, procs);
+		sim.HyperPeriod = hyper;
+		sim.out = null;
+		long start = System.nanoTime();
+		try {
+			sim.run();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		long nanos = System.nanoTime() - start;
+		return new long[] { sim.jobSet.Jobset.length, sim.Q.decisions, nanos };
+	}
+}
@@ -0,0 +1,3 @@
+public enum SchedulingAlgorithm {
+	EDF, RM, DM;
+}
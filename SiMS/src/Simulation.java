@@ -0,0 +1,101 @@
+import java.io.PrintStream;
+
+/**
+ * The state of one run of the simulator: its task set, jobs, processors,
+ * clock and ready queue, and the settings it runs with. TaskSet, JobSet,
+ * Processor, Clock and Scheduler reach them through current(), the run of
+ * the calling thread, so runs on different threads do not share anything.
+ *
+ * A thread that never entered a run gets one with the Configuration
+ * settings and the task set of tuples.txt, as Scheduler.main uses.
+ */
+public class Simulation {
+
+	private static final ThreadLocal<Simulation> current = new ThreadLocal<Simulation>() {
+		@Override
+		protected Simulation initialValue() {
+			return new Simulation(null);
+		}
+	};
+
+	public static Simulation current() {
+		return current.get();
+	}
+
+	// Settings, Configuration's by default
+	int NoOfProcessors = Configuration.NoOfProcessors;
+	int HyperPeriod = Configuration.HyperPeriod;
+	SchedulingAlgorithm TypeOfScheduliing = Configuration.TypeOfScheduliing;
+	double TickSize = Configuration.TickSize;
+	// where the run reports its progress; null keeps it quiet, and is
+	// checked before a report is put together
+	PrintStream out = System.out;
+
+	// task tuples to run, null for tuples.txt
+	private final String[] tuples;
+	TaskSet taskSet = null;
+	JobSet jobSet = null;
+	Processor[] processors = null;
+	Clock clock = null;
+	double processorClock = 0;
+	ReadyQueue Q = null;
+	// releases, completions and suspensions still to come
+	EventQueue events = null;
+	// jobs started and stopped so far: a tick that starts and stops none
+	// changes nothing, nor will the ticks before the next event
+	long changes = 0;
+	// where the schedule is written as it is made, if anywhere
+	TraceWriter trace = null;
+	int totalTasks = 0;
+	int totalJobs = 0;
+
+	Simulation(String[] tuples) {
+		this.tuples = tuples;
+	}
+
+	Simulation(String[] tuples, SchedulingAlgorithm algorithm, int procs) {
+		this(tuples);
+		this.TypeOfScheduliing = algorithm;
+		this.NoOfProcessors = procs;
+	}
+
+	TaskSet getTaskSet() {
+		if (taskSet == null)
+			taskSet = tuples == null ? new TaskSet() : new TaskSet(tuples);
+		return taskSet;
+	}
+
+	double getHyperPeriod() {
+		return HyperPeriod == -1 ? getTaskSet().HyperPeriod() : HyperPeriod;
+	}
+
+	// Makes this the run of the calling thread, till exit(); returns the
+	// run to give back to exit()
+	Simulation enter() {
+		Simulation outer = current.get();
+		current.set(this);
+		return outer;
+	}
+
+	void exit(Simulation outer) {
+		current.set(outer);
+	}
+
+	/**
+	 * Schedules the task set over the hyper-period on this thread, as
+	 * Scheduler.main does, without the reports.
+	 */
+	void run() {
+		Simulation outer = enter();
+		try {
+			double H = getHyperPeriod();
+			JobSet Jobset = JobSet.getInstance(H);
+			Jobset.Sort();
+			Q = Jobset.queue();
+			Processor.getAllProcessors(NoOfProcessors);
+			new Scheduler(H).scheduler(NoOfProcessors);
+		} finally {
+			exit(outer);
+		}
+	}
+}
@@ -1,6 +1,8 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Map.Entry;
@@ -10,66 +12,80 @@ import java.util.StringTokenizer;
 public class TaskSet {
 
 	TaskTuple[] Tasks = null;
-	private static TaskSet instance = null;
 
+	// The task set of the current Simulation
 	public static TaskSet getInstance() {
-		if (instance == null) {
-			instance = new TaskSet();
-		}
-		return instance;
+		return Simulation.current().getTaskSet();
 	}
 
 	protected TaskSet() {
 		try {
-			BufferedReader br = new BufferedReader(new FileReader("tuples.txt"));
-			System.out.println("Started Loading...");
-			String currentLine = null;
-			StringTokenizer stkn = null;
-
-			String phase, period, exec, deadline, susp, depend, reso;
-			ArrayList<TaskTuple> tTasks = new ArrayList<TaskTuple>();
-			// ArrayList<Integer> dependList = new ArrayList<Integer>();
-			// ArrayList<LinkedList<Resource>> ResoList = new
-			// ArrayList<LinkedList<Resource>>();
-
-			while ((currentLine = br.readLine()) != null
-					&& !currentLine.trim().isEmpty()) {
-				stkn = new StringTokenizer(currentLine, " (;)");
-				phase = stkn.nextToken();
-				// System.out.println(phase);
-				period = stkn.nextToken();
-				// System.out.println(period);
-				exec = stkn.nextToken();
-				// System.out.println(exec);
-				deadline = stkn.nextToken();
-				// System.out.println(deadline);
-				susp = stkn.nextToken();
-				// System.out.println(susp);
-				depend = stkn.nextToken(); // String of dependences tasks
-				// System.out.println(depend);
-				reso = stkn.nextToken();
-				// System.out.println(reso);
-				int[] depends = getDependences(depend);
-				// DisplayTaskDepend(depends);
-				// ResoList = getResources(reso);
-				// DisplayTaskResource(ResoList);
-
-				TaskTuple temp = new TaskTuple(Double.parseDouble(phase),
-						Double.parseDouble(period), Double.parseDouble(exec),
-						Double.parseDouble(deadline), Double.parseDouble(susp),
-						depends, null, reso);
-				tTasks.add(temp);
-			}
-			br.close();
-			Tasks = new TaskTuple[tTasks.size()];
-			tTasks.toArray(Tasks);
-			setOthersDependOnMe();
+			load(new BufferedReader(new FileReader("tuples.txt")));
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
 	}
 
+	// The task set of the tuples given, one per line as in tuples.txt
+	TaskSet(String[] tuples) {
+		StringBuilder lines = new StringBuilder();
+		for (String tuple : tuples)
+			lines.append(tuple).append('\n');
+		try {
+			load(new BufferedReader(new StringReader(lines.toString())));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void load(BufferedReader br) throws IOException {
+		PrintStream out = Simulation.current().out;
+		if (out != null)
+			out.println("Started Loading...");
+		String currentLine = null;
+		StringTokenizer stkn = null;
+
+		String phase, period, exec, deadline, susp, depend, reso;
+		ArrayList<TaskTuple> tTasks = new ArrayList<TaskTuple>();
+		// ArrayList<Integer> dependList = new ArrayList<Integer>();
+		// ArrayList<LinkedList<Resource>> ResoList = new
+		// ArrayList<LinkedList<Resource>>();
+
+		while ((currentLine = br.readLine()) != null
+				&& !currentLine.trim().isEmpty()) {
+			stkn = new StringTokenizer(currentLine, " (;)");
+			phase = stkn.nextToken();
+			// System.out.println(phase);
+			period = stkn.nextToken();
+			// System.out.println(period);
+			exec = stkn.nextToken();
+			// System.out.println(exec);
+			deadline = stkn.nextToken();
+			// System.out.println(deadline);
+			susp = stkn.nextToken();
+			// System.out.println(susp);
+			depend = stkn.nextToken(); // String of dependences tasks
+			// System.out.println(depend);
+			reso = stkn.nextToken();
+			// System.out.println(reso);
+			int[] depends = getDependences(depend);
+			// DisplayTaskDepend(depends);
+			// ResoList = getResources(reso);
+			// DisplayTaskResource(ResoList);
+
+			TaskTuple temp = new TaskTuple(Double.parseDouble(phase),
+					Double.parseDouble(period), Double.parseDouble(exec),
+					Double.parseDouble(deadline), Double.parseDouble(susp),
+					depends, null, reso);
+			tTasks.add(temp);
+		}
+		br.close();
+		Tasks = new TaskTuple[tTasks.size()];
+		tTasks.toArray(Tasks);
+		setOthersDependOnMe();
+	}
+
 	public void setOthersDependOnMe() {
 		for (TaskTuple task : Tasks) {
 			if (task.dependence == null)
@@ -7,12 +7,34 @@ public class TaskSetGeneration {
 
 	public static void main(String[] args) {
 		// TODO Auto-generated method stub
-		int n = Configuration.TasksInTestTaskSet;
+		String[] tasks = generate(Configuration.TasksInTestTaskSet,
+				Configuration.TaskSetUtilization);
+
+		try {
+			File file = new File("Tasklist.txt");
+			// if file doesnt exists, then create it
+			if (!file.exists()) {
+				file.createNewFile();
+
+			}
+			PrintWriter pr = new PrintWriter(new BufferedWriter(new FileWriter(
+					file.getAbsoluteFile(), false)));
+			for (String task : tasks) {
+				pr.write(task + "\n");
+			}
+			pr.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	// n tasks of the given total utilization, one tuple per task
+	static String[] generate(int n, double utilization) {
 		double util[] = new double[n];
 		double exec[] = new double[n];
 		double perd[] = new double[n];
 		double susp[] = new double[n];
-		util = JobTuple.randSum(n, Configuration.TaskSetUtilization);
+		util = JobTuple.randSum(n, utilization);
 
 		// Random Periods Min and Max Periods
 		for (int i = 0; i < n; i++) {
@@ -31,24 +53,13 @@ public class TaskSetGeneration {
 							Configuration.UpperBoundOfSuspension));
 		}
 
-		try {
-			File file = new File("Tasklist.txt");
-			// if file doesnt exists, then create it
-			if (!file.exists()) {
-				file.createNewFile();
-
-			}
-			PrintWriter pr = new PrintWriter(new BufferedWriter(new FileWriter(
-					file.getAbsoluteFile(), false)));
-			for (int i = 0; i < n; i++) {
-				// (0;3;1;3;1;-1;-1)
-				pr.write("(0;" + perd[i] + ";" + exec[i] + ";" + perd[i] + ";"
-						+ susp[i] + ";-1;-1)\n");
-			}
-			pr.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+		String[] tasks = new String[n];
+		for (int i = 0; i < n; i++) {
+			// (0;3;1;3;1;-1;-1)
+			tasks[i] = "(0;" + perd[i] + ";" + exec[i] + ";" + perd[i] + ";"
+					+ susp[i] + ";-1;-1)";
 		}
+		return tasks;
 	}
 
 }
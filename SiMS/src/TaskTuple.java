@@ -19,8 +19,6 @@ public class TaskTuple {
 
 	double utilization;
 
-	public static int TotalTasks = 0;
-
 	public TaskTuple(int taskNo, double phase, double period, double execution,
 			double deadline, double suspension, int dependence[],
 			ArrayList<Integer> OthersDependOnMe, String ResoList) {
@@ -54,14 +52,14 @@ public class TaskTuple {
 
 	public TaskTuple(double phase, double period, double execution,
 			double deadline) {
-		this(TotalTasks++, phase, period, execution, deadline, -1, null, null,
+		this(Simulation.current().totalTasks++, phase, period, execution, deadline, -1, null, null,
 				null);
 	}
 
 	public TaskTuple(double phase, double period, double execution,
 			double deadline, double suspension, int dependence[],
 			ArrayList<Integer> OthersDependOnMe, String ResoList) {
-		this(++TotalTasks, phase, period, execution, deadline, suspension,
+		this(++Simulation.current().totalTasks, phase, period, execution, deadline, suspension,
 				dependence, OthersDependOnMe, ResoList);
 	}
 
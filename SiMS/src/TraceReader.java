@@ -0,0 +1,224 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A trace written by TraceWriter, mapped read-only. Holds only indexes
+ * on the heap: the records of each processor's segments and of each
+ * task's releases in time order, and for every processor a pyramid of the
+ * time it was busy in buckets of the hyper-period, each level half as
+ * fine as the one below, for views too wide to draw segment by segment.
+ */
+public class TraceReader {
+	// records in a mapped part of the file, a power of two
+	private static final int PART = 1 << 25;
+
+	final int processors;
+	final int tasks;
+	final double hyperPeriod;
+	final long records;
+	private final MappedByteBuffer[] parts;
+
+	// by processor - 1, and by task - 1: record numbers in time order
+	final int[][] segments;
+	final int[][] releases;
+
+	// by processor - 1 and level: busy time, and segments ending in a miss,
+	// in each bucket; level 0 buckets are bucketWidth wide
+	final float[][][] busy;
+	final int[][][] missed;
+	final double bucketWidth;
+
+	TraceReader(File trace) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(trace, "r");
+		FileChannel channel = file.getChannel();
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+				0, TraceWriter.HEADER);
+		if (header.getLong(0) != TraceWriter.MAGIC) {
+			file.close();
+			throw new IOException(trace + " is not a schedule trace");
+		}
+		processors = header.getInt(8);
+		tasks = header.getInt(12);
+		hyperPeriod = header.getDouble(16);
+		records = header.getLong(TraceWriter.RECORDS_AT);
+		if (records > Integer.MAX_VALUE) {
+			file.close();
+			throw new IOException(trace + " has too many records");
+		}
+
+		parts = new MappedByteBuffer[(int) ((records + PART - 1) / PART)];
+		for (int i = 0; i < parts.length; i++) {
+			long first = (long) i * PART;
+			long count = Math.min(PART, records - first);
+			parts[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					TraceWriter.HEADER + first * TraceWriter.RECORD, count
+							* TraceWriter.RECORD);
+		}
+		file.close();
+
+		int[] perProc = new int[processors];
+		int[] perTask = new int[tasks];
+		for (int r = 0; r < records; r++) {
+			if (kind(r) == TraceWriter.RELEASE)
+				perTask[task(r) - 1]++;
+			else
+				perProc[processor(r) - 1]++;
+		}
+		segments = new int[processors][];
+		for (int p = 0; p < processors; p++)
+			segments[p] = new int[perProc[p]];
+		releases = new int[tasks][];
+		for (int t = 0; t < tasks; t++)
+			releases[t] = new int[perTask[t]];
+		Arrays.fill(perProc, 0);
+		Arrays.fill(perTask, 0);
+		for (int r = 0; r < records; r++) {
+			if (kind(r) == TraceWriter.RELEASE) {
+				int t = task(r) - 1;
+				releases[t][perTask[t]++] = r;
+			} else {
+				int p = processor(r) - 1;
+				segments[p][perProc[p]++] = r;
+			}
+		}
+		for (int[] list : segments)
+			sortByStart(list);
+		for (int[] list : releases)
+			sortByStart(list);
+
+		int most = 0;
+		for (int[] list : segments)
+			most = Math.max(most, list.length);
+		int buckets = 1024;
+		while (buckets < (1 << 20) && buckets < most / 4)
+			buckets *= 2;
+		bucketWidth = hyperPeriod / buckets;
+		int levels = Integer.numberOfTrailingZeros(buckets) + 1;
+		busy = new float[processors][levels][];
+		missed = new int[processors][levels][];
+		for (int p = 0; p < processors; p++)
+			buildLevels(p, buckets, levels);
+	}
+
+	private MappedByteBuffer part(int r) {
+		return parts[r / PART];
+	}
+
+	private int at(int r) {
+		return (r % PART) * TraceWriter.RECORD;
+	}
+
+	double start(int r) {
+		return part(r).getDouble(at(r));
+	}
+
+	double end(int r) {
+		return part(r).getDouble(at(r) + 8);
+	}
+
+	int job(int r) {
+		return part(r).getInt(at(r) + 16);
+	}
+
+	int task(int r) {
+		return part(r).getInt(at(r) + 20);
+	}
+
+	int jobIndex(int r) {
+		return part(r).getInt(at(r) + 24);
+	}
+
+	int processor(int r) {
+		return part(r).getShort(at(r) + 28);
+	}
+
+	byte kind(int r) {
+		return part(r).get(at(r) + 30);
+	}
+
+	/**
+	 * Index in list, sorted by start, of the first record ending after
+	 * time. Segments of a processor do not overlap, so their ends are in
+	 * order too; for releases the start is used.
+	 */
+	int firstEndingAfter(int[] list, double time, boolean release) {
+		int lo = 0, hi = list.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			double t = release ? start(list[mid]) : end(list[mid]);
+			if (t < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	// Index in list of the first record starting at or after time
+	int firstStartingFrom(int[] list, double time) {
+		int lo = 0, hi = list.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (start(list[mid]) < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	// Insertion sort: the records come nearly in order already
+	private void sortByStart(int[] list) {
+		for (int i = 1; i < list.length; i++) {
+			int r = list[i];
+			double s = start(r);
+			int j = i - 1;
+			while (j >= 0 && start(list[j]) > s) {
+				list[j + 1] = list[j];
+				j--;
+			}
+			list[j + 1] = r;
+		}
+	}
+
+	private void buildLevels(int p, int buckets, int levels) {
+		float[] b = new float[buckets];
+		int[] m = new int[buckets];
+		for (int r : segments[p]) {
+			double s = start(r), e = Math.min(end(r), hyperPeriod);
+			int i = bucket(s, buckets);
+			int last = bucket(e, buckets);
+			for (; i <= last; i++) {
+				double from = Math.max(s, i * bucketWidth);
+				double to = Math.min(e, (i + 1) * bucketWidth);
+				if (to > from)
+					b[i] += (float) (to - from);
+			}
+			if (kind(r) == TraceWriter.MISSED)
+				m[last]++;
+		}
+		busy[p][0] = b;
+		missed[p][0] = m;
+		for (int l = 1; l < levels; l++) {
+			float[] fine = busy[p][l - 1];
+			int[] fineMissed = missed[p][l - 1];
+			b = new float[fine.length / 2];
+			m = new int[fine.length / 2];
+			for (int i = 0; i < b.length; i++) {
+				b[i] = fine[2 * i] + fine[2 * i + 1];
+				m[i] = fineMissed[2 * i] + fineMissed[2 * i + 1];
+			}
+			busy[p][l] = b;
+			missed[p][l] = m;
+		}
+	}
+
+	private int bucket(double time, int buckets) {
+		int i = (int) (time / bucketWidth);
+		return Math.max(0, Math.min(buckets - 1, i));
+	}
+}
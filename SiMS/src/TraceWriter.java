@@ -0,0 +1,153 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the schedule of a Simulation as it runs: a record for every job
+ * released and for every stretch a job ran on a processor, appended to a
+ * memory-mapped file. The records are fixed size primitives, so a
+ * schedule of millions of segments never sits on the heap; TraceReader
+ * and ScheduleView read it back.
+ *
+ * The file is a header of HEADER bytes (MAGIC, processors, tasks,
+ * hyper-period, records) and then records of RECORD bytes: start and end
+ * (release time and absolute deadline for a release), jobNo, taskNo,
+ * jobIndex, processor and kind.
+ */
+public class TraceWriter {
+	static final long MAGIC = 0x53694d5354726331L; // SiMSTrc1
+	static final int HEADER = 64;
+	static final int RECORD = 32;
+	// offset of the number of records in the header
+	static final int RECORDS_AT = 24;
+
+	// kind of a record: a release, or how the segment ended
+	static final byte RELEASE = 0;
+	static final byte COMPLETED = 1;
+	static final byte PREEMPTED = 2;
+	static final byte MISSED = 3;
+	static final byte CUT = 4; // still running at the end of the run
+
+	// the file is mapped a chunk at a time, growing up to MAX_CHUNK
+	private static final int FIRST_CHUNK = 1 << 16;
+	private static final int MAX_CHUNK = 1 << 26;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private MappedByteBuffer buf;
+	private long base = 0;
+	private int chunk = FIRST_CHUNK;
+	private long records = 0;
+	private boolean failed = false;
+
+	TraceWriter(File trace, int processors, int tasks, double hyperPeriod)
+			throws IOException {
+		file = new RandomAccessFile(trace, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, chunk);
+		buf.putLong(MAGIC);
+		buf.putInt(processors);
+		buf.putInt(tasks);
+		buf.putDouble(hyperPeriod);
+		buf.putLong(0);
+		buf.position(HEADER);
+	}
+
+	long records() {
+		return records;
+	}
+
+	void release(JobTuple job) {
+		put(job.availTime, job.absdeadline, job, 0, RELEASE);
+	}
+
+	/**
+	 * Appends a segment, or, if the last segment traced for job has the
+	 * same start, gives that one the new end and kind instead: the job ran
+	 * again from the same start, and only its final end stands.
+	 */
+	void segment(JobTuple job, int procNo, double start, double end,
+			byte kind) {
+		if (job.tracedRecord >= 0 && job.tracedStart == start) {
+			rewrite(job.tracedRecord, end, procNo, kind);
+			return;
+		}
+		if (put(start, end, job, procNo, kind)) {
+			job.tracedRecord = records - 1;
+			job.tracedStart = start;
+		}
+	}
+
+	// Sets the end, processor and kind of a record already written
+	private void rewrite(long record, double end, int procNo, byte kind) {
+		if (failed)
+			return;
+		long at = HEADER + record * RECORD;
+		try {
+			MappedByteBuffer b = buf;
+			int i = (int) (at - base);
+			if (at < base) {
+				b = channel.map(FileChannel.MapMode.READ_WRITE, at, RECORD);
+				i = 0;
+			}
+			b.putDouble(i + 8, end);
+			b.putShort(i + 28, (short) procNo);
+			b.put(i + 30, kind);
+		} catch (IOException e) {
+			e.printStackTrace();
+			failed = true;
+		}
+	}
+
+	private boolean put(double start, double end, JobTuple job, int procNo,
+			byte kind) {
+		if (failed)
+			return false;
+		try {
+			if (buf.remaining() < RECORD) {
+				base += buf.position();
+				chunk = Math.min(chunk * 2, MAX_CHUNK);
+				buf = channel.map(FileChannel.MapMode.READ_WRITE, base, chunk);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			failed = true;
+			return false;
+		}
+		buf.putDouble(start);
+		buf.putDouble(end);
+		buf.putInt(job.jobNo);
+		buf.putInt(job.taskNo);
+		buf.putInt(job.jobIndex);
+		buf.putShort((short) procNo);
+		buf.put(kind);
+		buf.put((byte) 0);
+		records++;
+		return true;
+	}
+
+	// Writes the number of records and cuts the file to them
+	void close() {
+		try {
+			long length = HEADER + records * RECORD;
+			buf.force();
+			MappedByteBuffer header = channel.map(
+					FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			header.putLong(RECORDS_AT, records);
+			header.force();
+			buf = null;
+			try {
+				channel.truncate(length);
+			} catch (IOException e) {
+				// some platforms refuse while the chunks are still mapped;
+				// the reader goes by the header
+			}
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}